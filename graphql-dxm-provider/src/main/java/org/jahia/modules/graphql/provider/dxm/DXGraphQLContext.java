@@ -0,0 +1,89 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm;
+
+import graphql.servlet.GraphQLContext;
+import org.jahia.modules.graphql.provider.dxm.node.NodeLoader;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GraphQL context holding the request scoped helpers used by the DX data fetchers
+ */
+public class DXGraphQLContext extends GraphQLContext {
+
+    private final NodeLoader nodeLoader = new NodeLoader();
+    private final Map<String, Boolean> checkedPermissions = new ConcurrentHashMap<>();
+    private final AtomicInteger parallelFields = new AtomicInteger();
+
+    public DXGraphQLContext(Optional<HttpServletRequest> request, Optional<HttpServletResponse> response) {
+        super(request, response);
+    }
+
+    /**
+     * @return The node loader shared by all the fields of the current request
+     */
+    public NodeLoader getNodeLoader() {
+        return nodeLoader;
+    }
+
+    /**
+     * @return The results of the permissions already checked for the current user, by permission name
+     */
+    public Map<String, Boolean> getCheckedPermissions() {
+        return checkedPermissions;
+    }
+
+    /**
+     * @return The number of fields of the current request being resolved on the parallel execution executor
+     */
+    public AtomicInteger getParallelFields() {
+        return parallelFields;
+    }
+}
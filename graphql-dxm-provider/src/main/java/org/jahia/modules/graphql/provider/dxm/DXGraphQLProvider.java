@@ -50,41 +50,56 @@ import graphql.annotations.processor.retrievers.GraphQLExtensionsHandler;
 import graphql.schema.GraphQLFieldDefinition;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLOutputType;
+import graphql.schema.GraphQLSchema;
 import graphql.schema.GraphQLType;
 import graphql.servlet.GraphQLMutationProvider;
 import graphql.servlet.GraphQLProvider;
 import graphql.servlet.GraphQLQueryProvider;
 import graphql.servlet.GraphQLTypesProvider;
+import graphql.servlet.OsgiGraphQLServlet;
 import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNode;
 import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNodeImpl;
 import org.jahia.modules.graphql.provider.dxm.node.SpecializedType;
 import org.jahia.modules.graphql.provider.dxm.node.SpecializedTypesHandler;
+import org.jahia.modules.graphql.provider.dxm.persisted.PreparsedDocumentCache;
 import org.jahia.modules.graphql.provider.dxm.relay.DXRelay;
 import org.osgi.service.component.annotations.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
+import javax.servlet.Servlet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Provider of the DX GraphQL types, queries, mutations and subscriptions.
+ *
+ * Extensions providers are bound dynamically: when a provider contributing type extensions or specialized types comes
+ * or goes, the types are rebuilt without deactivating this provider and swapped atomically, then an empty query
+ * provider is bound to and unbound from the GraphQL servlet, which rebuilds its schema from the new types on each
+ * call. This provider stays bound meanwhile, so that every schema served by the servlet holds the DX fields. Requests
+ * being executed meanwhile finish on the previous schema: the node type resolver of each schema uses the specialized
+ * types it has been built with, and the new specialized types are only used to wrap nodes once the servlet serves
+ * them. Concurrent rebuilds are serialized, each one building the types, updating the servlet schema and switching
+ * the specialized types under the same lock. The classes contributed by each provider are only scanned once, when
+ * the provider is bound.
+ */
 @Component(service = GraphQLProvider.class, immediate = true)
 public class DXGraphQLProvider implements GraphQLTypesProvider, GraphQLQueryProvider, GraphQLMutationProvider, DXGraphQLExtensionsProvider {
     private static Logger logger = LoggerFactory.getLogger(GraphQLQueryProvider.class);
 
     private static DXGraphQLProvider instance;
 
-    private SpecializedTypesHandler specializedTypesHandler;
-
     private GraphQLAnnotationsComponent graphQLAnnotations;
 
-    private ProcessingElementsContainer container;
+    private volatile OsgiGraphQLServlet servlet;
 
-    private Collection<DXGraphQLExtensionsProvider> extensionsProviders = new HashSet<>();
+    private volatile PreparsedDocumentCache preparsedDocumentCache;
 
-    private GraphQLObjectType queryType;
-    private GraphQLObjectType mutationType;
+    private final Map<DXGraphQLExtensionsProvider, ProviderClasses> extensionsProviders = new ConcurrentHashMap<>();
+
+    private volatile Types types;
+    private volatile boolean active;
 
     public static DXGraphQLProvider getInstance() {
         return instance;
@@ -100,36 +115,99 @@ public class DXGraphQLProvider implements GraphQLTypesProvider, GraphQLQueryProv
     }
 
     public ProcessingElementsContainer getContainer() {
-        return container;
+        return types.container;
+    }
+
+    @Reference(service = Servlet.class, target = "(component.name=graphql.servlet.OsgiGraphQLServlet)", cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+    public void setServlet(Servlet servlet) {
+        this.servlet = (OsgiGraphQLServlet) servlet;
     }
 
-    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.STATIC, policyOption = ReferencePolicyOption.GREEDY)
+    public void unsetServlet(Servlet servlet) {
+        if (this.servlet == servlet) {
+            this.servlet = null;
+        }
+    }
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+    public void setPreparsedDocumentCache(PreparsedDocumentCache preparsedDocumentCache) {
+        this.preparsedDocumentCache = preparsedDocumentCache;
+    }
+
+    public void unsetPreparsedDocumentCache(PreparsedDocumentCache preparsedDocumentCache) {
+        if (this.preparsedDocumentCache == preparsedDocumentCache) {
+            this.preparsedDocumentCache = null;
+        }
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
     public void addExtensionProvider(DXGraphQLExtensionsProvider provider) {
-        this.extensionsProviders.add(provider);
+        ProviderClasses classes = new ProviderClasses(provider);
+        extensionsProviders.put(provider, classes);
+        if (active && !classes.isEmpty()) {
+            rebuild("added " + provider);
+        }
     }
 
     public void removeExtensionProvider(DXGraphQLExtensionsProvider provider) {
-        this.extensionsProviders.remove(provider);
+        ProviderClasses classes = extensionsProviders.remove(provider);
+        if (active && classes != null && !classes.isEmpty()) {
+            rebuild("removed " + provider);
+        }
     }
 
     @Activate
-    public void activate() {
+    public synchronized void activate() {
         instance = this;
+        extensionsProviders.put(this, new ProviderClasses(this));
+        build().specializedTypesHandler.makeCurrent();
+        active = true;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        active = false;
+    }
+
+    /**
+     * Rebuild the types after a change of the extensions providers, and have the servlet rebuild its schema.
+     */
+    synchronized void rebuild(String reason) {
+        long start = System.currentTimeMillis();
+        Types types = build();
+        OsgiGraphQLServlet servlet = this.servlet;
+        if (servlet != null) {
+            // the servlet reads again the types of all its providers when a provider is bound or unbound: binding a
+            // provider without any query has it pick up the new types, without ever serving a schema lacking them
+            GraphQLQueryProvider schemaUpdate = Collections::emptyList;
+            servlet.bindQueryProvider(schemaUpdate);
+            servlet.unbindQueryProvider(schemaUpdate);
+        }
+        types.specializedTypesHandler.makeCurrent();
+        PreparsedDocumentCache preparsedDocumentCache = this.preparsedDocumentCache;
+        if (preparsedDocumentCache != null) {
+            // cached documents have been validated against the previous schema
+            preparsedDocumentCache.clear();
+        }
+        logger.info("GraphQL schema rebuilt in {} ms, {}", System.currentTimeMillis() - start, reason);
+    }
+
+    private synchronized Types build() {
+        long start = System.currentTimeMillis();
+        Collection<ProviderClasses> providers = new ArrayList<>(extensionsProviders.values());
 
-        container = graphQLAnnotations.createContainer();
-        specializedTypesHandler = new SpecializedTypesHandler(graphQLAnnotations, container);
+        ProcessingElementsContainer container = graphQLAnnotations.createContainer();
+        SpecializedTypesHandler specializedTypesHandler = new SpecializedTypesHandler(graphQLAnnotations, container);
 
         GraphQLExtensionsHandler extensionsHandler = graphQLAnnotations.getExtensionsHandler();
 
         container.setRelay(new DXRelay());
 
-        extensionsProviders.add(this);
-
-        for (DXGraphQLExtensionsProvider extensionsProvider : extensionsProviders) {
-            for (Class<?> aClass : extensionsProvider.getExtensions()) {
+        for (ProviderClasses provider : providers) {
+            for (Class<?> aClass : provider.extensions) {
                 extensionsHandler.registerTypeExtension(aClass, container);
             }
-            for (Class<? extends GqlJcrNode> aClass : extensionsProvider.getSpecializedTypes()) {
+            for (Class<? extends GqlJcrNode> aClass : provider.specializedTypes) {
                 SpecializedType annotation = aClass.getAnnotation(SpecializedType.class);
                 if (annotation != null) {
                     specializedTypesHandler.addType(annotation.value(), aClass);
@@ -139,41 +217,128 @@ public class DXGraphQLProvider implements GraphQLTypesProvider, GraphQLQueryProv
             }
         }
 
-        queryType = (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(Query.class, container);
-        mutationType = (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(Mutation.class, container);
+        long extensionsTime = System.currentTimeMillis();
+
+        GraphQLObjectType queryType = (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(Query.class, container);
+        GraphQLObjectType mutationType = (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(Mutation.class, container);
+        GraphQLObjectType subscriptionType = (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(Subscription.class, container);
 
-        for (DXGraphQLExtensionsProvider extensionsProvider : extensionsProviders) {
-            for (Class<?> aClass : extensionsProvider.getExtensions()) {
+        for (ProviderClasses provider : providers) {
+            for (Class<?> aClass : provider.extensions) {
                 extensionsHandler.registerTypeExtension(aClass, container);
             }
         }
 
+        long rootTypesTime = System.currentTimeMillis();
+
         specializedTypesHandler.initializeTypes();
 
+        Types types = new Types(container, specializedTypesHandler, queryType, mutationType, subscriptionType);
+        this.types = types;
+
+        long end = System.currentTimeMillis();
+        logger.info("GraphQL provider types built in {} ms ({} extensions providers registered in {} ms, root types in {} ms, specialized types in {} ms)",
+                end - start, providers.size(), extensionsTime - start, rootTypesTime - extensionsTime, end - rootTypesTime);
+        return types;
     }
 
     @Override
     public Collection<GraphQLType> getTypes() {
+        return getTypes(this.types);
+    }
+
+    private Collection<GraphQLType> getTypes(Types current) {
         List<GraphQLType> types = new ArrayList<>();
 
-        types.add(graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, container));
-        types.addAll(specializedTypesHandler.getKnownTypes().values());
+        types.add(graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, current.container));
+        types.addAll(current.specializedTypesHandler.getKnownTypes().values());
         return types;
     }
 
     @Override
     public Collection<GraphQLFieldDefinition> getQueries() {
-        return queryType.getFieldDefinitions();
+        return types.queryType.getFieldDefinitions();
     }
 
     @Override
     public Collection<GraphQLFieldDefinition> getMutations() {
-        return mutationType.getFieldDefinitions();
+        return types.mutationType.getFieldDefinitions();
+    }
+
+    /**
+     * Get the subscription fields. The GraphQL servlet only builds its schema from queries and mutations: these fields
+     * are served by the SubscriptionServlet, with the schema returned by {@link #getSubscriptionSchema()}.
+     *
+     * @return The subscription fields
+     */
+    public Collection<GraphQLFieldDefinition> getSubscriptions() {
+        return types.subscriptionType.getFieldDefinitions();
+    }
+
+    /**
+     * Get the schema subscriptions are executed with, holding the DX queries and subscriptions. It is built the first
+     * time it is requested after the types have been rebuilt.
+     *
+     * @return The schema of the subscriptions
+     */
+    public GraphQLSchema getSubscriptionSchema() {
+        Types current = this.types;
+        synchronized (current) {
+            if (current.subscriptionSchema == null) {
+                current.subscriptionSchema = GraphQLSchema.newSchema()
+                        .query(current.queryType)
+                        .subscription(current.subscriptionType)
+                        .build(new HashSet<>(getTypes(current)));
+            }
+            return current.subscriptionSchema;
+        }
     }
 
 
     public GraphQLOutputType getOutputType(Class<?> clazz) {
-        return graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(clazz, container);
+        return graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(clazz, types.container);
+    }
+
+    /**
+     * Types built from a given set of extensions providers, swapped as a whole.
+     */
+    private static class Types {
+
+        private final ProcessingElementsContainer container;
+        private final SpecializedTypesHandler specializedTypesHandler;
+        private final GraphQLObjectType queryType;
+        private final GraphQLObjectType mutationType;
+        private final GraphQLObjectType subscriptionType;
+
+        // guarded by this
+        private GraphQLSchema subscriptionSchema;
+
+        private Types(ProcessingElementsContainer container, SpecializedTypesHandler specializedTypesHandler, GraphQLObjectType queryType,
+                      GraphQLObjectType mutationType, GraphQLObjectType subscriptionType) {
+            this.container = container;
+            this.specializedTypesHandler = specializedTypesHandler;
+            this.queryType = queryType;
+            this.mutationType = mutationType;
+            this.subscriptionType = subscriptionType;
+        }
+    }
+
+    /**
+     * Classes contributed by an extensions provider, scanned once when the provider is bound.
+     */
+    private static class ProviderClasses {
+
+        private final Collection<Class<?>> extensions;
+        private final Collection<Class<? extends GqlJcrNode>> specializedTypes;
+
+        private ProviderClasses(DXGraphQLExtensionsProvider provider) {
+            this.extensions = provider.getExtensions();
+            this.specializedTypes = provider.getSpecializedTypes();
+        }
+
+        private boolean isEmpty() {
+            return extensions.isEmpty() && specializedTypes.isEmpty();
+        }
     }
 
     @GraphQLName("Query")
@@ -184,4 +349,8 @@ public class DXGraphQLProvider implements GraphQLTypesProvider, GraphQLQueryProv
     public static class Mutation {
     }
 
+    @GraphQLName("Subscription")
+    public static class Subscription {
+    }
+
 }
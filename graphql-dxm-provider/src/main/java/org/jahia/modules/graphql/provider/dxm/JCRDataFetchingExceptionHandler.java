@@ -53,6 +53,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
+import java.util.concurrent.CompletionException;
 
 /**
  * Custom DataFetchingExceptionHandler
@@ -69,6 +70,11 @@ public class JCRDataFetchingExceptionHandler implements DataFetcherExceptionHand
             exception = ((InvocationTargetException) exception.getCause()).getTargetException();
         }
 
+        // Unwrap exception from data fetchers returning a future
+        if (exception instanceof CompletionException && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
+
         SourceLocation sourceLocation = handlerParameters.getField().getSourceLocation();
         ExecutionPath path = handlerParameters.getPath();
 
@@ -43,23 +43,63 @@
  */
 package org.jahia.modules.graphql.provider.dxm;
 
-import graphql.execution.AsyncExecutionStrategy;
-import graphql.execution.AsyncSerialExecutionStrategy;
 import graphql.execution.ExecutionStrategy;
+import graphql.execution.SubscriptionExecutionStrategy;
 import graphql.servlet.ExecutionStrategyProvider;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component(immediate = true)
 public class JCRExecutionStrategyProvider implements ExecutionStrategyProvider {
 
-    private final ExecutionStrategy queryStrategy;
-    private final ExecutionStrategy mutationStrategy;
-    private final ExecutionStrategy subscriptionExecutionStrategy;
+    private static final String THREADS = "parallel.threads";
+    private static final String QUEUE_SIZE = "parallel.queueSize";
+
+    private static final long DEFAULT_THREADS = 8;
+    private static final long DEFAULT_QUEUE_SIZE = 100;
+
+    private DXGraphQLConfig config;
+    private ThreadPoolExecutor executor;
 
-    public JCRExecutionStrategyProvider() {
-        queryStrategy = new AsyncExecutionStrategy(new JCRDataFetchingExceptionHandler());
+    private ExecutionStrategy queryStrategy;
+    private ExecutionStrategy mutationStrategy;
+    private ExecutionStrategy subscriptionExecutionStrategy;
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        int threads = (int) config.getLongProperty(THREADS, DEFAULT_THREADS);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "graphql-field-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>((int) config.getLongProperty(QUEUE_SIZE, DEFAULT_QUEUE_SIZE)), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+
+        queryStrategy = new JCRParallelExecutionStrategy(new JCRDataFetchingExceptionHandler(), config, executor);
         mutationStrategy = new JCRMutationExecutionStrategy(new JCRDataFetchingExceptionHandler());
-        subscriptionExecutionStrategy = queryStrategy;
+        subscriptionExecutionStrategy = new SubscriptionExecutionStrategy(new JCRDataFetchingExceptionHandler());
+    }
+
+    @Deactivate
+    public void deactivate() {
+        executor.shutdown();
     }
 
     @Override
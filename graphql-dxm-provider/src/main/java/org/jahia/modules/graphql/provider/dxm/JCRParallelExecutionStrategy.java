@@ -0,0 +1,153 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm;
+
+import graphql.ExecutionResult;
+import graphql.execution.AsyncExecutionStrategy;
+import graphql.execution.DataFetcherExceptionHandler;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStrategyParameters;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.node.GqlJcrQuery;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.usermanager.JahiaUser;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Query execution strategy resolving configured expensive fields on a bounded executor, so that sibling fields (for
+ * example several nodesByQuery) are resolved in parallel.
+ *
+ * A field dispatched to the executor is fetched and completed, with its whole sub-selection, on a worker thread
+ * running with the user and locales of the request. JCR sessions are not shared between threads: the worker opens its
+ * own sessions, which are closed once the field is completed. Only the fields of the root query type and of the JCR
+ * query type are dispatched, as their source does not hold any item read with the sessions of the request thread:
+ * fields of nodes, such as descendants, are always resolved on the request thread, even if configured. Fields are also
+ * resolved on the request thread when the strategy is disabled, inside a field already dispatched, when the request
+ * already has as many fields dispatched as allowed, or when the executor is saturated.
+ *
+ * The strategy is configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>parallel.enabled: whether fields are dispatched, false by default</li>
+ *     <li>parallel.fields: comma separated names of the fields to dispatch, nodesByQuery and aggregationByQuery by default</li>
+ *     <li>parallel.maxFieldsPerRequest: maximum number of fields of a request being resolved in parallel, 4 by default</li>
+ * </ul>
+ */
+public class JCRParallelExecutionStrategy extends AsyncExecutionStrategy {
+
+    private static final String ENABLED = "parallel.enabled";
+    private static final String FIELDS = "parallel.fields";
+    private static final String MAX_FIELDS_PER_REQUEST = "parallel.maxFieldsPerRequest";
+
+    private static final String DEFAULT_FIELDS = "nodesByQuery,aggregationByQuery";
+    private static final long DEFAULT_MAX_FIELDS_PER_REQUEST = 4;
+
+    private static final ThreadLocal<Boolean> dispatched = new ThreadLocal<>();
+
+    private final DXGraphQLConfig config;
+    private final ExecutorService executor;
+
+    public JCRParallelExecutionStrategy(DataFetcherExceptionHandler exceptionHandler, DXGraphQLConfig config, ExecutorService executor) {
+        super(exceptionHandler);
+        this.config = config;
+        this.executor = executor;
+    }
+
+    @Override
+    protected CompletableFuture<ExecutionResult> resolveField(ExecutionContext executionContext, ExecutionStrategyParameters parameters) {
+        if (!config.getBooleanProperty(ENABLED, false) || dispatched.get() != null || !(executionContext.getContext() instanceof DXGraphQLContext)) {
+            return super.resolveField(executionContext, parameters);
+        }
+        String fieldName = parameters.field().get(0).getName();
+        if (!getFields().contains(fieldName) || !isQueryField(executionContext, parameters)) {
+            return super.resolveField(executionContext, parameters);
+        }
+        AtomicInteger parallelFields = ((DXGraphQLContext) executionContext.getContext()).getParallelFields();
+        if (parallelFields.incrementAndGet() > config.getLongProperty(MAX_FIELDS_PER_REQUEST, DEFAULT_MAX_FIELDS_PER_REQUEST)) {
+            parallelFields.decrementAndGet();
+            return super.resolveField(executionContext, parameters);
+        }
+
+        JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+        JahiaUser user = sessionFactory.getCurrentUser();
+        Locale locale = sessionFactory.getCurrentLocale();
+        Locale fallbackLocale = sessionFactory.getFallbackLocale();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                dispatched.set(Boolean.TRUE);
+                sessionFactory.setCurrentUser(user);
+                sessionFactory.setCurrentLocale(locale);
+                sessionFactory.setFallbackLocale(fallbackLocale);
+                try {
+                    // complete the whole sub-selection here, the sessions of this thread are closed afterwards
+                    return super.resolveField(executionContext, parameters).join();
+                } finally {
+                    sessionFactory.closeAllSessions();
+                    sessionFactory.setCurrentUser(null);
+                    sessionFactory.setCurrentLocale(null);
+                    sessionFactory.setFallbackLocale(null);
+                    dispatched.remove();
+                    parallelFields.decrementAndGet();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            parallelFields.decrementAndGet();
+            return super.resolveField(executionContext, parameters);
+        }
+    }
+
+    private static boolean isQueryField(ExecutionContext executionContext, ExecutionStrategyParameters parameters) {
+        return parameters.source() instanceof GqlJcrQuery || parameters.typeInfo().getType() == executionContext.getGraphQLSchema().getQueryType();
+    }
+
+    private Set<String> getFields() {
+        String fields = config.getProperty(FIELDS);
+        return new HashSet<>(Arrays.asList(StringUtils.split(StringUtils.defaultIfBlank(fields, DEFAULT_FIELDS), ", ")));
+    }
+}
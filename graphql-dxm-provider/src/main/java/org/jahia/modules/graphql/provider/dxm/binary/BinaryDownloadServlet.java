@@ -0,0 +1,306 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.binary;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRPropertyWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.utils.LanguageCodeConverters;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Binary;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Servlet streaming the value of a binary property, accessed with a URL signed by the {@link BinaryUrlSigner}.
+ *
+ * The binary is streamed from the repository without being buffered. Single byte range requests are supported
+ * (other range requests get the whole binary), as well as conditional requests based on an ETag computed from the
+ * node, property and last modification date. Binaries served with their stored mime type are sent as attachments,
+ * and never sniffed by browsers.
+ */
+@Component(service = {HttpServlet.class, Servlet.class}, property = {"alias=/graphql-binary"}, immediate = true)
+public class BinaryDownloadServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static Logger logger = LoggerFactory.getLogger(BinaryDownloadServlet.class);
+
+    private static final String RANGE_PREFIX = "bytes=";
+
+    private transient BinaryUrlSigner signer;
+
+    @Reference
+    public void setSigner(BinaryUrlSigner signer) {
+        this.signer = signer;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String workspace = request.getParameter(BinaryUrlSigner.WORKSPACE_PARAM);
+        String identifier = request.getParameter(BinaryUrlSigner.IDENTIFIER_PARAM);
+        String propertyName = request.getParameter(BinaryUrlSigner.PROPERTY_PARAM);
+        String language = request.getParameter(BinaryUrlSigner.LANGUAGE_PARAM);
+        String expires = request.getParameter(BinaryUrlSigner.EXPIRES_PARAM);
+        String signature = request.getParameter(BinaryUrlSigner.SIGNATURE_PARAM);
+        if (workspace == null || identifier == null || propertyName == null || StringUtils.isEmpty(expires) || !StringUtils.isNumeric(expires) || signature == null
+                || (!Constants.EDIT_WORKSPACE.equals(workspace) && !Constants.LIVE_WORKSPACE.equals(workspace))) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (!signer.verify(workspace, identifier, propertyName, language, Long.parseLong(expires), signature)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        Locale locale = (language != null) ? LanguageCodeConverters.languageCodeToLocale(language) : null;
+        try {
+            // access has been granted by the signature of the URL
+            JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, workspace, locale, session -> {
+                JCRNodeWrapper node = session.getNodeByIdentifier(identifier);
+                JCRPropertyWrapper property = node.getProperty(propertyName);
+                if (property.isMultiple() || property.getType() != PropertyType.BINARY) {
+                    sendError(response, HttpServletResponse.SC_NOT_FOUND);
+                    return null;
+                }
+                send(request, response, node, property);
+                return null;
+            });
+        } catch (ItemNotFoundException | PathNotFoundException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RepositoryException e) {
+            logger.error("Unable to read binary property " + propertyName + " of node " + identifier, e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, JCRNodeWrapper node, JCRPropertyWrapper property) throws RepositoryException {
+        long length = property.getLength();
+        String etag = getETag(node, property, length);
+        response.setHeader("ETag", etag);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", "private");
+        // the stored mime type is set by whoever uploaded the binary: never let browsers render or sniff it inline
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (node.hasProperty(Constants.JCR_MIMETYPE)) {
+            response.setContentType(node.getProperty(Constants.JCR_MIMETYPE).getString());
+            response.setHeader("Content-Disposition", getContentDisposition(getFileName(node)));
+        } else {
+            response.setContentType("application/octet-stream");
+        }
+
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (length < 0) {
+            // size unknown to the repository, ranges cannot be resolved
+            copy(property, response, 0, -1);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String ifRange = request.getHeader("If-Range");
+        ByteRange range = (ifRange == null || ifRange.equals(etag)) ? parseRange(request.getHeader("Range"), length) : null;
+        if (range != null) {
+            if (!range.isSatisfiable(length)) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                sendError(response, HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.start;
+            end = range.end;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+
+        long count = end - start + 1;
+        response.setHeader("Content-Length", Long.toString(count));
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        copy(property, response, start, count);
+    }
+
+    /**
+     * Parse a Range header.
+     *
+     * @param header The Range header, or null
+     * @param length The length of the binary
+     * @return The single byte range requested, or null to send the whole binary when there is no range, when the
+     * range is malformed or when several ranges are requested
+     */
+    static ByteRange parseRange(String header, long length) {
+        if (header == null || !header.startsWith(RANGE_PREFIX) || header.contains(",")) {
+            return null;
+        }
+        String spec = header.substring(RANGE_PREFIX.length()).trim();
+        int separator = spec.indexOf('-');
+        if (separator < 0) {
+            return null;
+        }
+        String first = spec.substring(0, separator).trim();
+        String last = spec.substring(separator + 1).trim();
+        if ((first.isEmpty() && last.isEmpty()) || !StringUtils.isNumeric(first) || !StringUtils.isNumeric(last)) {
+            return null;
+        }
+        try {
+            if (first.isEmpty()) {
+                // suffix range: the last bytes of the binary, none for a zero length suffix
+                long suffix = Long.parseLong(last);
+                return suffix == 0 ? new ByteRange(length, length - 1) : new ByteRange(Math.max(0, length - suffix), length - 1);
+            }
+            long start = Long.parseLong(first);
+            if (last.isEmpty()) {
+                return new ByteRange(start, length - 1);
+            }
+            long end = Long.parseLong(last);
+            // a range ending before its start is syntactically invalid, and ignored
+            return end < start ? null : new ByteRange(start, Math.min(length - 1, end));
+        } catch (NumberFormatException e) {
+            // out of range values
+            return null;
+        }
+    }
+
+    /**
+     * Get the Content-Disposition header of a binary, downloaded as an attachment.
+     *
+     * @param fileName The name of the file
+     * @return The header value, with the file name encoded as per RFC 6266
+     */
+    static String getContentDisposition(String fileName) {
+        StringBuilder ascii = new StringBuilder();
+        for (char c : fileName.toCharArray()) {
+            ascii.append(c >= 0x20 && c < 0x7f && c != '"' && c != '\\' ? c : '_');
+        }
+        try {
+            return "attachment; filename=\"" + ascii + "\"; filename*=UTF-8''" + URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getFileName(JCRNodeWrapper node) throws RepositoryException {
+        // binaries of files are stored in their jcr:content sub node
+        return Constants.JCR_CONTENT.equals(node.getName()) ? node.getParent().getName() : node.getName();
+    }
+
+    private static void copy(JCRPropertyWrapper property, HttpServletResponse response, long start, long count) throws RepositoryException {
+        Binary binary = property.getValue().getBinary();
+        try (InputStream stream = binary.getStream()) {
+            IOUtils.copyLarge(stream, response.getOutputStream(), start, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    private static void sendError(HttpServletResponse response, int status) {
+        try {
+            response.sendError(status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String getETag(JCRNodeWrapper node, JCRPropertyWrapper property, long length) throws RepositoryException {
+        String lastModified = node.hasProperty(Constants.JCR_LASTMODIFIED) ? node.getProperty(Constants.JCR_LASTMODIFIED).getString() : "";
+        String data = node.getIdentifier() + '\n' + property.getName() + '\n' + lastModified + '\n' + length;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data.getBytes(StandardCharsets.UTF_8));
+            StringBuilder etag = new StringBuilder("\"");
+            for (byte b : digest) {
+                etag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /**
+     * Byte range of a binary, bounds included.
+     */
+    static class ByteRange {
+
+        final long start;
+        final long end;
+
+        ByteRange(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean isSatisfiable(long length) {
+            return start < length && start <= end;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.binary;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.service.component.annotations.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Signer of the short-lived URLs of the binary download servlet.
+ *
+ * A signed URL grants read access to one binary property value until its expiration, so that binaries are downloaded
+ * outside of the GraphQL response. URLs are signed with HMAC-SHA256, using the configured secret or a random key
+ * generated at activation (URLs are then invalidated when the module restarts, and are not valid across cluster
+ * nodes).
+ *
+ * The signer is configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>binary.secret: secret used to sign the URLs, random by default</li>
+ *     <li>binary.urlTimeToLive: time to live of a signed URL in seconds, 300 by default</li>
+ *     <li>binary.inlineMaxSize: maximum size in bytes of the binaries that can be returned inline in base64, 4096 by default</li>
+ *     <li>binary.servletPath: path of the download servlet, relative to the context path, /modules/graphql-binary by default</li>
+ * </ul>
+ */
+@Component(service = BinaryUrlSigner.class, immediate = true)
+public class BinaryUrlSigner {
+
+    private static final String SECRET = "binary.secret";
+    private static final String TIME_TO_LIVE = "binary.urlTimeToLive";
+    private static final String INLINE_MAX_SIZE = "binary.inlineMaxSize";
+    private static final String SERVLET_PATH = "binary.servletPath";
+
+    private static final long DEFAULT_TIME_TO_LIVE = 300;
+    private static final long DEFAULT_INLINE_MAX_SIZE = 4096;
+    private static final String DEFAULT_SERVLET_PATH = "/modules/graphql-binary";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    static final String WORKSPACE_PARAM = "ws";
+    static final String IDENTIFIER_PARAM = "id";
+    static final String PROPERTY_PARAM = "p";
+    static final String LANGUAGE_PARAM = "lang";
+    static final String EXPIRES_PARAM = "exp";
+    static final String SIGNATURE_PARAM = "sig";
+
+    private static BinaryUrlSigner instance;
+
+    private DXGraphQLConfig config;
+    private byte[] generatedKey;
+
+    public static BinaryUrlSigner getInstance() {
+        return instance;
+    }
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        generatedKey = new byte[32];
+        new SecureRandom().nextBytes(generatedKey);
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+    }
+
+    /**
+     * @return Maximum size in bytes of the binaries that can be returned inline
+     */
+    public long getInlineMaxSize() {
+        return config.getLongProperty(INLINE_MAX_SIZE, DEFAULT_INLINE_MAX_SIZE);
+    }
+
+    /**
+     * Get the signed URL of a binary property value.
+     *
+     * @param contextPath The context path of the web application
+     * @param workspace The workspace of the node
+     * @param identifier The identifier of the node
+     * @param propertyName The name of the binary property
+     * @param language The language the property is read in; null for a session without locale
+     * @return The URL, valid until its expiration
+     */
+    public String getUrl(String contextPath, String workspace, String identifier, String propertyName, String language) {
+        long expires = System.currentTimeMillis() / 1000 + config.getLongProperty(TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE);
+        StringBuilder url = new StringBuilder(contextPath)
+                .append(StringUtils.defaultIfEmpty(config.getProperty(SERVLET_PATH), DEFAULT_SERVLET_PATH))
+                .append('?').append(WORKSPACE_PARAM).append('=').append(encode(workspace))
+                .append('&').append(IDENTIFIER_PARAM).append('=').append(encode(identifier))
+                .append('&').append(PROPERTY_PARAM).append('=').append(encode(propertyName));
+        if (language != null) {
+            url.append('&').append(LANGUAGE_PARAM).append('=').append(encode(language));
+        }
+        url.append('&').append(EXPIRES_PARAM).append('=').append(expires)
+                .append('&').append(SIGNATURE_PARAM).append('=').append(sign(workspace, identifier, propertyName, language, expires));
+        return url.toString();
+    }
+
+    /**
+     * Check the signature of a URL.
+     *
+     * @return Whether the signature is valid and the URL has not expired
+     */
+    boolean verify(String workspace, String identifier, String propertyName, String language, long expires, String signature) {
+        if (expires < System.currentTimeMillis() / 1000) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(workspace, identifier, propertyName, language, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String sign(String workspace, String identifier, String propertyName, String language, long expires) {
+        String secret = config.getProperty(SECRET);
+        byte[] key = StringUtils.isNotEmpty(secret) ? secret.getBytes(StandardCharsets.UTF_8) : generatedKey;
+        String data = workspace + '\n' + identifier + '\n' + propertyName + '\n' + StringUtils.defaultString(language) + '\n' + expires;
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            byte[] digest = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+            StringBuilder signature = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                signature.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return signature.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -44,6 +44,7 @@
 package org.jahia.modules.graphql.provider.dxm.config;
 
 import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.security.GqlJcrPermissionTable;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedServiceFactory;
 import org.osgi.service.component.annotations.Component;
@@ -65,6 +66,10 @@ public class DXGraphQLConfig implements ManagedServiceFactory {
 
     private Map<String, List<String>> keysByPid = new HashMap<>();
     private Map<String, String> permissions = new HashMap<>();
+    private Map<String, Map<String, String>> propertiesByPid = new LinkedHashMap<>();
+    // immutable snapshots, replaced as a whole on each configuration change so that requests never see a partial update
+    private volatile Map<String, String> properties = Collections.emptyMap();
+    private volatile GqlJcrPermissionTable permissionTable = new GqlJcrPermissionTable(Collections.emptyMap());
 
     @Override
     public String getName() {
@@ -72,16 +77,18 @@ public class DXGraphQLConfig implements ManagedServiceFactory {
     }
 
     @Override
-    public void updated(String pid, Dictionary<String, ?> properties) throws ConfigurationException {
+    public synchronized void updated(String pid, Dictionary<String, ?> properties) throws ConfigurationException {
 
         if (properties == null) {
             return;
         }
 
-        deleted(pid);
+        removeKeys(pid);
 
         ArrayList<String> keysForPid = new ArrayList<>();
+        Map<String, String> propertiesForPid = new HashMap<>();
         keysByPid.put(pid, keysForPid);
+        propertiesByPid.put(pid, propertiesForPid);
         // parse properties
         Enumeration<String> keys = properties.keys();
         while (keys.hasMoreElements()) {
@@ -105,26 +112,100 @@ public class DXGraphQLConfig implements ManagedServiceFactory {
             } else {
                 // store other properties than permission configuration
                 keysForPid.add(key);
+                if (properties.get(key) != null) {
+                    propertiesForPid.put(key, properties.get(key).toString());
+                }
             }
         }
+        publish();
     }
 
     @Override
-    public void deleted(String pid) {
-        List<String> keysForPid = keysByPid.get(pid);
-        if (keysForPid != null) {
-            for (String key : keysForPid) {
-                // parse permissions ( permission format is like: permission.Query.nodesByQuery = privileged )
-                if (key.startsWith(PERMISSION_PREFIX)) {
-                    permissions.remove(key.substring(PERMISSION_PREFIX.length()));
-                }
+    public synchronized void deleted(String pid) {
+        if (removeKeys(pid)) {
+            publish();
+        }
+    }
+
+    private boolean removeKeys(String pid) {
+        List<String> keysForPid = keysByPid.remove(pid);
+        propertiesByPid.remove(pid);
+        if (keysForPid == null) {
+            return false;
+        }
+        for (String key : keysForPid) {
+            // parse permissions ( permission format is like: permission.Query.nodesByQuery = privileged )
+            if (key.startsWith(PERMISSION_PREFIX)) {
+                permissions.remove(key.substring(PERMISSION_PREFIX.length()));
             }
-            keysByPid.remove(pid);
         }
+        return true;
+    }
+
+    private void publish() {
+        // properties of the most recently updated configuration take precedence
+        Map<String, String> merged = new HashMap<>();
+        for (Map<String, String> propertiesForPid : propertiesByPid.values()) {
+            merged.putAll(propertiesForPid);
+        }
+        properties = Collections.unmodifiableMap(merged);
+        permissionTable = new GqlJcrPermissionTable(permissions);
     }
 
 
     public Map<String, String> getPermissions() {
         return permissions;
     }
+
+    /**
+     * @return the table of the configured permissions, rebuilt each time the configuration changes
+     */
+    public GqlJcrPermissionTable getPermissionTable() {
+        return permissionTable;
+    }
+
+    /**
+     * Get a configuration property, other than permission ones
+     * @param key the property key
+     * @return the property value, or null if not configured
+     */
+    public String getProperty(String key) {
+        return properties.get(key);
+    }
+
+    /**
+     * @return the names of the configured properties, other than permission ones
+     */
+    public Set<String> getPropertyNames() {
+        return properties.keySet();
+    }
+
+    /**
+     * Get a configuration property as a boolean
+     * @param key the property key
+     * @param defaultValue the value to use if the property is not configured
+     * @return the property value
+     */
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = getProperty(key);
+        return StringUtils.isNotBlank(value) ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    /**
+     * Get a configuration property as a long
+     * @param key the property key
+     * @param defaultValue the value to use if the property is not configured or is not a valid number
+     * @return the property value
+     */
+    public long getLongProperty(String key, long defaultValue) {
+        String value = getProperty(key);
+        if (StringUtils.isNotBlank(value)) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value {} for property {}, using default value {}", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
 }
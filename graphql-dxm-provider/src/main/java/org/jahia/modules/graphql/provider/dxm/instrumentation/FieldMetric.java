@@ -0,0 +1,97 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counters of the fetches of a GraphQL field
+ */
+class FieldMetric {
+
+    private static final long[] BUCKET_LIMITS_MILLIS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[BUCKET_LIMITS_MILLIS.length + 1];
+    private final LongAdder nodeLoads = new LongAdder();
+    private final LongAdder propertyReads = new LongAdder();
+
+    FieldMetric() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos, FieldMetrics.FetchCounters counters, boolean error) {
+        invocations.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MILLIS.length && nanos >= BUCKET_LIMITS_MILLIS[bucket] * 1000000L) {
+            bucket++;
+        }
+        histogram[bucket].increment();
+        nodeLoads.add(counters.nodeLoads.sum());
+        propertyReads.add(counters.propertyReads.sum());
+    }
+
+    FieldStatistics getStatistics() {
+        Map<String, Long> latencyHistogram = new LinkedHashMap<>();
+        for (int i = 0; i < histogram.length; i++) {
+            String range = i < BUCKET_LIMITS_MILLIS.length ? "<" + BUCKET_LIMITS_MILLIS[i] + "ms" : ">=" + BUCKET_LIMITS_MILLIS[i - 1] + "ms";
+            latencyHistogram.put(range, histogram[i].sum());
+        }
+        return new FieldStatistics(invocations.sum(), errors.sum(), totalNanos.sum() / 1e6, maxNanos.get() / 1e6,
+                latencyHistogram, nodeLoads.sum(), propertyReads.sum());
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.service.component.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the metrics recorded for each GraphQL field, by parent type and field name: number of fetches, latency
+ * histogram, and number of JCR nodes loaded and properties read during the fetches. Metrics are recorded with lock-free
+ * counters and exposed as a JMX MXBean.
+ *
+ * A node load is counted each time a GraphQL representation of a JCR node is created, whatever the way the node is
+ * obtained. Node representations shared within a request by the NodeLoader are only counted when first created; nodes
+ * only scanned without being exposed (skipped query results, filtered descendants, nodes read in another language) are
+ * not counted.
+ *
+ * JCR operations are counted to the fetch running on the current thread. Work deferred by a fetch, like the node loads
+ * batched by the NodeLoader and resolved when the request data loaders are dispatched, is counted to the fetch that
+ * requested it through bindToCurrentFetch, and the counters are recorded once the result of the fetch completes.
+ * Fields resolved by parallel execution workers are fetched, and counted, on the worker threads.
+ *
+ * Recording metrics wraps every data fetcher and costs a few clock reads and counter updates per fetched field.
+ *
+ * The following properties can be set in the DX GraphQL configuration:
+ * <ul>
+ *     <li>metrics.enabled: whether metrics are recorded, true by default</li>
+ *     <li>metrics.extensions: whether the metrics of the query are returned in the "metrics" extension of the
+ *     response, false by default</li>
+ * </ul>
+ */
+@Component(service = FieldMetrics.class, immediate = true)
+public class FieldMetrics implements FieldMetricsMXBean {
+
+    private static Logger logger = LoggerFactory.getLogger(FieldMetrics.class);
+
+    private static final String ENABLED = "metrics.enabled";
+    private static final String EXTENSIONS = "metrics.extensions";
+
+    private static final ThreadLocal<FetchCounters> currentCounters = new ThreadLocal<>();
+
+    private DXGraphQLConfig dxGraphQLConfig;
+
+    private final Map<String, Map<String, FieldMetric>> metrics = new ConcurrentHashMap<>();
+
+    private ObjectName objectName;
+
+    @Reference
+    public void setDxGraphQLConfig(DXGraphQLConfig dxGraphQLConfig) {
+        this.dxGraphQLConfig = dxGraphQLConfig;
+    }
+
+    @Activate
+    public void activate() {
+        try {
+            objectName = new ObjectName("org.jahia.modules.graphql:type=FieldMetrics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            objectName = null;
+            logger.warn("Unable to register field metrics MBean", e);
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister field metrics MBean", e);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return dxGraphQLConfig.getBooleanProperty(ENABLED, true);
+    }
+
+    /**
+     * @return Whether the metrics of a query are returned in its response
+     */
+    public boolean isExtensionsEnabled() {
+        return dxGraphQLConfig.getBooleanProperty(EXTENSIONS, false);
+    }
+
+    @Override
+    public Map<String, FieldStatistics> getFieldStatistics() {
+        Map<String, FieldStatistics> statistics = new TreeMap<>();
+        for (Map.Entry<String, Map<String, FieldMetric>> type : metrics.entrySet()) {
+            for (Map.Entry<String, FieldMetric> field : type.getValue().entrySet()) {
+                statistics.put(type.getKey() + "." + field.getKey(), field.getValue().getStatistics());
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public void reset() {
+        metrics.clear();
+    }
+
+    FieldMetric getMetric(String type, String field) {
+        return metrics.computeIfAbsent(type, t -> new ConcurrentHashMap<>()).computeIfAbsent(field, f -> new FieldMetric());
+    }
+
+    /**
+     * Start counting the JCR operations of a fetch on the current thread
+     * @return The counters of the enclosing fetch, to restore with endFetch
+     */
+    static FetchCounters beginFetch() {
+        FetchCounters previous = currentCounters.get();
+        currentCounters.set(new FetchCounters());
+        return previous;
+    }
+
+    /**
+     * Stop counting the JCR operations of the current fetch
+     * @param previous The counters returned by beginFetch
+     * @return The counters of the fetch
+     */
+    static FetchCounters endFetch(FetchCounters previous) {
+        FetchCounters counters = currentCounters.get();
+        if (previous != null) {
+            currentCounters.set(previous);
+        } else {
+            currentCounters.remove();
+        }
+        return counters;
+    }
+
+    /**
+     * Bind a task to the fetch running on the current thread, if any, so that the JCR operations done by the task are
+     * counted to this fetch, whenever and on whatever thread the task runs.
+     *
+     * @param task The task
+     * @return The bound task, or the task itself if no fetch is running on the current thread
+     */
+    public static <T> Callable<T> bindToCurrentFetch(Callable<T> task) {
+        FetchCounters counters = currentCounters.get();
+        if (counters == null) {
+            return task;
+        }
+        return () -> {
+            FetchCounters previous = currentCounters.get();
+            currentCounters.set(counters);
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) {
+                    currentCounters.set(previous);
+                } else {
+                    currentCounters.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * Count a JCR node loaded by the fetch running on the current thread, if any
+     */
+    public static void countNodeLoad() {
+        FetchCounters counters = currentCounters.get();
+        if (counters != null) {
+            counters.nodeLoads.increment();
+        }
+    }
+
+    /**
+     * Count a JCR property read by the fetch running on the current thread, if any
+     */
+    public static void countPropertyRead() {
+        FetchCounters counters = currentCounters.get();
+        if (counters != null) {
+            counters.propertyReads.increment();
+        }
+    }
+
+    /**
+     * Counters of a fetch, updated by all the threads doing work for the fetch
+     */
+    static class FetchCounters {
+        final LongAdder nodeLoads = new LongAdder();
+        final LongAdder propertyReads = new LongAdder();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * DataFetcher recording the metrics of the fetches of a field.
+ *
+ * When the original fetcher returns a CompletionStage, the latency and the JCR operations are recorded once it
+ * completes, and the fetch is in error if it completes exceptionally. JCR operations are counted on the thread calling
+ * the fetcher, and by the deferred work bound to the fetch with FieldMetrics.bindToCurrentFetch.
+ * @param <T>
+ */
+public class FieldMetricsDataFetcher<T> implements DataFetcher<T> {
+
+    private DataFetcher<T> originalDataFetcher;
+    private FieldMetric metric;
+    private FieldMetric queryMetric;
+
+    FieldMetricsDataFetcher(DataFetcher<T> originalDataFetcher, FieldMetric metric, FieldMetric queryMetric) {
+        this.originalDataFetcher = originalDataFetcher;
+        this.metric = metric;
+        this.queryMetric = queryMetric;
+    }
+
+    @Override
+    public T get(DataFetchingEnvironment environment) {
+        FieldMetrics.FetchCounters previous = FieldMetrics.beginFetch();
+        long start = System.nanoTime();
+        T result = null;
+        boolean error = true;
+        try {
+            result = originalDataFetcher.get(environment);
+            error = false;
+            return result;
+        } finally {
+            FieldMetrics.FetchCounters counters = FieldMetrics.endFetch(previous);
+            if (result instanceof CompletionStage) {
+                ((CompletionStage<?>) result).whenComplete((value, t) -> record(System.nanoTime() - start, counters, t != null));
+            } else {
+                record(System.nanoTime() - start, counters, error);
+            }
+        }
+    }
+
+    private void record(long time, FieldMetrics.FetchCounters counters, boolean error) {
+        metric.record(time, counters, error);
+        if (queryMetric != null) {
+            queryMetric.record(time, counters, error);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the metrics recorded for a GraphQL field
+ */
+public class FieldStatistics {
+
+    private final long invocationCount;
+    private final long errorCount;
+    private final double totalTimeMillis;
+    private final double maxTimeMillis;
+    private final Map<String, Long> latencyHistogram;
+    private final long nodeLoads;
+    private final long propertyReads;
+
+    public FieldStatistics(long invocationCount, long errorCount, double totalTimeMillis, double maxTimeMillis, Map<String, Long> latencyHistogram, long nodeLoads, long propertyReads) {
+        this.invocationCount = invocationCount;
+        this.errorCount = errorCount;
+        this.totalTimeMillis = totalTimeMillis;
+        this.maxTimeMillis = maxTimeMillis;
+        this.latencyHistogram = latencyHistogram;
+        this.nodeLoads = nodeLoads;
+        this.propertyReads = propertyReads;
+    }
+
+    /**
+     * @return Number of fetches of the field
+     */
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    /**
+     * @return Number of fetches that ended with an exception
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return Total time spent fetching the field, in milliseconds
+     */
+    public double getTotalTimeMillis() {
+        return totalTimeMillis;
+    }
+
+    /**
+     * @return Average time of a fetch, in milliseconds
+     */
+    public double getAverageTimeMillis() {
+        return invocationCount > 0 ? totalTimeMillis / invocationCount : 0;
+    }
+
+    /**
+     * @return Longest fetch time, in milliseconds
+     */
+    public double getMaxTimeMillis() {
+        return maxTimeMillis;
+    }
+
+    /**
+     * @return Number of fetches by latency range
+     */
+    public Map<String, Long> getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * @return Number of JCR nodes loaded and wrapped while fetching the field
+     */
+    public long getNodeLoads() {
+        return nodeLoads;
+    }
+
+    /**
+     * @return Number of JCR properties read while fetching the field
+     */
+    public long getPropertyReads() {
+        return propertyReads;
+    }
+}
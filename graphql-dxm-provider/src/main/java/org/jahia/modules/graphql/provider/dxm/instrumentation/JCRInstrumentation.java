@@ -43,26 +43,92 @@
  */
 package org.jahia.modules.graphql.provider.dxm.instrumentation;
 
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.execution.instrumentation.InstrumentationState;
 import graphql.execution.instrumentation.NoOpInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
 import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
 import graphql.schema.*;
 import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
 import org.jahia.modules.graphql.provider.dxm.security.GqlJcrPermissionDataFetcher;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * JCR instrumentation implementation
+ * JCR instrumentation implementation, checking permissions and recording metrics of the field fetches
  */
 public class JCRInstrumentation extends NoOpInstrumentation {
 
     DXGraphQLConfig dxGraphQLConfig;
+    FieldMetrics fieldMetrics;
 
-    JCRInstrumentation(DXGraphQLConfig dxGraphQLConfig) {
+    JCRInstrumentation(DXGraphQLConfig dxGraphQLConfig, FieldMetrics fieldMetrics) {
         super();
         this.dxGraphQLConfig = dxGraphQLConfig;
+        this.fieldMetrics = fieldMetrics;
+    }
+
+    @Override
+    public InstrumentationState createState() {
+        return (fieldMetrics != null && fieldMetrics.isEnabled() && fieldMetrics.isExtensionsEnabled()) ? new QueryMetrics() : null;
     }
 
     @Override
     public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters) {
-        return super.instrumentDataFetcher(new GqlJcrPermissionDataFetcher<>(dataFetcher, dxGraphQLConfig.getPermissions()), parameters);
+        DataFetcher<?> instrumented = new GqlJcrPermissionDataFetcher<>(dataFetcher, dxGraphQLConfig.getPermissionTable());
+        if (fieldMetrics != null && fieldMetrics.isEnabled()) {
+            String type = parameters.getEnvironment().getParentType().getName();
+            String field = parameters.getField().getName();
+            QueryMetrics queryMetrics = parameters.getInstrumentationState();
+            instrumented = new FieldMetricsDataFetcher<>(instrumented, fieldMetrics.getMetric(type, field),
+                    queryMetrics != null ? queryMetrics.getMetric(type + "." + field) : null);
+        }
+        return super.instrumentDataFetcher(instrumented, parameters);
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+        QueryMetrics queryMetrics = parameters.getInstrumentationState();
+        if (queryMetrics == null) {
+            return super.instrumentExecutionResult(executionResult, parameters);
+        }
+        Map<Object, Object> extensions = new LinkedHashMap<>();
+        if (executionResult.getExtensions() != null) {
+            extensions.putAll(executionResult.getExtensions());
+        }
+        extensions.put("metrics", queryMetrics.toMap());
+        return CompletableFuture.completedFuture(new ExecutionResultImpl(executionResult.getData(), executionResult.getErrors(), extensions));
+    }
+
+    /**
+     * Metrics of the fields fetched by a single query
+     */
+    private static class QueryMetrics implements InstrumentationState {
+
+        private final Map<String, FieldMetric> metrics = new ConcurrentHashMap<>();
+
+        private FieldMetric getMetric(String key) {
+            return metrics.computeIfAbsent(key, k -> new FieldMetric());
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> result = new TreeMap<>();
+            for (Map.Entry<String, FieldMetric> entry : metrics.entrySet()) {
+                FieldStatistics statistics = entry.getValue().getStatistics();
+                Map<String, Object> value = new LinkedHashMap<>();
+                value.put("count", statistics.getInvocationCount());
+                value.put("totalTimeMillis", statistics.getTotalTimeMillis());
+                value.put("maxTimeMillis", statistics.getMaxTimeMillis());
+                value.put("nodeLoads", statistics.getNodeLoads());
+                value.put("propertyReads", statistics.getPropertyReads());
+                result.put(entry.getKey(), value);
+            }
+            return result;
+        }
     }
 }
@@ -43,27 +43,38 @@
  */
 package org.jahia.modules.graphql.provider.dxm.instrumentation;
 
+import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.instrumentation.Instrumentation;
 import graphql.servlet.InstrumentationProvider;
 import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 
+import java.util.Arrays;
+
 /**
- * JCR instrumentation provider, basic instrumentation provider that provide an instance of JCRInstrumentation
+ * JCR instrumentation provider, basic instrumentation provider that provide an instance of JCRInstrumentation, chained
+ * with the query complexity instrumentation and the node loader dispatcher of the request
  */
 @Component(immediate = true)
 public class JCRInstrumentationProvider implements InstrumentationProvider {
 
     private DXGraphQLConfig dxGraphQLConfig;
+    private FieldMetrics fieldMetrics;
 
     @Reference
     public void bindDxGraphQLConfig(DXGraphQLConfig dxGraphQLConfig) {
         this.dxGraphQLConfig = dxGraphQLConfig;
     }
 
+    @Reference
+    public void bindFieldMetrics(FieldMetrics fieldMetrics) {
+        this.fieldMetrics = fieldMetrics;
+    }
+
     @Override
     public Instrumentation getInstrumentation() {
-        return new JCRInstrumentation(dxGraphQLConfig);
+        return new ChainedInstrumentation(Arrays.asList(new JCRInstrumentation(dxGraphQLConfig, fieldMetrics), new QueryComplexityInstrumentation(dxGraphQLConfig),
+                new NodeLoaderDispatcherInstrumentation()));
     }
 }
@@ -0,0 +1,117 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import graphql.ExecutionResult;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLContext;
+
+/**
+ * Data loader dispatcher of a single GraphQL request, batching the nodes requested through the node loader of the
+ * request, so that the nodes requested by sibling fields are resolved together once per execution level.
+ *
+ * An instance is created for each request, on the request thread. Loads are only batched on this thread: fields
+ * resolved on other threads use their own sessions and resolve their nodes immediately, and dispatches triggered from
+ * these threads are ignored.
+ */
+public class NodeLoaderDispatcherInstrumentation extends DataLoaderDispatcherInstrumentation {
+
+    private final RequestDataLoaderRegistry registry;
+
+    public NodeLoaderDispatcherInstrumentation() {
+        this(new RequestDataLoaderRegistry());
+    }
+
+    private NodeLoaderDispatcherInstrumentation(RequestDataLoaderRegistry registry) {
+        super(registry);
+        this.registry = registry;
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters) {
+        Object context = parameters.getContext();
+        if (context instanceof DXGraphQLContext) {
+            ((DXGraphQLContext) context).getNodeLoader().enableBatching(registry);
+        }
+        return super.beginExecution(parameters);
+    }
+
+    /**
+     * Registry created on the request thread, only dispatching its data loaders on this thread.
+     */
+    static class RequestDataLoaderRegistry extends DataLoaderRegistry {
+
+        private final Thread requestThread = Thread.currentThread();
+        private boolean dispatching;
+
+        @Override
+        public void dispatchAll() {
+            if (Thread.currentThread() != requestThread || dispatching) {
+                return;
+            }
+            // nodes requested while completing a batch (the next execution level) are queued, possibly to loaders
+            // already dispatched: dispatch them together once the batch is complete, until nothing is left so that
+            // no load stays pending
+            dispatching = true;
+            try {
+                boolean dispatched;
+                do {
+                    dispatched = false;
+                    for (DataLoader<?, ?> dataLoader : getDataLoaders()) {
+                        if (dataLoader.dispatchDepth() > 0) {
+                            dataLoader.dispatch();
+                            dispatched = true;
+                        }
+                    }
+                } while (dispatched);
+            } finally {
+                dispatching = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.NoOpInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationDataFetchParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.language.*;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.usermanager.JahiaGroupManagerService;
+import org.jahia.services.usermanager.JahiaUser;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Instrumentation computing the cost and depth of a query before the execution of its fields, rejecting the queries exceeding the
+ * limits of the current user, and reporting the computed cost in the "queryComplexity" extension of the result.
+ *
+ * Each field costs 1 plus the cost of its sub-selection. Connection fields (children, descendants, references,
+ * vanityUrls, nodesByQuery by default) cost their configured cost plus the cost of their sub-selection multiplied by
+ * the page size, taken from the first, last or limit argument. A connection fetched without any of these arguments
+ * returns its whole result, and is costed with a large fixed page size, which is also the largest page size used for
+ * costing. Aggregation fields, which go through all the nodes they aggregate, cost their configured cost plus the cost
+ * of their sub-selection. Costs saturate at Long.MAX_VALUE instead of overflowing.
+ *
+ * Limits apply to every user unless overridden for the user, or for one of the groups the user is member of, the most
+ * permissive group limit being used. Group memberships are only looked up when group limits are configured, and are
+ * then kept for a minute. The following properties can be set in the DX GraphQL configuration:
+ * <ul>
+ *     <li>complexity.maxCost: maximum cost of a query, 100000 by default; 0 for no limit</li>
+ *     <li>complexity.maxDepth: maximum depth of a query, 30 by default; 0 for no limit</li>
+ *     <li>complexity.maxCost.{USER} / complexity.maxDepth.{USER}: limits for a specific user, like guest</li>
+ *     <li>complexity.maxCost.group.{GROUP} / complexity.maxDepth.group.{GROUP}: limits for the members of a group,
+ *     like privileged</li>
+ *     <li>complexity.cost.{FIELD}: cost of a connection or aggregation field</li>
+ *     <li>complexity.unboundedPageSize: page size used for connections fetched without first, last or limit, and
+ *     maximum page size used for costing, 1000 by default</li>
+ * </ul>
+ */
+public class QueryComplexityInstrumentation extends NoOpInstrumentation {
+
+    private static final String MAX_COST = "complexity.maxCost";
+    private static final String MAX_DEPTH = "complexity.maxDepth";
+    private static final String FIELD_COST = "complexity.cost.";
+    private static final String UNBOUNDED_PAGE_SIZE = "complexity.unboundedPageSize";
+    private static final String GROUP = ".group.";
+
+    private static final long DEFAULT_MAX_COST = 100000;
+    private static final long DEFAULT_MAX_DEPTH = 30;
+    private static final long DEFAULT_UNBOUNDED_PAGE_SIZE = 1000;
+
+    private static final int MAX_MEMBERSHIPS = 1000;
+    private static final long MEMBERSHIP_TIME_TO_LIVE = 60000;
+
+    // group memberships of the users, looked up once per minute at most instead of once per query
+    private static final Map<String, Membership> MEMBERSHIPS = Collections.synchronizedMap(new LinkedHashMap<String, Membership>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Membership> eldest) {
+            return size() > MAX_MEMBERSHIPS;
+        }
+    });
+
+    private static final Map<String, Long> DEFAULT_CONNECTION_COSTS = new HashMap<>();
+    private static final Map<String, Long> DEFAULT_AGGREGATION_COSTS = new HashMap<>();
+
+    static {
+        DEFAULT_CONNECTION_COSTS.put("children", 1L);
+        DEFAULT_CONNECTION_COSTS.put("descendants", 10L);
+        DEFAULT_CONNECTION_COSTS.put("references", 10L);
+        DEFAULT_CONNECTION_COSTS.put("vanityUrls", 1L);
+        DEFAULT_CONNECTION_COSTS.put("nodesByQuery", 10L);
+        DEFAULT_AGGREGATION_COSTS.put("aggregation", 1000L);
+        DEFAULT_AGGREGATION_COSTS.put("aggregationByQuery", 1000L);
+    }
+
+    private static final List<String> PAGE_SIZE_ARGUMENTS = Arrays.asList("first", "last", "limit");
+    private static final List<String> PAGINATION_ARGUMENTS = Arrays.asList("first", "last", "limit", "offset", "after", "before");
+
+    private DXGraphQLConfig dxGraphQLConfig;
+
+    QueryComplexityInstrumentation(DXGraphQLConfig dxGraphQLConfig) {
+        super();
+        this.dxGraphQLConfig = dxGraphQLConfig;
+    }
+
+    @Override
+    public InstrumentationState createState() {
+        return new QueryComplexity();
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginDataFetch(InstrumentationDataFetchParameters parameters) {
+        // called once per execution, after the validation, including for the documents served by the preparsed
+        // document cache, which are not validated again
+        ExecutionContext executionContext = parameters.getExecutionContext();
+        QueryComplexity complexity = parameters.getInstrumentationState();
+        computeComplexity(complexity, executionContext.getOperationDefinition(), executionContext.getFragmentsByName(), executionContext.getVariables());
+
+        JahiaUser user = JCRSessionFactory.getInstance().getCurrentUser();
+        long maxCost = getLimit(MAX_COST, DEFAULT_MAX_COST, user);
+        long maxDepth = getLimit(MAX_DEPTH, DEFAULT_MAX_DEPTH, user);
+        if (maxDepth > 0 && complexity.depth > maxDepth) {
+            throw new AbortExecutionException("Maximum query depth exceeded " + complexity.depth + " > " + maxDepth);
+        }
+        if (maxCost > 0 && complexity.cost > maxCost) {
+            throw new AbortExecutionException("Maximum query cost exceeded " + complexity.cost + " > " + maxCost);
+        }
+        return super.beginDataFetch(parameters);
+    }
+
+    @Override
+    public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+        QueryComplexity complexity = parameters.getInstrumentationState();
+        if (complexity == null || complexity.depth == 0) {
+            return super.instrumentExecutionResult(executionResult, parameters);
+        }
+        Map<Object, Object> extensions = new LinkedHashMap<>();
+        if (executionResult.getExtensions() != null) {
+            extensions.putAll(executionResult.getExtensions());
+        }
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("cost", complexity.cost);
+        value.put("depth", complexity.depth);
+        extensions.put("queryComplexity", value);
+        return CompletableFuture.completedFuture(new ExecutionResultImpl(executionResult.getData(), executionResult.getErrors(), extensions));
+    }
+
+    private void computeComplexity(QueryComplexity complexity, OperationDefinition operation, Map<String, FragmentDefinition> fragments, Map<String, Object> variables) {
+        if (operation != null) {
+            Analysis analysis = new Analysis(fragments, variables != null ? variables : Collections.emptyMap(), dxGraphQLConfig.getLongProperty(UNBOUNDED_PAGE_SIZE, DEFAULT_UNBOUNDED_PAGE_SIZE));
+            complexity.cost = analysis.getCost(operation.getSelectionSet(), 1);
+            complexity.depth = analysis.maxDepth;
+        }
+    }
+
+    private long getLimit(String key, long defaultValue, JahiaUser user) {
+        if (user == null) {
+            return dxGraphQLConfig.getLongProperty(key, defaultValue);
+        }
+        String userLimit = dxGraphQLConfig.getProperty(key + "." + user.getName());
+        if (userLimit != null) {
+            return dxGraphQLConfig.getLongProperty(key + "." + user.getName(), defaultValue);
+        }
+        // most permissive limit of the groups of the user, 0 meaning no limit
+        Long groupLimit = null;
+        if (hasGroupLimits(key)) {
+            for (String group : getMembership(user)) {
+                String groupKey = key + GROUP + StringUtils.substringAfterLast(group, "/");
+                if (dxGraphQLConfig.getProperty(groupKey) != null) {
+                    long limit = dxGraphQLConfig.getLongProperty(groupKey, defaultValue);
+                    if (groupLimit == null) {
+                        groupLimit = limit;
+                    } else if (groupLimit != 0) {
+                        groupLimit = limit == 0 ? 0 : Math.max(groupLimit, limit);
+                    }
+                }
+            }
+        }
+        return groupLimit != null ? groupLimit : dxGraphQLConfig.getLongProperty(key, defaultValue);
+    }
+
+    private boolean hasGroupLimits(String key) {
+        String prefix = key + GROUP;
+        for (String name : dxGraphQLConfig.getPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> getMembership(JahiaUser user) {
+        String path = user.getLocalPath();
+        Membership membership = MEMBERSHIPS.get(path);
+        if (membership == null || membership.isExpired()) {
+            membership = new Membership(JahiaGroupManagerService.getInstance().getMembershipByPath(path));
+            MEMBERSHIPS.put(path, membership);
+        }
+        return membership.groups;
+    }
+
+    /**
+     * Add costs, saturating at Long.MAX_VALUE.
+     */
+    static long add(long a, long b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Multiply costs, saturating at Long.MAX_VALUE.
+     */
+    static long multiply(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private class Analysis {
+
+        private final Map<String, FragmentDefinition> fragments;
+        private final Map<String, Object> variables;
+        private final long unboundedPageSize;
+        private int maxDepth;
+
+        private Analysis(Map<String, FragmentDefinition> fragments, Map<String, Object> variables, long unboundedPageSize) {
+            this.fragments = fragments;
+            this.variables = variables;
+            this.unboundedPageSize = unboundedPageSize;
+        }
+
+        private long getCost(SelectionSet selectionSet, int depth) {
+            long cost = 0;
+            if (selectionSet == null) {
+                return cost;
+            }
+            for (Selection selection : selectionSet.getSelections()) {
+                if (selection instanceof Field) {
+                    maxDepth = Math.max(maxDepth, depth);
+                    cost = add(cost, getCost((Field) selection, depth));
+                } else if (selection instanceof InlineFragment) {
+                    cost = add(cost, getCost(((InlineFragment) selection).getSelectionSet(), depth));
+                } else if (selection instanceof FragmentSpread) {
+                    FragmentDefinition fragment = fragments.get(((FragmentSpread) selection).getName());
+                    if (fragment != null) {
+                        cost = add(cost, getCost(fragment.getSelectionSet(), depth));
+                    }
+                }
+            }
+            return cost;
+        }
+
+        private long getCost(Field field, int depth) {
+            long childCost = getCost(field.getSelectionSet(), depth + 1);
+            String name = field.getName();
+            if (DEFAULT_AGGREGATION_COSTS.containsKey(name)) {
+                return add(dxGraphQLConfig.getLongProperty(FIELD_COST + name, DEFAULT_AGGREGATION_COSTS.get(name)), childCost);
+            }
+            long fieldCost = dxGraphQLConfig.getLongProperty(FIELD_COST + name, DEFAULT_CONNECTION_COSTS.getOrDefault(name, 0L));
+            if (fieldCost > 0) {
+                if (DEFAULT_CONNECTION_COSTS.containsKey(name) || isPaginated(field)) {
+                    return add(fieldCost, multiply(getPageSize(field), childCost));
+                }
+                return add(fieldCost, childCost);
+            }
+            return add(1, childCost);
+        }
+
+        private boolean isPaginated(Field field) {
+            for (Argument argument : field.getArguments()) {
+                if (PAGINATION_ARGUMENTS.contains(argument.getName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long getPageSize(Field field) {
+            for (Argument argument : field.getArguments()) {
+                if (PAGE_SIZE_ARGUMENTS.contains(argument.getName())) {
+                    Object value = argument.getValue();
+                    if (value instanceof VariableReference) {
+                        value = variables.get(((VariableReference) value).getName());
+                    } else if (value instanceof IntValue) {
+                        value = ((IntValue) value).getValue();
+                    }
+                    if (value instanceof BigInteger) {
+                        // a connection never returns more than its whole result
+                        return ((BigInteger) value).signum() < 0 ? 0 : ((BigInteger) value).min(BigInteger.valueOf(unboundedPageSize)).longValue();
+                    }
+                    if (value instanceof Integer || value instanceof Long) {
+                        return Math.max(0, Math.min(((Number) value).longValue(), unboundedPageSize));
+                    }
+                }
+            }
+            // no page size, or a page size given by a variable without value: the whole result is returned
+            return unboundedPageSize;
+        }
+    }
+
+    private static class Membership {
+
+        private final List<String> groups;
+        private final long expiration = System.currentTimeMillis() + MEMBERSHIP_TIME_TO_LIVE;
+
+        private Membership(List<String> groups) {
+            this.groups = groups;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
+    }
+
+    private static class QueryComplexity implements InstrumentationState {
+        private long cost;
+        private int depth;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.nodetypes.ExtendedPropertyDefinition;
+import org.jahia.services.content.nodetypes.NodeTypeRegistry;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.query.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Planner compiling the types and properties filters of the descendants field into a JCR-SQL2 query, so that the
+ * search index selects the candidate descendants instead of traversing the whole sub-tree.
+ *
+ * The query only needs to select a superset of the matching descendants: the filters are still evaluated in memory on
+ * the query results, which keeps the exact semantics of the in-memory evaluation (excluded child types, localized
+ * property reads...). Filters the index cannot express are left to the in-memory evaluation only: several types
+ * matched with ANY, NONE of types, and language specific property filters. EQUAL and DIFFERENT property filters are
+ * only pushed down when the property is declared as a single valued STRING by the filtered type: the index compares
+ * typed values, which may differ from the string values compared in memory, and a narrower selection would lose
+ * results. When nothing can be expressed in the query, or when the query would not see the same nodes as a traversal
+ * (pending changes in the session), no query is built and the sub-tree is traversed.
+ *
+ * Unsorted descendants are returned in document order by a traversal, but in the order of the search index by a query:
+ * clients needing a stable order with filters should pass a sort.
+ *
+ * A sort by a property is also pushed down to the query as an ORDER BY clause when the index sorts the same values as
+ * the ones read by the session; a query is then used even without any filter, so that the whole sub-tree is neither
+ * traversed nor sorted in memory.
+ */
+class DescendantsQuery {
+
+    private static final String SELECTOR = "n";
+
+    private final String statement;
+    private final boolean sorted;
+
+    private DescendantsQuery(String statement, boolean sorted) {
+        this.statement = statement;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Build the query selecting the candidate descendants of a node.
+     *
+     * @param node The node to get descendants of
+     * @param typesFilter Types filter of the descendants, may be null
+     * @param propertiesFilter Properties filter of the descendants, may be null
+     * @param sortBy Sort of the descendants, may be null
+     * @return The query, or null if the sub-tree should be traversed
+     * @throws RepositoryException In case of issues reading the node
+     */
+    static DescendantsQuery build(JCRNodeWrapper node, GqlJcrNode.NodeTypesInput typesFilter, GqlJcrNode.NodePropertiesInput propertiesFilter, GqlJcrNode.NodeSortInput sortBy) throws RepositoryException {
+        if ((typesFilter == null && propertiesFilter == null && sortBy == null) || node.getSession().hasPendingChanges()) {
+            return null;
+        }
+        String path = node.getPath();
+        if (path.contains("]")) {
+            return null;
+        }
+
+        String type = getType(typesFilter);
+        // property reads of a localized session also return internationalized values, which are not stored on the node
+        String constraint = (node.getSession().getLocale() == null) ? getPropertiesConstraint(propertiesFilter, type) : null;
+
+        StringBuilder statement = new StringBuilder("SELECT * FROM [").append(type != null ? type : "nt:base").append("] AS ").append(SELECTOR)
+                .append(" WHERE ISDESCENDANTNODE(").append(SELECTOR).append(", [").append(path).append("])");
+        if (constraint != null) {
+            statement.append(" AND ").append(constraint);
+        }
+        if (sortBy != null) {
+            String sortedStatement = QueryHelper.addOrderBy(node.getSession(), statement.toString(), Query.JCR_SQL2, sortBy);
+            if (sortedStatement != null) {
+                return new DescendantsQuery(sortedStatement, true);
+            }
+        }
+        if (type == null && constraint == null) {
+            return null;
+        }
+        return new DescendantsQuery(statement.toString(), false);
+    }
+
+    /**
+     * @return The JCR-SQL2 statement of the query
+     */
+    String getStatement() {
+        return statement;
+    }
+
+    /**
+     * @return Whether the query returns the descendants in the requested sort order
+     */
+    boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Execute the query.
+     *
+     * @param node The node to get descendants of
+     * @return A lazy stream of the query results
+     */
+    Stream<JCRNodeWrapper> execute(JCRNodeWrapper node) {
+        try {
+            return QueryHelper.stream(node.getSession().getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2).execute().getNodes());
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String getType(GqlJcrNode.NodeTypesInput typesFilter) {
+        if (typesFilter == null || typesFilter.getTypes() == null || typesFilter.getTypes().isEmpty()) {
+            return null;
+        }
+        GqlJcrNode.MulticriteriaEvaluation evaluation = typesFilter.getMulticriteriaEvaluation() != null ? typesFilter.getMulticriteriaEvaluation() : GqlJcrNode.MulticriteriaEvaluation.ANY;
+        Collection<String> types = typesFilter.getTypes();
+        if ((evaluation == GqlJcrNode.MulticriteriaEvaluation.ANY && types.size() == 1) || evaluation == GqlJcrNode.MulticriteriaEvaluation.ALL) {
+            for (String type : types) {
+                if (type.contains("]")) {
+                    return null;
+                }
+                try {
+                    NodeTypeRegistry.getInstance().getNodeType(type);
+                } catch (NoSuchNodeTypeException e) {
+                    // unknown types are rejected by the query, but only fail to match in memory
+                    return null;
+                }
+            }
+            // nodes matching all the types are of the first one
+            return types.iterator().next();
+        }
+        return null;
+    }
+
+    private static String getPropertiesConstraint(GqlJcrNode.NodePropertiesInput propertiesFilter, String type) {
+        if (propertiesFilter == null || propertiesFilter.getPropertyFilters() == null || propertiesFilter.getPropertyFilters().isEmpty()) {
+            return null;
+        }
+        List<String> conditions = new ArrayList<>();
+        boolean complete = true;
+        for (GqlJcrNode.NodePropertyInput propertyFilter : propertiesFilter.getPropertyFilters()) {
+            GqlJcrNode.PropertyEvaluation evaluation = propertyFilter.getPropertyEvaluation() != null ? propertyFilter.getPropertyEvaluation() : GqlJcrNode.PropertyEvaluation.EQUAL;
+            if ((evaluation == GqlJcrNode.PropertyEvaluation.EQUAL || evaluation == GqlJcrNode.PropertyEvaluation.DIFFERENT) && propertyFilter.getPropertyValue() == null) {
+                // invalid filter, reported by the in-memory evaluation
+                return null;
+            }
+            String condition = getPropertyCondition(propertyFilter, evaluation, type);
+            if (condition != null) {
+                conditions.add(condition);
+            } else {
+                complete = false;
+            }
+        }
+
+        GqlJcrNode.MulticriteriaEvaluation evaluation = propertiesFilter.getMulticriteriaEvaluation() != null ? propertiesFilter.getMulticriteriaEvaluation() : GqlJcrNode.MulticriteriaEvaluation.ALL;
+        if (evaluation == GqlJcrNode.MulticriteriaEvaluation.ALL) {
+            // conditions left out only widen the selection
+            return conditions.isEmpty() ? null : String.join(" AND ", conditions);
+        } else if (!complete) {
+            // a condition left out of a disjunction or a negation would narrow the selection
+            return null;
+        } else if (evaluation == GqlJcrNode.MulticriteriaEvaluation.ANY) {
+            return "(" + String.join(" OR ", conditions) + ")";
+        } else {
+            return "NOT (" + String.join(" OR ", conditions) + ")";
+        }
+    }
+
+    private static String getPropertyCondition(GqlJcrNode.NodePropertyInput propertyFilter, GqlJcrNode.PropertyEvaluation evaluation, String type) {
+        String name = propertyFilter.getPropertyName();
+        if (propertyFilter.getLanguage() != null || name == null || name.contains("]")) {
+            return null;
+        }
+        String property = SELECTOR + ".[" + name + "]";
+        switch (evaluation) {
+            case PRESENT:
+                return "(" + property + " IS NOT NULL)";
+            case ABSENT:
+                return "NOT (" + property + " IS NOT NULL)";
+            case EQUAL:
+                return isStringProperty(type, name) ? "(" + property + " = " + getLiteral(propertyFilter.getPropertyValue()) + ")" : null;
+            case DIFFERENT:
+                return isStringProperty(type, name) ? "NOT (" + property + " = " + getLiteral(propertyFilter.getPropertyValue()) + ")" : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isStringProperty(String type, String name) {
+        if (type == null) {
+            return false;
+        }
+        try {
+            ExtendedPropertyDefinition definition = NodeTypeRegistry.getInstance().getNodeType(type).getPropertyDefinitionsAsMap().get(name);
+            return definition != null && definition.getRequiredType() == PropertyType.STRING && !definition.isMultiple();
+        } catch (NoSuchNodeTypeException e) {
+            return false;
+        }
+    }
+
+    private static String getLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.servlet.GraphQLContext;
+import org.apache.commons.io.IOUtils;
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.binary.BinaryUrlSigner;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRPropertyWrapper;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * GraphQL representation of the value of a single-valued binary JCR property.
+ *
+ * The binary content is never read to build this representation: it is downloaded from a signed URL, or returned
+ * inline only for binaries smaller than the configured threshold.
+ */
+@GraphQLName("JCRBinary")
+@GraphQLDescription("GraphQL representation of the value of a binary JCR property")
+public class GqlJcrBinary {
+
+    private JCRPropertyWrapper property;
+
+    /**
+     * Create an instance that represents a binary JCR property value to GraphQL.
+     *
+     * @param property The single-valued binary JCR property
+     */
+    public GqlJcrBinary(JCRPropertyWrapper property) {
+        this.property = property;
+    }
+
+    /**
+     * @return The size of the binary in bytes, null if unknown
+     */
+    @GraphQLField
+    @GraphQLDescription("The size of the binary in bytes, null if unknown")
+    public Long getSize() {
+        try {
+            long length = property.getLength();
+            return length >= 0 ? length : null;
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The MIME type of the binary, as set on the node holding the property; null if not set
+     */
+    @GraphQLField
+    @GraphQLDescription("The MIME type of the binary, as set on the node holding the property; null if not set")
+    public String getMimeType() {
+        try {
+            JCRNodeWrapper node = property.getParent();
+            return node.hasProperty(Constants.JCR_MIMETYPE) ? node.getProperty(Constants.JCR_MIMETYPE).getString() : null;
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param environment The data fetching environment
+     * @return Short-lived URL to download the binary from, supporting range requests
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("Short-lived URL to download the binary from, supporting range requests")
+    public String getUrl(DataFetchingEnvironment environment) {
+        String contextPath = "";
+        Object context = environment.getContext();
+        if (context instanceof GraphQLContext) {
+            contextPath = ((GraphQLContext) context).getRequest().map(HttpServletRequest::getContextPath).orElse("");
+        }
+        try {
+            JCRNodeWrapper node = property.getParent();
+            return BinaryUrlSigner.getInstance().getUrl(contextPath, node.getSession().getWorkspace().getName(), node.getIdentifier(),
+                    property.getName(), node.getSession().getLocale() != null ? node.getSession().getLocale().toString() : null);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The binary content encoded in base64, in case its size does not exceed the inline threshold; null otherwise
+     */
+    @GraphQLField
+    @GraphQLDescription("The binary content encoded in base64, in case its size does not exceed the inline threshold; null otherwise")
+    public String getBase64() {
+        try {
+            long length = property.getLength();
+            if (length < 0 || length > BinaryUrlSigner.getInstance().getInlineMaxSize()) {
+                return null;
+            }
+            Binary binary = property.getValue().getBinary();
+            try (InputStream stream = binary.getStream()) {
+                return Base64.getEncoder().encodeToString(IOUtils.toByteArray(stream));
+            } finally {
+                binary.dispose();
+            }
+        } catch (RepositoryException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GraphQL representation of the result of a bulk import.
+ */
+@GraphQLName("JCRBulkImportResult")
+@GraphQLDescription("Result of a bulk import")
+public class GqlJcrBulkImportResult {
+
+    private List<Chunk> chunks = new ArrayList<>();
+    private int importedCount;
+    private int lastCommittedIndex;
+    private boolean completed;
+
+    public GqlJcrBulkImportResult(int startIndex) {
+        this.lastCommittedIndex = startIndex - 1;
+    }
+
+    void addChunk(Chunk chunk) {
+        if (chunk.isSaved()) {
+            importedCount += chunk.getEndIndex() - chunk.getStartIndex();
+            // chunks saved after a failed chunk do not move the resume point past the failed chunk
+            if (chunks.stream().allMatch(Chunk::isSaved)) {
+                lastCommittedIndex = chunk.getEndIndex() - 1;
+            }
+        }
+        chunks.add(chunk);
+    }
+
+    void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * @return The number of nodes imported and saved
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The number of nodes imported and saved")
+    public int getImportedCount() {
+        return importedCount;
+    }
+
+    /**
+     * @return The index of the last node saved before the first failed chunk, -1 if none; the import can be resumed
+     * from the next index. When continuing on errors, the chunks following the first failed chunk may have been saved
+     * already: only the chunks not saved are then to be imported again.
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The index of the last node saved before the first failed chunk, -1 if none; the import can be resumed from the next index. "
+            + "When continuing on errors, only the chunks not saved are to be imported again")
+    public int getLastCommittedIndex() {
+        return lastCommittedIndex;
+    }
+
+    /**
+     * @return Whether all the chunks have been processed
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("Whether all the chunks have been processed")
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return The processed chunks, in order
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The processed chunks, in order")
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Chunk of nodes saved together.
+     */
+    @GraphQLName("JCRBulkImportChunk")
+    @GraphQLDescription("Chunk of nodes saved together")
+    public static class Chunk {
+
+        private int startIndex;
+        private int endIndex;
+        private List<String> errors = new ArrayList<>();
+
+        public Chunk(int startIndex, int endIndex) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        void addError(String error) {
+            errors.add(error);
+        }
+
+        /**
+         * @return The index of the first node of the chunk
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("The index of the first node of the chunk")
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        /**
+         * @return The index following the last node of the chunk
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("The index following the last node of the chunk")
+        public int getEndIndex() {
+            return endIndex;
+        }
+
+        /**
+         * @return Whether the nodes of the chunk have been saved
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("Whether the nodes of the chunk have been saved")
+        public boolean isSaved() {
+            return errors.isEmpty();
+        }
+
+        /**
+         * @return The errors that prevented the chunk from being saved
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("The errors that prevented the chunk from being saved")
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -48,7 +48,8 @@ import graphql.ErrorType;
 import graphql.annotations.annotationTypes.*;
 import org.jahia.modules.graphql.provider.dxm.BaseGqlClientException;
 import org.jahia.services.content.*;
-import org.jahia.services.query.QueryWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -64,6 +65,10 @@ import static org.jahia.modules.graphql.provider.dxm.node.NodeHelper.getNodeInLa
 @GraphQLDescription("JCR Mutations")
 public class GqlJcrMutation {
 
+    private static Logger logger = LoggerFactory.getLogger(GqlJcrMutation.class);
+
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
     private String workspace;
 
     public GqlJcrMutation(String workspace) throws RepositoryException {
@@ -99,6 +104,77 @@ public class GqlJcrMutation {
         return result;
     }
 
+    /**
+     * Import a list of new JCR nodes, saving them in chunks so that the transient space of the session stays bounded
+     * whatever the number of nodes. A chunk that cannot be saved is discarded, and the import stops unless asked to
+     * continue; the result tells which chunks have been saved, so that a failed import can be resumed.
+     *
+     * Nodes are imported with a session of their own, refreshed after each chunk: the other changes of the request are
+     * neither saved nor discarded with the chunks, and the nodes they add are not visible to the import.
+     *
+     * @param nodes The list of nodes to create
+     * @param chunkSize The number of nodes saved together; null to use the default (500)
+     * @param startIndex The index of the first node to import, to resume an import after its last saved chunk; null to start from the first node
+     * @param continueOnError Whether to continue with the next chunks when a chunk cannot be saved; null indicates default (false)
+     * @return The result of the import, per chunk
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("Imports a list of new JCR nodes, saving them in chunks")
+    public GqlJcrBulkImportResult bulkImport(@GraphQLName("nodes") @GraphQLNonNull @GraphQLDescription("The list of nodes to create") List<GqlJcrNodeWithParentInput> nodes,
+                                             @GraphQLName("chunkSize") @GraphQLDescription("The number of nodes saved together; null to use the default (500)") Integer chunkSize,
+                                             @GraphQLName("startIndex") @GraphQLDescription("The index of the first node to import, to resume an import after its last saved chunk; null to start from the first node") Integer startIndex,
+                                             @GraphQLName("continueOnError") @GraphQLDescription("Whether to continue with the next chunks when a chunk cannot be saved; null indicates default (false)") Boolean continueOnError) throws BaseGqlClientException {
+        int size = chunkSize != null ? chunkSize : DEFAULT_CHUNK_SIZE;
+        int start = startIndex != null ? startIndex : 0;
+        if (size <= 0) {
+            throw new GqlJcrWrongInputException("Argument 'chunkSize' must be positive");
+        }
+        if (start < 0) {
+            throw new GqlJcrWrongInputException("Argument 'startIndex' can't be negative");
+        }
+        GqlJcrBulkImportResult result = new GqlJcrBulkImportResult(start);
+        try {
+            JCRTemplate.getInstance().doExecute(JCRSessionFactory.getInstance().getCurrentUser(), workspace, null, session -> {
+                importChunks(session, nodes, start, size, continueOnError != null && continueOnError, result);
+                return null;
+            });
+        } catch (RepositoryException e) {
+            throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
+        }
+        return result;
+    }
+
+    private static void importChunks(JCRSessionWrapper session, List<GqlJcrNodeWithParentInput> nodes, int start, int size, boolean continueOnError,
+                                     GqlJcrBulkImportResult result) throws RepositoryException {
+        for (int chunkStart = start; chunkStart < nodes.size(); chunkStart += size) {
+            GqlJcrBulkImportResult.Chunk chunk = new GqlJcrBulkImportResult.Chunk(chunkStart, Math.min(chunkStart + size, nodes.size()));
+            for (int i = chunk.getStartIndex(); i < chunk.getEndIndex(); i++) {
+                GqlJcrNodeWithParentInput inputNode = nodes.get(i);
+                try {
+                    internalAddNode(getNodeFromPathOrId(session, inputNode.parentPathOrId), inputNode);
+                } catch (RepositoryException e) {
+                    chunk.addError("Node " + i + " (" + inputNode.name + "): " + e.getMessage());
+                }
+            }
+            if (chunk.isSaved()) {
+                try {
+                    session.save();
+                } catch (RepositoryException e) {
+                    chunk.addError(e.getMessage());
+                }
+            }
+            // drop the transient nodes of a failed chunk, and the nodes cached by the session in all cases
+            session.refresh(false);
+            result.addChunk(chunk);
+            logger.debug("Bulk import of nodes {} to {}: {}", chunk.getStartIndex(), chunk.getEndIndex() - 1, chunk.isSaved() ? "saved" : chunk.getErrors());
+            if (!chunk.isSaved() && !continueOnError) {
+                return;
+            }
+        }
+        result.setCompleted(true);
+    }
+
     @GraphQLField
     @GraphQLDescription("Mutates an existing node, based on path or id")
     public GqlJcrNodeMutation mutateNode(@GraphQLName("pathOrId") @GraphQLNonNull @GraphQLDescription("The path or id of the node to mutate") String pathOrId) throws RepositoryException {
@@ -118,13 +194,11 @@ public class GqlJcrMutation {
     @GraphQLField
     @GraphQLDescription("Mutates a set of existing nodes, based on query execution")
     public List<GqlJcrNodeMutation> mutateNodesByQuery(@GraphQLName("query") @GraphQLNonNull @GraphQLDescription("The query string") String query,
-                                                       @GraphQLName("queryLanguage") @GraphQLDefaultValue(GqlJcrQuery.QueryLanguageDefaultValue.class) @GraphQLDescription("The query language") GqlJcrQuery.QueryLanguage queryLanguage) throws RepositoryException {
-        List<GqlJcrNodeMutation> result = new LinkedList<>();
-        QueryManagerWrapper queryManager = getSession().getWorkspace().getQueryManager();
-        QueryWrapper q = queryManager.createQuery(query, queryLanguage.getJcrQueryLanguage());
-        JCRNodeIteratorWrapper nodes = q.execute().getNodes();
-        while (nodes.hasNext()) {
-            JCRNodeWrapper node = (JCRNodeWrapper) nodes.next();
+                                                       @GraphQLName("queryLanguage") @GraphQLDefaultValue(GqlJcrQuery.QueryLanguageDefaultValue.class) @GraphQLDescription("The query language") GqlJcrQuery.QueryLanguage queryLanguage,
+                                                       @GraphQLName("offset") @GraphQLDescription("Number of query results to skip; null to start from the first one") Integer offset,
+                                                       @GraphQLName("limit") @GraphQLDescription("Maximum number of query results to mutate; null to mutate all of them") Integer limit) throws RepositoryException {
+        List<GqlJcrNodeMutation> result = new ArrayList<>();
+        for (JCRNodeWrapper node : QueryHelper.execute(getSession(), query, queryLanguage.getJcrQueryLanguage(), offset, limit)) {
             result.add(new GqlJcrNodeMutation(node));
         }
         return result;
@@ -141,6 +141,24 @@ public interface GqlJcrNode {
      * @param names Filter of child nodes by their names; null to avoid such filtering
      * @param typesFilter Filter of child nodes by their types; null to avoid such filtering
      * @param propertiesFilter Filter of child nodes by their property values; null to avoid such filtering
+     * @return GraphQL representations of the child nodes, according to parameters passed, in the repository order
+     * @throws GqlJcrWrongInputException In case any of the property filters passed as a part of the propertiesFilter is inconsistent (for example missing a property value to be used for comparison)
+     */
+    DXPaginatedData<GqlJcrNode> getChildren(Collection<String> names,
+                                            NodeTypesInput typesFilter,
+                                            NodePropertiesInput propertiesFilter,
+                                            DataFetchingEnvironment environment)
+    throws GqlJcrWrongInputException;
+
+    /**
+     * Get GraphQL representations of child nodes of the JCR node, according to filters specified, optionally sorted. A child node must pass through all non-null filters in order to be included in the result.
+     *
+     * Without sort, the children are the ones returned by {@link #getChildren(Collection, NodeTypesInput, NodePropertiesInput, DataFetchingEnvironment)}.
+     *
+     * @param names Filter of child nodes by their names; null to avoid such filtering
+     * @param typesFilter Filter of child nodes by their types; null to avoid such filtering
+     * @param propertiesFilter Filter of child nodes by their property values; null to avoid such filtering
+     * @param sortBy Sort of child nodes by a property value; null to keep the repository order
      * @return GraphQL representations of the child nodes, according to parameters passed
      * @throws GqlJcrWrongInputException In case any of the property filters passed as a part of the propertiesFilter is inconsistent (for example missing a property value to be used for comparison)
      */
@@ -148,11 +166,17 @@ public interface GqlJcrNode {
     @GraphQLNonNull
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     @GraphQLDescription("GraphQL representations of the child nodes, according to parameters passed")
-    DXPaginatedData<GqlJcrNode> getChildren(@GraphQLName("names") @GraphQLDescription("Filter of child nodes by their names; null to avoid such filtering") Collection<String> names,
-                                            @GraphQLName("typesFilter") @GraphQLDescription("Filter of child nodes by their types; null to avoid such filtering") NodeTypesInput typesFilter,
-                                            @GraphQLName("propertiesFilter") @GraphQLDescription("Filter of child nodes by their property values; null to avoid such filtering") NodePropertiesInput propertiesFilter,
-                                            DataFetchingEnvironment environment)
-    throws GqlJcrWrongInputException;
+    default DXPaginatedData<GqlJcrNode> getChildren(@GraphQLName("names") @GraphQLDescription("Filter of child nodes by their names; null to avoid such filtering") Collection<String> names,
+                                                    @GraphQLName("typesFilter") @GraphQLDescription("Filter of child nodes by their types; null to avoid such filtering") NodeTypesInput typesFilter,
+                                                    @GraphQLName("propertiesFilter") @GraphQLDescription("Filter of child nodes by their property values; null to avoid such filtering") NodePropertiesInput propertiesFilter,
+                                                    @GraphQLName("sortBy") @GraphQLDescription("Sort of child nodes by a property value; null to keep the repository order") NodeSortInput sortBy,
+                                                    DataFetchingEnvironment environment)
+    throws GqlJcrWrongInputException {
+        if (sortBy == null) {
+            return getChildren(names, typesFilter, propertiesFilter, environment);
+        }
+        return NodeHelper.getChildren(getNode(), names, typesFilter, propertiesFilter, sortBy, environment);
+    }
 
     /**
      * Get GraphQL representations of a child node, based on relative path.
@@ -169,6 +193,22 @@ public interface GqlJcrNode {
      *
      * @param typesFilter Filter of descendant nodes by their types; null to avoid such filtering
      * @param propertiesFilter Filter of descendant nodes by their property values; null to avoid such filtering
+     * @return GraphQL representations of the descendant nodes, according to parameters passed, in the repository order, which is the document order without filters, and the search index order with filters
+     * @throws GqlJcrWrongInputException In case any of the property filters passed as a part of the propertiesFilter is inconsistent (for example missing a property value to be used for comparison)
+     */
+    DXPaginatedData<GqlJcrNode> getDescendants(NodeTypesInput typesFilter,
+                                               NodePropertiesInput propertiesFilter,
+                                               DataFetchingEnvironment environment)
+    throws GqlJcrWrongInputException;
+
+    /**
+     * Get GraphQL representations of descendant nodes of the JCR node, according to filters specified, optionally sorted. A descendant node must pass through all non-null filters in order to be included in the result.
+     *
+     * Without sort, the descendants are the ones returned by {@link #getDescendants(NodeTypesInput, NodePropertiesInput, DataFetchingEnvironment)}.
+     *
+     * @param typesFilter Filter of descendant nodes by their types; null to avoid such filtering
+     * @param propertiesFilter Filter of descendant nodes by their property values; null to avoid such filtering
+     * @param sortBy Sort of descendant nodes by a property value; null to keep the repository order, which is the document order without filters, and the search index order with filters
      * @return GraphQL representations of the descendant nodes, according to parameters passed
      * @throws GqlJcrWrongInputException In case any of the property filters passed as a part of the propertiesFilter is inconsistent (for example missing a property value to be used for comparison)
      */
@@ -176,9 +216,34 @@ public interface GqlJcrNode {
     @GraphQLNonNull
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     @GraphQLDescription("GraphQL representations of the descendant nodes, according to parameters passed")
-    DXPaginatedData<GqlJcrNode> getDescendants(@GraphQLName("typesFilter") @GraphQLDescription("Filter of descendant nodes by their types; null to avoid such filtering") NodeTypesInput typesFilter,
-                                    @GraphQLName("propertiesFilter") @GraphQLDescription("Filter of descendant nodes by their property values; null to avoid such filtering") NodePropertiesInput propertiesFilter,
-                                               DataFetchingEnvironment environment)
+    default DXPaginatedData<GqlJcrNode> getDescendants(@GraphQLName("typesFilter") @GraphQLDescription("Filter of descendant nodes by their types; null to avoid such filtering") NodeTypesInput typesFilter,
+                                                       @GraphQLName("propertiesFilter") @GraphQLDescription("Filter of descendant nodes by their property values; null to avoid such filtering") NodePropertiesInput propertiesFilter,
+                                                       @GraphQLName("sortBy") @GraphQLDescription("Sort of descendant nodes by a property value; null to keep the repository order, which is the document order without filters, and the search index order with filters") NodeSortInput sortBy,
+                                                       DataFetchingEnvironment environment)
+    throws GqlJcrWrongInputException {
+        if (sortBy == null) {
+            return getDescendants(typesFilter, propertiesFilter, environment);
+        }
+        return NodeHelper.getDescendants(getNode(), typesFilter, propertiesFilter, sortBy, environment);
+    }
+
+    /**
+     * Get aggregations computed over the child or descendant nodes of the JCR node, according to filters specified. A node must pass through all non-null filters in order to be aggregated.
+     *
+     * @param recursive Whether to aggregate all the descendant nodes, or only the child nodes; null indicates default (true)
+     * @param typesFilter Filter of nodes by their types; null to avoid such filtering
+     * @param propertiesFilter Filter of nodes by their property values; null to avoid such filtering
+     * @param environment The data fetching environment, giving the aggregations to compute together
+     * @return Aggregations computed over the nodes, according to parameters passed
+     * @throws GqlJcrWrongInputException In case any of the property filters passed as a part of the propertiesFilter is inconsistent (for example missing a property value to be used for comparison)
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("Aggregations computed over the child or descendant nodes, according to parameters passed")
+    GqlJcrNodeAggregation getAggregation(@GraphQLName("recursive") @GraphQLDescription("Whether to aggregate all the descendant nodes, or only the child nodes; null indicates default (true)") Boolean recursive,
+                                         @GraphQLName("typesFilter") @GraphQLDescription("Filter of nodes by their types; null to avoid such filtering") NodeTypesInput typesFilter,
+                                         @GraphQLName("propertiesFilter") @GraphQLDescription("Filter of nodes by their property values; null to avoid such filtering") NodePropertiesInput propertiesFilter,
+                                         DataFetchingEnvironment environment)
     throws GqlJcrWrongInputException;
 
     /**
@@ -418,4 +483,96 @@ public interface GqlJcrNode {
             return propertyValue;
         }
     }
+
+    /**
+     * Sort direction.
+     */
+    enum SortDirection {
+
+        /**
+         * Ascending order.
+         */
+        @GraphQLDescription("Ascending order")
+        ASC,
+
+        /**
+         * Descending order.
+         */
+        @GraphQLDescription("Descending order")
+        DESC
+    }
+
+    /**
+     * Nodes sort based on a property value.
+     */
+    static class NodeSortInput {
+
+        private String propertyName;
+        private SortDirection direction;
+        private String language;
+        private boolean ignoreCase;
+
+        /**
+         * Create a sort instance.
+         *
+         * @param propertyName The name of the property to sort by
+         * @param direction The sort direction; null to use ASC by default
+         * @param language Language to use when reading the property; must be a valid language code for internationalized properties, does not matter for non-internationalized ones
+         * @param ignoreCase Whether string values are compared ignoring case; false by default
+         */
+        public NodeSortInput(@GraphQLName("property") @GraphQLNonNull String propertyName,
+                             @GraphQLName("direction") SortDirection direction,
+                             @GraphQLName("language") String language,
+                             @GraphQLName("ignoreCase") Boolean ignoreCase) {
+            this.propertyName = propertyName;
+            this.direction = direction;
+            this.language = language;
+            this.ignoreCase = ignoreCase != null && ignoreCase;
+        }
+
+        /**
+         * @return The name of the property to sort by
+         */
+        @GraphQLField
+        @GraphQLName("property")
+        @GraphQLNonNull
+        @GraphQLDescription("The name of the property to sort by")
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        /**
+         * @return The sort direction; null indicates default (ASC)
+         */
+        @GraphQLField
+        @GraphQLDescription("The sort direction; null indicates default (ASC)")
+        public SortDirection getDirection() {
+            return direction;
+        }
+
+        /**
+         * @return Language to use when reading the property
+         */
+        @GraphQLField
+        @GraphQLDescription("Language to use when reading the property")
+        public String getLanguage() {
+            return language;
+        }
+
+        /**
+         * @return Whether string values are compared ignoring case
+         */
+        @GraphQLField
+        @GraphQLDescription("Whether string values are compared ignoring case")
+        public boolean isIgnoreCase() {
+            return ignoreCase;
+        }
+
+        /**
+         * @return Whether the sort is in descending order
+         */
+        public boolean isDescending() {
+            return direction == SortDirection.DESC;
+        }
+    }
 }
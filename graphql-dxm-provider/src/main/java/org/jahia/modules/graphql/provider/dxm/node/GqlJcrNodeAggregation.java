@@ -0,0 +1,332 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+import graphql.language.Argument;
+import graphql.language.Field;
+import graphql.language.Selection;
+import graphql.language.StringValue;
+import graphql.schema.DataFetchingEnvironment;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRPropertyWrapper;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * GraphQL representation of aggregations computed over a set of JCR nodes.
+ *
+ * Aggregations are computed by streaming over the JCR nodes: no GraphQL representation of the nodes or of their
+ * properties is created, and the nodes are not kept in memory. The aggregations selected in the query are computed
+ * together, in a single pass over the nodes, on the first access to any of them. Aggregations which cannot be known
+ * in advance (selected through fragments, or with arguments passed as variables) are computed by a pass of their own.
+ */
+@GraphQLName("JCRNodeAggregation")
+@GraphQLDescription("Aggregations computed over a set of JCR nodes")
+public class GqlJcrNodeAggregation {
+
+    private Supplier<Stream<JCRNodeWrapper>> nodes;
+
+    private boolean countByTypeSelected;
+    private Set<PropertyKey> selectedProperties = new HashSet<>();
+
+    private boolean aggregated;
+    private int count;
+    private Map<String, int[]> countsByType;
+    private Map<PropertyKey, Map<String, int[]>> countsByProperty = new HashMap<>();
+
+    /**
+     * Create an instance aggregating a set of nodes.
+     *
+     * @param nodes Supplier of the stream of nodes to aggregate
+     * @param environment The data fetching environment of the aggregation field, giving the selected aggregations;
+     *                    null to compute each aggregation separately
+     */
+    public GqlJcrNodeAggregation(Supplier<Stream<JCRNodeWrapper>> nodes, DataFetchingEnvironment environment) {
+        this.nodes = nodes;
+        if (environment != null) {
+            for (Field field : environment.getFields()) {
+                if (field.getSelectionSet() == null) {
+                    continue;
+                }
+                for (Selection selection : field.getSelectionSet().getSelections()) {
+                    // fields selected through fragments are not inspected
+                    if (selection instanceof Field) {
+                        select((Field) selection);
+                    }
+                }
+            }
+        }
+    }
+
+    private void select(Field field) {
+        if ("countByType".equals(field.getName())) {
+            countByTypeSelected = true;
+        } else if ("countByPropertyValue".equals(field.getName())) {
+            String propertyName = null;
+            String language = null;
+            for (Argument argument : field.getArguments()) {
+                if (!(argument.getValue() instanceof StringValue)) {
+                    // value of a variable, only known when the field is fetched
+                    return;
+                }
+                String value = ((StringValue) argument.getValue()).getValue();
+                if ("property".equals(argument.getName())) {
+                    propertyName = value;
+                } else if ("language".equals(argument.getName())) {
+                    language = value;
+                }
+            }
+            if (propertyName != null) {
+                selectedProperties.add(new PropertyKey(propertyName, language));
+            }
+        }
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The number of nodes")
+    public int getCount() {
+        aggregate();
+        return count;
+    }
+
+    /**
+     * @return The number of nodes of each primary node type, most frequent first
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The number of nodes of each primary node type, most frequent first")
+    public List<GqlJcrValueCount> getCountByType() {
+        if (countByTypeSelected) {
+            aggregate();
+            return toList(countsByType);
+        }
+        return count(GqlJcrNodeAggregation::getType);
+    }
+
+    /**
+     * Get the number of nodes having each value of a property; each value of a multiple valued property is counted,
+     * nodes not having the property are not counted.
+     *
+     * @param propertyName The name of the property
+     * @param language Language to use when reading the property; must be a valid language code for internationalized properties, does not matter for non-internationalized ones
+     * @return The number of nodes having each value of the property, most frequent first
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The number of nodes having each value of a property, most frequent first")
+    public List<GqlJcrValueCount> getCountByPropertyValue(@GraphQLName("property") @GraphQLNonNull @GraphQLDescription("The name of the property") String propertyName,
+                                                          @GraphQLName("language") @GraphQLDescription("Language to use when reading the property; must be a valid language code for internationalized properties, does not matter for non-internationalized ones") String language) {
+        PropertyKey key = new PropertyKey(propertyName, language);
+        if (selectedProperties.contains(key)) {
+            aggregate();
+            return toList(countsByProperty.get(key));
+        }
+        return count(node -> getPropertyValues(node, key));
+    }
+
+    /**
+     * Compute the count and the selected aggregations in a single pass over the nodes.
+     */
+    private synchronized void aggregate() {
+        if (aggregated) {
+            return;
+        }
+        int[] total = new int[1];
+        Map<String, int[]> byType = countByTypeSelected ? new HashMap<>() : null;
+        Map<PropertyKey, Map<String, int[]>> byProperty = new HashMap<>();
+        for (PropertyKey key : selectedProperties) {
+            byProperty.put(key, new HashMap<>());
+        }
+        try (Stream<JCRNodeWrapper> stream = nodes.get()) {
+            stream.forEach(node -> {
+                total[0]++;
+                if (byType != null) {
+                    increment(byType, getType(node));
+                }
+                for (Map.Entry<PropertyKey, Map<String, int[]>> entry : byProperty.entrySet()) {
+                    increment(entry.getValue(), getPropertyValues(node, entry.getKey()));
+                }
+            });
+        }
+        count = total[0];
+        countsByType = byType;
+        countsByProperty = byProperty;
+        aggregated = true;
+    }
+
+    private List<GqlJcrValueCount> count(KeysExtractor extractor) {
+        Map<String, int[]> counts = new HashMap<>();
+        Consumer<JCRNodeWrapper> counter = node -> increment(counts, extractor.getKeys(node));
+        try (Stream<JCRNodeWrapper> stream = nodes.get()) {
+            stream.forEach(counter);
+        }
+        return toList(counts);
+    }
+
+    private static void increment(Map<String, int[]> counts, Collection<String> keys) {
+        for (String key : keys) {
+            counts.computeIfAbsent(key, k -> new int[1])[0]++;
+        }
+    }
+
+    private static List<GqlJcrValueCount> toList(Map<String, int[]> counts) {
+        List<GqlJcrValueCount> result = new ArrayList<>(counts.size());
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            result.add(new GqlJcrValueCount(entry.getKey(), entry.getValue()[0]));
+        }
+        result.sort(Comparator.comparingInt(GqlJcrValueCount::getCount).reversed().thenComparing(GqlJcrValueCount::getValue));
+        return result;
+    }
+
+    private static Collection<String> getType(JCRNodeWrapper node) {
+        try {
+            return Collections.singletonList(node.getPrimaryNodeTypeName());
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Collection<String> getPropertyValues(JCRNodeWrapper node, PropertyKey key) {
+        try {
+            node = NodeHelper.getNodeInLanguage(node, key.language);
+            if (!node.hasProperty(key.propertyName)) {
+                return Collections.emptyList();
+            }
+            JCRPropertyWrapper property = node.getProperty(key.propertyName);
+            if (!property.isMultiple()) {
+                return Collections.singletonList(property.getValue().getString());
+            }
+            Set<String> values = new LinkedHashSet<>();
+            for (Value value : property.getValues()) {
+                values.add(value.getString());
+            }
+            return values;
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class PropertyKey {
+
+        private final String propertyName;
+        private final String language;
+
+        private PropertyKey(String propertyName, String language) {
+            this.propertyName = propertyName;
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PropertyKey that = (PropertyKey) o;
+            return propertyName.equals(that.propertyName) && Objects.equals(language, that.language);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(propertyName, language);
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeysExtractor {
+
+        Collection<String> getKeys(JCRNodeWrapper node);
+    }
+
+    /**
+     * Number of nodes having a value.
+     */
+    @GraphQLName("JCRValueCount")
+    @GraphQLDescription("Number of nodes having a value")
+    public static class GqlJcrValueCount {
+
+        private String value;
+        private int count;
+
+        public GqlJcrValueCount(String value, int count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        /**
+         * @return The value
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("The value")
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return The number of nodes having the value
+         */
+        @GraphQLField
+        @GraphQLNonNull
+        @GraphQLDescription("The number of nodes having the value")
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+
+import javax.jcr.observation.Event;
+
+/**
+ * GraphQL representation of a change of a JCR node, sent to the nodeChanged subscribers.
+ *
+ * Several changes of the same node happening in a short period of time are coalesced into a single event, so that
+ * for example the property changes of a node being added are part of its NODE_ADDED event.
+ */
+@GraphQLName("JCRNodeEvent")
+@GraphQLDescription("GraphQL representation of a change of a JCR node")
+public class GqlJcrNodeEvent {
+
+    /**
+     * Type of change of a node.
+     */
+    public enum NodeEventType {
+
+        /**
+         * The node has been added
+         */
+        NODE_ADDED,
+
+        /**
+         * The node has been removed
+         */
+        NODE_REMOVED,
+
+        /**
+         * The node has been moved to its current path
+         */
+        NODE_MOVED,
+
+        /**
+         * Properties of the node have been added, changed or removed
+         */
+        PROPERTIES_CHANGED,
+
+        /**
+         * Changes under the node have not been delivered, as the subscriber did not request them fast enough: the
+         * whole subtree must be read again
+         */
+        RESYNC;
+
+        /**
+         * Get the type of change of a node corresponding to a JCR event type.
+         *
+         * @param jcrEventType The JCR event type
+         * @return The type of change of the node, null for events not related to nodes or properties
+         */
+        static NodeEventType fromJcrEventType(int jcrEventType) {
+            switch (jcrEventType) {
+                case Event.NODE_ADDED:
+                    return NODE_ADDED;
+                case Event.NODE_REMOVED:
+                    return NODE_REMOVED;
+                case Event.NODE_MOVED:
+                    return NODE_MOVED;
+                case Event.PROPERTY_ADDED:
+                case Event.PROPERTY_CHANGED:
+                case Event.PROPERTY_REMOVED:
+                    return PROPERTIES_CHANGED;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final NodeEventType eventType;
+    private final String path;
+    private final String uuid;
+    private final String workspace;
+
+    /**
+     * Create an instance that represents a change of a node to GraphQL.
+     *
+     * @param eventType The type of change
+     * @param path The path of the node
+     * @param uuid The UUID of the node
+     * @param workspace The workspace of the node
+     */
+    public GqlJcrNodeEvent(NodeEventType eventType, String path, String uuid, String workspace) {
+        this.eventType = eventType;
+        this.path = path;
+        this.uuid = uuid;
+        this.workspace = workspace;
+    }
+
+    /**
+     * Coalesce this event with a later change of the same node.
+     *
+     * @param next The later change
+     * @return A single event equivalent to both changes, or null if the node has been added then removed
+     */
+    GqlJcrNodeEvent coalesce(GqlJcrNodeEvent next) {
+        if (eventType == NodeEventType.RESYNC) {
+            // the whole subtree is read again anyway
+            return this;
+        }
+        if (next.eventType == NodeEventType.NODE_REMOVED) {
+            return eventType == NodeEventType.NODE_ADDED ? null : next;
+        }
+        if (next.eventType == NodeEventType.PROPERTIES_CHANGED && eventType != NodeEventType.NODE_REMOVED) {
+            // property changes are part of the addition or move of the node
+            return this;
+        }
+        if (next.eventType == NodeEventType.NODE_ADDED && eventType == NodeEventType.NODE_REMOVED) {
+            // node replaced at the same path
+            return new GqlJcrNodeEvent(NodeEventType.PROPERTIES_CHANGED, next.path, next.uuid, next.workspace);
+        }
+        return next;
+    }
+
+    /**
+     * @return The type of change
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The type of change")
+    public NodeEventType getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return The path of the node
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The path of the node")
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The UUID of the node, null if unknown
+     */
+    @GraphQLField
+    @GraphQLDescription("The UUID of the node, null if unknown")
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return The workspace of the node
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("The workspace of the node")
+    public String getWorkspace() {
+        return workspace;
+    }
+}
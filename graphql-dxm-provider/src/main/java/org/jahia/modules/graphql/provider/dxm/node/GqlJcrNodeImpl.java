@@ -44,12 +44,16 @@
 package org.jahia.modules.graphql.provider.dxm.node;
 
 import graphql.ErrorType;
+import graphql.annotations.annotationTypes.GraphQLDataFetcher;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLNonNull;
 import graphql.annotations.connection.GraphQLConnection;
+import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.apache.commons.collections4.Predicate;
+import org.apache.commons.lang.StringUtils;
 import org.jahia.modules.graphql.provider.dxm.BaseGqlClientException;
+import org.jahia.modules.graphql.provider.dxm.instrumentation.FieldMetrics;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedDataConnectionFetcher;
 import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
@@ -65,6 +69,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * GraphQL representation of a JCR node - generic implementation.
@@ -75,6 +82,8 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
 
     private JCRNodeWrapper node;
     private String type;
+    // node read in other languages, the instance being scoped to the request it is created for
+    private volatile Map<String, JCRNodeWrapper> localizedNodes;
 
     public static final List<String> DEFAULT_EXCLUDED_CHILDREN = Arrays.asList("jnt:translation");
     public static final Predicate<JCRNodeWrapper> DEFAULT_CHILDREN_PREDICATE = NodeHelper.getTypesPredicate(new NodeTypesInput(MulticriteriaEvaluation.NONE, DEFAULT_EXCLUDED_CHILDREN));
@@ -89,12 +98,14 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
     }
 
     /**
-     * Create an instance that represents a JCR node to GraphQL as a given node type.
+     * Create an instance that represents a JCR node to GraphQL as a given node type. Every node exposed to GraphQL is
+     * created here, this is where node loads are counted by the field metrics.
      *
      * @param node The JCR node to represent
      * @param type The type name to represent the node as, or null to represent as node's primary type
      */
     public GqlJcrNodeImpl(JCRNodeWrapper node, String type) {
+        FieldMetrics.countNodeLoad();
         this.node = node;
         if (type != null) {
             this.type = type;
@@ -142,7 +153,7 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
     @Override
     public String getDisplayName(@GraphQLName("language") String language) {
         try {
-            JCRNodeWrapper node = NodeHelper.getNodeInLanguage(this.node, language);
+            JCRNodeWrapper node = getNodeInLanguage(language);
             return node.getDisplayableName();
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
@@ -150,6 +161,7 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
     }
 
     @Override
+    @GraphQLDataFetcher(ParentDataFetcher.class)
     public GqlJcrNode getParent() {
         try {
             return SpecializedTypesHandler.getNode(node.getParent());
@@ -164,7 +176,7 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
                                                     @GraphQLName("language") String language) {
         List<GqlJcrProperty> properties = new LinkedList<GqlJcrProperty>();
         try {
-            JCRNodeWrapper node = NodeHelper.getNodeInLanguage(this.node, language);
+            JCRNodeWrapper node = getNodeInLanguage(language);
             if (names != null) {
                 for (String name : names) {
                     if (node.hasProperty(name)) {
@@ -187,7 +199,7 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
     public GqlJcrProperty getProperty(@GraphQLName("name") @GraphQLNonNull String name,
                                       @GraphQLName("language") String language) {
         try {
-            JCRNodeWrapper node = NodeHelper.getNodeInLanguage(this.node, language);
+            JCRNodeWrapper node = getNodeInLanguage(language);
             if (!node.hasProperty(name)) {
                 return null;
             }
@@ -197,21 +209,23 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
         }
     }
 
+    @Override
+    public DXPaginatedData<GqlJcrNode> getChildren(Collection<String> names,
+                                                   NodeTypesInput typesFilter,
+                                                   NodePropertiesInput propertiesFilter,
+                                                   DataFetchingEnvironment environment) {
+        return NodeHelper.getChildren(node, names, typesFilter, propertiesFilter, null, environment);
+    }
+
     @Override
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     @GraphQLNonNull
     public DXPaginatedData<GqlJcrNode> getChildren(@GraphQLName("names") Collection<String> names,
                                                    @GraphQLName("typesFilter") NodeTypesInput typesFilter,
                                                    @GraphQLName("propertiesFilter") NodePropertiesInput propertiesFilter,
+                                                   @GraphQLName("sortBy") NodeSortInput sortBy,
                                                    DataFetchingEnvironment environment) {
-        List<GqlJcrNode> children = new LinkedList<GqlJcrNode>();
-        PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
-        try {
-            NodeHelper.collectDescendants(node, NodeHelper.getNodesPredicate(names, typesFilter, propertiesFilter), false, children);
-        } catch (RepositoryException e) {
-            throw new RuntimeException(e);
-        }
-        return PaginationHelper.paginate(children, n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+        return GqlJcrNode.super.getChildren(names, typesFilter, propertiesFilter, sortBy, environment);
     }
 
     @Override
@@ -226,20 +240,43 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
         return null;
     }
 
+    @Override
+    public DXPaginatedData<GqlJcrNode> getDescendants(NodeTypesInput typesFilter,
+                                                      NodePropertiesInput propertiesFilter,
+                                                      DataFetchingEnvironment environment) {
+        return NodeHelper.getDescendants(node, typesFilter, propertiesFilter, null, environment);
+    }
+
     @Override
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     @GraphQLNonNull
     public DXPaginatedData<GqlJcrNode> getDescendants(@GraphQLName("typesFilter") NodeTypesInput typesFilter,
                                                       @GraphQLName("propertiesFilter") NodePropertiesInput propertiesFilter,
+                                                      @GraphQLName("sortBy") NodeSortInput sortBy,
                                                       DataFetchingEnvironment environment) {
-        List<GqlJcrNode> descendants = new LinkedList<GqlJcrNode>();
-        PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
+        return GqlJcrNode.super.getDescendants(typesFilter, propertiesFilter, sortBy, environment);
+    }
+
+    @Override
+    @GraphQLNonNull
+    public GqlJcrNodeAggregation getAggregation(@GraphQLName("recursive") Boolean recursive,
+                                                @GraphQLName("typesFilter") NodeTypesInput typesFilter,
+                                                @GraphQLName("propertiesFilter") NodePropertiesInput propertiesFilter,
+                                                DataFetchingEnvironment environment) {
+        Predicate<JCRNodeWrapper> predicate = NodeHelper.getNodesPredicate(null, typesFilter, propertiesFilter, NodeLoader.get(environment));
+        if (recursive != null && !recursive) {
+            return new GqlJcrNodeAggregation(() -> NodeHelper.getDescendants(node, predicate, false), environment);
+        }
+        DescendantsQuery query;
         try {
-            NodeHelper.collectDescendants(node, NodeHelper.getNodesPredicate(null, typesFilter, propertiesFilter), true, descendants);
+            query = DescendantsQuery.build(node, typesFilter, propertiesFilter, null);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
-        return PaginationHelper.paginate(descendants, n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+        if (query != null) {
+            return new GqlJcrNodeAggregation(() -> query.execute(node).filter(predicate::evaluate), environment);
+        }
+        return new GqlJcrNodeAggregation(() -> NodeHelper.getDescendants(node, predicate, true), environment);
     }
 
     @Override
@@ -315,4 +352,41 @@ public class GqlJcrNodeImpl implements GqlJcrNode {
     private static String normalizePath(String path) {
         return (path.endsWith("/") ? path : path + "/");
     }
+
+    private JCRNodeWrapper getNodeInLanguage(String language) throws RepositoryException {
+        if (language == null) {
+            return node;
+        }
+        Map<String, JCRNodeWrapper> nodes = localizedNodes;
+        if (nodes == null) {
+            nodes = new ConcurrentHashMap<>(2);
+            localizedNodes = nodes;
+        }
+        JCRNodeWrapper localizedNode = nodes.get(language);
+        if (localizedNode == null) {
+            localizedNode = NodeHelper.getNodeInLanguage(node, language);
+            nodes.put(language, localizedNode);
+        }
+        return localizedNode;
+    }
+
+    /**
+     * Data fetcher of the parent field, loading the parent nodes through the request node loader so that the parents
+     * of sibling nodes are read together, and each distinct parent once.
+     */
+    public static class ParentDataFetcher implements DataFetcher<CompletableFuture<GqlJcrNode>> {
+
+        @Override
+        public CompletableFuture<GqlJcrNode> get(DataFetchingEnvironment environment) {
+            GqlJcrNode source = environment.getSource();
+            JCRNodeWrapper node = source.getNode();
+            String path = node.getPath();
+            if (path.equals("/")) {
+                // reports the error of the root node having no parent
+                return CompletableFuture.completedFuture(source.getParent());
+            }
+            String parentPath = StringUtils.substringBeforeLast(path, "/");
+            return NodeLoader.get(environment).loadNodeByPath(node.getSession(), parentPath.isEmpty() ? "/" : parentPath);
+        }
+    }
 }
@@ -43,20 +43,29 @@
  */
 package org.jahia.modules.graphql.provider.dxm.node;
 
+import graphql.annotations.annotationTypes.GraphQLDataFetcher;
 import graphql.annotations.annotationTypes.GraphQLDescription;
 import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLNonNull;
-import org.jahia.services.content.JCRNodeWrapper;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.jahia.modules.graphql.provider.dxm.instrumentation.FieldMetrics;
 import org.jahia.services.content.JCRPropertyWrapper;
 import org.jahia.services.content.JCRValueWrapper;
 import org.jahia.services.content.nodetypes.ExtendedPropertyDefinition;
 
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
-import javax.jcr.ValueFormatException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * GraphQL representation of a JCR property.
@@ -77,6 +86,7 @@ public class GqlJcrProperty {
     public GqlJcrProperty(JCRPropertyWrapper property, GqlJcrNode node) {
         this.property = property;
         this.node = node;
+        FieldMetrics.countPropertyRead();
     }
 
     /**
@@ -159,7 +169,8 @@ public class GqlJcrProperty {
     }
 
     /**
-     * @return The value of the JCR property as a String in case the property is single-valued, null otherwise
+     * @return The value of the JCR property as a String in case the property is single-valued, null otherwise; the
+     * whole content of BINARY properties is read to build the String, use getBinary() for them instead
      */
     @GraphQLField
     @GraphQLDescription("The value of the JCR property as a String in case the property is single-valued, null otherwise")
@@ -174,6 +185,22 @@ public class GqlJcrProperty {
         }
     }
 
+    /**
+     * @return The value of the JCR property as a binary in case the property is single-valued and of the BINARY type, null otherwise
+     */
+    @GraphQLField
+    @GraphQLDescription("The value of the JCR property as a binary in case the property is single-valued and of the BINARY type, null otherwise")
+    public GqlJcrBinary getBinary() {
+        try {
+            if (property.isMultiple() || property.getType() != PropertyType.BINARY) {
+                return null;
+            }
+            return new GqlJcrBinary(property);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * @return The values of the JCR property as a Strings in case the property is multiple-valued, null otherwise
      */
@@ -196,39 +223,38 @@ public class GqlJcrProperty {
     }
 
     /**
+     * @param environment The data fetching environment
      * @return GraphQL representation of the node this property references in case the property is single-valued, null otherwise
      * @throws GqlJcrUnresolvedNodeReferenceException In case either the type (must be REFEENCE, WEAKREFERENCE or STRING) or the actual value of the property do not allow to resolve the node reference
      */
     @GraphQLField
+    @GraphQLDataFetcher(RefNodeDataFetcher.class)
     @GraphQLDescription("GraphQL representation of the node this property references in case the property is single-valued, null otherwise")
-    public GqlJcrNode getRefNode() throws GqlJcrUnresolvedNodeReferenceException {
+    public GqlJcrNode getRefNode(DataFetchingEnvironment environment) throws GqlJcrUnresolvedNodeReferenceException {
         try {
             if (property.isMultiple()) {
                 return null;
             }
-            return getRefNode(property.getValue());
+            return getRefNodes(Collections.singletonList(property.getValue()), environment).get(0);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
+     * @param environment The data fetching environment
      * @return GraphQL representations of the nodes this property references in case the property is multiple-valued, null otherwise
      * @throws GqlJcrUnresolvedNodeReferenceException In case either the type (must be REFEENCE, WEAKREFERENCE or STRING) or any of the actual values of the property do not allow to resolve the node reference
      */
     @GraphQLField
+    @GraphQLDataFetcher(RefNodesDataFetcher.class)
     @GraphQLDescription("GraphQL representations of the nodes this property references in case the property is multiple-valued, null otherwise")
-    public List<GqlJcrNode> getRefNodes() throws GqlJcrUnresolvedNodeReferenceException {
+    public List<GqlJcrNode> getRefNodes(DataFetchingEnvironment environment) throws GqlJcrUnresolvedNodeReferenceException {
         try {
             if (!property.isMultiple()) {
                 return null;
             }
-            JCRValueWrapper[] values = property.getValues();
-            List<GqlJcrNode> result = new ArrayList<>(values.length);
-            for (JCRValueWrapper value : values) {
-                result.add(getRefNode(value));
-            }
-            return result;
+            return getRefNodes(Arrays.asList(property.getValues()), environment);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
@@ -244,16 +270,104 @@ public class GqlJcrProperty {
         return node;
     }
 
-    private GqlJcrNode getRefNode(JCRValueWrapper value) throws RepositoryException {
-        JCRNodeWrapper refNode;
+    /**
+     * Resolve all the referenced nodes through the request node loader, so that nodes referenced several times, by this
+     * property or by other properties in the same request, are only read once.
+     */
+    private List<GqlJcrNode> getRefNodes(List<JCRValueWrapper> values, DataFetchingEnvironment environment) throws RepositoryException {
+        NodeLoader nodeLoader = NodeLoader.get(environment);
+        List<GqlJcrNode> nodes = new ArrayList<>(values.size());
         try {
-            refNode = value.getNode();
-        } catch (ValueFormatException e) {
-            throw new GqlJcrUnresolvedNodeReferenceException("The '" + property.getName() + "' property is not of a reference type", e);
+            for (String reference : getReferences(values)) {
+                nodes.add(isPath(reference) ? nodeLoader.getNodeByPath(property.getSession(), reference) : nodeLoader.getNodeById(property.getSession(), reference));
+            }
+        } catch (ItemNotFoundException | PathNotFoundException e) {
+            throw new GqlJcrUnresolvedNodeReferenceException("The value of the '" + property.getName() + "' property does not reference an existing node", e);
+        }
+        return nodes;
+    }
+
+    /**
+     * Load the referenced nodes through the request node loader, together with the nodes referenced by the sibling
+     * properties and nodes.
+     *
+     * @param multiple Whether the multiple values are requested
+     * @return The referenced nodes, or null in case the property is not single or multiple-valued as requested
+     */
+    private CompletableFuture<List<GqlJcrNode>> loadRefNodes(boolean multiple, DataFetchingEnvironment environment) throws RepositoryException {
+        if (property.isMultiple() != multiple) {
+            return CompletableFuture.completedFuture(null);
         }
-        if (refNode == null) {
-            throw new GqlJcrUnresolvedNodeReferenceException("The value of the '" + property.getName() + "' property does not reference an existing node");
+        NodeLoader nodeLoader = NodeLoader.get(environment);
+        List<CompletableFuture<GqlJcrNode>> futures = new ArrayList<>();
+        for (String reference : getReferences(multiple ? Arrays.asList(property.getValues()) : Collections.singletonList(property.getValue()))) {
+            futures.add(isPath(reference) ? nodeLoader.loadNodeByPath(property.getSession(), reference) : nodeLoader.loadNodeById(property.getSession(), reference));
+        }
+        String name = property.getName();
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).handle((v, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                if (cause instanceof ItemNotFoundException || cause instanceof PathNotFoundException) {
+                    throw new GqlJcrUnresolvedNodeReferenceException("The value of the '" + name + "' property does not reference an existing node", cause);
+                }
+                throw new RuntimeException(cause);
+            }
+            List<GqlJcrNode> nodes = new ArrayList<>(futures.size());
+            for (CompletableFuture<GqlJcrNode> future : futures) {
+                nodes.add(future.join());
+            }
+            return nodes;
+        });
+    }
+
+    /**
+     * @return The UUIDs or, for STRING properties, the UUIDs or paths the values reference
+     */
+    private List<String> getReferences(List<JCRValueWrapper> values) throws RepositoryException {
+        int type = property.getType();
+        if (type != PropertyType.REFERENCE && type != PropertyType.WEAKREFERENCE && type != PropertyType.STRING) {
+            throw new GqlJcrUnresolvedNodeReferenceException("The '" + property.getName() + "' property is not of a reference type");
+        }
+        List<String> references = new ArrayList<>(values.size());
+        for (JCRValueWrapper value : values) {
+            references.add(value.getString());
+        }
+        return references;
+    }
+
+    private static boolean isPath(String reference) {
+        return reference.startsWith("/");
+    }
+
+    /**
+     * Data fetcher of the refNode field, returning a future so that the nodes referenced by sibling properties are
+     * loaded together.
+     */
+    public static class RefNodeDataFetcher implements DataFetcher<CompletableFuture<GqlJcrNode>> {
+
+        @Override
+        public CompletableFuture<GqlJcrNode> get(DataFetchingEnvironment environment) {
+            try {
+                return ((GqlJcrProperty) environment.getSource()).loadRefNodes(false, environment).thenApply(nodes -> nodes != null ? nodes.get(0) : null);
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Data fetcher of the refNodes field, returning a future so that the nodes referenced by sibling properties are
+     * loaded together.
+     */
+    public static class RefNodesDataFetcher implements DataFetcher<CompletableFuture<List<GqlJcrNode>>> {
+
+        @Override
+        public CompletableFuture<List<GqlJcrNode>> get(DataFetchingEnvironment environment) {
+            try {
+                return ((GqlJcrProperty) environment.getSource()).loadRefNodes(true, environment);
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
         }
-        return SpecializedTypesHandler.getNode(refNode);
     }
 }
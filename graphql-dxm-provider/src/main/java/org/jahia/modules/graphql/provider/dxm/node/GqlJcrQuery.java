@@ -46,20 +46,22 @@ package org.jahia.modules.graphql.provider.dxm.node;
 import graphql.ErrorType;
 import graphql.annotations.annotationTypes.*;
 import graphql.annotations.connection.GraphQLConnection;
+import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.jahia.modules.graphql.provider.dxm.BaseGqlClientException;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedDataConnectionFetcher;
 import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
-import org.jahia.services.content.*;
-import org.jahia.services.query.QueryWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.QueryManagerWrapper;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.query.Query;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 import static org.jahia.modules.graphql.provider.dxm.node.GqlJcrQuery.QueryLanguage.SQL2;
@@ -110,16 +112,18 @@ public class GqlJcrQuery {
      * Get GraphQL representation of a node by its UUID.
      *
      * @param uuid The UUID of the node
+     * @param environment The data fetching environment
      * @return GraphQL representation of the node
      * @throws BaseGqlClientException In case of issues fetching the node
      */
     @GraphQLField
     @GraphQLNonNull
+    @GraphQLDataFetcher(NodeByIdDataFetcher.class)
     @GraphQLDescription("Get GraphQL representation of a node by its UUID")
-    public GqlJcrNode getNodeById(@GraphQLName("uuid") @GraphQLNonNull @GraphQLDescription("The UUID of the node") String uuid)
+    public GqlJcrNode getNodeById(@GraphQLName("uuid") @GraphQLNonNull @GraphQLDescription("The UUID of the node") String uuid, DataFetchingEnvironment environment)
             throws BaseGqlClientException {
         try {
-            return getGqlNodeById(uuid);
+            return NodeLoader.get(environment).getNodeById(getSession(), uuid);
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -129,16 +133,18 @@ public class GqlJcrQuery {
      * Get GraphQL representation of a node by its path.
      *
      * @param path The path of the node
+     * @param environment The data fetching environment
      * @return GraphQL representation of the node
      * @throws BaseGqlClientException In case of issues fetching the node
      */
     @GraphQLField
     @GraphQLNonNull
+    @GraphQLDataFetcher(NodeByPathDataFetcher.class)
     @GraphQLDescription("Get GraphQL representation of a node by its path")
-    public GqlJcrNode getNodeByPath(@GraphQLName("path") @GraphQLNonNull @GraphQLDescription("The path of the node") String path)
+    public GqlJcrNode getNodeByPath(@GraphQLName("path") @GraphQLNonNull @GraphQLDescription("The path of the node") String path, DataFetchingEnvironment environment)
             throws BaseGqlClientException {
         try {
-            return getGqlNodeByPath(path);
+            return NodeLoader.get(environment).getNodeByPath(getSession(), path);
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -148,20 +154,18 @@ public class GqlJcrQuery {
      * Get GraphQL representations of multiple nodes by their UUIDs.
      *
      * @param uuids The UUIDs of the nodes
+     * @param environment The data fetching environment
      * @return GraphQL representations of the nodes
      * @throws BaseGqlClientException In case of issues fetching the nodes
      */
     @GraphQLField
     @GraphQLNonNull
+    @GraphQLDataFetcher(NodesByIdDataFetcher.class)
     @GraphQLDescription("Get GraphQL representations of multiple nodes by their UUIDs")
-    public Collection<GqlJcrNode> getNodesById(@GraphQLName("uuids") @GraphQLNonNull @GraphQLDescription("The UUIDs of the nodes") Collection<@GraphQLNonNull String> uuids)
+    public Collection<GqlJcrNode> getNodesById(@GraphQLName("uuids") @GraphQLNonNull @GraphQLDescription("The UUIDs of the nodes") Collection<@GraphQLNonNull String> uuids, DataFetchingEnvironment environment)
             throws BaseGqlClientException {
         try {
-            List<GqlJcrNode> nodes = new ArrayList<>(uuids.size());
-            for (String uuid : uuids) {
-                nodes.add(getGqlNodeById(uuid));
-            }
-            return nodes;
+            return NodeLoader.get(environment).getNodesById(getSession(), uuids);
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -171,20 +175,18 @@ public class GqlJcrQuery {
      * Get GraphQL representations of multiple nodes by their paths.
      *
      * @param paths The paths of the nodes
+     * @param environment The data fetching environment
      * @return GraphQL representations of the nodes
      * @throws BaseGqlClientException In case of issues fetching the nodes
      */
     @GraphQLField
     @GraphQLNonNull
+    @GraphQLDataFetcher(NodesByPathDataFetcher.class)
     @GraphQLDescription("Get GraphQL representations of multiple nodes by their paths")
-    public Collection<GqlJcrNode> getNodesByPath(@GraphQLName("paths") @GraphQLNonNull @GraphQLDescription("The paths of the nodes") Collection<@GraphQLNonNull String> paths)
+    public Collection<GqlJcrNode> getNodesByPath(@GraphQLName("paths") @GraphQLNonNull @GraphQLDescription("The paths of the nodes") Collection<@GraphQLNonNull String> paths, DataFetchingEnvironment environment)
             throws BaseGqlClientException {
         try {
-            List<GqlJcrNode> nodes = new ArrayList<>(paths.size());
-            for (String path : paths) {
-                nodes.add(getGqlNodeByPath(path));
-            }
-            return nodes;
+            return NodeLoader.get(environment).getNodesByPath(getSession(), paths);
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -195,6 +197,7 @@ public class GqlJcrQuery {
      *
      * @param query The query string
      * @param queryLanguage The query language
+     * @param sortBy Sort of the result nodes by a property value; null to keep the query order
      * @return GraphQL representations of nodes selected according to the query supplied
      * @throws BaseGqlClientException In case of issues executing the query
      */
@@ -202,37 +205,140 @@ public class GqlJcrQuery {
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     @GraphQLDescription("Get GraphQL representations of nodes using a query language supported by JCR")
     public DXPaginatedData<GqlJcrNode> getNodesByQuery(@GraphQLName("query") @GraphQLNonNull @GraphQLDescription("The query string") String query,
-                                                              @GraphQLName("queryLanguage") @GraphQLDefaultValue(QueryLanguageDefaultValue.class) @GraphQLDescription("The query language") QueryLanguage queryLanguage, DataFetchingEnvironment environment)
+                                                              @GraphQLName("queryLanguage") @GraphQLDefaultValue(QueryLanguageDefaultValue.class) @GraphQLDescription("The query language") QueryLanguage queryLanguage,
+                                                              @GraphQLName("sortBy") @GraphQLDescription("Sort of the result nodes by a property value; null to keep the query order") GqlJcrNode.NodeSortInput sortBy,
+                                                              DataFetchingEnvironment environment)
             throws BaseGqlClientException {
         try {
             PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
-            List<GqlJcrNode> result = new LinkedList<>();
-            QueryManagerWrapper queryManager = getSession().getWorkspace().getQueryManager();
-            QueryWrapper q = queryManager.createQuery(query, queryLanguage.getJcrQueryLanguage());
-            JCRNodeIteratorWrapper nodes = q.execute().getNodes();
-            while (nodes.hasNext()) {
-                JCRNodeWrapper node = (JCRNodeWrapper) nodes.next();
-                result.add(SpecializedTypesHandler.getNode(node));
+            JCRSessionWrapper session = getSession();
+            String statement = query;
+            if (sortBy != null) {
+                String sortedQuery = QueryHelper.addOrderBy(session, query, queryLanguage.getJcrQueryLanguage(), sortBy);
+                if (sortedQuery == null) {
+                    // the index cannot sort the result, sort it in memory
+                    QueryManagerWrapper queryManager = session.getWorkspace().getQueryManager();
+                    return PaginationHelper.paginate(() -> {
+                        try {
+                            return QueryHelper.stream(queryManager.createQuery(query, queryLanguage.getJcrQueryLanguage()).execute().getNodes()).map(NodeHelper::getGqlNode);
+                        } catch (RepositoryException e) {
+                            throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
+                        }
+                    }, n -> NodeHelper.getSortKey(n.getNode(), sortBy, NodeLoader.get(environment)), NodeHelper.getSortComparator(sortBy), n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+                }
+                statement = sortedQuery;
+            }
+            QueryResultCache cache = QueryResultCache.getInstance();
+            if (cache != null && cache.isEnabled()) {
+                return cache.paginate(session, statement, queryLanguage.getJcrQueryLanguage(), arguments);
             }
-            // todo: naive implementation of the pagination, could be improved in some cases by setting limit/offset in query
-            return PaginationHelper.paginate(result, n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+            return QueryHelper.paginate(session, statement, queryLanguage.getJcrQueryLanguage(), NodeHelper::getGqlNode, arguments);
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
     }
 
-    private GqlJcrNode getGqlNodeByPath(String path) throws RepositoryException {
-        return SpecializedTypesHandler.getNode(getSession().getNode(path));
-    }
-
-    private GqlJcrNode getGqlNodeById(String uuid) throws RepositoryException {
-        return SpecializedTypesHandler.getNode(getSession().getNodeByIdentifier(uuid));
+    /**
+     * Get aggregations computed over the nodes selected by a query, without creating their GraphQL representations.
+     *
+     * @param query The query string
+     * @param queryLanguage The query language
+     * @param environment The data fetching environment, giving the aggregations to compute together
+     * @return Aggregations computed over the nodes selected according to the query supplied
+     * @throws BaseGqlClientException In case of issues executing the query
+     */
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("Get aggregations computed over the nodes selected by a query")
+    public GqlJcrNodeAggregation getAggregationByQuery(@GraphQLName("query") @GraphQLNonNull @GraphQLDescription("The query string") String query,
+                                                       @GraphQLName("queryLanguage") @GraphQLDefaultValue(QueryLanguageDefaultValue.class) @GraphQLDescription("The query language") QueryLanguage queryLanguage,
+                                                       DataFetchingEnvironment environment)
+            throws BaseGqlClientException {
+        try {
+            QueryManagerWrapper queryManager = getSession().getWorkspace().getQueryManager();
+            // nodes are counted by iterating the result: its size includes the nodes the session cannot read
+            return new GqlJcrNodeAggregation(() -> {
+                try {
+                    return QueryHelper.stream(queryManager.createQuery(query, queryLanguage.getJcrQueryLanguage()).execute().getNodes());
+                } catch (RepositoryException e) {
+                    throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
+                }
+            }, environment);
+        } catch (RepositoryException e) {
+            throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
+        }
     }
 
     private JCRSessionWrapper getSession() throws RepositoryException {
         return JCRSessionFactory.getInstance().getCurrentUserSession(workspace);
     }
 
+    /**
+     * Run a node load, reporting the errors as when the node is read synchronously.
+     */
+    private static <T> CompletableFuture<T> load(DataFetchingEnvironment environment, NodeLoad<T> load) {
+        try {
+            return load.load(NodeLoader.get(environment), ((GqlJcrQuery) environment.getSource()).getSession()).exceptionally(e -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                throw new BaseGqlClientException(cause, ErrorType.DataFetchingException);
+            });
+        } catch (RepositoryException e) {
+            throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
+        }
+    }
+
+    private interface NodeLoad<T> {
+        CompletableFuture<T> load(NodeLoader nodeLoader, JCRSessionWrapper session);
+    }
+
+    /**
+     * Data fetcher of the nodeById field, returning a future so that the nodes requested by sibling fields are loaded
+     * together.
+     */
+    public static class NodeByIdDataFetcher implements DataFetcher<CompletableFuture<GqlJcrNode>> {
+
+        @Override
+        public CompletableFuture<GqlJcrNode> get(DataFetchingEnvironment environment) {
+            return load(environment, (nodeLoader, session) -> nodeLoader.loadNodeById(session, environment.getArgument("uuid")));
+        }
+    }
+
+    /**
+     * Data fetcher of the nodeByPath field, returning a future so that the nodes requested by sibling fields are loaded
+     * together.
+     */
+    public static class NodeByPathDataFetcher implements DataFetcher<CompletableFuture<GqlJcrNode>> {
+
+        @Override
+        public CompletableFuture<GqlJcrNode> get(DataFetchingEnvironment environment) {
+            return load(environment, (nodeLoader, session) -> nodeLoader.loadNodeByPath(session, environment.getArgument("path")));
+        }
+    }
+
+    /**
+     * Data fetcher of the nodesById field, returning a future so that the nodes requested by sibling fields are loaded
+     * together.
+     */
+    public static class NodesByIdDataFetcher implements DataFetcher<CompletableFuture<List<GqlJcrNode>>> {
+
+        @Override
+        public CompletableFuture<List<GqlJcrNode>> get(DataFetchingEnvironment environment) {
+            return load(environment, (nodeLoader, session) -> nodeLoader.loadNodesById(session, environment.<Collection<String>>getArgument("uuids")));
+        }
+    }
+
+    /**
+     * Data fetcher of the nodesByPath field, returning a future so that the nodes requested by sibling fields are loaded
+     * together.
+     */
+    public static class NodesByPathDataFetcher implements DataFetcher<CompletableFuture<List<GqlJcrNode>>> {
+
+        @Override
+        public CompletableFuture<List<GqlJcrNode>> get(DataFetchingEnvironment environment) {
+            return load(environment, (nodeLoader, session) -> nodeLoader.loadNodesByPath(session, environment.<Collection<String>>getArgument("paths")));
+        }
+    }
+
     public static class QueryLanguageDefaultValue implements Supplier<Object> {
 
         @Override
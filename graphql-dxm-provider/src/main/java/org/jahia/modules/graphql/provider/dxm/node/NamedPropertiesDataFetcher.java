@@ -46,6 +46,7 @@ package org.jahia.modules.graphql.provider.dxm.node;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.instrumentation.FieldMetrics;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRPropertyWrapper;
 import org.jahia.services.content.JCRValueWrapper;
@@ -54,6 +55,8 @@ import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class NamedPropertiesDataFetcher implements DataFetcher {
     @Override
@@ -68,6 +71,26 @@ public class NamedPropertiesDataFetcher implements DataFetcher {
                 return null;
             }
             JCRPropertyWrapper property = jcrNodeWrapper.getProperty(name);
+            FieldMetrics.countPropertyRead();
+
+            if (property.getType() == PropertyType.REFERENCE || property.getType() == PropertyType.WEAKREFERENCE) {
+                // loaded through the request node loader, with the nodes referenced by the sibling nodes; a missing
+                // referenced node raises an error, as when reading the node from the value
+                NodeLoader nodeLoader = NodeLoader.get(dataFetchingEnvironment);
+                CompletableFuture<?> nodes;
+                if (!property.isMultiple()) {
+                    nodes = nodeLoader.loadNodeById(property.getSession(), property.getValue().getString());
+                } else {
+                    List<String> identifiers = new ArrayList<>();
+                    for (JCRValueWrapper value : property.getValues()) {
+                        identifiers.add(value.getString());
+                    }
+                    nodes = nodeLoader.loadNodesById(property.getSession(), identifiers);
+                }
+                return nodes.exceptionally(e -> {
+                    throw new RuntimeException(e instanceof CompletionException ? e.getCause() : e);
+                });
+            }
 
             if (!property.isMultiple()) {
                 return getString(property.getValue());
@@ -93,9 +116,6 @@ public class NamedPropertiesDataFetcher implements DataFetcher {
                 return value.getLong();
             case PropertyType.DOUBLE:
                 return value.getDouble();
-            case PropertyType.REFERENCE:
-            case PropertyType.WEAKREFERENCE:
-                return SpecializedTypesHandler.getNode(value.getNode());
             default:
                 return value.getString();
         }
@@ -0,0 +1,534 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.usermanager.JahiaUser;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Publisher of the node changes to the nodeChanged subscribers, backed by JCR observation.
+ *
+ * A single JCR listener is registered per workspace and subtree, and shared by all the subscriptions on this path or
+ * under it: a subscription on a path already observed by a listener registered on one of its ancestors reuses it, and
+ * a subscription on an ancestor of observed paths gets a listener replacing theirs. Each subscription only keeps the
+ * changes under its own paths. A listener is unregistered when its last subscription is cancelled; a listener that
+ * replaced others keeps observing its whole subtree until then. Changes are coalesced per node path for each subscription and
+ * only delivered after a short quiet period, so that a save touching many properties results in a single event per
+ * node. Undelivered changes are kept up to the configured limit for subscribers not requesting events fast enough;
+ * beyond it, they are replaced by a single RESYNC event for each subscribed path, delivered whatever the node types and
+ * event types the subscriber filters on. Changes are filtered with a session of the subscriber, so that subscribers are
+ * never notified about nodes they cannot read.
+ *
+ * The subscriptions are configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>subscriptions.debounce: quiet period in milliseconds before changes are delivered, 500 by default</li>
+ *     <li>subscriptions.maxPendingEvents: maximum number of undelivered changes per subscription, 100 by default</li>
+ * </ul>
+ */
+@Component(service = NodeChangeObserver.class, immediate = true)
+public class NodeChangeObserver {
+
+    private static Logger logger = LoggerFactory.getLogger(NodeChangeObserver.class);
+
+    private static final String DEBOUNCE = "subscriptions.debounce";
+    private static final String MAX_PENDING_EVENTS = "subscriptions.maxPendingEvents";
+
+    private static final long DEFAULT_DEBOUNCE = 500;
+    private static final long DEFAULT_MAX_PENDING_EVENTS = 100;
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private static NodeChangeObserver instance;
+
+    private DXGraphQLConfig config;
+
+    // single thread, so that the events of a subscription are never delivered concurrently
+    private ScheduledExecutorService scheduler;
+
+    // listeners of the same workspace are never registered on a path under another one
+    private final Map<ListenerKey, SharedListener> listeners = new HashMap<>();
+
+    public static NodeChangeObserver getInstance() {
+        return instance;
+    }
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graphql-node-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+        Set<NodeChangeSubscription> subscriptions = new HashSet<>();
+        synchronized (listeners) {
+            for (SharedListener listener : listeners.values()) {
+                subscriptions.addAll(listener.subscriptions);
+            }
+        }
+        for (NodeChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        scheduler.shutdown();
+    }
+
+    /**
+     * Get a publisher of the changes of the nodes under some paths.
+     *
+     * @param workspace The workspace of the nodes
+     * @param paths The paths under which changes are published, including the changes of the nodes at these paths
+     * @param types Node types the changed nodes must be of, any of them; empty for any node type
+     * @param eventTypes Types of changes to publish; empty for any change
+     * @param user The user the changes are filtered for
+     * @param locale The locale of the session used to filter the changes
+     * @return A publisher of the changes, each subscriber having its own subscription
+     */
+    public Publisher<GqlJcrNodeEvent> getPublisher(String workspace, Collection<String> paths, Collection<String> types,
+                                                   Collection<GqlJcrNodeEvent.NodeEventType> eventTypes, JahiaUser user, Locale locale) {
+        return subscriber -> {
+            Set<String> normalizedPaths = new LinkedHashSet<>();
+            for (String path : paths) {
+                normalizedPaths.add(StringUtils.defaultIfEmpty(StringUtils.removeEnd(path, "/"), "/"));
+            }
+            NodeChangeSubscription subscription = new NodeChangeSubscription(subscriber, workspace, normalizedPaths,
+                    new HashSet<>(types), eventTypes.isEmpty() ? EnumSet.allOf(GqlJcrNodeEvent.NodeEventType.class) : EnumSet.copyOf(eventTypes), user, locale);
+            subscriber.onSubscribe(subscription);
+            try {
+                register(subscription);
+            } catch (RepositoryException e) {
+                subscription.cancel();
+                subscriber.onError(e);
+            }
+        };
+    }
+
+    private void register(NodeChangeSubscription subscription) throws RepositoryException {
+        synchronized (listeners) {
+            for (String path : subscription.paths) {
+                SharedListener listener = getListener(subscription.workspace, path);
+                if (listener == null) {
+                    listener = addListener(subscription.workspace, path);
+                }
+                listener.subscriptions.add(subscription);
+                subscription.sharedListeners.add(listener);
+            }
+        }
+    }
+
+    /**
+     * Get the listener observing a path, registered on the path itself or on one of its ancestors.
+     */
+    private SharedListener getListener(String workspace, String path) {
+        for (String ancestor = path; ; ancestor = getParentPath(ancestor)) {
+            SharedListener listener = listeners.get(new ListenerKey(workspace, ancestor));
+            if (listener != null || ancestor.equals("/")) {
+                return listener;
+            }
+        }
+    }
+
+    /**
+     * Register a listener on a path not observed yet, replacing the listeners registered under it. Their subscriptions
+     * are moved to the new listener before the previous listeners are removed: changes happening meanwhile may be
+     * received twice, and are coalesced, but are never missed.
+     */
+    private SharedListener addListener(String workspace, String path) throws RepositoryException {
+        SharedListener listener = new SharedListener(new ListenerKey(workspace, path));
+        listener.registration = ObservationHelper.addEventListener(workspace, listener, EVENT_TYPES, path, true);
+        listeners.put(listener.key, listener);
+
+        List<SharedListener> replaced = new ArrayList<>();
+        for (SharedListener other : listeners.values()) {
+            if (other != listener && other.key.workspace.equals(workspace) && isUnder(other.key.path, path)) {
+                replaced.add(other);
+            }
+        }
+        for (SharedListener other : replaced) {
+            for (NodeChangeSubscription subscription : other.subscriptions) {
+                listener.subscriptions.add(subscription);
+                subscription.sharedListeners.add(listener);
+                subscription.sharedListeners.remove(other);
+            }
+            listeners.remove(other.key);
+            other.registration.remove();
+        }
+        return listener;
+    }
+
+    private void unregister(NodeChangeSubscription subscription) {
+        synchronized (listeners) {
+            for (SharedListener listener : subscription.sharedListeners) {
+                listener.subscriptions.remove(subscription);
+                if (listener.subscriptions.isEmpty()) {
+                    listeners.remove(listener.key);
+                    listener.registration.remove();
+                }
+            }
+            subscription.sharedListeners.clear();
+        }
+    }
+
+    /**
+     * Get the paths the JCR listeners of a workspace are registered on.
+     *
+     * @param workspace The workspace
+     * @return The paths of the listeners
+     */
+    Set<String> getListenerPaths(String workspace) {
+        Set<String> paths = new HashSet<>();
+        synchronized (listeners) {
+            for (ListenerKey key : listeners.keySet()) {
+                if (key.workspace.equals(workspace)) {
+                    paths.add(key.path);
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static String getParentPath(String path) {
+        return StringUtils.defaultIfEmpty(StringUtils.substringBeforeLast(path, "/"), "/");
+    }
+
+    private static boolean isUnder(String path, String ancestor) {
+        return path.equals(ancestor) || path.startsWith(ancestor.equals("/") ? ancestor : ancestor + "/");
+    }
+
+    private long getDebounce() {
+        return config != null ? config.getLongProperty(DEBOUNCE, DEFAULT_DEBOUNCE) : DEFAULT_DEBOUNCE;
+    }
+
+    private long getMaxPendingEvents() {
+        return config != null ? config.getLongProperty(MAX_PENDING_EVENTS, DEFAULT_MAX_PENDING_EVENTS) : DEFAULT_MAX_PENDING_EVENTS;
+    }
+
+    /**
+     * JCR listener shared by all the subscriptions on the same workspace and subtree.
+     */
+    private class SharedListener implements EventListener {
+
+        private final ListenerKey key;
+        private final Set<NodeChangeSubscription> subscriptions = new CopyOnWriteArraySet<>();
+        private ObservationHelper.Registration registration;
+
+        private SharedListener(ListenerKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onEvent(EventIterator events) {
+            List<GqlJcrNodeEvent> nodeEvents = new ArrayList<>();
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                GqlJcrNodeEvent.NodeEventType eventType = GqlJcrNodeEvent.NodeEventType.fromJcrEventType(event.getType());
+                if (eventType == null) {
+                    continue;
+                }
+                try {
+                    String path = event.getPath();
+                    if (eventType == GqlJcrNodeEvent.NodeEventType.PROPERTIES_CHANGED) {
+                        path = getParentPath(path);
+                    }
+                    nodeEvents.add(new GqlJcrNodeEvent(eventType, path, event.getIdentifier(), key.workspace));
+                } catch (RepositoryException e) {
+                    logger.debug("Unable to read node event", e);
+                }
+            }
+            if (!nodeEvents.isEmpty()) {
+                for (NodeChangeSubscription subscription : subscriptions) {
+                    subscription.offer(nodeEvents);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscription of a single subscriber, holding its undelivered changes.
+     */
+    private class NodeChangeSubscription implements Subscription {
+
+        private final Subscriber<? super GqlJcrNodeEvent> subscriber;
+        private final String workspace;
+        private final Set<String> paths;
+        private final Set<String> types;
+        private final Set<GqlJcrNodeEvent.NodeEventType> eventTypes;
+        private final JahiaUser user;
+        private final Locale locale;
+
+        // guarded by the listeners of the observer
+        private final Set<SharedListener> sharedListeners = new HashSet<>();
+
+        // guarded by this
+        private final LinkedHashMap<String, GqlJcrNodeEvent> pending = new LinkedHashMap<>();
+        private long requested;
+        private boolean flushScheduled;
+        private volatile boolean cancelled;
+
+        private NodeChangeSubscription(Subscriber<? super GqlJcrNodeEvent> subscriber, String workspace, Set<String> paths, Set<String> types,
+                                       Set<GqlJcrNodeEvent.NodeEventType> eventTypes, JahiaUser user, Locale locale) {
+            this.subscriber = subscriber;
+            this.workspace = workspace;
+            this.paths = paths;
+            this.types = types;
+            this.eventTypes = eventTypes;
+            this.user = user;
+            this.locale = locale;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested number of events must be positive"));
+                return;
+            }
+            synchronized (this) {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                if (!pending.isEmpty()) {
+                    scheduleFlush(0);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                unregister(this);
+            }
+        }
+
+        private void complete() {
+            if (!cancelled) {
+                cancel();
+                subscriber.onComplete();
+            }
+        }
+
+        private void offer(List<GqlJcrNodeEvent> events) {
+            if (cancelled) {
+                return;
+            }
+            synchronized (this) {
+                for (GqlJcrNodeEvent event : events) {
+                    if (!isObserved(event.getPath())) {
+                        // change of a node under the listener, but not under the paths of this subscription
+                        continue;
+                    }
+                    GqlJcrNodeEvent previous = pending.remove(event.getPath());
+                    GqlJcrNodeEvent coalesced = previous != null ? previous.coalesce(event) : event;
+                    if (coalesced != null) {
+                        pending.put(event.getPath(), coalesced);
+                    }
+                }
+                if (pending.size() > getMaxPendingEvents()) {
+                    // subscriber is too slow, only tell it which subtrees must be read again
+                    pending.clear();
+                    for (String path : paths) {
+                        pending.put(path, new GqlJcrNodeEvent(GqlJcrNodeEvent.NodeEventType.RESYNC, path, null, workspace));
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    scheduleFlush(getDebounce());
+                }
+            }
+        }
+
+        private boolean isObserved(String path) {
+            for (String observedPath : paths) {
+                if (isUnder(path, observedPath)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void scheduleFlush(long delay) {
+            if (!flushScheduled) {
+                try {
+                    scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+                    flushScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Node events not delivered, observer is deactivated", e);
+                }
+            }
+        }
+
+        private void flush() {
+            List<GqlJcrNodeEvent> events = new ArrayList<>();
+            synchronized (this) {
+                flushScheduled = false;
+                Iterator<GqlJcrNodeEvent> it = pending.values().iterator();
+                while (!cancelled && events.size() < requested && it.hasNext()) {
+                    events.add(it.next());
+                    it.remove();
+                }
+            }
+            if (events.isEmpty()) {
+                return;
+            }
+
+            List<GqlJcrNodeEvent> readable = filter(events);
+            synchronized (this) {
+                requested -= readable.size();
+            }
+            for (GqlJcrNodeEvent event : readable) {
+                if (cancelled) {
+                    return;
+                }
+                subscriber.onNext(event);
+            }
+
+            synchronized (this) {
+                if (requested > 0 && !pending.isEmpty()) {
+                    scheduleFlush(0);
+                }
+            }
+        }
+
+        /**
+         * Keep the changes the subscriber is interested in and allowed to see. Removed nodes cannot be read anymore:
+         * their removal is delivered if the parent node is readable, whatever the node types requested. Dropped changes
+         * are always delivered the same way, so that filtering subscribers know they have missed changes.
+         */
+        private List<GqlJcrNodeEvent> filter(List<GqlJcrNodeEvent> events) {
+            try {
+                return JCRTemplate.getInstance().doExecute(user, workspace, locale, session -> {
+                    List<GqlJcrNodeEvent> result = new ArrayList<>(events.size());
+                    for (GqlJcrNodeEvent event : events) {
+                        if ((event.getEventType() == GqlJcrNodeEvent.NodeEventType.RESYNC || eventTypes.contains(event.getEventType()))
+                                && isVisible(session, event)) {
+                            result.add(event);
+                        }
+                    }
+                    return result;
+                });
+            } catch (RepositoryException e) {
+                logger.warn("Unable to filter node events for user " + user.getName(), e);
+                return Collections.emptyList();
+            }
+        }
+
+        private boolean isVisible(JCRSessionWrapper session, GqlJcrNodeEvent event) throws RepositoryException {
+            if (event.getEventType() == GqlJcrNodeEvent.NodeEventType.NODE_REMOVED || event.getEventType() == GqlJcrNodeEvent.NodeEventType.RESYNC) {
+                return session.nodeExists(getParentPath(event.getPath()));
+            }
+            JCRNodeWrapper node;
+            try {
+                node = session.getNode(event.getPath());
+            } catch (PathNotFoundException e) {
+                // not readable, or removed since then
+                return false;
+            }
+            if (types.isEmpty()) {
+                return true;
+            }
+            for (String type : types) {
+                if (node.isNodeType(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class ListenerKey {
+
+        private final String workspace;
+        private final String path;
+
+        private ListenerKey(String workspace, String path) {
+            this.workspace = workspace;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ListenerKey that = (ListenerKey) o;
+            return workspace.equals(that.workspace) && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(workspace, path);
+        }
+    }
+}
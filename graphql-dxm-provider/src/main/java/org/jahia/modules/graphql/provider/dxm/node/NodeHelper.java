@@ -43,68 +43,96 @@
  */
 package org.jahia.modules.graphql.provider.dxm.node;
 
+import graphql.schema.DataFetchingEnvironment;
 import org.apache.commons.collections4.Predicate;
 import org.apache.commons.collections4.functors.AllPredicate;
 import org.apache.commons.collections4.functors.AnyPredicate;
 import org.apache.commons.collections4.functors.NonePredicate;
 import org.apache.commons.collections4.functors.TruePredicate;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
+import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
 import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRPropertyWrapper;
 import org.jahia.services.content.JCRSessionFactory;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.utils.LanguageCodeConverters;
 
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Locale;
+import javax.jcr.Value;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class NodeHelper {
 
     private static HashMap<GqlJcrNode.PropertyEvaluation, PropertyEvaluationAlgorithm> ALGORITHM_BY_EVALUATION = new HashMap<>();
 
+    private static final int MAX_LOCALES = 256;
+
+    // language codes come from the queries: keep the most recently used locales only
+    private static final Map<String, Locale> LOCALES = Collections.synchronizedMap(new LinkedHashMap<String, Locale>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Locale> eldest) {
+            return size() > MAX_LOCALES;
+        }
+    });
+
     static {
 
         ALGORITHM_BY_EVALUATION.put(GqlJcrNode.PropertyEvaluation.PRESENT, new PropertyEvaluationAlgorithm() {
 
             @Override
-            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue) {
-                return hasProperty(node, language, propertyName);
+            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader) {
+                return hasProperty(node, language, propertyName, loader);
             }
         });
 
         ALGORITHM_BY_EVALUATION.put(GqlJcrNode.PropertyEvaluation.ABSENT, new PropertyEvaluationAlgorithm() {
 
             @Override
-            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue) {
-                return !hasProperty(node, language, propertyName);
+            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader) {
+                return !hasProperty(node, language, propertyName, loader);
             }
         });
 
         ALGORITHM_BY_EVALUATION.put(GqlJcrNode.PropertyEvaluation.EQUAL, new PropertyEvaluationAlgorithm() {
 
             @Override
-            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue) {
+            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader) {
                 if (propertyValue == null) {
                     throw new GqlJcrWrongInputException("Property value is required for " + GqlJcrNode.PropertyEvaluation.EQUAL + " evaluation");
                 }
-                return hasPropertyValue(node, language, propertyName, propertyValue);
+                return hasPropertyValue(node, language, propertyName, propertyValue, loader);
             }
         });
 
         ALGORITHM_BY_EVALUATION.put(GqlJcrNode.PropertyEvaluation.DIFFERENT, new PropertyEvaluationAlgorithm() {
 
             @Override
-            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue) {
+            public boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader) {
                 if (propertyValue == null) {
                     throw new GqlJcrWrongInputException("Property value is required for " + GqlJcrNode.PropertyEvaluation.DIFFERENT + " evaluation");
                 }
-                return !hasPropertyValue(node, language, propertyName, propertyValue);
+                return !hasPropertyValue(node, language, propertyName, propertyValue, loader);
             }
         });
     }
 
     public static Predicate<JCRNodeWrapper> getPropertiesPredicate(GqlJcrNode.NodePropertiesInput propertiesFilter) {
+        return getPropertiesPredicate(propertiesFilter, new NodeLoader());
+    }
+
+    /**
+     * Get the predicate implementing a properties filter, reading localized properties through a node loader so that
+     * each node is read at most once per language.
+     *
+     * @param propertiesFilter The properties filter; null for no filtering
+     * @param loader The loader of the current request
+     * @return The predicate
+     */
+    public static Predicate<JCRNodeWrapper> getPropertiesPredicate(GqlJcrNode.NodePropertiesInput propertiesFilter, NodeLoader loader) {
         Predicate<JCRNodeWrapper> propertiesPredicate;
         if (propertiesFilter == null) {
             propertiesPredicate = TruePredicate.truePredicate();
@@ -119,7 +147,7 @@ public class NodeHelper {
                 if (evaluationAlgorithm == null) {
                     throw new IllegalArgumentException("Unknown property evaluation: " + propertyEvaluation);
                 }
-                propertyPredicates.add(node -> evaluationAlgorithm.evaluate(node, propertyFilter.getLanguage(), propertyFilter.getPropertyName(), propertyFilter.getPropertyValue()));
+                propertyPredicates.add(node -> evaluationAlgorithm.evaluate(node, propertyFilter.getLanguage(), propertyFilter.getPropertyName(), propertyFilter.getPropertyValue(), loader));
             }
             propertiesPredicate = getCombinedPredicate(propertyPredicates, propertiesFilter.getMulticriteriaEvaluation(), GqlJcrNode.MulticriteriaEvaluation.ALL);
         }
@@ -161,18 +189,18 @@ public class NodeHelper {
         }
     }
 
-    private static boolean hasProperty(JCRNodeWrapper node, String language, String propertyName) {
+    private static boolean hasProperty(JCRNodeWrapper node, String language, String propertyName, NodeLoader loader) {
         try {
-            node = getNodeInLanguage(node, language);
+            node = loader.getNodeInLanguage(node, language);
             return node.hasProperty(propertyName);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static boolean hasPropertyValue(JCRNodeWrapper node, String language, String propertyName, String propertyValue) {
+    private static boolean hasPropertyValue(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader) {
         try {
-            node = getNodeInLanguage(node, language);
+            node = loader.getNodeInLanguage(node, language);
             if (!node.hasProperty(propertyName)) {
                 return false;
             }
@@ -184,28 +212,214 @@ public class NodeHelper {
 
 
 
+    /**
+     * Get the same node read in another language. Nothing is cached: use {@link NodeLoader#getNodeInLanguage} to read
+     * the localized node once per request.
+     *
+     * @param node The node
+     * @param language The language code; null to get the node itself
+     * @return The node read in the given language
+     * @throws RepositoryException In case the node cannot be read
+     */
     public static JCRNodeWrapper getNodeInLanguage(JCRNodeWrapper node, String language) throws RepositoryException {
         if (language == null) {
             return node;
         }
-        String workspace = node.getSession().getWorkspace().getName();
-        Locale locale = LanguageCodeConverters.languageCodeToLocale(language);
-        JCRSessionWrapper session = JCRSessionFactory.getInstance().getCurrentUserSession(workspace, locale);
+        JCRSessionWrapper nodeSession = node.getSession();
+        Locale locale = LOCALES.computeIfAbsent(language, LanguageCodeConverters::languageCodeToLocale);
+        JCRSessionWrapper session = JCRSessionFactory.getInstance().getCurrentUserSession(nodeSession.getWorkspace().getName(), locale);
+        if (session == nodeSession) {
+            return node;
+        }
         return session.getNodeByIdentifier(node.getIdentifier());
     }
 
-    static void collectDescendants(JCRNodeWrapper node, Predicate<JCRNodeWrapper> predicate, boolean recurse, Collection<GqlJcrNode> descendants) throws RepositoryException {
-        for (JCRNodeWrapper child : node.getNodes()) {
-            if (predicate.evaluate(child)) {
-                descendants.add(SpecializedTypesHandler.getNode(child));
+    /**
+     * Get a lazy stream of the descendants of a node that match a predicate, in document order. The sub-tree is
+     * traversed only as far as the stream is consumed.
+     *
+     * @param node The node to get descendants of
+     * @param predicate The predicate descendants must match to be part of the stream
+     * @param recurse Whether to traverse the whole sub-tree, or only the direct children
+     * @return The matching descendants
+     */
+    public static Stream<JCRNodeWrapper> getDescendants(JCRNodeWrapper node, Predicate<JCRNodeWrapper> predicate, boolean recurse) {
+        Iterator<JCRNodeWrapper> iterator = new DescendantsIterator(node, recurse);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .filter(predicate::evaluate);
+    }
+
+    /**
+     * Get the paginated children of a node matching filters, optionally sorted.
+     *
+     * @param node The node to get children of
+     * @param names Filter of child nodes by their names; null to avoid such filtering
+     * @param typesFilter Filter of child nodes by their types; null to avoid such filtering
+     * @param propertiesFilter Filter of child nodes by their property values; null to avoid such filtering
+     * @param sortBy Sort of child nodes by a property value; null to keep the repository order
+     * @param environment The data fetching environment of the connection
+     * @return The paginated child nodes
+     */
+    static DXPaginatedData<GqlJcrNode> getChildren(JCRNodeWrapper node, Collection<String> names, GqlJcrNode.NodeTypesInput typesFilter, GqlJcrNode.NodePropertiesInput propertiesFilter, GqlJcrNode.NodeSortInput sortBy, DataFetchingEnvironment environment) {
+        PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
+        NodeLoader loader = NodeLoader.get(environment);
+        Predicate<JCRNodeWrapper> predicate = getNodesPredicate(names, typesFilter, propertiesFilter, loader);
+        Supplier<Stream<GqlJcrNode>> children = () -> getDescendants(node, predicate, false).map(NodeHelper::getGqlNode);
+        if (sortBy != null) {
+            return PaginationHelper.paginate(children, n -> getSortKey(n.getNode(), sortBy, loader), getSortComparator(sortBy), n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+        }
+        return PaginationHelper.paginate(children, n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+    }
+
+    /**
+     * Get the paginated descendants of a node matching filters, optionally sorted. The search index selects the
+     * candidate descendants when the filters or the sort can be expressed as a query, the sub-tree is traversed
+     * otherwise.
+     *
+     * @param node The node to get descendants of
+     * @param typesFilter Filter of descendant nodes by their types; null to avoid such filtering
+     * @param propertiesFilter Filter of descendant nodes by their property values; null to avoid such filtering
+     * @param sortBy Sort of descendant nodes by a property value; null to keep the repository order
+     * @param environment The data fetching environment of the connection
+     * @return The paginated descendant nodes
+     */
+    static DXPaginatedData<GqlJcrNode> getDescendants(JCRNodeWrapper node, GqlJcrNode.NodeTypesInput typesFilter, GqlJcrNode.NodePropertiesInput propertiesFilter, GqlJcrNode.NodeSortInput sortBy, DataFetchingEnvironment environment) {
+        PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
+        NodeLoader loader = NodeLoader.get(environment);
+        Predicate<JCRNodeWrapper> predicate = getNodesPredicate(null, typesFilter, propertiesFilter, loader);
+        DescendantsQuery query;
+        try {
+            query = DescendantsQuery.build(node, typesFilter, propertiesFilter, sortBy);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+        Supplier<Stream<GqlJcrNode>> descendants;
+        if (query != null) {
+            // let the index select the candidates, filters are still checked on each of them
+            descendants = () -> query.execute(node).filter(predicate::evaluate).map(NodeHelper::getGqlNode);
+        } else {
+            descendants = () -> getDescendants(node, predicate, true).map(NodeHelper::getGqlNode);
+        }
+        if (sortBy != null && (query == null || !query.isSorted())) {
+            return PaginationHelper.paginate(descendants, n -> getSortKey(n.getNode(), sortBy, loader), getSortComparator(sortBy), n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+        }
+        return PaginationHelper.paginate(descendants, n -> PaginationHelper.encodeCursor(n.getUuid()), arguments);
+    }
+
+    /**
+     * Get the value a node is sorted by: the typed value of the sort property, read in the sort language if any.
+     *
+     * @param node The node
+     * @param sortBy The sort
+     * @param loader The loader of the current request, reading the node in the sort language
+     * @return The sort value, null if the node has no such property
+     */
+    static Comparable<?> getSortKey(JCRNodeWrapper node, GqlJcrNode.NodeSortInput sortBy, NodeLoader loader) {
+        try {
+            node = loader.getNodeInLanguage(node, sortBy.getLanguage());
+            if (!node.hasProperty(sortBy.getPropertyName())) {
+                return null;
             }
-            if (recurse) {
-                collectDescendants(child, predicate, true, descendants);
+            JCRPropertyWrapper property = node.getProperty(sortBy.getPropertyName());
+            if (!property.isMultiple()) {
+                return getSortKey(property.getValue(), sortBy);
             }
+            Value[] values = property.getValues();
+            if (values.length == 0) {
+                return null;
+            }
+            Comparable<?>[] keys = new Comparable<?>[values.length];
+            for (int i = 0; i < values.length; i++) {
+                keys[i] = getSortKey(values[i], sortBy);
+            }
+            return new MultipleSortKey(keys);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Comparable<?> getSortKey(Value value, GqlJcrNode.NodeSortInput sortBy) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.LONG:
+                return value.getLong();
+            case PropertyType.DOUBLE:
+                return value.getDouble();
+            case PropertyType.DECIMAL:
+                return value.getDecimal();
+            case PropertyType.DATE:
+                return value.getDate().getTimeInMillis();
+            case PropertyType.BOOLEAN:
+                return value.getBoolean();
+            default:
+                return sortBy.isIgnoreCase() ? value.getString().toLowerCase() : value.getString();
+        }
+    }
+
+    /**
+     * Get the comparator of sort values, ordering them the way the search index orders the results of a query sorted
+     * with {@link QueryHelper#addOrderBy}, so that a sort gives the same order whether it is done by a query or in
+     * memory: nodes without value come first in ascending order, values of the same type are compared by value,
+     * strings by their UTF-16 code units without any locale collation, values of different types by the name of
+     * their type, and the values of multiple valued properties one after the other.
+     *
+     * @param sortBy The sort
+     * @return The comparator
+     */
+    static Comparator<Comparable<?>> getSortComparator(GqlJcrNode.NodeSortInput sortBy) {
+        Comparator<Comparable<?>> comparator = Comparator.nullsFirst(NodeHelper::compareSortKeys);
+        return sortBy.isDescending() ? comparator.reversed() : comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareSortKeys(Comparable<?> v1, Comparable<?> v2) {
+        if (v1.getClass() == v2.getClass()) {
+            return ((Comparable<Object>) v1).compareTo(v2);
+        }
+        return v1.getClass().getName().compareTo(v2.getClass().getName());
+    }
+
+    /**
+     * Sort value of a multiple valued property, compared value by value.
+     */
+    private static class MultipleSortKey implements Comparable<MultipleSortKey> {
+
+        private final Comparable<?>[] keys;
+
+        private MultipleSortKey(Comparable<?>[] keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public int compareTo(MultipleSortKey other) {
+            for (int i = 0; i < keys.length && i < other.keys.length; i++) {
+                int result = compareSortKeys(keys[i], other.keys[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(keys.length, other.keys.length);
+        }
+    }
+
+    /**
+     * Get the GraphQL representation of a node, wrapping repository exceptions so that it can be used in streams.
+     *
+     * @param node The JCR node
+     * @return GraphQL representation of the node
+     */
+    static GqlJcrNode getGqlNode(JCRNodeWrapper node) {
+        try {
+            return SpecializedTypesHandler.getNode(node);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
         }
     }
 
     static Predicate<JCRNodeWrapper> getNodesPredicate(final Collection<String> names, final GqlJcrNode.NodeTypesInput typesFilter, final GqlJcrNode.NodePropertiesInput propertiesFilter) {
+        return getNodesPredicate(names, typesFilter, propertiesFilter, new NodeLoader());
+    }
+
+    static Predicate<JCRNodeWrapper> getNodesPredicate(final Collection<String> names, final GqlJcrNode.NodeTypesInput typesFilter, final GqlJcrNode.NodePropertiesInput propertiesFilter, NodeLoader loader) {
 
         Predicate<JCRNodeWrapper> namesPredicate;
         if (names == null) {
@@ -222,14 +436,59 @@ public class NodeHelper {
 
         Predicate<JCRNodeWrapper> typesPredicate = getTypesPredicate(typesFilter);
 
-        Predicate<JCRNodeWrapper> propertiesPredicate = getPropertiesPredicate(propertiesFilter);
+        Predicate<JCRNodeWrapper> propertiesPredicate = getPropertiesPredicate(propertiesFilter, loader);
 
         @SuppressWarnings("unchecked") Predicate<JCRNodeWrapper> result = AllPredicate.allPredicate(GqlJcrNodeImpl.DEFAULT_CHILDREN_PREDICATE, namesPredicate, typesPredicate, propertiesPredicate);
         return result;
     }
 
     private interface PropertyEvaluationAlgorithm {
-        boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue);
+        boolean evaluate(JCRNodeWrapper node, String language, String propertyName, String propertyValue, NodeLoader loader);
+    }
+
+    /**
+     * Depth first iterator over the descendants of a node, children being visited before their own sub-tree.
+     */
+    private static class DescendantsIterator implements Iterator<JCRNodeWrapper> {
+
+        private final boolean recurse;
+        private final Deque<Iterator<JCRNodeWrapper>> stack = new ArrayDeque<>();
+
+        DescendantsIterator(JCRNodeWrapper node, boolean recurse) {
+            this.recurse = recurse;
+            stack.push(getChildren(node));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!stack.isEmpty()) {
+                if (stack.peek().hasNext()) {
+                    return true;
+                }
+                stack.pop();
+            }
+            return false;
+        }
+
+        @Override
+        public JCRNodeWrapper next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JCRNodeWrapper child = stack.peek().next();
+            if (recurse) {
+                stack.push(getChildren(child));
+            }
+            return child;
+        }
+
+        private static Iterator<JCRNodeWrapper> getChildren(JCRNodeWrapper node) {
+            try {
+                return node.getNodes().iterator();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 
 
@@ -0,0 +1,377 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.Try;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLContext;
+import org.jahia.modules.graphql.provider.dxm.instrumentation.FieldMetrics;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request scoped loader of GraphQL node representations by UUID or path.
+ *
+ * Nodes are cached by session and UUID/path, so that the same node requested several times in a single GraphQL
+ * request (aliased fields, lists containing duplicates) is only read from the repository and wrapped once. Nodes are
+ * not shared between sessions, as fields resolved on other threads use their own sessions. Nodes read in another
+ * language are cached the same way, by session of the original node, language and UUID.
+ *
+ * Once batching is enabled for a request, the nodes requested through the load methods on the request thread are
+ * queued and resolved together when the request data loaders are dispatched, once per execution level, instead of
+ * one at a time by each field. Nodes requested on other threads (parallel execution workers, render executor) are
+ * resolved immediately, with the sessions of these threads.
+ */
+public class NodeLoader {
+
+    /**
+     * Name of the data loader of nodes by UUID in the request data loader registry
+     */
+    public static final String NODES_BY_ID = "nodesById";
+
+    /**
+     * Name of the data loader of nodes by path in the request data loader registry
+     */
+    public static final String NODES_BY_PATH = "nodesByPath";
+
+    private static final String ID_KEY = "id:";
+    private static final String PATH_KEY = "path:";
+
+    private final Map<JCRSessionWrapper, Map<String, GqlJcrNode>> nodesBySession = new ConcurrentHashMap<>();
+    private final Map<JCRSessionWrapper, Map<String, JCRNodeWrapper>> localizedNodesBySession = new ConcurrentHashMap<>();
+
+    // nodes are cached above, the data loaders only batch
+    private final DataLoader<Key, GqlJcrNode> nodesByIdLoader = DataLoader.newDataLoaderWithTry(
+            keys -> CompletableFuture.completedFuture(resolve(keys)), DataLoaderOptions.newOptions().setCachingEnabled(false));
+    private final DataLoader<Key, GqlJcrNode> nodesByPathLoader = DataLoader.newDataLoaderWithTry(
+            keys -> CompletableFuture.completedFuture(resolve(keys)), DataLoaderOptions.newOptions().setCachingEnabled(false));
+    private volatile Thread batchingThread;
+
+    /**
+     * Get the loader of the current GraphQL request.
+     *
+     * @param environment The data fetching environment
+     * @return The loader bound to the request context, or a new non shared loader if the context does not hold one
+     */
+    public static NodeLoader get(DataFetchingEnvironment environment) {
+        Object context = environment.getContext();
+        if (context instanceof DXGraphQLContext) {
+            return ((DXGraphQLContext) context).getNodeLoader();
+        }
+        return new NodeLoader();
+    }
+
+    /**
+     * Register the data loaders of this loader in the request registry, and batch the nodes requested through the load
+     * methods on the current thread until the registry dispatches them.
+     *
+     * @param registry The data loader registry of the request, dispatched by the data loader dispatcher instrumentation
+     */
+    public void enableBatching(DataLoaderRegistry registry) {
+        registry.register(NODES_BY_ID, nodesByIdLoader);
+        registry.register(NODES_BY_PATH, nodesByPathLoader);
+        batchingThread = Thread.currentThread();
+    }
+
+    /**
+     * Load GraphQL representation of a node by its UUID, batched with the other nodes requested at the same execution
+     * level when batching is enabled.
+     *
+     * @param session The session to read the node from
+     * @param uuid The UUID of the node
+     * @return GraphQL representation of the node, completed exceptionally in case the node cannot be read
+     */
+    public CompletableFuture<GqlJcrNode> loadNodeById(JCRSessionWrapper session, String uuid) {
+        GqlJcrNode node = getNodes(session).get(ID_KEY + uuid);
+        if (node != null) {
+            return CompletableFuture.completedFuture(node);
+        }
+        if (Thread.currentThread() == batchingThread) {
+            return nodesByIdLoader.load(new Key(session, uuid, () -> getNodeById(session, uuid)));
+        }
+        return complete(() -> getNodeById(session, uuid));
+    }
+
+    /**
+     * Load GraphQL representation of a node by its path, batched with the other nodes requested at the same execution
+     * level when batching is enabled.
+     *
+     * @param session The session to read the node from
+     * @param path The path of the node
+     * @return GraphQL representation of the node, completed exceptionally in case the node cannot be read
+     */
+    public CompletableFuture<GqlJcrNode> loadNodeByPath(JCRSessionWrapper session, String path) {
+        GqlJcrNode node = getNodes(session).get(PATH_KEY + path);
+        if (node != null) {
+            return CompletableFuture.completedFuture(node);
+        }
+        if (Thread.currentThread() == batchingThread) {
+            return nodesByPathLoader.load(new Key(session, path, () -> getNodeByPath(session, path)));
+        }
+        return complete(() -> getNodeByPath(session, path));
+    }
+
+    /**
+     * Load GraphQL representations of multiple nodes by their UUIDs.
+     *
+     * @param session The session to read the nodes from
+     * @param uuids The UUIDs of the nodes
+     * @return GraphQL representations of the nodes, in the order of the UUIDs passed, completed exceptionally in case
+     * any of the nodes cannot be read
+     */
+    public CompletableFuture<List<GqlJcrNode>> loadNodesById(JCRSessionWrapper session, Collection<String> uuids) {
+        List<CompletableFuture<GqlJcrNode>> futures = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            futures.add(loadNodeById(session, uuid));
+        }
+        return all(futures);
+    }
+
+    /**
+     * Load GraphQL representations of multiple nodes by their paths.
+     *
+     * @param session The session to read the nodes from
+     * @param paths The paths of the nodes
+     * @return GraphQL representations of the nodes, in the order of the paths passed, completed exceptionally in case
+     * any of the nodes cannot be read
+     */
+    public CompletableFuture<List<GqlJcrNode>> loadNodesByPath(JCRSessionWrapper session, Collection<String> paths) {
+        List<CompletableFuture<GqlJcrNode>> futures = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            futures.add(loadNodeByPath(session, path));
+        }
+        return all(futures);
+    }
+
+    /**
+     * Get GraphQL representation of a node by its UUID.
+     *
+     * @param session The session to read the node from
+     * @param uuid The UUID of the node
+     * @return GraphQL representation of the node
+     * @throws RepositoryException In case the node cannot be read
+     */
+    public GqlJcrNode getNodeById(JCRSessionWrapper session, String uuid) throws RepositoryException {
+        Map<String, GqlJcrNode> nodes = getNodes(session);
+        GqlJcrNode node = nodes.get(ID_KEY + uuid);
+        if (node == null) {
+            node = register(session, session.getNodeByIdentifier(uuid));
+        }
+        return node;
+    }
+
+    /**
+     * Get GraphQL representation of a node by its path.
+     *
+     * @param session The session to read the node from
+     * @param path The path of the node
+     * @return GraphQL representation of the node
+     * @throws RepositoryException In case the node cannot be read
+     */
+    public GqlJcrNode getNodeByPath(JCRSessionWrapper session, String path) throws RepositoryException {
+        Map<String, GqlJcrNode> nodes = getNodes(session);
+        GqlJcrNode node = nodes.get(PATH_KEY + path);
+        if (node == null) {
+            node = register(session, session.getNode(path));
+            // path used for the lookup may not be normalized
+            nodes.putIfAbsent(PATH_KEY + path, node);
+        }
+        return node;
+    }
+
+    /**
+     * Get GraphQL representations of multiple nodes by their UUIDs, each distinct UUID being read at most once.
+     *
+     * @param session The session to read the nodes from
+     * @param uuids The UUIDs of the nodes
+     * @return GraphQL representations of the nodes, in the order of the UUIDs passed
+     * @throws RepositoryException In case any of the nodes cannot be read
+     */
+    public List<GqlJcrNode> getNodesById(JCRSessionWrapper session, Collection<String> uuids) throws RepositoryException {
+        Map<String, GqlJcrNode> loaded = new LinkedHashMap<>();
+        for (String uuid : uuids) {
+            if (!loaded.containsKey(uuid)) {
+                loaded.put(uuid, getNodeById(session, uuid));
+            }
+        }
+        List<GqlJcrNode> result = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            result.add(loaded.get(uuid));
+        }
+        return result;
+    }
+
+    /**
+     * Get GraphQL representations of multiple nodes by their paths, each distinct path being read at most once.
+     *
+     * @param session The session to read the nodes from
+     * @param paths The paths of the nodes
+     * @return GraphQL representations of the nodes, in the order of the paths passed
+     * @throws RepositoryException In case any of the nodes cannot be read
+     */
+    public List<GqlJcrNode> getNodesByPath(JCRSessionWrapper session, Collection<String> paths) throws RepositoryException {
+        Map<String, GqlJcrNode> loaded = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (!loaded.containsKey(path)) {
+                loaded.put(path, getNodeByPath(session, path));
+            }
+        }
+        List<GqlJcrNode> result = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            result.add(loaded.get(path));
+        }
+        return result;
+    }
+
+    /**
+     * Get the same node read in another language, reading it at most once per request.
+     *
+     * @param node The node
+     * @param language The language code; null to get the node itself
+     * @return The node read in the given language
+     * @throws RepositoryException In case the node cannot be read
+     */
+    public JCRNodeWrapper getNodeInLanguage(JCRNodeWrapper node, String language) throws RepositoryException {
+        if (language == null) {
+            return node;
+        }
+        Map<String, JCRNodeWrapper> localizedNodes = localizedNodesBySession.computeIfAbsent(node.getSession(), s -> new ConcurrentHashMap<>());
+        String key = language + "/" + node.getIdentifier();
+        JCRNodeWrapper localizedNode = localizedNodes.get(key);
+        if (localizedNode == null) {
+            localizedNode = NodeHelper.getNodeInLanguage(node, language);
+            localizedNodes.put(key, localizedNode);
+        }
+        return localizedNode;
+    }
+
+    private GqlJcrNode register(JCRSessionWrapper session, JCRNodeWrapper jcrNode) throws RepositoryException {
+        Map<String, GqlJcrNode> nodes = getNodes(session);
+        GqlJcrNode node = SpecializedTypesHandler.getNode(jcrNode);
+        GqlJcrNode existing = nodes.putIfAbsent(ID_KEY + jcrNode.getIdentifier(), node);
+        if (existing != null) {
+            return existing;
+        }
+        nodes.putIfAbsent(PATH_KEY + jcrNode.getPath(), node);
+        return node;
+    }
+
+    private Map<String, GqlJcrNode> getNodes(JCRSessionWrapper session) {
+        return nodesBySession.computeIfAbsent(session, s -> new ConcurrentHashMap<>());
+    }
+
+    private static List<Try<GqlJcrNode>> resolve(List<Key> keys) {
+        // keys requested several times in the batch are resolved from the cache after the first time
+        List<Try<GqlJcrNode>> result = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            result.add(Try.tryCall(key.resolver));
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> complete(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(callable.call());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenApply(v -> {
+            List<T> result = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                result.add(future.join());
+            }
+            return result;
+        });
+    }
+
+    private static class Key {
+
+        private final JCRSessionWrapper session;
+        private final String value;
+        // counts the node loads to the fetch requesting the node, although it is resolved when the batch is dispatched
+        private final Callable<GqlJcrNode> resolver;
+
+        private Key(JCRSessionWrapper session, String value, Callable<GqlJcrNode> resolver) {
+            this.session = session;
+            this.value = value;
+            this.resolver = FieldMetrics.bindToCurrentFetch(resolver);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return session.equals(key.session) && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(session, value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import graphql.annotations.annotationTypes.GraphQLDataFetcher;
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+import graphql.annotations.annotationTypes.GraphQLType;
+import graphql.annotations.annotationTypes.GraphQLTypeExtension;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLProvider;
+import org.jahia.modules.graphql.provider.dxm.PublisherTypeFunction;
+import org.jahia.services.content.JCRSessionFactory;
+import org.reactivestreams.Publisher;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A subscription extension that adds a possibility to be notified of the changes of the nodes under some paths.
+ *
+ * The GraphQL servlet of the module does not stream results: subscriptions are served as server-sent events by the
+ * SubscriptionServlet.
+ */
+@GraphQLTypeExtension(DXGraphQLProvider.Subscription.class)
+public class NodeSubscriptionExtensions {
+
+    /**
+     * Subscription to the changes of the nodes under some paths.
+     *
+     * @param paths The paths under which changes are notified
+     * @param types Only notify the changes of nodes of any of these types; null for any node type
+     * @param eventTypes Only notify these types of changes; null for any change
+     * @param workspace The name of the workspace to observe; null to use 'edit' by default
+     * @param environment The data fetching environment
+     * @return A publisher of the changes visible to the current user
+     */
+    @GraphQLField
+    @GraphQLName("nodeChanged")
+    @GraphQLNonNull
+    @GraphQLType(PublisherTypeFunction.class)
+    @GraphQLDescription("Changes of the nodes under some paths, including the nodes at these paths; changes of the same node happening in a short period of time are coalesced")
+    @GraphQLDataFetcher(NodeChangedDataFetcher.class)
+    public static Publisher<GqlJcrNodeEvent> getNodeChanged(@GraphQLName("paths") @GraphQLNonNull @GraphQLDescription("The paths under which changes are notified") Collection<@GraphQLNonNull String> paths,
+                                                            @GraphQLName("types") @GraphQLDescription("Only notify the changes of nodes of any of these types; null for any node type. Removals are notified whatever the types") Collection<@GraphQLNonNull String> types,
+                                                            @GraphQLName("eventTypes") @GraphQLDescription("Only notify these types of changes; null for any change") Collection<GqlJcrNodeEvent.@GraphQLNonNull NodeEventType> eventTypes,
+                                                            @GraphQLName("workspace") @GraphQLDescription("The name of the workspace to observe; either 'edit', 'live', or null to use 'edit' by default") NodeQueryExtensions.Workspace workspace,
+                                                            DataFetchingEnvironment environment) {
+        return new NodeChangedDataFetcher().get(environment);
+    }
+
+    /**
+     * Data fetcher of the nodeChanged subscription, returning a publisher of the node changes visible to the current
+     * user.
+     */
+    public static class NodeChangedDataFetcher implements DataFetcher<Publisher<GqlJcrNodeEvent>> {
+
+        @Override
+        public Publisher<GqlJcrNodeEvent> get(DataFetchingEnvironment environment) {
+            Collection<String> paths = environment.getArgument("paths");
+            Collection<String> types = environment.getArgument("types");
+            Collection<GqlJcrNodeEvent.NodeEventType> eventTypes = environment.getArgument("eventTypes");
+            NodeQueryExtensions.Workspace workspace = environment.getArgument("workspace");
+
+            if (paths.isEmpty()) {
+                throw new GqlJcrWrongInputException("At least one path must be passed");
+            }
+            for (String path : paths) {
+                if (!path.startsWith("/")) {
+                    throw new GqlJcrWrongInputException("Path '" + path + "' is not absolute");
+                }
+            }
+
+            NodeChangeObserver observer = NodeChangeObserver.getInstance();
+            if (observer == null) {
+                throw new IllegalStateException("Node change observer is not available");
+            }
+            JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+            return observer.getPublisher(workspace != null ? workspace.getValue() : NodeQueryExtensions.Workspace.EDIT.getValue(), paths,
+                    types != null ? types : Collections.emptyList(), eventTypes != null ? eventTypes : Collections.emptyList(),
+                    sessionFactory.getCurrentUser(), sessionFactory.getCurrentLocale());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.jahia.services.content.JCRSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.EventListener;
+
+/**
+ * Helper registering JCR event listeners for the components of the module.
+ *
+ * A listener is only notified as long as the session it has been added with is alive: the sessions obtained through
+ * JCRTemplate are logged out as soon as the callback returns, removing their listeners along with them. Listeners are
+ * therefore added with a system session of the default provider opened for the registration only, and kept until the
+ * listener is removed, the same way DX registers its own observers.
+ */
+public class ObservationHelper {
+
+    private static Logger logger = LoggerFactory.getLogger(ObservationHelper.class);
+
+    /**
+     * Add a listener of the changes of a workspace.
+     *
+     * @param workspace The workspace to observe
+     * @param listener The listener
+     * @param eventTypes The types of events the listener is notified of
+     * @param path The path under which changes are observed
+     * @param deep Whether changes of the descendants of the path are observed
+     * @return The registration, to be removed once the listener is no longer needed
+     * @throws RepositoryException In case the listener cannot be added
+     */
+    public static Registration addEventListener(String workspace, EventListener listener, int eventTypes, String path, boolean deep) throws RepositoryException {
+        Session session = JCRSessionFactory.getInstance().getDefaultProvider().getSystemSession(null, workspace);
+        try {
+            session.getWorkspace().getObservationManager().addEventListener(listener, eventTypes, path, deep, null, null, false);
+        } catch (RepositoryException | RuntimeException e) {
+            session.logout();
+            throw e;
+        }
+        return new Registration(workspace, listener, session);
+    }
+
+    /**
+     * Listener added to a workspace, along with the session it has been added with.
+     */
+    public static class Registration {
+
+        private final String workspace;
+        private final EventListener listener;
+        private final Session session;
+
+        private Registration(String workspace, EventListener listener, Session session) {
+            this.workspace = workspace;
+            this.listener = listener;
+            this.session = session;
+        }
+
+        public String getWorkspace() {
+            return workspace;
+        }
+
+        /**
+         * Remove the listener and close the session it has been added with.
+         */
+        public void remove() {
+            try {
+                session.getWorkspace().getObservationManager().removeEventListener(listener);
+            } catch (RepositoryException e) {
+                logger.warn("Unable to unregister listener on workspace " + workspace, e);
+            } finally {
+                session.logout();
+            }
+        }
+    }
+}
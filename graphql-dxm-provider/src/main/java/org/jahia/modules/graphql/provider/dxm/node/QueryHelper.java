@@ -0,0 +1,297 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.jahia.modules.graphql.provider.dxm.relay.CursorSupport;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
+import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Helper executing JCR queries for paginated connections, pushing the pagination down to the query when possible.
+ */
+public class QueryHelper {
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\border\\s+by\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JOIN = Pattern.compile("\\bjoin\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SQL2_SELECTOR = Pattern.compile("\\bfrom\\s+\\[[^\\]]+\\]\\s+(?:as\\s+)?(?!where\\b)(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Execute a query and paginate its result.
+     *
+     * For system and root sessions, offset/limit arguments, as well as first when no cursor is used, are set as
+     * offset/limit of the JCR query (with one extra lookahead result to compute hasNextPage), so that only the requested
+     * page is loaded and wrapped. Other sessions cannot read every result node, while the query offset and limit are
+     * applied before the access checks: the offset is then skipped by iterating the result, so that only the readable
+     * nodes are counted.
+     *
+     * The after cursor (base64 encoded node UUID) is resolved by scanning the result up to the cursor node: the nodes
+     * before the cursor are not wrapped, but they are still all read. The total count is only computed when requested
+     * by the query, by iterating the remaining nodes of the result so that nodes the session cannot read are not
+     * counted; when the page was limited by the query and more results exist, the query is executed a second time to
+     * count them. Backward pagination (before/last arguments) requires the whole result.
+     *
+     * @param session The session to execute the query with
+     * @param statement The query statement
+     * @param language The query language
+     * @param mapper Function creating the GraphQL representation of a result node
+     * @param arguments Pagination arguments
+     * @return Paginated data
+     * @throws RepositoryException In case of issues executing the query
+     */
+    public static <T extends GqlJcrNode> DXPaginatedData<T> paginate(JCRSessionWrapper session, String statement, String language, Function<JCRNodeWrapper, T> mapper, PaginationHelper.Arguments arguments) throws RepositoryException {
+        CursorSupport<T> cursorSupport = n -> PaginationHelper.encodeCursor(n.getUuid());
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+
+        if (arguments.getBefore() != null || arguments.getLast() != null) {
+            List<T> result = new ArrayList<>();
+            NodeIterator nodes = queryManager.createQuery(statement, language).execute().getNodes();
+            while (nodes.hasNext()) {
+                result.add(mapper.apply((JCRNodeWrapper) nodes.nextNode()));
+            }
+            return PaginationHelper.paginate(result, cursorSupport, arguments);
+        }
+
+        boolean seek = arguments.getAfter() != null;
+        Integer size = arguments.getFirst() != null ? arguments.getFirst() : arguments.getLimit();
+        int offset = arguments.getOffset() != null ? arguments.getOffset() : 0;
+        boolean pushDown = !seek && isPushDownAllowed(session);
+        boolean limited = size != null && pushDown;
+
+        Query query = queryManager.createQuery(statement, language);
+        if (pushDown) {
+            if (offset > 0) {
+                query.setOffset(offset);
+            }
+            if (limited) {
+                query.setLimit(size + 1L);
+            }
+        }
+        NodeIterator nodes = query.execute().getNodes();
+
+        int startIndex = offset;
+        if (seek) {
+            int index = 0;
+            boolean found = false;
+            while (nodes.hasNext()) {
+                index++;
+                if (arguments.getAfter().equals(PaginationHelper.encodeCursor(nodes.nextNode().getIdentifier()))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (found) {
+                startIndex = index;
+            } else {
+                // unknown cursor is ignored, start again from the beginning
+                nodes = queryManager.createQuery(statement, language).execute().getNodes();
+            }
+        } else if (!pushDown) {
+            startIndex = (int) skip(nodes, offset);
+        }
+
+        List<T> page = new ArrayList<>();
+        while ((size == null || page.size() < size) && nodes.hasNext()) {
+            page.add(mapper.apply((JCRNodeWrapper) nodes.nextNode()));
+        }
+        boolean more = nodes.hasNext();
+
+        int totalCount = -1;
+        if (arguments.isTotalCountRequired()) {
+            if (pushDown && ((limited && more) || (page.isEmpty() && startIndex > 0))) {
+                totalCount = (int) count(queryManager.createQuery(statement, language).execute().getNodes());
+            } else {
+                totalCount = startIndex + page.size() + (int) count(nodes);
+            }
+        }
+
+        return new PaginationHelper.SimpleDXPaginatedData<>(page, startIndex, cursorSupport, !page.isEmpty() && startIndex > 0, !page.isEmpty() && more, totalCount);
+    }
+
+    /**
+     * Execute a query, pushing the optional offset and limit to the JCR query for system and root sessions, and
+     * applying them while iterating the readable result nodes otherwise.
+     *
+     * @param session The session to execute the query with
+     * @param statement The query statement
+     * @param language The query language
+     * @param offset Number of results to skip; null to start from the first result
+     * @param limit Maximum number of results; null for no limit
+     * @return The result nodes
+     * @throws RepositoryException In case of issues executing the query
+     */
+    public static List<JCRNodeWrapper> execute(JCRSessionWrapper session, String statement, String language, Integer offset, Integer limit) throws RepositoryException {
+        if (offset != null && offset < 0) {
+            throw new GqlJcrWrongInputException("Argument 'offset' can't be negative");
+        }
+        if (limit != null && limit < 0) {
+            throw new GqlJcrWrongInputException("Argument 'limit' can't be negative");
+        }
+        boolean pushDown = isPushDownAllowed(session);
+        Query query = session.getWorkspace().getQueryManager().createQuery(statement, language);
+        if (pushDown && offset != null) {
+            query.setOffset(offset);
+        }
+        if (pushDown && limit != null) {
+            query.setLimit(limit);
+        }
+        NodeIterator nodes = query.execute().getNodes();
+        if (!pushDown && offset != null) {
+            skip(nodes, offset);
+        }
+        List<JCRNodeWrapper> result = new ArrayList<>();
+        while ((limit == null || result.size() < limit) && nodes.hasNext()) {
+            result.add((JCRNodeWrapper) nodes.nextNode());
+        }
+        return result;
+    }
+
+    /**
+     * Get a lazy stream of query result nodes.
+     *
+     * @param nodes The result nodes
+     * @return The stream of the result nodes, in the order of the result
+     */
+    public static Stream<JCRNodeWrapper> stream(NodeIterator nodes) {
+        Iterator<JCRNodeWrapper> iterator = new Iterator<JCRNodeWrapper>() {
+
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public JCRNodeWrapper next() {
+                return (JCRNodeWrapper) nodes.nextNode();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Add an ORDER BY clause implementing a sort to a query statement, so that the sort is done by the search index.
+     *
+     * The sort can only be pushed down when the property is read the same way by the query and by the session: no sort
+     * language, and a session without locale (internationalized values are not stored on the node itself). The
+     * statement must not be already sorted; JCR-SQL2 statements must select from a single named selector.
+     *
+     * @param session The session the query is executed with
+     * @param statement The query statement
+     * @param language The query language
+     * @param sortBy The sort
+     * @return The sorted statement, or null if the sort has to be done in memory
+     */
+    public static String addOrderBy(JCRSessionWrapper session, String statement, String language, GqlJcrNode.NodeSortInput sortBy) {
+        String name = sortBy.getPropertyName();
+        if (sortBy.getLanguage() != null || session.getLocale() != null || name.contains("]") || name.contains(" ")
+                || ORDER_BY.matcher(statement).find()) {
+            return null;
+        }
+        if (Query.JCR_SQL2.equals(language)) {
+            Matcher matcher = SQL2_SELECTOR.matcher(statement);
+            if (!matcher.find() || JOIN.matcher(statement).find()) {
+                return null;
+            }
+            String operand = matcher.group(1) + ".[" + name + "]";
+            if (sortBy.isIgnoreCase()) {
+                operand = "LOWER(" + operand + ")";
+            }
+            return statement + " ORDER BY " + operand + (sortBy.isDescending() ? " DESC" : " ASC");
+        } else if (Query.XPATH.equals(language)) {
+            String operand = "@" + name;
+            if (sortBy.isIgnoreCase()) {
+                operand = "fn:lower-case(" + operand + ")";
+            }
+            return statement + " order by " + operand + (sortBy.isDescending() ? " descending" : " ascending");
+        }
+        return null;
+    }
+
+    /**
+     * The offset and limit of a query are applied to the raw result, before the nodes the session cannot read are
+     * filtered out: they can only be pushed down to the query when the session reads every node.
+     */
+    static boolean isPushDownAllowed(JCRSessionWrapper session) {
+        return session.isSystem() || (session.getUser() != null && session.getUser().isRoot());
+    }
+
+    /**
+     * Skip result nodes by iterating them, so that only the nodes the session can read are skipped.
+     *
+     * @return The number of skipped nodes, lower than the requested one when the end of the result is reached
+     */
+    static long skip(NodeIterator nodes, long count) {
+        long skipped = 0;
+        while (skipped < count && nodes.hasNext()) {
+            nodes.nextNode();
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Count the remaining nodes of a result by iterating them. The size reported by the iterator is not used: it
+     * includes the nodes the session cannot read, which are skipped by the iteration.
+     */
+    static long count(NodeIterator nodes) {
+        long count = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            count++;
+        }
+        return count;
+    }
+}
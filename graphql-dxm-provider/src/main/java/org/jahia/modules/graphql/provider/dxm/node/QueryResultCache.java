@@ -0,0 +1,431 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
+import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.usermanager.JahiaUser;
+import org.osgi.service.component.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.query.Query;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in cache of the nodesByQuery results.
+ *
+ * Results are cached as lists of node identifiers, keyed by query statement, query language, workspace, locale and
+ * current user, so that ACL filtered results are never shared between users. Only the requested page is read from
+ * the repository and wrapped on a hit. Entries are bounded in number and time to live, and are invalidated by JCR
+ * observation when content under the path restricting the query (or anywhere, for queries without a single path
+ * restriction) is changed, or when the ACL of the path or of one of its ancestors is changed.
+ *
+ * The cache is configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>queryCache.enabled: whether results are cached, false by default</li>
+ *     <li>queryCache.maxEntries: maximum number of cached results, 1000 by default</li>
+ *     <li>queryCache.timeToLive: time to live of a cached result in seconds, 60 by default</li>
+ * </ul>
+ * Hit, miss, eviction and invalidation counts are exposed as a JMX MBean.
+ */
+@Component(service = QueryResultCache.class, immediate = true)
+public class QueryResultCache implements QueryResultCacheMBean {
+
+    private static Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+    private static final String ENABLED = "queryCache.enabled";
+    private static final String MAX_ENTRIES = "queryCache.maxEntries";
+    private static final String TIME_TO_LIVE = "queryCache.timeToLive";
+
+    private static final long DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_TIME_TO_LIVE = 60;
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private static final String ACL_NODE = "j:acl";
+
+    private static final Pattern SQL2_PATH_CONSTRAINT = Pattern.compile("is(?:descendant|child|same)node\\s*\\((?:[^,)]*,)?\\s*['\\[]([^'\\]]+)['\\]]\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SQL2_ALTERNATIVES = Pattern.compile("\\b(?:or|not)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern XPATH_PATH = Pattern.compile("^\\s*/jcr:root(/[^\\[(*]*?)/*(?:element\\(|\\*|\\[|$)");
+
+    private static QueryResultCache instance;
+
+    private DXGraphQLConfig config;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > getMaxEntries()) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    // incremented on each change notification, so that results computed before a change are not cached
+    private long invalidations;
+
+    private final List<ObservationHelper.Registration> registrations = new ArrayList<>();
+    private ObjectName objectName;
+
+    public static QueryResultCache getInstance() {
+        return instance;
+    }
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        for (String workspace : Arrays.asList(Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE)) {
+            try {
+                registrations.add(ObservationHelper.addEventListener(workspace, events -> invalidate(workspace, events), EVENT_TYPES, "/", true));
+            } catch (RepositoryException e) {
+                logger.error("Unable to register query cache listener on workspace " + workspace, e);
+            }
+        }
+        try {
+            objectName = new ObjectName("org.jahia.modules.graphql:type=QueryResultCache");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            objectName = null;
+            logger.warn("Unable to register query cache MBean", e);
+        }
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+        for (ObservationHelper.Registration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                logger.warn("Unable to unregister query cache MBean", e);
+            }
+            objectName = null;
+        }
+        clear();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return config != null && config.getBooleanProperty(ENABLED, false);
+    }
+
+    /**
+     * Execute a query and paginate its result, using the cached node identifiers when available.
+     *
+     * @param session The session to execute the query with
+     * @param statement The query statement
+     * @param language The query language
+     * @param arguments Pagination arguments
+     * @return Paginated data
+     * @throws RepositoryException In case of issues executing the query
+     */
+    public DXPaginatedData<GqlJcrNode> paginate(JCRSessionWrapper session, String statement, String language, PaginationHelper.Arguments arguments) throws RepositoryException {
+        JahiaUser user = JCRSessionFactory.getInstance().getCurrentUser();
+        Key key = new Key(statement, language, session.getWorkspace().getName(), session.getLocale(), user != null ? user.getUserKey() : null);
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                entry = null;
+            }
+        }
+
+        if (entry != null) {
+            try {
+                DXPaginatedData<GqlJcrNode> result = paginate(session, entry.identifiers, arguments);
+                hitCount.incrementAndGet();
+                return result;
+            } catch (ItemNotFoundException e) {
+                // stale entry, the node has been removed before the invalidation was received
+                synchronized (entries) {
+                    entries.remove(key);
+                }
+            }
+        }
+
+        missCount.incrementAndGet();
+        long version;
+        synchronized (entries) {
+            version = invalidations;
+        }
+        List<String> identifiers = new ArrayList<>();
+        NodeIterator nodes = session.getWorkspace().getQueryManager().createQuery(statement, language).execute().getNodes();
+        while (nodes.hasNext()) {
+            identifiers.add(nodes.nextNode().getIdentifier());
+        }
+        synchronized (entries) {
+            // do not keep a result which may have been computed before the last change
+            if (invalidations == version) {
+                entries.put(key, new Entry(Collections.unmodifiableList(identifiers), getScope(statement, language), getTimeToLive()));
+            }
+        }
+        return paginate(session, identifiers, arguments);
+    }
+
+    private static DXPaginatedData<GqlJcrNode> paginate(JCRSessionWrapper session, List<String> identifiers, PaginationHelper.Arguments arguments) throws RepositoryException {
+        DXPaginatedData<String> ids = PaginationHelper.paginate(identifiers, PaginationHelper::encodeCursor, arguments);
+        List<GqlJcrNode> page = new ArrayList<>(ids.getNodesCount());
+        int startIndex = 0;
+        for (String identifier : ids) {
+            if (page.isEmpty()) {
+                startIndex = ids.getIndex(identifier);
+            }
+            page.add(SpecializedTypesHandler.getNode(session.getNodeByIdentifier(identifier)));
+        }
+        return new PaginationHelper.SimpleDXPaginatedData<>(page, startIndex, n -> PaginationHelper.encodeCursor(n.getUuid()),
+                ids.hasPreviousPage(), ids.hasNextPage(), ids.getTotalCount());
+    }
+
+    private void invalidate(String workspace, EventIterator events) {
+        Set<String> paths = new HashSet<>();
+        while (events.hasNext()) {
+            try {
+                paths.add(getChangedPath(events.nextEvent().getPath()));
+            } catch (RepositoryException e) {
+                logger.debug("Unable to read event path, invalidating all cached results of workspace " + workspace, e);
+                paths.add("/");
+            }
+        }
+        synchronized (entries) {
+            invalidations++;
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (e.getKey().workspace.equals(workspace) && e.getValue().isAffectedBy(paths)) {
+                    it.remove();
+                    invalidationCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the path of the content affected by a change. A change of the ACL of a node affects the whole sub-tree of the
+     * node, including query scopes located below it, so the path of the node owning the ACL is used instead.
+     */
+    static String getChangedPath(String path) {
+        int acl = path.indexOf("/" + ACL_NODE);
+        while (acl >= 0) {
+            int end = acl + ACL_NODE.length() + 1;
+            if (end == path.length() || path.charAt(end) == '/') {
+                return acl > 0 ? path.substring(0, acl) : "/";
+            }
+            acl = path.indexOf("/" + ACL_NODE, end);
+        }
+        return path;
+    }
+
+    /**
+     * Get the path a query is restricted to, so that only changes under this path invalidate its result.
+     *
+     * @return The path, or "/" if the query is not restricted to a single path
+     */
+    static String getScope(String statement, String language) {
+        if (Query.JCR_SQL2.equals(language)) {
+            Matcher matcher = SQL2_PATH_CONSTRAINT.matcher(statement);
+            if (matcher.find()) {
+                String path = matcher.group(1);
+                if (!matcher.find() && !SQL2_ALTERNATIVES.matcher(statement.replaceAll("'[^']*'", "''")).find()) {
+                    return path;
+                }
+            }
+        } else if (Query.XPATH.equals(language)) {
+            Matcher matcher = XPATH_PATH.matcher(statement);
+            if (matcher.find() && StringUtils.isNotEmpty(StringUtils.removeEnd(matcher.group(1), "/"))) {
+                return StringUtils.removeEnd(matcher.group(1), "/");
+            }
+        }
+        return "/";
+    }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            invalidations++;
+            entries.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+        invalidationCount.set(0);
+    }
+
+    private long getMaxEntries() {
+        return config != null ? config.getLongProperty(MAX_ENTRIES, DEFAULT_MAX_ENTRIES) : DEFAULT_MAX_ENTRIES;
+    }
+
+    private long getTimeToLive() {
+        return (config != null ? config.getLongProperty(TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE) : DEFAULT_TIME_TO_LIVE) * 1000L;
+    }
+
+    private static class Key {
+
+        private final String statement;
+        private final String language;
+        private final String workspace;
+        private final Locale locale;
+        private final String principal;
+
+        private Key(String statement, String language, String workspace, Locale locale, String principal) {
+            this.statement = statement;
+            this.language = language;
+            this.workspace = workspace;
+            this.locale = locale;
+            this.principal = principal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return statement.equals(key.statement) && language.equals(key.language) && workspace.equals(key.workspace)
+                    && Objects.equals(locale, key.locale) && Objects.equals(principal, key.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(statement, language, workspace, locale, principal);
+        }
+    }
+
+    private static class Entry {
+
+        private final List<String> identifiers;
+        private final String scope;
+        private final long expiration;
+
+        private Entry(List<String> identifiers, String scope, long timeToLive) {
+            this.identifiers = identifiers;
+            this.scope = scope;
+            this.expiration = System.currentTimeMillis() + timeToLive;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
+
+        private boolean isAffectedBy(Collection<String> paths) {
+            if (scope.equals("/")) {
+                return true;
+            }
+            for (String path : paths) {
+                // change below the scope, or move/removal of one of its ancestors
+                if (isSameOrDescendant(path, scope) || isSameOrDescendant(scope, path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isSameOrDescendant(String path, String ancestor) {
+            return path.equals(ancestor) || ancestor.equals("/") || path.startsWith(ancestor + "/");
+        }
+    }
+}
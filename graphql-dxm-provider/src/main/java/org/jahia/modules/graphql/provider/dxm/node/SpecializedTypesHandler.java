@@ -59,6 +59,9 @@ import javax.jcr.RepositoryException;
 import javax.jcr.nodetype.NoSuchNodeTypeException;
 import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.PropertyDefinition;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
@@ -81,18 +84,25 @@ public class SpecializedTypesHandler {
 
     private List<String> specializedTypes = new ArrayList<>();
     private Map<String, Class<? extends GqlJcrNode>> specializedTypesClass = new HashMap<>();
+    private volatile Map<String, NodeFactory> nodeFactories = Collections.emptyMap();
 
     private Map<String, GraphQLObjectType> knownTypes = new ConcurrentHashMap<>();
 
-    private static SpecializedTypesHandler instance;
+    // field definitions and types shared by all the generated types, built once per schema generation
+    private List<GraphQLFieldDefinition> nodeFields;
+    private Map<String, GraphQLFieldDefinition> sharedFields;
+    private Map<String, GraphQLOutputType> propertyTypes;
+
+    private static final DataFetcher NAMED_PROPERTIES_FETCHER = new NamedPropertiesDataFetcher();
+    private static final DataFetcher NAMED_CHILD_FETCHER = new NamedChildDataFetcher();
+
+    private static volatile SpecializedTypesHandler instance;
 
     public static SpecializedTypesHandler getInstance() {
         return instance;
     }
 
     public SpecializedTypesHandler(GraphQLAnnotationsComponent annotations, ProcessingElementsContainer container) {
-        instance = this;
-
         this.graphQLAnnotations = annotations;
         this.container = container;
     }
@@ -110,8 +120,17 @@ public class SpecializedTypesHandler {
     }
 
     public void initializeTypes() {
+        long start = System.currentTimeMillis();
         knownTypes = new HashMap<>();
         GraphQLInterfaceType interfaceType = (GraphQLInterfaceType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNode.class, container);
+        // the type resolver is created along with the interface type of each container: the schema built from this
+        // container resolves its nodes with the types of this handler, even once another handler is current
+        if (interfaceType.getTypeResolver() instanceof NodeTypeResolver) {
+            ((NodeTypeResolver) interfaceType.getTypeResolver()).handler = this;
+        }
+        nodeFields = ((GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, container)).getFieldDefinitions();
+        sharedFields = new HashMap<>();
+        propertyTypes = new HashMap<>();
         for (String typeName : specializedTypes) {
             try {
                 final ExtendedNodeType type = NodeTypeRegistry.getInstance().getNodeType(typeName);
@@ -125,9 +144,63 @@ public class SpecializedTypesHandler {
                 logger.error(e.getMessage(), e);
             }
         }
+        initializeNodeFactories();
+        for (String nodeType : nodeFactories.keySet()) {
+            knownTypes.put(nodeType, (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(specializedTypesClass.get(nodeType), container));
+        }
+
+        logger.info("Generated {} specialized GraphQL types ({} generated from node type definitions, {} shared field definitions) in {} ms",
+                knownTypes.size(), specializedTypes.size(), sharedFields.size(), System.currentTimeMillis() - start);
+        // only needed while generating the types
+        sharedFields = null;
+        propertyTypes = null;
+    }
+
+    /**
+     * Resolve the constructors of the specialized type classes, once per schema generation: the factories are then
+     * reused to wrap every node of these types.
+     */
+    void initializeNodeFactories() {
+        Map<String, NodeFactory> factories = new HashMap<>();
         for (Map.Entry<String, Class<? extends GqlJcrNode>> entry : specializedTypesClass.entrySet()) {
-            knownTypes.put(entry.getKey(), (GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(entry.getValue(), container));
+            try {
+                factories.put(entry.getKey(), createNodeFactory(entry.getValue()));
+            } catch (ReflectiveOperationException e) {
+                // nodes of this type could not be created as instances of the class, do not expose its GraphQL type
+                logger.error("No public constructor taking a JCRNodeWrapper found on class " + entry.getValue()
+                        + ", nodes of type " + entry.getKey() + " are exposed as generic nodes", e);
+            }
         }
+        nodeFactories = factories;
+    }
+
+    NodeFactory getNodeFactory(String type) {
+        return nodeFactories.get(type);
+    }
+
+    /**
+     * Wrap the nodes with the types of this handler, once the schema built with these types is served.
+     */
+    public void makeCurrent() {
+        instance = this;
+    }
+
+    /**
+     * Resolve once the constructor of a specialized type, so that wrapping a node does not require any reflective lookup.
+     */
+    static NodeFactory createNodeFactory(Class<? extends GqlJcrNode> clazz) throws ReflectiveOperationException {
+        MethodHandle constructor = MethodHandles.publicLookup()
+                .findConstructor(clazz, MethodType.methodType(void.class, JCRNodeWrapper.class))
+                .asType(MethodType.methodType(GqlJcrNode.class, JCRNodeWrapper.class));
+        return node -> {
+            try {
+                return (GqlJcrNode) constructor.invokeExact(node);
+            } catch (RepositoryException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        };
     }
 
     private GraphQLObjectType createGraphQLType(ExtendedNodeType type, String typeName, GraphQLInterfaceType interfaceType) {
@@ -137,7 +210,7 @@ public class SpecializedTypesHandler {
         final GraphQLObjectType.Builder builder = GraphQLObjectType.newObject()
                 .name(escapedTypeName)
                 .withInterface(interfaceType)
-                .fields(((GraphQLObjectType) graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, container)).getFieldDefinitions());
+                .fields(nodeFields);
 
         final PropertyDefinition[] properties = type.getPropertyDefinitions();
         if (properties.length > 0) {
@@ -148,11 +221,12 @@ public class SpecializedTypesHandler {
                 final boolean multiple = property.isMultiple();
                 if (!"*".equals(propName)) {
                     final String escapedPropName = PROPERTY_PREFIX + escape(propName);
-                    builder.field(newFieldDefinition()
+                    // properties inherited from common super types and mixins share the same definition
+                    builder.field(sharedFields.computeIfAbsent(escapedPropName + "/" + propertyType + "/" + multiple, k -> newFieldDefinition()
                             .name(escapedPropName)
-                            .dataFetcher(new NamedPropertiesDataFetcher())
+                            .dataFetcher(NAMED_PROPERTIES_FETCHER)
                             .type(getGraphQLType(propertyType, multiple))
-                            .build());
+                            .build()));
                 } else {
                     // Unnamed properties
 //                    final String propertyTypeName = PropertyType.nameFromValue(propertyType);
@@ -179,12 +253,12 @@ public class SpecializedTypesHandler {
                 if (!"*".equals(childName)) {
                     final String escapedChildName = CHILD_PREFIX + escape(childName);
                     final String childTypeName = getChildTypeName(child);
-                    GraphQLOutputType gqlChildType = new GraphQLTypeReference(specializedTypes.contains(childTypeName) ? escape(childTypeName) : "GenericJCRNode");
-                    builder.field(newFieldDefinition()
+                    final String gqlChildTypeName = specializedTypes.contains(childTypeName) ? escape(childTypeName) : "GenericJCRNode";
+                    builder.field(sharedFields.computeIfAbsent(escapedChildName + "/" + gqlChildTypeName, k -> newFieldDefinition()
                             .name(escapedChildName)
-                            .type(gqlChildType)
-                            .dataFetcher(new NamedChildDataFetcher())
-                            .build());
+                            .type(new GraphQLTypeReference(gqlChildTypeName))
+                            .dataFetcher(NAMED_CHILD_FETCHER)
+                            .build()));
                 } else {
                     // Unnamed children
 //                    final String childTypeName = getChildTypeName(child);
@@ -227,6 +301,10 @@ public class SpecializedTypesHandler {
     }
 
     private GraphQLOutputType getGraphQLType(int jcrPropertyType, boolean multiValued) {
+        return propertyTypes.computeIfAbsent(jcrPropertyType + "/" + multiValued, k -> createPropertyType(jcrPropertyType, multiValued));
+    }
+
+    private GraphQLOutputType createPropertyType(int jcrPropertyType, boolean multiValued) {
         GraphQLOutputType type;
         switch (jcrPropertyType) {
             case PropertyType.BOOLEAN:
@@ -267,12 +345,9 @@ public class SpecializedTypesHandler {
     }
 
     public static GqlJcrNode getNode(JCRNodeWrapper node, String type) throws RepositoryException {
-        if (getInstance().specializedTypesClass.containsKey(type)) {
-            try {
-                return getInstance().specializedTypesClass.get(type).getConstructor(new Class[] {JCRNodeWrapper.class}).newInstance(node);
-            } catch (ReflectiveOperationException e) {
-                throw new RuntimeException(e);
-            }
+        NodeFactory factory = getInstance().getNodeFactory(type);
+        if (factory != null) {
+            return factory.create(node);
         } else {
             return new GqlJcrNodeImpl(node, type);
         }
@@ -290,15 +365,26 @@ public class SpecializedTypesHandler {
         return name.replace("___", ".").replace("__", ":");
     }
 
+    @FunctionalInterface
+    interface NodeFactory {
+        GqlJcrNode create(JCRNodeWrapper node) throws RepositoryException;
+    }
+
     public static class NodeTypeResolver implements TypeResolver {
+
+        private volatile SpecializedTypesHandler handler;
+
         @Override
         public GraphQLObjectType getType(TypeResolutionEnvironment env) {
-            String type = ((GqlJcrNode) env.getObject()).getType();
-            SpecializedTypesHandler instance = SpecializedTypesHandler.getInstance();
-            if (instance.knownTypes.containsKey(type)) {
-                return instance.knownTypes.get(type);
+            GqlJcrNode node = env.getObject();
+            SpecializedTypesHandler handler = this.handler != null ? this.handler : SpecializedTypesHandler.getInstance();
+            GraphQLObjectType objectType = handler.knownTypes.get(node.getType());
+            Class<? extends GqlJcrNode> clazz = handler.specializedTypesClass.get(node.getType());
+            // the node may have been wrapped by the handler of another schema, with or without a specialized class
+            if (objectType != null && (clazz == null || clazz.isInstance(node))) {
+                return objectType;
             } else {
-                return (GraphQLObjectType) instance.graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, instance.container);
+                return (GraphQLObjectType) handler.graphQLAnnotations.getOutputTypeProcessor().getOutputTypeOrRef(GqlJcrNodeImpl.class, handler.container);
             }
         }
     }
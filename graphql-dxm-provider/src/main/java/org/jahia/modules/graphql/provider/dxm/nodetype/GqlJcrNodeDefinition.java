@@ -99,19 +99,19 @@ public class GqlJcrNodeDefinition implements GqlJcrItemDefinition {
     @Override
     @GraphQLNonNull
     public GqlJcrNodeType getDeclaringNodeType() {
-        return new GqlJcrNodeType(definition.getDeclaringNodeType());
+        return NodeTypeCatalog.getNodeType(definition.getDeclaringNodeType());
     }
 
     @GraphQLField
     @GraphQLDescription("Gets the minimum set of primary node types that the child node must have.")
     public List<GqlJcrNodeType> getRequiredPrimaryType() {
-        return Arrays.stream(definition.getRequiredPrimaryTypes()).map(GqlJcrNodeType::new).collect(Collectors.toList());
+        return Arrays.stream(definition.getRequiredPrimaryTypes()).map(NodeTypeCatalog::getNodeType).collect(Collectors.toList());
     }
 
     @GraphQLField
     @GraphQLDescription("Gets the default primary node type that will be assigned to the child node if it is created without an explicitly specified primary node type.")
     public GqlJcrNodeType getDefaultPrimaryType() {
-        return new GqlJcrNodeType(definition.getDefaultPrimaryType());
+        return NodeTypeCatalog.getNodeType(definition.getDefaultPrimaryType());
     }
 
     @GraphQLField
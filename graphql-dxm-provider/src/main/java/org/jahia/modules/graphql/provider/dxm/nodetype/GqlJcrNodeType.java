@@ -61,21 +61,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.nodetype.NoSuchNodeTypeException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * GraphQL representation of a JCR node type
+ *
+ * The definitions, sub-types, super-types and labels are computed on first use and kept, as instances are shared by
+ * all requests through the NodeTypeCatalog.
  */
 @GraphQLName("JCRNodeType")
 @GraphQLDescription("GraphQL representation of a JCR node type")
 public class GqlJcrNodeType {
     public static final Logger logger = LoggerFactory.getLogger(GqlJcrNodeType.class);
 
+    private static final Set<Locale> KNOWN_LOCALES = new HashSet<>(Arrays.asList(Locale.getAvailableLocales()));
+
     private ExtendedNodeType nodeType;
 
+    private volatile List<GqlJcrPropertyDefinition> properties;
+    private volatile List<GqlJcrNodeDefinition> nodes;
+    private volatile List<GqlJcrNodeType> subtypes;
+    private volatile List<GqlJcrNodeType> supertypes;
+    // only holds the labels of the locales known by the JVM, so that arbitrary languages passed by clients cannot grow it
+    private final Map<Locale, String> displayNames = new ConcurrentHashMap<>();
 
     public GqlJcrNodeType(ExtendedNodeType nodeType) {
         this.nodeType = nodeType;
@@ -92,8 +102,15 @@ public class GqlJcrNodeType {
 
     @GraphQLField()
     public String getDisplayName(@GraphQLName("language") @GraphQLNonNull String language) {
-        return nodeType.getLabel(LanguageCodeConverters.languageCodeToLocale(language));
+        Locale locale = LanguageCodeConverters.languageCodeToLocale(language);
+        if (!KNOWN_LOCALES.contains(locale)) {
+            return nodeType.getLabel(locale);
+        }
+        return displayNames.computeIfAbsent(locale, nodeType::getLabel);
+    }
 
+    int getDisplayNameCount() {
+        return displayNames.size();
     }
 
     @GraphQLField
@@ -144,13 +161,19 @@ public class GqlJcrNodeType {
     @GraphQLField
     @GraphQLDescription("Returns an array containing the property definitions of this node type.")
     public List<GqlJcrPropertyDefinition> getProperties() {
-        return Arrays.stream(nodeType.getPropertyDefinitions()).map(GqlJcrPropertyDefinition::new).collect(Collectors.toList());
+        if (properties == null) {
+            properties = Collections.unmodifiableList(Arrays.stream(nodeType.getPropertyDefinitions()).map(GqlJcrPropertyDefinition::new).collect(Collectors.toList()));
+        }
+        return properties;
     }
 
     @GraphQLField
     @GraphQLDescription("Returns an array containing the child node definitions of this node type.")
     public List<GqlJcrNodeDefinition> getNodes() {
-        return Arrays.stream(nodeType.getChildNodeDefinitions()).map(GqlJcrNodeDefinition::new).collect(Collectors.toList());
+        if (nodes == null) {
+            nodes = Collections.unmodifiableList(Arrays.stream(nodeType.getChildNodeDefinitions()).map(GqlJcrNodeDefinition::new).collect(Collectors.toList()));
+        }
+        return nodes;
     }
 
     @GraphQLField
@@ -158,13 +181,18 @@ public class GqlJcrNodeType {
     @GraphQLDescription("Returns all subtypes of this node type in the node type inheritance hierarchy.")
     public PaginatedData<GqlJcrNodeType> getSubtypes(DataFetchingEnvironment environment) {
         PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
-        List<GqlJcrNodeType> subTypes = nodeType.getSubtypesAsList().stream().map(GqlJcrNodeType::new).collect(Collectors.toList());
-        return PaginationHelper.paginate(subTypes, t -> PaginationHelper.encodeCursor(t.getName()), arguments);
+        if (subtypes == null) {
+            subtypes = Collections.unmodifiableList(nodeType.getSubtypesAsList().stream().map(NodeTypeCatalog::getNodeType).collect(Collectors.toList()));
+        }
+        return PaginationHelper.paginate(subtypes, t -> PaginationHelper.encodeCursor(t.getName()), arguments);
     }
 
     @GraphQLField
     @GraphQLDescription("Returns all supertypes of this node type in the node type inheritance hierarchy.")
     public List<GqlJcrNodeType> getSupertypes() {
-        return nodeType.getSupertypeSet().stream().map(GqlJcrNodeType::new).collect(Collectors.toList());
+        if (supertypes == null) {
+            supertypes = Collections.unmodifiableList(nodeType.getSupertypeSet().stream().map(NodeTypeCatalog::getNodeType).collect(Collectors.toList()));
+        }
+        return supertypes;
     }
 }
@@ -96,7 +96,7 @@ public class GqlJcrPropertyDefinition implements GqlJcrItemDefinition {
     @Override
     @GraphQLNonNull
     public GqlJcrNodeType getDeclaringNodeType() {
-        return new GqlJcrNodeType(definition.getDeclaringNodeType());
+        return NodeTypeCatalog.getNodeType(definition.getDeclaringNodeType());
     }
 
     @GraphQLField
@@ -0,0 +1,266 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.nodetype;
+
+import org.jahia.services.content.nodetypes.ExtendedNodeType;
+import org.jahia.services.content.nodetypes.NodeTypeRegistry;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.nodetype.NodeTypeIterator;
+import java.util.*;
+
+/**
+ * Catalog of the GraphQL representations of the node types, so that the same representation, with its lazily
+ * computed definitions, sub-types, super-types and labels, is served to all requests.
+ *
+ * The catalog is an immutable snapshot of the node type registry, holding the list of all the node types and the
+ * lists filtered by module and mixin flag. It is dropped on each change of the state of a module, as modules register
+ * and unregister their node type definitions along their lifecycle, and built again on the next use.
+ */
+@Component(service = NodeTypeCatalog.class, immediate = true)
+public class NodeTypeCatalog {
+
+    private static Logger logger = LoggerFactory.getLogger(NodeTypeCatalog.class);
+
+    private static NodeTypeCatalog instance;
+
+    private BundleContext bundleContext;
+    private volatile Snapshot snapshot;
+    // incremented on each change notification, so that snapshots built while node types are registered are not kept
+    private long invalidations;
+
+    // notified asynchronously, once the definitions of the module have been registered or unregistered
+    private final BundleListener bundleListener = event -> {
+        switch (event.getType()) {
+            case BundleEvent.RESOLVED:
+            case BundleEvent.UNRESOLVED:
+            case BundleEvent.STARTED:
+            case BundleEvent.STOPPED:
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNINSTALLED:
+                invalidate();
+                break;
+            default:
+        }
+    };
+
+    public static NodeTypeCatalog getInstance() {
+        return instance;
+    }
+
+    @Activate
+    public void activate(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        bundleContext.addBundleListener(bundleListener);
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+        bundleContext.removeBundleListener(bundleListener);
+        invalidate();
+    }
+
+    /**
+     * Drop the snapshot of the node type registry, to be built again on the next use.
+     */
+    public synchronized void invalidate() {
+        invalidations++;
+        snapshot = null;
+    }
+
+    /**
+     * Get the GraphQL representation of a node type by its name.
+     *
+     * @param name The name of the node type
+     * @return The GraphQL representation of the node type
+     * @throws NoSuchNodeTypeException If there is no node type with this name
+     */
+    public static GqlJcrNodeType getNodeType(String name) throws NoSuchNodeTypeException {
+        if (instance != null) {
+            GqlJcrNodeType nodeType = instance.getSnapshot().byName.get(name);
+            if (nodeType != null) {
+                return nodeType;
+            }
+        }
+        return new GqlJcrNodeType(NodeTypeRegistry.getInstance().getNodeType(name));
+    }
+
+    /**
+     * Get the GraphQL representation of a node type.
+     *
+     * @param nodeType The node type
+     * @return The GraphQL representation of the node type, shared by all requests if the node type is part of the catalog
+     */
+    public static GqlJcrNodeType getNodeType(ExtendedNodeType nodeType) {
+        if (instance != null) {
+            GqlJcrNodeType gqlNodeType = instance.getSnapshot().byName.get(nodeType.getName());
+            if (gqlNodeType != null && gqlNodeType.getNodeType() == nodeType) {
+                return gqlNodeType;
+            }
+        }
+        return new GqlJcrNodeType(nodeType);
+    }
+
+    /**
+     * Get the GraphQL representations of the node types, optionally restricted to some modules.
+     *
+     * @param modules The modules declaring the node types; null for all modules
+     * @param includeMixins Whether to include the mixin types
+     * @param includeNonMixins Whether to include the non mixin types
+     * @return The GraphQL representations of the node types, in the order of the registry
+     */
+    public static List<GqlJcrNodeType> getNodeTypes(List<String> modules, boolean includeMixins, boolean includeNonMixins) {
+        Snapshot current = instance != null ? instance.getSnapshot() : new Snapshot();
+        if (modules == null) {
+            return current.all.get(includeMixins, includeNonMixins);
+        }
+        if (modules.size() == 1) {
+            Views views = current.bySystemId.get(modules.get(0));
+            return views != null ? views.get(includeMixins, includeNonMixins) : Collections.emptyList();
+        }
+        Set<String> systemIds = new HashSet<>(modules);
+        List<GqlJcrNodeType> result = new ArrayList<>();
+        for (GqlJcrNodeType nodeType : current.all.get(includeMixins, includeNonMixins)) {
+            if (systemIds.contains(nodeType.getSystemId())) {
+                result.add(nodeType);
+            }
+        }
+        return result;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            long version;
+            synchronized (this) {
+                version = invalidations;
+            }
+            long start = System.currentTimeMillis();
+            current = new Snapshot();
+            synchronized (this) {
+                // do not keep a snapshot which may have been built before the last change
+                if (invalidations == version) {
+                    snapshot = current;
+                }
+            }
+            logger.debug("Node type catalog of {} types built in {} ms", current.size, System.currentTimeMillis() - start);
+        }
+        return current;
+    }
+
+    /**
+     * Immutable view of the node type registry.
+     */
+    private static class Snapshot {
+
+        private final long size;
+        private final Map<String, GqlJcrNodeType> byName;
+        private final Views all;
+        private final Map<String, Views> bySystemId;
+
+        private Snapshot() {
+            NodeTypeIterator nodeTypes = NodeTypeRegistry.getInstance().getAllNodeTypes();
+            size = nodeTypes.getSize();
+
+            Map<String, GqlJcrNodeType> byName = new HashMap<>();
+            List<GqlJcrNodeType> all = new ArrayList<>();
+            Map<String, List<GqlJcrNodeType>> bySystemId = new HashMap<>();
+            while (nodeTypes.hasNext()) {
+                GqlJcrNodeType nodeType = new GqlJcrNodeType((ExtendedNodeType) nodeTypes.nextNodeType());
+                byName.put(nodeType.getName(), nodeType);
+                all.add(nodeType);
+                bySystemId.computeIfAbsent(nodeType.getSystemId(), s -> new ArrayList<>()).add(nodeType);
+            }
+
+            this.byName = Collections.unmodifiableMap(byName);
+            this.all = new Views(all);
+            Map<String, Views> views = new HashMap<>();
+            for (Map.Entry<String, List<GqlJcrNodeType>> entry : bySystemId.entrySet()) {
+                views.put(entry.getKey(), new Views(entry.getValue()));
+            }
+            this.bySystemId = Collections.unmodifiableMap(views);
+        }
+    }
+
+    /**
+     * Lists of node types filtered by mixin flag.
+     */
+    private static class Views {
+
+        private final List<GqlJcrNodeType> all;
+        private final List<GqlJcrNodeType> mixins;
+        private final List<GqlJcrNodeType> nonMixins;
+
+        private Views(List<GqlJcrNodeType> nodeTypes) {
+            List<GqlJcrNodeType> mixins = new ArrayList<>();
+            List<GqlJcrNodeType> nonMixins = new ArrayList<>();
+            for (GqlJcrNodeType nodeType : nodeTypes) {
+                (nodeType.isMixin() ? mixins : nonMixins).add(nodeType);
+            }
+            this.all = Collections.unmodifiableList(nodeTypes);
+            this.mixins = Collections.unmodifiableList(mixins);
+            this.nonMixins = Collections.unmodifiableList(nonMixins);
+        }
+
+        private List<GqlJcrNodeType> get(boolean includeMixins, boolean includeNonMixins) {
+            if (includeMixins && includeNonMixins) {
+                return all;
+            }
+            if (includeMixins) {
+                return mixins;
+            }
+            return includeNonMixins ? nonMixins : Collections.emptyList();
+        }
+    }
+}
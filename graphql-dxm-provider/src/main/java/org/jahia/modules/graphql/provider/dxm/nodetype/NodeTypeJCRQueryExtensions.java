@@ -52,14 +52,9 @@ import org.jahia.modules.graphql.provider.dxm.node.GqlJcrQuery;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedDataConnectionFetcher;
 import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
-import org.jahia.services.content.nodetypes.ExtendedNodeType;
-import org.jahia.services.content.nodetypes.NodeTypeRegistry;
 
 import javax.jcr.nodetype.NoSuchNodeTypeException;
-import javax.jcr.nodetype.NodeTypeIterator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @GraphQLTypeExtension(GqlJcrQuery.class)
 public class NodeTypeJCRQueryExtensions {
@@ -74,7 +69,7 @@ public class NodeTypeJCRQueryExtensions {
     @GraphQLDescription("Get a nodetype by its name")
     public static GqlJcrNodeType getNodeTypeByName(@GraphQLNonNull @GraphQLName("name") String name) {
         try {
-            return new GqlJcrNodeType(NodeTypeRegistry.getInstance().getNodeType(name));
+            return NodeTypeCatalog.getNodeType(name);
         } catch (NoSuchNodeTypeException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -85,15 +80,10 @@ public class NodeTypeJCRQueryExtensions {
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     public static DXPaginatedData<GqlJcrNodeType> getNodeTypes(@GraphQLName("filter") NodeTypesListInput input,DataFetchingEnvironment environment) {
         PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
-        NodeTypeRegistry registry = NodeTypeRegistry.getInstance();
-        NodeTypeIterator nodeTypes = (input == null || input.getModules() == null) ? registry.getAllNodeTypes() : registry.getAllNodeTypes(input.getModules());
-        List<GqlJcrNodeType> mapped = Stream.generate(() -> ((ExtendedNodeType) nodeTypes.nextNodeType()))
-                .limit(nodeTypes.getSize())
-                .filter(n -> (n.isMixin() && (input == null || input.getIncludeMixins())) || (!n.isMixin() && (input == null || input.getIncludeNonMixins())))
-                .map(GqlJcrNodeType::new)
-                .collect(Collectors.toList());
+        List<GqlJcrNodeType> nodeTypes = (input == null) ? NodeTypeCatalog.getNodeTypes(null, true, true)
+                : NodeTypeCatalog.getNodeTypes(input.getModules(), input.getIncludeMixins(), input.getIncludeNonMixins());
 
-        return PaginationHelper.paginate(mapped, GqlJcrNodeType::getName, arguments);
+        return PaginationHelper.paginate(nodeTypes, GqlJcrNodeType::getName, arguments);
     }
 
 }
@@ -71,7 +71,7 @@ public class NodetypeJCRNodeExtensions {
     @GraphQLNonNull
     public GqlJcrNodeType getPrimaryNodeType() {
         try {
-            return new GqlJcrNodeType(node.getNode().getPrimaryNodeType());
+            return NodeTypeCatalog.getNodeType(node.getNode().getPrimaryNodeType());
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
@@ -89,7 +89,7 @@ public class NodetypeJCRNodeExtensions {
     @GraphQLNonNull
     public List<GqlJcrNodeType> getMixinTypes() {
         try {
-            return Arrays.stream(node.getNode().getMixinNodeTypes()).map(GqlJcrNodeType::new).collect(Collectors.toList());
+            return Arrays.stream(node.getNode().getMixinNodeTypes()).map(NodeTypeCatalog::getNodeType).collect(Collectors.toList());
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
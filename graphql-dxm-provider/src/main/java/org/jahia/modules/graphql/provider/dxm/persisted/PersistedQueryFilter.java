@@ -0,0 +1,327 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.persisted;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Servlet filter resolving persisted queries before the GraphQL servlet reads the request.
+ *
+ * Requests follow the automatic persisted queries protocol: the query hash is passed in the persistedQuery extension
+ * of the request ({"extensions": {"persistedQuery": {"version": 1, "sha256Hash": "..."}}}, or the extensions
+ * parameter of GET requests). When the request only holds the hash, the persisted query is passed to the servlet in
+ * place of the missing query, or a PersistedQueryNotFound error is returned so that the client sends the query along
+ * with its hash, which registers it. Requests without persistedQuery extension are passed unchanged.
+ *
+ * Persisted queries are disabled by default. JSON POST bodies are then passed to the servlet without being read by
+ * the filter. Once enabled, the body is buffered once as bytes and only parsed when it mentions a persisted query; the
+ * same bytes are then passed to the servlet. Requests with a malformed JSON body or extensions parameter are rejected
+ * with a 400 status and a GraphQL error.
+ */
+@Component(service = Filter.class, property = {"pattern=/graphql", "service.ranking:Integer=10"}, immediate = true)
+public class PersistedQueryFilter implements Filter {
+
+    private static final String PERSISTED_QUERY = "persistedQuery";
+    private static final String HASH = "sha256Hash";
+    private static final String QUERY = "query";
+    private static final String EXTENSIONS = "extensions";
+
+    private static final String NOT_FOUND = "PersistedQueryNotFound";
+    private static final String NOT_SUPPORTED = "PersistedQueryNotSupported";
+    private static final String HASH_MISMATCH = "provided sha does not match query";
+    private static final String MALFORMED_REQUEST = "Malformed JSON request: ";
+
+    private static final byte[] PERSISTED_QUERY_BYTES = PERSISTED_QUERY.getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private PersistedQueryRegistry registry;
+
+    @Reference
+    public void setRegistry(PersistedQueryRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if ("GET".equals(request.getMethod())) {
+            String extensions = request.getParameter(EXTENSIONS);
+            if (extensions == null || !extensions.contains(PERSISTED_QUERY)) {
+                chain.doFilter(request, response);
+                return;
+            }
+            ObjectNode graphQLRequest = mapper.createObjectNode();
+            try {
+                graphQLRequest.set(EXTENSIONS, mapper.readTree(extensions));
+            } catch (JsonProcessingException e) {
+                sendError(response, HttpServletResponse.SC_BAD_REQUEST, MALFORMED_REQUEST + e.getOriginalMessage());
+                return;
+            }
+            if (request.getParameter(QUERY) != null) {
+                graphQLRequest.put(QUERY, request.getParameter(QUERY));
+            }
+            String error = resolve(graphQLRequest);
+            if (error != null) {
+                sendError(response, error);
+            } else {
+                chain.doFilter(new ParametersRequest(request, graphQLRequest.get(QUERY).asText()), response);
+            }
+        } else if (registry.isEnabled() && "POST".equals(request.getMethod()) && request.getContentType() != null && request.getContentType().startsWith("application/json")) {
+            byte[] body = IOUtils.toByteArray(request.getInputStream());
+            JsonNode graphQLRequest;
+            try {
+                graphQLRequest = contains(body, PERSISTED_QUERY_BYTES) ? mapper.readTree(body) : null;
+            } catch (JsonProcessingException e) {
+                sendError(response, HttpServletResponse.SC_BAD_REQUEST, MALFORMED_REQUEST + e.getOriginalMessage());
+                return;
+            }
+            if (graphQLRequest instanceof ObjectNode && graphQLRequest.path(EXTENSIONS).has(PERSISTED_QUERY)) {
+                String error = resolve((ObjectNode) graphQLRequest);
+                if (error != null) {
+                    sendError(response, error);
+                    return;
+                }
+                body = mapper.writeValueAsBytes(graphQLRequest);
+            }
+            // the body has been consumed, pass it again to the servlet
+            chain.doFilter(new BodyRequest(request, body), response);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Resolve the query of a request holding a persistedQuery extension, and remove the extension from the request.
+     *
+     * @return The error to return to the client, or null if the request holds its query
+     */
+    private String resolve(ObjectNode graphQLRequest) {
+        if (!registry.isEnabled()) {
+            return NOT_SUPPORTED;
+        }
+        JsonNode extensions = graphQLRequest.get(EXTENSIONS);
+        String hash = extensions.path(PERSISTED_QUERY).path(HASH).asText(null);
+        ((ObjectNode) extensions).remove(PERSISTED_QUERY);
+        if (extensions.size() == 0) {
+            graphQLRequest.remove(EXTENSIONS);
+        }
+        if (hash == null) {
+            return NOT_FOUND;
+        }
+
+        String query = graphQLRequest.path(QUERY).asText(null);
+        if (query == null) {
+            query = registry.getQuery(hash);
+            if (query == null) {
+                return NOT_FOUND;
+            }
+            graphQLRequest.put(QUERY, query);
+        } else if (registry.isAutomaticEnabled()) {
+            if (!registry.register(hash, query)) {
+                return HASH_MISMATCH;
+            }
+        }
+        return null;
+    }
+
+    private static boolean contains(byte[] body, byte[] marker) {
+        outer:
+        for (int i = 0; i <= body.length - marker.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (body[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void sendError(HttpServletResponse response, String message) throws IOException {
+        sendError(response, HttpServletResponse.SC_OK, message);
+    }
+
+    private void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        Map<String, Object> error = new HashMap<>();
+        error.put("message", message);
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        mapper.writeValue(response.getWriter(), Collections.singletonMap("errors", Collections.singletonList(error)));
+    }
+
+    private static class ParametersRequest extends HttpServletRequestWrapper {
+
+        private final String query;
+
+        private ParametersRequest(HttpServletRequest request, String query) {
+            super(request);
+            this.query = query;
+        }
+
+        @Override
+        public String getParameter(String name) {
+            if (QUERY.equals(name)) {
+                return query;
+            }
+            if (EXTENSIONS.equals(name)) {
+                return null;
+            }
+            return super.getParameter(name);
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            Map<String, String[]> parameters = new HashMap<>(super.getParameterMap());
+            parameters.put(QUERY, new String[] {query});
+            parameters.remove(EXTENSIONS);
+            return Collections.unmodifiableMap(parameters);
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            if (QUERY.equals(name)) {
+                return new String[] {query};
+            }
+            if (EXTENSIONS.equals(name)) {
+                return null;
+            }
+            return super.getParameterValues(name);
+        }
+    }
+
+    private static class BodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private BodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            ByteArrayInputStream stream = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+
+                @Override
+                public int read() throws IOException {
+                    return stream.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return stream.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return stream.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // the whole body is in memory: it can be read at once
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.persisted;
+
+import org.apache.commons.io.IOUtils;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.service.component.annotations.*;
+import org.osgi.util.tracker.BundleTracker;
+import org.osgi.util.tracker.BundleTrackerCustomizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of persisted GraphQL queries, by SHA-256 hash of the query document.
+ *
+ * Queries are either shipped by modules, as *.graphql files in the META-INF/graphql-persisted-queries folder of their
+ * bundle, or registered at runtime by clients sending both the query and its hash (automatic persisted queries). Runtime
+ * registrations are kept in a bounded LRU map, module queries are kept as long as a bundle providing them is active.
+ *
+ * The registry is configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>persistedQueries.enabled: whether persisted queries are resolved, false by default</li>
+ *     <li>persistedQueries.automatic: whether clients can register queries at runtime, false by default</li>
+ *     <li>persistedQueries.maxEntries: maximum number of queries registered at runtime, 1000 by default</li>
+ * </ul>
+ */
+@Component(service = PersistedQueryRegistry.class, immediate = true)
+public class PersistedQueryRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(PersistedQueryRegistry.class);
+
+    private static final String ENABLED = "persistedQueries.enabled";
+    private static final String AUTOMATIC = "persistedQueries.automatic";
+    private static final String MAX_ENTRIES = "persistedQueries.maxEntries";
+
+    private static final long DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final String RESOURCES_PATH = "META-INF/graphql-persisted-queries";
+    private static final String RESOURCES_PATTERN = "*.graphql";
+
+    private DXGraphQLConfig config;
+
+    private final Map<String, ModuleQuery> moduleQueries = new ConcurrentHashMap<>();
+
+    private final Map<String, String> registeredQueries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > getMaxEntries();
+        }
+    };
+
+    private BundleTracker<Collection<String>> bundleTracker;
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate(BundleContext bundleContext) {
+        bundleTracker = new BundleTracker<>(bundleContext, Bundle.ACTIVE, new BundleTrackerCustomizer<Collection<String>>() {
+
+            @Override
+            public Collection<String> addingBundle(Bundle bundle, BundleEvent event) {
+                Collection<String> hashes = loadQueries(bundle);
+                return hashes.isEmpty() ? null : hashes;
+            }
+
+            @Override
+            public void modifiedBundle(Bundle bundle, BundleEvent event, Collection<String> hashes) {
+            }
+
+            @Override
+            public void removedBundle(Bundle bundle, BundleEvent event, Collection<String> hashes) {
+                for (String hash : hashes) {
+                    removeModuleQuery(hash, bundle.getBundleId());
+                }
+            }
+        });
+        bundleTracker.open();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (bundleTracker != null) {
+            bundleTracker.close();
+            bundleTracker = null;
+        }
+        moduleQueries.clear();
+        synchronized (registeredQueries) {
+            registeredQueries.clear();
+        }
+    }
+
+    /**
+     * @return Whether persisted queries are resolved
+     */
+    public boolean isEnabled() {
+        return config != null && config.getBooleanProperty(ENABLED, false);
+    }
+
+    /**
+     * @return Whether clients can register queries at runtime
+     */
+    public boolean isAutomaticEnabled() {
+        return isEnabled() && config.getBooleanProperty(AUTOMATIC, false);
+    }
+
+    /**
+     * Get a persisted query.
+     *
+     * @param hash The SHA-256 hash of the query, hex encoded
+     * @return The query, or null if no query is persisted with this hash
+     */
+    public String getQuery(String hash) {
+        String key = hash.toLowerCase();
+        ModuleQuery moduleQuery = moduleQueries.get(key);
+        String query = moduleQuery != null ? moduleQuery.query : null;
+        if (query == null) {
+            synchronized (registeredQueries) {
+                query = registeredQueries.get(key);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Register a query at runtime.
+     *
+     * @param hash The SHA-256 hash of the query, hex encoded, as computed by the client
+     * @param query The query
+     * @return Whether the query has been registered, false if the hash does not match the query
+     */
+    public boolean register(String hash, String query) {
+        String key = hash.toLowerCase();
+        if (!key.equals(getHash(query))) {
+            return false;
+        }
+        if (!moduleQueries.containsKey(key)) {
+            synchronized (registeredQueries) {
+                registeredQueries.put(key, query);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the hash identifying a query.
+     *
+     * @param query The query
+     * @return The SHA-256 hash of the query, hex encoded
+     */
+    public static String getHash(String query) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Collection<String> loadQueries(Bundle bundle) {
+        Enumeration<URL> entries = bundle.findEntries(RESOURCES_PATH, RESOURCES_PATTERN, true);
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        List<String> hashes = new ArrayList<>();
+        while (entries.hasMoreElements()) {
+            URL entry = entries.nextElement();
+            try (InputStream stream = entry.openStream()) {
+                String query = IOUtils.toString(stream, StandardCharsets.UTF_8);
+                hashes.add(addModuleQuery(query, bundle.getBundleId()));
+            } catch (IOException e) {
+                logger.error("Unable to read persisted query " + entry + " of bundle " + bundle.getSymbolicName(), e);
+            }
+        }
+        logger.info("Registered {} persisted queries of bundle {}", hashes.size(), bundle.getSymbolicName());
+        return hashes;
+    }
+
+    /**
+     * Add a query provided by a bundle.
+     *
+     * @param query The query
+     * @param bundleId The identifier of the bundle
+     * @return The hash of the query
+     */
+    String addModuleQuery(String query, long bundleId) {
+        String hash = getHash(query);
+        moduleQueries.compute(hash, (h, moduleQuery) -> {
+            ModuleQuery result = moduleQuery != null ? moduleQuery : new ModuleQuery(query);
+            result.bundleIds.add(bundleId);
+            return result;
+        });
+        return hash;
+    }
+
+    /**
+     * Remove a query provided by a bundle; the query is kept as long as another bundle provides it.
+     *
+     * @param hash The hash of the query
+     * @param bundleId The identifier of the bundle
+     */
+    void removeModuleQuery(String hash, long bundleId) {
+        moduleQueries.computeIfPresent(hash, (h, moduleQuery) -> {
+            moduleQuery.bundleIds.remove(bundleId);
+            return moduleQuery.bundleIds.isEmpty() ? null : moduleQuery;
+        });
+    }
+
+    private long getMaxEntries() {
+        return config != null ? config.getLongProperty(MAX_ENTRIES, DEFAULT_MAX_ENTRIES) : DEFAULT_MAX_ENTRIES;
+    }
+
+    /**
+     * Query provided by modules, along with the bundles providing it.
+     */
+    private static class ModuleQuery {
+
+        private final String query;
+        // only updated within the atomic updates of the module queries map
+        private final Set<Long> bundleIds = new HashSet<>();
+
+        private ModuleQuery(String query) {
+            this.query = query;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.persisted;
+
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Cache of the parsed and validated query documents, by SHA-256 hash of the query, picked up by the GraphQL servlet.
+ *
+ * Queries found in the cache, such as persisted queries or the queries of the same client, are neither parsed nor
+ * validated again. Documents with parse or validation errors are not cached. The cache is cleared when the DX types
+ * are rebuilt; fields removed from the schema by other providers are only reported when a cached query fetching them
+ * is executed.
+ *
+ * The cache is configured in the DX GraphQL configuration with the following property:
+ * <ul>
+ *     <li>preparsedDocuments.maxEntries: maximum number of cached documents, 1000 by default; 0 to disable the cache</li>
+ * </ul>
+ */
+@Component(service = {PreparsedDocumentProvider.class, PreparsedDocumentCache.class}, immediate = true)
+public class PreparsedDocumentCache implements PreparsedDocumentProvider {
+
+    private static final String MAX_ENTRIES = "preparsedDocuments.maxEntries";
+
+    private static final long DEFAULT_MAX_ENTRIES = 1000;
+
+    private DXGraphQLConfig config;
+
+    private final Map<String, PreparsedDocumentEntry> entries = new LinkedHashMap<String, PreparsedDocumentEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparsedDocumentEntry> eldest) {
+            return size() > getMaxEntries();
+        }
+    };
+
+    private long invalidations;
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        clear();
+    }
+
+    @Override
+    public PreparsedDocumentEntry get(String query, Function<String, PreparsedDocumentEntry> compute) {
+        if (getMaxEntries() <= 0) {
+            return compute.apply(query);
+        }
+        String key = PersistedQueryRegistry.getHash(query);
+        long version;
+        synchronized (entries) {
+            PreparsedDocumentEntry entry = entries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            version = invalidations;
+        }
+        // parsed and validated outside of the lock, the same query may be parsed concurrently by several requests
+        PreparsedDocumentEntry entry = compute.apply(query);
+        if (!entry.hasErrors()) {
+            synchronized (entries) {
+                // documents validated against a schema rebuilt in the meantime are not cached
+                if (version == invalidations) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Remove all the cached documents, so that queries are validated again against the current schema.
+     */
+    public void clear() {
+        synchronized (entries) {
+            invalidations++;
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return The number of cached documents
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long getMaxEntries() {
+        return config != null ? config.getLongProperty(MAX_ENTRIES, DEFAULT_MAX_ENTRIES) : DEFAULT_MAX_ENTRIES;
+    }
+}
@@ -43,31 +43,229 @@
  */
 package org.jahia.modules.graphql.provider.dxm.relay;
 
+import graphql.language.Field;
+import graphql.language.Selection;
 import graphql.schema.DataFetchingEnvironment;
 import org.jahia.modules.graphql.provider.dxm.node.GqlJcrWrongInputException;
 
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.util.Base64.getDecoder;
 import static java.util.Base64.getEncoder;
 
 public class PaginationHelper {
 
     public static <T> DXPaginatedData<T> paginate(List<T> source, DataFetchingEnvironment environment) {
         PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
-        return paginate(source, obj -> encodeCursor("index:" + source.indexOf(obj)), arguments);
+        return paginate(source, new IndexCursorSupport<>(), arguments);
     }
 
+    /**
+     * Paginate a list. The list is accessed by position only: cursors are resolved with a single scan of the list
+     * (or decoded directly for index based cursors), and the page is a view on the source.
+     *
+     * @param source The elements to paginate
+     * @param cursorSupport Cursor support for the elements
+     * @param arguments Pagination arguments
+     * @return Paginated data
+     */
     public static <T> DXPaginatedData<T> paginate(List<T> source, CursorSupport<T> cursorSupport, Arguments arguments) {
-        List<T> filtered = applyCursorsToEdge(arguments, source, cursorSupport);
-        filtered = applyFirstLast(filtered, arguments);
-        filtered = applyLimitOffset(filtered, arguments);
+        List<T> snapshot = (source instanceof RandomAccess) ? source : new ArrayList<>(source);
+        return paginate(snapshot, cursorSupport, arguments, snapshot.size());
+    }
+
+    /**
+     * Paginate a list holding the first elements of a source, the total number of elements of the source being known.
+     */
+    private static <T> DXPaginatedData<T> paginate(List<T> snapshot, CursorSupport<T> cursorSupport, Arguments arguments, int totalCount) {
+        int size = snapshot.size();
+        int from = 0;
+        int to = size;
+
+        if (arguments.after != null || arguments.before != null) {
+            int[] positions = findCursors(snapshot, cursorSupport, arguments.after, arguments.before);
+            if (positions[0] >= 0) {
+                from = positions[0] + 1;
+            }
+            // before cursor is only taken into account if it is after the after cursor
+            if (positions[1] >= from) {
+                to = positions[1];
+            }
+        }
+
+        if (arguments.first != null) {
+            to = Math.min(to, from + arguments.first);
+        }
+        if (arguments.last != null) {
+            from = Math.max(from, to - arguments.last);
+        }
+        if (arguments.offset != null) {
+            from = Math.min(to, from + arguments.offset);
+        }
+        if (arguments.limit != null) {
+            to = Math.min(to, from + arguments.limit);
+        }
+
+        List<T> page = snapshot.subList(from, to);
+        boolean hasPrevious = page.size() > 0 && from > 0;
+        boolean hasNext = page.size() > 0 && to < size;
+
+        if (cursorSupport instanceof IndexCursorSupport) {
+            ((IndexCursorSupport<T>) cursorSupport).register(page, from);
+        }
+        return new SimpleDXPaginatedData<>(page, from, cursorSupport, hasPrevious, hasNext, totalCount);
+    }
+
+    private static <T> int[] findCursors(List<T> source, CursorSupport<T> cursorSupport, String after, String before) {
+        int[] positions = new int[] {-1, -1};
+        if (cursorSupport instanceof IndexCursorSupport) {
+            positions[0] = IndexCursorSupport.decode(after, source.size());
+            positions[1] = IndexCursorSupport.decode(before, source.size());
+            return positions;
+        }
+        for (int i = 0; i < source.size(); i++) {
+            String cursor = cursorSupport.getCursor(source.get(i));
+            if (positions[0] < 0 && cursor.equals(after)) {
+                positions[0] = i;
+            }
+            if (positions[1] < 0 && cursor.equals(before)) {
+                positions[1] = i;
+            }
+            if ((after == null || positions[0] >= 0) && (before == null || positions[1] >= 0)) {
+                break;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Paginate a lazily computed source. Elements are only pulled from the source until the requested page and one
+     * lookahead element are obtained, unless the total count is required by the query or the pagination is done
+     * backwards (before/last arguments), in which case the whole source is consumed.
+     *
+     * @param source Supplier of the source stream; it can be called a second time if the 'after' cursor is not found
+     * @param cursorSupport Cursor support for the elements
+     * @param arguments Pagination arguments
+     * @return Paginated data
+     */
+    public static <T> DXPaginatedData<T> paginate(Supplier<Stream<T>> source, CursorSupport<T> cursorSupport, Arguments arguments) {
+        if (arguments.before != null || arguments.last != null) {
+            return paginate(source.get().collect(Collectors.toList()), cursorSupport, arguments);
+        }
 
-        boolean hasPrevious = filtered.size() > 0 && filtered.get(0) != source.get(0);
-        boolean hasNext = filtered.size() > 0 && filtered.get(filtered.size()-1) != source.get(source.size()-1);
+        Iterator<T> iterator = source.get().iterator();
+        int index = 0;
 
-        return new SimpleDXPaginatedData<>(source, filtered, cursorSupport, hasPrevious, hasNext);
+        if (arguments.after != null) {
+            boolean found = false;
+            while (iterator.hasNext()) {
+                index++;
+                if (arguments.after.equals(cursorSupport.getCursor(iterator.next()))) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                // unknown cursor is ignored, start again from the beginning
+                iterator = source.get().iterator();
+                index = 0;
+            }
+        }
+
+        if (arguments.offset != null) {
+            for (int i = 0; i < arguments.offset && iterator.hasNext(); i++) {
+                iterator.next();
+                index++;
+            }
+        }
+
+        Integer size = arguments.first != null ? arguments.first : arguments.limit;
+        List<T> page = new ArrayList<>();
+        while ((size == null || page.size() < size) && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+
+        int startIndex = index;
+        boolean hasPrevious = page.size() > 0 && startIndex > 0;
+        boolean hasNext = page.size() > 0 && iterator.hasNext();
+
+        int totalCount = -1;
+        if (arguments.totalCountRequired) {
+            totalCount = startIndex + page.size();
+            while (iterator.hasNext()) {
+                iterator.next();
+                totalCount++;
+            }
+        }
+
+        return new SimpleDXPaginatedData<>(page, startIndex, cursorSupport, hasPrevious, hasNext, totalCount);
+    }
+
+    /**
+     * Sort and paginate a lazily computed source. The sort key of each element is computed once. When the page is
+     * known without cursors (first, offset/limit arguments), only the elements that can be part of the page are kept
+     * while consuming the source, using a bounded heap; otherwise the whole source is sorted.
+     *
+     * @param source Supplier of the source stream
+     * @param sortKey Function computing the sort key of an element
+     * @param comparator Comparator of the sort keys
+     * @param cursorSupport Cursor support for the elements
+     * @param arguments Pagination arguments
+     * @return Paginated data
+     */
+    public static <T, K> DXPaginatedData<T> paginate(Supplier<Stream<T>> source, Function<T, K> sortKey, Comparator<? super K> comparator, CursorSupport<T> cursorSupport, Arguments arguments) {
+        Comparator<SortedElement<T, K>> order = Comparator.<SortedElement<T, K>, K>comparing(e -> e.key, comparator).thenComparingInt(e -> e.position);
+
+        Integer maxIndex = null;
+        if (arguments.after == null && arguments.before == null && arguments.last == null) {
+            maxIndex = arguments.first;
+            if (arguments.limit != null) {
+                int end = (arguments.offset != null ? arguments.offset : 0) + arguments.limit;
+                maxIndex = (maxIndex != null) ? Math.min(maxIndex, end) : end;
+            }
+        }
+
+        int[] count = new int[1];
+        Stream<SortedElement<T, K>> elements = source.get().map(element -> new SortedElement<>(element, sortKey.apply(element), count[0]++));
+        List<SortedElement<T, K>> sorted;
+        if (maxIndex == null) {
+            sorted = elements.sorted(order).collect(Collectors.toList());
+        } else {
+            // keep one more element than the page end, to know if there is a next page
+            int capacity = maxIndex + 1;
+            PriorityQueue<SortedElement<T, K>> heap = new PriorityQueue<>(capacity + 1, order.reversed());
+            elements.forEachOrdered(element -> {
+                heap.add(element);
+                if (heap.size() > capacity) {
+                    heap.poll();
+                }
+            });
+            sorted = new ArrayList<>(heap);
+            sorted.sort(order);
+        }
+
+        List<T> result = new ArrayList<>(sorted.size());
+        for (SortedElement<T, K> element : sorted) {
+            result.add(element.element);
+        }
+        return paginate(result, cursorSupport, arguments, count[0]);
+    }
+
+    private static class SortedElement<T, K> {
+        private final T element;
+        private final K key;
+        private final int position;
+
+        private SortedElement(T element, K key, int position) {
+            this.element = element;
+            this.key = key;
+            this.position = position;
+        }
     }
 
     public static <T> List<T> applyLimitOffset(List<T> filtered, Arguments args) {
@@ -91,29 +289,52 @@ public class PaginationHelper {
     }
 
     public static <T> List<T> applyCursorsToEdge(Arguments args, List<T> filtered, CursorSupport<T> cursorSupport) {
-        if (args.after != null) {
-            Optional<T> after = filtered.stream().filter(s -> args.after.equals(cursorSupport.getCursor(s))).findFirst();
-            if (after.isPresent()) {
-                filtered = filtered.subList(filtered.indexOf(after.get()) + 1, filtered.size());
-            }
-        }
-
-        if (args.before != null) {
-            Optional<T> before = filtered.stream().filter(s -> args.before.equals(cursorSupport.getCursor(s))).findFirst();
-            if (before.isPresent()) {
-                filtered = filtered.subList(0, filtered.indexOf(before.get()));
-            }
+        if (args.after != null || args.before != null) {
+            int[] positions = findCursors(filtered, cursorSupport, args.after, args.before);
+            int from = positions[0] >= 0 ? positions[0] + 1 : 0;
+            int to = positions[1] >= from ? positions[1] : filtered.size();
+            filtered = filtered.subList(from, to);
         }
         return filtered;
     }
 
     public static Arguments parseArguments(DataFetchingEnvironment environment) {
-        return new Arguments(environment.getArgument("before"),
+        Arguments arguments = new Arguments(environment.getArgument("before"),
                 environment.getArgument("after"),
                 environment.getArgument("first"),
                 environment.getArgument("last"),
                 environment.getArgument("offset"),
                 environment.getArgument("limit"));
+        arguments.totalCountRequired = isSelected(environment.getFields(), "pageInfo", "totalCount");
+        return arguments;
+    }
+
+    /**
+     * Check whether a sub field is selected, following the path of field names given. Fields selected through fragments
+     * are not inspected, the sub field is then considered as selected.
+     */
+    private static boolean isSelected(List<Field> fields, String... path) {
+        if (fields == null) {
+            return true;
+        }
+        for (Field field : fields) {
+            if (field.getSelectionSet() == null) {
+                continue;
+            }
+            List<Field> subFields = new ArrayList<>();
+            for (Selection selection : field.getSelectionSet().getSelections()) {
+                if (!(selection instanceof Field)) {
+                    return true;
+                }
+                if (path[0].equals(((Field) selection).getName())) {
+                    subFields.add((Field) selection);
+                }
+            }
+            if (!subFields.isEmpty() && (path.length == 1 || isSelected(subFields, Arrays.copyOfRange(path, 1, path.length)))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static String encodeCursor(String s) {
@@ -127,6 +348,7 @@ public class PaginationHelper {
         Integer last;
         Integer offset;
         Integer limit;
+        boolean totalCountRequired = true;
 
         public boolean isOffsetLimit() {
             return (this.offset != null || this.limit != null);
@@ -136,6 +358,34 @@ public class PaginationHelper {
             return (this.before != null || this.after != null || this.first != null || this.last != null);
         }
 
+        public boolean isTotalCountRequired() {
+            return totalCountRequired;
+        }
+
+        public String getBefore() {
+            return before;
+        }
+
+        public String getAfter() {
+            return after;
+        }
+
+        public Integer getFirst() {
+            return first;
+        }
+
+        public Integer getLast() {
+            return last;
+        }
+
+        public Integer getOffset() {
+            return offset;
+        }
+
+        public Integer getLimit() {
+            return limit;
+        }
+
         private Integer validateNotNegativeValue(Integer value, String argument) {
             if (value != null && value < 0) {
                 throw new GqlJcrWrongInputException("Argument '" + argument + "' can't be negative");
@@ -158,13 +408,23 @@ public class PaginationHelper {
     }
 
     public static class SimpleDXPaginatedData<T> extends AbstractDXPaginatedData<T> {
-        private final List<T> source;
+        private final int startIndex;
+        private final Map<T, Integer> positions;
         private final CursorSupport<T> cursorSupport;
 
         public SimpleDXPaginatedData(List<T> source, List<T> filtered, CursorSupport<T> cursorSupport, boolean hasPrevious, boolean hasNext) {
-            super(filtered, hasPrevious, hasNext, filtered.size(), source.size());
-            this.source = source;
+            this(filtered, filtered.isEmpty() ? 0 : indexOf(source, filtered.get(0)), cursorSupport, hasPrevious, hasNext, source.size());
+        }
+
+        public SimpleDXPaginatedData(List<T> page, int startIndex, CursorSupport<T> cursorSupport, boolean hasPrevious, boolean hasNext, int totalCount) {
+            super(page, hasPrevious, hasNext, page.size(), totalCount);
+            this.startIndex = startIndex;
             this.cursorSupport = cursorSupport;
+            this.positions = new IdentityHashMap<>(page.size());
+            int position = 0;
+            for (T entity : page) {
+                positions.putIfAbsent(entity, position++);
+            }
         }
 
         @Override
@@ -174,7 +434,58 @@ public class PaginationHelper {
 
         @Override
         public int getIndex(T entity) {
-            return source.indexOf(entity);
+            Integer position = positions.get(entity);
+            return position != null ? startIndex + position : -1;
+        }
+
+        private static <T> int indexOf(List<T> source, T entity) {
+            int index = 0;
+            for (T t : source) {
+                if (t == entity) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Cursor support using the position of the element in the source, encoded as "index:{position}". Positions are
+     * decoded from cursors without scanning the source.
+     */
+    private static class IndexCursorSupport<T> implements CursorSupport<T> {
+
+        private static final String PREFIX = "index:";
+
+        private final Map<T, Integer> indexes = new IdentityHashMap<>();
+
+        void register(List<T> page, int startIndex) {
+            int index = startIndex;
+            for (T entity : page) {
+                indexes.putIfAbsent(entity, index++);
+            }
+        }
+
+        @Override
+        public String getCursor(T obj) {
+            return encodeCursor(PREFIX + indexes.get(obj));
+        }
+
+        static int decode(String cursor, int size) {
+            if (cursor == null) {
+                return -1;
+            }
+            try {
+                String decoded = new String(getDecoder().decode(cursor), StandardCharsets.UTF_8);
+                if (decoded.startsWith(PREFIX)) {
+                    int index = Integer.parseInt(decoded.substring(PREFIX.length()));
+                    return index < size ? index : -1;
+                }
+            } catch (IllegalArgumentException e) {
+                // not an index cursor
+            }
+            return -1;
         }
     }
 }
@@ -0,0 +1,706 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.render;
+
+import org.jahia.api.Constants;
+import org.jahia.bin.Render;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.node.ObservationHelper;
+import org.jahia.services.SpringContextSingleton;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.nodetypes.ConstraintsHelper;
+import org.jahia.services.render.RenderContext;
+import org.jahia.services.render.RenderService;
+import org.jahia.services.render.Resource;
+import org.jahia.services.usermanager.JahiaUser;
+import org.jahia.services.usermanager.JahiaUserManagerService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renderer of the renderedContent field, caching the outputs and optionally rendering on a dedicated executor.
+ *
+ * Outputs are cached by workspace, node, node last modification date, view, template type, context configuration,
+ * language and current user: views may render differently for each user, even for users having the same groups (user
+ * properties, permissions granted to the user on some nodes), so outputs are only shared between guests. Entries are
+ * bounded in number and time to live, and are invalidated by JCR observation when the node or one of its descendants
+ * is changed, when any of the render dependencies of the node is changed, and when any template or module content is
+ * changed; outputs rendered while a change was notified are not cached. Render dependencies are the paths declared on the rendered resource by the views, such as the
+ * nodes included by the module tag: changes of nodes only read by a view, without being declared as dependencies (query
+ * results, properties of referenced nodes), are only taken into account when the entry expires.
+ *
+ * When the render executor is enabled, the renderedContent fields of a request are rendered concurrently: each render
+ * uses its own JCR sessions, its own copy of the request attributes and its own response, and falls back to the request
+ * thread when the executor is saturated. The headers, cookies, status codes and redirects set by these renders are
+ * recorded, and applied to the response of the GraphQL request on the request thread by the RenderResponseFilter,
+ * before the result is written. Outputs served from the cache do not set any of them.
+ *
+ * The renderer is configured in the DX GraphQL configuration with the following properties:
+ * <ul>
+ *     <li>renderCache.enabled: whether outputs are cached, false by default</li>
+ *     <li>renderCache.maxEntries: maximum number of cached outputs, 1000 by default</li>
+ *     <li>renderCache.timeToLive: time to live of a cached output in seconds, 300 by default</li>
+ *     <li>render.threads: number of render threads, 0 by default to render on the request thread (read at startup)</li>
+ *     <li>render.queueSize: number of renders waiting for a render thread, 100 by default (read at startup)</li>
+ * </ul>
+ */
+@Component(service = NodeRenderer.class, immediate = true)
+public class NodeRenderer {
+
+    private static Logger logger = LoggerFactory.getLogger(NodeRenderer.class);
+
+    private static final String CACHE_ENABLED = "renderCache.enabled";
+    private static final String CACHE_MAX_ENTRIES = "renderCache.maxEntries";
+    private static final String CACHE_TIME_TO_LIVE = "renderCache.timeToLive";
+    private static final String THREADS = "render.threads";
+    private static final String QUEUE_SIZE = "render.queueSize";
+
+    private static final long DEFAULT_CACHE_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_CACHE_TIME_TO_LIVE = 300;
+    private static final long DEFAULT_THREADS = 0;
+    private static final long DEFAULT_QUEUE_SIZE = 100;
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private static final String MODULES_PATH = "/modules";
+
+    private static NodeRenderer instance;
+
+    private DXGraphQLConfig config;
+    private ThreadPoolExecutor executor;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > getMaxEntries();
+        }
+    };
+    // incremented on each change notification, so that outputs rendered before a change are not cached
+    private long invalidations;
+
+    private final List<ObservationHelper.Registration> registrations = new ArrayList<>();
+
+    public static NodeRenderer getInstance() {
+        return instance;
+    }
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        for (String workspace : Arrays.asList(Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE)) {
+            try {
+                registrations.add(ObservationHelper.addEventListener(workspace, events -> invalidate(workspace, events), EVENT_TYPES, "/", true));
+            } catch (RepositoryException e) {
+                logger.error("Unable to register render cache listener on workspace " + workspace, e);
+            }
+        }
+
+        int threads = (int) config.getLongProperty(THREADS, DEFAULT_THREADS);
+        if (threads > 0) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>((int) config.getLongProperty(QUEUE_SIZE, DEFAULT_QUEUE_SIZE)), runnable -> {
+                        Thread thread = new Thread(runnable, "graphql-render-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+        for (ObservationHelper.Registration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Render a node, using the cached output when available.
+     *
+     * @param node The node to render, read in the language to render
+     * @param view The view
+     * @param templateType The template type
+     * @param contextConfiguration The context configuration
+     * @param withConstraints Whether the constraints of the node are needed
+     * @param request The current request
+     * @param response The current response
+     * @return The rendered node, completed on a render thread if the render executor is enabled
+     * @throws RepositoryException In case the node cannot be read
+     */
+    public CompletableFuture<RenderNodeExtensions.RenderedNode> render(JCRNodeWrapper node, String view, String templateType, String contextConfiguration,
+                                                                       boolean withConstraints, HttpServletRequest request, HttpServletResponse response) throws RepositoryException {
+        JCRSessionWrapper session = node.getSession();
+        JahiaUser user = JCRSessionFactory.getInstance().getCurrentUser();
+        Key key = isCacheEnabled() ? new Key(session.getWorkspace().getName(), node.getIdentifier(), getLastModified(node), view, templateType,
+                contextConfiguration, session.getLocale(), getPrincipal(user)) : null;
+
+        if (key != null) {
+            String output = get(key);
+            if (output != null) {
+                return CompletableFuture.completedFuture(new RenderNodeExtensions.RenderedNode(output, node));
+            }
+        }
+        long version = getInvalidations();
+
+        if (executor != null) {
+            String workspace = session.getWorkspace().getName();
+            Locale locale = session.getLocale();
+            String identifier = node.getIdentifier();
+            HttpServletRequest isolatedRequest = new IsolatedRequest(request);
+            IsolatedResponse isolatedResponse = new IsolatedResponse(response);
+            RenderResponseFilter.RenderedResponse renderedResponse = RenderResponseFilter.RenderedResponse.find(response);
+            try {
+                return CompletableFuture.supplyAsync(() -> {
+                    JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+                    sessionFactory.setCurrentUser(user);
+                    sessionFactory.setCurrentLocale(locale);
+                    try {
+                        JCRNodeWrapper workerNode = sessionFactory.getCurrentUserSession(workspace, locale).getNodeByIdentifier(identifier);
+                        Set<String> dependencies = new HashSet<>();
+                        String output = render(workerNode, view, templateType, contextConfiguration, user, isolatedRequest, isolatedResponse, dependencies);
+                        if (renderedResponse != null) {
+                            renderedResponse.addChanges(isolatedResponse.getChanges());
+                        } else if (!isolatedResponse.getChanges().isEmpty()) {
+                            logger.debug("Response changes of the render of {} not applied, the request is not filtered", identifier);
+                        }
+                        put(key, output, dependencies, version);
+                        // the node of this thread cannot be used anymore once its session is closed
+                        return new RenderNodeExtensions.RenderedNode(output, withConstraints ? ConstraintsHelper.getConstraints(workerNode) : null);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        sessionFactory.closeAllSessions();
+                        sessionFactory.setCurrentUser(null);
+                        sessionFactory.setCurrentLocale(null);
+                    }
+                }, executor);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Render executor saturated, rendering on the request thread");
+            }
+        }
+
+        try {
+            Set<String> dependencies = new HashSet<>();
+            String output = render(node, view, templateType, contextConfiguration, user, request, response, dependencies);
+            put(key, output, dependencies, version);
+            return CompletableFuture.completedFuture(new RenderNodeExtensions.RenderedNode(output, node));
+        } catch (RepositoryException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String render(JCRNodeWrapper node, String view, String templateType, String contextConfiguration, JahiaUser user,
+                                 HttpServletRequest request, HttpServletResponse response, Set<String> dependencies) throws Exception {
+        RenderService renderService = (RenderService) SpringContextSingleton.getBean("RenderService");
+
+        Resource r = new Resource(node, templateType, view, contextConfiguration);
+
+        RenderContext renderContext = new RenderContext(request, response, user);
+        renderContext.setMainResource(r);
+        renderContext.setServletPath(Render.getRenderServletPath());
+        renderContext.setSite(node.getResolveSite());
+
+        String output = renderService.render(r, renderContext);
+        dependencies.add(node.getPath());
+        dependencies.addAll(r.getDependencies());
+        return output;
+    }
+
+    String get(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired()) {
+                entries.remove(key);
+                entry = null;
+            }
+            return entry != null ? entry.output : null;
+        }
+    }
+
+    long getInvalidations() {
+        synchronized (entries) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * Cache an output, unless a change has been notified since it has started being rendered.
+     *
+     * @param key The key of the output, null when the cache is disabled
+     * @param output The output
+     * @param paths The paths of the nodes the output depends on
+     * @param version The number of invalidations read before rendering
+     */
+    void put(Key key, String output, Set<String> paths, long version) {
+        if (key != null && output != null) {
+            synchronized (entries) {
+                if (invalidations == version) {
+                    entries.put(key, new Entry(output, paths, getTimeToLive()));
+                }
+            }
+        }
+    }
+
+    private void invalidate(String workspace, EventIterator events) {
+        Set<String> paths = new HashSet<>();
+        while (events.hasNext()) {
+            try {
+                paths.add(events.nextEvent().getPath());
+            } catch (RepositoryException e) {
+                logger.debug("Unable to read event path, invalidating all cached outputs of workspace " + workspace, e);
+                paths.add(MODULES_PATH);
+            }
+        }
+        invalidate(workspace, paths);
+    }
+
+    /**
+     * Remove the cached outputs affected by changes.
+     *
+     * @param workspace The workspace of the changed nodes
+     * @param paths The paths of the changed nodes or properties
+     */
+    void invalidate(String workspace, Set<String> paths) {
+        boolean templates = false;
+        for (String path : paths) {
+            if (path.equals(MODULES_PATH) || path.startsWith(MODULES_PATH + "/")) {
+                templates = true;
+                break;
+            }
+        }
+        synchronized (entries) {
+            invalidations++;
+            if (templates) {
+                // templates and components are shared by all nodes
+                entries.clear();
+                return;
+            }
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (e.getKey().workspace.equals(workspace) && e.getValue().isAffectedBy(paths)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static long getLastModified(JCRNodeWrapper node) {
+        Date lastModified = node.getLastModifiedAsDate();
+        return lastModified != null ? lastModified.getTime() : 0;
+    }
+
+    /**
+     * Get the part of the cache key identifying the user an output is rendered for.
+     *
+     * @param user The current user
+     * @return The path of the user, or an empty string for guests
+     */
+    static String getPrincipal(JahiaUser user) {
+        return user == null || JahiaUserManagerService.isGuest(user) ? "" : user.getLocalPath();
+    }
+
+    private boolean isCacheEnabled() {
+        return config != null && config.getBooleanProperty(CACHE_ENABLED, false);
+    }
+
+    private long getMaxEntries() {
+        return config != null ? config.getLongProperty(CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES) : DEFAULT_CACHE_MAX_ENTRIES;
+    }
+
+    private long getTimeToLive() {
+        return (config != null ? config.getLongProperty(CACHE_TIME_TO_LIVE, DEFAULT_CACHE_TIME_TO_LIVE) : DEFAULT_CACHE_TIME_TO_LIVE) * 1000L;
+    }
+
+    /**
+     * Request holding its own copy of the attributes, so that renders executed concurrently do not see the attributes
+     * set by each other.
+     */
+    private static class IsolatedRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private IsolatedRequest(HttpServletRequest request) {
+            super(request);
+            Enumeration<String> names = request.getAttributeNames();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                Object value = request.getAttribute(name);
+                if (value != null) {
+                    attributes.put(name, value);
+                }
+            }
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(String name) {
+            attributes.remove(name);
+        }
+    }
+
+    /**
+     * Response holding its own headers and status, and discarding what is written to its writer, so that renders
+     * executed concurrently never write to the response of the request, which is not thread safe. Rendered outputs are
+     * returned by the render service, not written to the response. The headers, cookies, status codes and redirects
+     * set are recorded in order, to be applied later to the response of the request.
+     */
+    static class IsolatedResponse extends HttpServletResponseWrapper {
+
+        private final List<RenderResponseFilter.ResponseChange> changes = new CopyOnWriteArrayList<>();
+        private final Map<String, List<String>> headers = new ConcurrentHashMap<>();
+        private volatile int status = SC_OK;
+        private volatile String contentType;
+        private volatile String characterEncoding;
+        private volatile Locale locale;
+        private PrintWriter writer;
+
+        IsolatedResponse(HttpServletResponse response) {
+            super(response);
+            contentType = response.getContentType();
+            characterEncoding = response.getCharacterEncoding();
+            locale = response.getLocale();
+        }
+
+        /**
+         * @return The headers, cookies, status codes and redirects set, in order
+         */
+        List<RenderResponseFilter.ResponseChange> getChanges() {
+            return changes;
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            changes.add(response -> response.addCookie(cookie));
+        }
+
+        @Override
+        public boolean containsHeader(String name) {
+            return headers.containsKey(name);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) {
+            status = sc;
+            changes.add(response -> response.sendError(sc, msg));
+        }
+
+        @Override
+        public void sendError(int sc) {
+            status = sc;
+            changes.add(response -> response.sendError(sc));
+        }
+
+        @Override
+        public void sendRedirect(String location) {
+            status = SC_FOUND;
+            headers.put("Location", new CopyOnWriteArrayList<>(Collections.singletonList(location)));
+            changes.add(response -> response.sendRedirect(location));
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            setHeader(name, String.valueOf(date));
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            addHeader(name, String.valueOf(date));
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            headers.put(name, new CopyOnWriteArrayList<>(Collections.singletonList(value)));
+            changes.add(response -> response.setHeader(name, value));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            headers.computeIfAbsent(name, n -> new CopyOnWriteArrayList<>()).add(value);
+            changes.add(response -> response.addHeader(name, value));
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            setHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            addHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+            changes.add(response -> response.setStatus(sc));
+        }
+
+        @Override
+        public void setStatus(int sc, String sm) {
+            setStatus(sc);
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values != null && !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override
+        public Collection<String> getHeaders(String name) {
+            List<String> values = headers.get(name);
+            return values != null ? new ArrayList<>(values) : Collections.emptyList();
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return new ArrayList<>(headers.keySet());
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public void setContentType(String type) {
+            contentType = type;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+            characterEncoding = charset;
+        }
+
+        @Override
+        public Locale getLocale() {
+            return locale;
+        }
+
+        @Override
+        public void setLocale(Locale loc) {
+            locale = loc;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(new StringWriter());
+            }
+            return writer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            throw new IllegalStateException("Renders executed on a render thread can only write to the writer of the response");
+        }
+
+        @Override
+        public void setBufferSize(int size) {
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        @Override
+        public void resetBuffer() {
+        }
+
+        @Override
+        public void reset() {
+            headers.clear();
+            status = SC_OK;
+            changes.clear();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+    }
+
+    static class Key {
+
+        private final String workspace;
+        private final String identifier;
+        private final long lastModified;
+        private final String view;
+        private final String templateType;
+        private final String contextConfiguration;
+        private final Locale locale;
+        private final String principal;
+
+        Key(String workspace, String identifier, long lastModified, String view, String templateType, String contextConfiguration,
+            Locale locale, String principal) {
+            this.workspace = workspace;
+            this.identifier = identifier;
+            this.lastModified = lastModified;
+            this.view = view;
+            this.templateType = templateType;
+            this.contextConfiguration = contextConfiguration;
+            this.locale = locale;
+            this.principal = principal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return lastModified == key.lastModified && workspace.equals(key.workspace) && identifier.equals(key.identifier)
+                    && Objects.equals(view, key.view) && Objects.equals(templateType, key.templateType)
+                    && Objects.equals(contextConfiguration, key.contextConfiguration) && Objects.equals(locale, key.locale)
+                    && principal.equals(key.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(workspace, identifier, lastModified, view, templateType, contextConfiguration, locale, principal);
+        }
+    }
+
+    private static class Entry {
+
+        private final String output;
+        private final Set<String> paths;
+        private final long expiration;
+
+        private Entry(String output, Set<String> paths, long timeToLive) {
+            this.output = output;
+            this.paths = paths;
+            this.expiration = System.currentTimeMillis() + timeToLive;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiration;
+        }
+
+        private boolean isAffectedBy(Collection<String> paths) {
+            for (String changedPath : paths) {
+                for (String path : this.paths) {
+                    if (changedPath.equals(path) || changedPath.startsWith(path + "/")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
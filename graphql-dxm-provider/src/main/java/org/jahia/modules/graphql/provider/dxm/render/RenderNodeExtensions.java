@@ -45,30 +45,31 @@ package org.jahia.modules.graphql.provider.dxm.render;
 
 
 import graphql.ErrorType;
+import graphql.annotations.annotationTypes.GraphQLDataFetcher;
 import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLTypeExtension;
+import graphql.language.Field;
+import graphql.language.Selection;
+import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.servlet.GraphQLContext;
-import org.jahia.bin.Render;
 import org.jahia.modules.graphql.provider.dxm.BaseGqlClientException;
 import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNode;
-import org.jahia.modules.graphql.provider.dxm.node.NodeHelper;
+import org.jahia.modules.graphql.provider.dxm.node.NodeLoader;
 import org.jahia.modules.graphql.provider.dxm.node.SpecializedTypesHandler;
-import org.jahia.services.SpringContextSingleton;
 import org.jahia.services.content.JCRContentUtils;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionFactory;
-import org.jahia.services.content.decorator.JCRSiteNode;
 import org.jahia.services.content.nodetypes.ConstraintsHelper;
 import org.jahia.services.render.RenderContext;
-import org.jahia.services.render.RenderService;
-import org.jahia.services.render.Resource;
 import org.jahia.settings.SettingsBean;
 
 import javax.jcr.RepositoryException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @GraphQLTypeExtension(GqlJcrNode.class)
 public class RenderNodeExtensions {
@@ -102,11 +103,18 @@ public class RenderNodeExtensions {
     }
 
     @GraphQLField
+    @GraphQLDataFetcher(RenderedContentDataFetcher.class)
     public RenderedNode getRenderedContent(@GraphQLName("view") String view, @GraphQLName("templateType") String templateType, @GraphQLName("contextConfiguration") String contextConfiguration,
                                         @GraphQLName("language") String language, DataFetchingEnvironment environment) {
         try {
-            RenderService renderService = (RenderService) SpringContextSingleton.getBean("RenderService");
+            return renderContent(view, templateType, contextConfiguration, language, environment).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
+    private CompletableFuture<RenderedNode> renderContent(String view, String templateType, String contextConfiguration, String language, DataFetchingEnvironment environment) {
+        try {
             if (contextConfiguration == null) {
                 contextConfiguration = "module";
             }
@@ -121,34 +129,62 @@ public class RenderNodeExtensions {
             HttpServletRequest request = ((GraphQLContext) environment.getContext()).getRequest().get();
             HttpServletResponse response = ((GraphQLContext) environment.getContext()).getResponse().get();
 
-            JCRNodeWrapper node = NodeHelper.getNodeInLanguage(this.node.getNode(), language);
-
-            Resource r = new Resource(node, templateType, view, contextConfiguration);
-
-            RenderContext renderContext = new RenderContext(request, response, JCRSessionFactory.getInstance().getCurrentUser());
-            renderContext.setMainResource(r);
-
-            renderContext.setServletPath(Render.getRenderServletPath());
-
-            JCRSiteNode site = node.getResolveSite();
-            renderContext.setSite(site);
+            JCRNodeWrapper node = NodeLoader.get(environment).getNodeInLanguage(this.node.getNode(), language);
 
             response.setCharacterEncoding(SettingsBean.getInstance().getCharacterEncoding());
-            String res = renderService.render(r, renderContext);
-
-            return new RenderedNode(res, renderContext);
+            return NodeRenderer.getInstance().render(node, view, templateType, contextConfiguration, isSelected(environment, "constraints"), request, response);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static boolean isSelected(DataFetchingEnvironment environment, String name) {
+        for (Field field : environment.getFields()) {
+            if (field.getSelectionSet() == null) {
+                continue;
+            }
+            for (Selection selection : field.getSelectionSet().getSelections()) {
+                // fields selected through fragments are not inspected
+                if (!(selection instanceof Field) || name.equals(((Field) selection).getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Data fetcher of the renderedContent field, returning a future so that the renders of a request can be executed
+     * concurrently when the render executor is enabled.
+     */
+    public static class RenderedContentDataFetcher implements DataFetcher<CompletableFuture<RenderedNode>> {
+
+        @Override
+        public CompletableFuture<RenderedNode> get(DataFetchingEnvironment environment) {
+            Object source = environment.getSource();
+            RenderNodeExtensions extensions = source instanceof RenderNodeExtensions ? (RenderNodeExtensions) source : new RenderNodeExtensions((GqlJcrNode) source);
+            return extensions.renderContent(environment.getArgument("view"), environment.getArgument("templateType"),
+                    environment.getArgument("contextConfiguration"), environment.getArgument("language"), environment);
+        }
+    }
+
     public static class RenderedNode {
         private String output;
-        private RenderContext renderContext;
+        private JCRNodeWrapper node;
+        private String constraints;
 
         public RenderedNode(String output, RenderContext renderContext) {
+            this(output, renderContext.getMainResource().getNode());
+        }
+
+        RenderedNode(String output, JCRNodeWrapper node) {
             this.output = output;
-            this.renderContext = renderContext;
+            this.node = node;
+        }
+
+        RenderedNode(String output, String constraints) {
+            this.output = output;
+            this.constraints = constraints;
         }
 
         @GraphQLField
@@ -158,13 +194,14 @@ public class RenderNodeExtensions {
 
         @GraphQLField
         public String getConstraints() {
-            String constraints = null;
+            if (node == null) {
+                return constraints;
+            }
             try {
-                constraints = ConstraintsHelper.getConstraints(renderContext.getMainResource().getNode());
+                return ConstraintsHelper.getConstraints(node);
             } catch (RepositoryException e) {
                 throw new RuntimeException(e);
             }
-            return constraints;
         }
 
     }
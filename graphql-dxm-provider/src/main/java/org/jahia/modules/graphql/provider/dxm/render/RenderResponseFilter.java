@@ -0,0 +1,189 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.render;
+
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Servlet filter applying to the response of the GraphQL requests the changes made by the renders executed on render
+ * threads.
+ *
+ * The response passed to the GraphQL servlet is wrapped: the headers, cookies, status codes and redirects recorded by
+ * the renders of the {@link NodeRenderer} are applied to the response on the request thread, in the order the renders
+ * completed, when the servlet starts writing the result, all the fields being resolved by then. Changes recorded once
+ * the result has started being written (batched queries) are applied when the request ends, unless the response is
+ * already committed.
+ */
+@Component(service = Filter.class, property = {"pattern=/graphql", "service.ranking:Integer=5"}, immediate = true)
+public class RenderResponseFilter implements Filter {
+
+    private static Logger logger = LoggerFactory.getLogger(RenderResponseFilter.class);
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RenderedResponse renderedResponse = new RenderedResponse((HttpServletResponse) response);
+        try {
+            chain.doFilter(request, renderedResponse);
+        } finally {
+            renderedResponse.close();
+        }
+    }
+
+    /**
+     * A change of a response, recorded to be applied later.
+     */
+    @FunctionalInterface
+    interface ResponseChange {
+
+        void apply(HttpServletResponse response) throws IOException;
+    }
+
+    /**
+     * Response of a GraphQL request, applying the changes recorded by the renders before anything is written.
+     */
+    static class RenderedResponse extends HttpServletResponseWrapper {
+
+        private final Queue<List<ResponseChange>> pending = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+
+        RenderedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        /**
+         * Find the response of the filter among the wrapped responses.
+         *
+         * @param response The response passed to the servlet, or a wrapper of it
+         * @return The response of the filter, null if the request has not been filtered
+         */
+        static RenderedResponse find(ServletResponse response) {
+            while (response instanceof ServletResponseWrapper) {
+                if (response instanceof RenderedResponse) {
+                    return (RenderedResponse) response;
+                }
+                response = ((ServletResponseWrapper) response).getResponse();
+            }
+            return null;
+        }
+
+        /**
+         * Add the changes recorded by a render, from any thread. Changes added once the request has ended are
+         * discarded.
+         *
+         * @param changes The changes, in order
+         */
+        void addChanges(List<ResponseChange> changes) {
+            if (!changes.isEmpty() && !closed) {
+                pending.add(changes);
+            }
+        }
+
+        /**
+         * Apply the pending changes to the wrapped response, on the request thread.
+         *
+         * @throws IOException In case an error or a redirect cannot be sent
+         */
+        void applyChanges() throws IOException {
+            List<ResponseChange> changes;
+            while ((changes = pending.poll()) != null) {
+                for (ResponseChange change : changes) {
+                    change.apply((HttpServletResponse) getResponse());
+                }
+            }
+        }
+
+        private void close() throws IOException {
+            closed = true;
+            if (!pending.isEmpty()) {
+                if (isCommitted()) {
+                    logger.debug("Response already committed, render changes not applied");
+                    pending.clear();
+                } else {
+                    applyChanges();
+                }
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            applyChanges();
+            return super.getWriter();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            applyChanges();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            applyChanges();
+            super.flushBuffer();
+        }
+    }
+}
@@ -44,22 +44,19 @@
 package org.jahia.modules.graphql.provider.dxm.security;
 
 import graphql.ErrorType;
-import graphql.language.Argument;
 import graphql.language.Field;
-import graphql.schema.GraphQLObjectType;
-import graphql.schema.GraphQLOutputType;
 import graphql.schema.GraphQLType;
 import org.apache.commons.lang.StringUtils;
 import org.jahia.modules.graphql.provider.dxm.BaseGqlClientException;
+import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionFactory;
 import org.jahia.services.content.JCRSessionWrapper;
 
 import javax.jcr.RepositoryException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * Permission checker can handle permission checks on graphQL types and fields
@@ -74,15 +71,51 @@ public class GqlJcrPermissionChecker {
      * @throws GqlAccessDeniedException in case of permission denied
      */
     public static void checkPermissions(final GraphQLType type, final List<Field> fields, final Map<String, String> permissions) {
-        if (permissions == null || permissions.size() == 0 || StringUtils.equals(type.getName(), "JCRNodeConnection")) {
-            // if no permissions configured or the current type is a connection ( because the parent type have already be checked )
+        if (permissions == null || permissions.size() == 0) {
             return;
         }
+        checkPermissions(type, fields, new GqlJcrPermissionTable(permissions), null);
+    }
 
-        List<String> types = resolveTypes(type);
+    /**
+     * Check the permissions on the given graphQL type and fields
+     * @param type the GraphQL type
+     * @param fields the GraphQL fields
+     * @param permissionTable the table of the permissions required by types and fields
+     * @param checkedPermissions results of the permissions already checked for the current user, updated with the new
+     *                           checks; null to check all permissions
+     * @throws GqlAccessDeniedException in case of permission denied
+     */
+    public static void checkPermissions(final GraphQLType type, final List<Field> fields, final GqlJcrPermissionTable permissionTable, final Map<String, Boolean> checkedPermissions) {
+        if (permissionTable == null || permissionTable.isEmpty() || StringUtils.equals(type.getName(), "JCRNodeConnection")) {
+            // if no permissions configured or the current type is a connection ( because the parent type have already be checked )
+            return;
+        }
 
         try {
-            checkPermissions(types, fields, permissions, JCRSessionFactory.getInstance().getCurrentUserSession());
+            JCRNodeWrapper rootNode = null;
+            for (Field field : fields) {
+                if (field == null) {
+                    continue;
+                }
+                String permission = permissionTable.getPermission(type, field.getName());
+                if (permission == null) {
+                    continue;
+                }
+                Boolean granted = checkedPermissions != null ? checkedPermissions.get(permission) : null;
+                if (granted == null) {
+                    if (rootNode == null) {
+                        rootNode = JCRSessionFactory.getInstance().getCurrentUserSession().getNode("/");
+                    }
+                    granted = rootNode.hasPermission(permission);
+                    if (checkedPermissions != null) {
+                        checkedPermissions.put(permission, granted);
+                    }
+                }
+                if (!granted) {
+                    throw new GqlAccessDeniedException(permission);
+                }
+            }
         } catch (RepositoryException e) {
             throw new BaseGqlClientException(e, ErrorType.DataFetchingException);
         }
@@ -96,73 +129,22 @@ public class GqlJcrPermissionChecker {
      * @throws GqlAccessDeniedException in case of permission denied
      */
     public static void checkPermissions(final List<String> types, final List<Field> fields, final Map<String, String> permissions, JCRSessionWrapper session) throws RepositoryException {
-        Map<String, String> requiredPermissionPerFields = resolvePermissionPerFields(types, fields, permissions);
-
-        if (requiredPermissionPerFields.size() > 0) {
-            // iterate on permissions to check
-            for (Map.Entry<String, String> requiredPermissionForField : requiredPermissionPerFields.entrySet()) {
-
-                if (!session.getNode("/").hasPermission(requiredPermissionForField.getValue())) {
-                    throw new GqlAccessDeniedException(requiredPermissionForField.getValue());
-                }
-            }
-        }
-    }
-
-    private static List<String> resolveTypes(GraphQLType type) {
-        // resolved types
-        List<String> types = new ArrayList<>();
-
-        // resolve super types
-        if (type instanceof GraphQLObjectType) {
-            GraphQLObjectType objectType = (GraphQLObjectType) type;
-            if (objectType.getInterfaces().size() > 0) {
-                for (GraphQLOutputType graphQLOutputType : objectType.getInterfaces()) {
-                    types.add(graphQLOutputType.getName());
-                }
-            }
-        }
-
-        // add exact type at the end of the list
-        types.add(type.getName());
-
-        return types;
-    }
-
-    private static Map<String, String> resolvePermissionPerFields(List<String> types, List<Field> fields, Map<String, String> permissions) {
-        // resolved permissions
-        Map<String, String> requiredPermissionForFields = new HashMap<>();
-
+        GqlJcrPermissionTable permissionTable = new GqlJcrPermissionTable(permissions);
+        Set<String> requiredPermissions = new LinkedHashSet<>();
         for (Field field : fields) {
             if (field != null) {
-                String permission = getPermissionForTypes(types, field.getName(), permissions);
-
-                // fallback on "*" wildcard
-                if (permission == null) {
-                    permission = getPermissionForTypes(types, "*", permissions);
-                }
-
+                String permission = permissionTable.getPermission(types, field.getName());
                 if (permission != null) {
-                    requiredPermissionForFields.put(field.getAlias() != null ? field.getAlias() : field.getName(), permission);
+                    requiredPermissions.add(permission);
                 }
             }
         }
 
-        return requiredPermissionForFields;
-    }
-
-    private static String getPermissionForTypes(List<String> types, String field, Map<String, String> permissions) {
-        String permission = null;
-
-        // iterate on types from interfaces to exact type precision. Exact type will always have the priority
-        for (String type : types) {
-            String permissionKey = type + "." + field;
-
-            if (permissions.containsKey(permissionKey)) {
-                permission = permissions.get(permissionKey);
+        // iterate on permissions to check
+        for (String requiredPermission : requiredPermissions) {
+            if (!session.getNode("/").hasPermission(requiredPermission)) {
+                throw new GqlAccessDeniedException(requiredPermission);
             }
         }
-
-        return permission;
     }
 }
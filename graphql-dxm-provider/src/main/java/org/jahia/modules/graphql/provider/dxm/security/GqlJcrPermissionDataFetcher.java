@@ -45,7 +45,7 @@ package org.jahia.modules.graphql.provider.dxm.security;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
-import graphql.schema.GraphQLType;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLContext;
 
 import java.util.Map;
 
@@ -56,17 +56,19 @@ import java.util.Map;
 public class GqlJcrPermissionDataFetcher<T> implements DataFetcher<T> {
 
     private DataFetcher<T> originalDataFetcher;
-    private Map<String, String> permissions;
+    private GqlJcrPermissionTable permissionTable;
 
-    public GqlJcrPermissionDataFetcher(DataFetcher<T> originalDataFetcher, Map<String, String> permissions) {
+    public GqlJcrPermissionDataFetcher(DataFetcher<T> originalDataFetcher, GqlJcrPermissionTable permissionTable) {
         this.originalDataFetcher = originalDataFetcher;
-        this.permissions = permissions;
+        this.permissionTable = permissionTable;
     }
 
     @Override
     public T get(DataFetchingEnvironment environment) {
-        // check permission
-        GqlJcrPermissionChecker.checkPermissions(environment.getParentType(), environment.getFields(), permissions);
+        // check permission, each distinct permission being checked once per request
+        Object context = environment.getContext();
+        Map<String, Boolean> checkedPermissions = (context instanceof DXGraphQLContext) ? ((DXGraphQLContext) context).getCheckedPermissions() : null;
+        GqlJcrPermissionChecker.checkPermissions(environment.getParentType(), environment.getFields(), permissionTable, checkedPermissions);
 
         // permission checked
         return originalDataFetcher.get(environment);
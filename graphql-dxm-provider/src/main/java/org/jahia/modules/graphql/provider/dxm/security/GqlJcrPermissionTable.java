@@ -0,0 +1,150 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.security;
+
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLOutputType;
+import graphql.schema.GraphQLType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable table of the permissions required by GraphQL types and fields, built from the permissions configuration.
+ *
+ * The required permission of a field is resolved once per type and field, taking into account the interfaces of the
+ * type and the wildcard field, and then served from the table.
+ */
+public class GqlJcrPermissionTable {
+
+    private static final String NO_PERMISSION = "";
+    private static final String WILDCARD = "*";
+
+    private final Map<String, Map<String, String>> permissionsByType = new HashMap<>();
+    private final Map<String, Map<String, String>> resolvedPermissions = new ConcurrentHashMap<>();
+
+    /**
+     * Create the table
+     * @param permissions the map of all the permissions ( key format: {type.field}, value format: {permission} )
+     */
+    public GqlJcrPermissionTable(Map<String, String> permissions) {
+        for (Map.Entry<String, String> entry : permissions.entrySet()) {
+            int separator = entry.getKey().lastIndexOf('.');
+            if (separator > 0) {
+                permissionsByType.computeIfAbsent(entry.getKey().substring(0, separator), t -> new HashMap<>())
+                        .put(entry.getKey().substring(separator + 1), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true if no permission is configured
+     */
+    public boolean isEmpty() {
+        return permissionsByType.isEmpty();
+    }
+
+    /**
+     * Get the permission required to access a field of a GraphQL type
+     * @param type the GraphQL type
+     * @param field the field name
+     * @return the required permission, or null if none
+     */
+    public String getPermission(GraphQLType type, String field) {
+        String permission = resolvedPermissions.computeIfAbsent(type.getName(), t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(field, f -> {
+                    String p = getPermission(resolveTypes(type), f);
+                    return p != null ? p : NO_PERMISSION;
+                });
+        return permission.equals(NO_PERMISSION) ? null : permission;
+    }
+
+    /**
+     * Get the permission required to access a field on the given types
+     * @param types the types, primary type should be the latest in the list to support inheritance of permission properties
+     * @param field the field name
+     * @return the required permission, or null if none
+     */
+    public String getPermission(List<String> types, String field) {
+        String permission = getPermissionForTypes(types, field);
+
+        // fallback on "*" wildcard
+        if (permission == null) {
+            permission = getPermissionForTypes(types, WILDCARD);
+        }
+        return permission;
+    }
+
+    private String getPermissionForTypes(List<String> types, String field) {
+        String permission = null;
+
+        // iterate on types from interfaces to exact type precision. Exact type will always have the priority
+        for (String type : types) {
+            Map<String, String> permissionsByField = permissionsByType.get(type);
+            if (permissionsByField != null && permissionsByField.containsKey(field)) {
+                permission = permissionsByField.get(field);
+            }
+        }
+
+        return permission;
+    }
+
+    private static List<String> resolveTypes(GraphQLType type) {
+        // resolved types
+        List<String> types = new ArrayList<>();
+
+        // resolve super types
+        if (type instanceof GraphQLObjectType) {
+            GraphQLObjectType objectType = (GraphQLObjectType) type;
+            for (GraphQLOutputType graphQLOutputType : objectType.getInterfaces()) {
+                types.add(graphQLOutputType.getName());
+            }
+        }
+
+        // add exact type at the end of the list
+        types.add(type.getName());
+
+        return types;
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.service.vanity;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.node.ObservationHelper;
+import org.jahia.services.content.JCRContentUtils;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.query.Query;
+import java.util.*;
+
+import static org.jahia.api.Constants.JCR_LANGUAGE;
+import static org.jahia.services.seo.jcr.VanityUrlManager.*;
+
+/**
+ * In-memory index of the vanity URLs of each site and workspace, so that resolving a URL is a map lookup instead of a
+ * query followed by the load of each matching node.
+ *
+ * The index of a site is built on the first lookup with a single query, and dropped by JCR observation as soon as a
+ * vanity URL of the site is added, changed or removed, to be built again on the next lookup. The index only holds the
+ * identifiers and flags of the vanity URLs: nodes are loaded with the session of the caller, so that vanity URLs the
+ * caller cannot read are never returned.
+ *
+ * The index is configured in the DX GraphQL configuration with the following property:
+ * <ul>
+ *     <li>vanityUrlIndex.enabled: whether the index is used, true by default; vanity URLs are otherwise looked up with
+ *     the vanity URL service</li>
+ * </ul>
+ */
+@Component(service = VanityUrlIndex.class, immediate = true)
+public class VanityUrlIndex {
+
+    private static Logger logger = LoggerFactory.getLogger(VanityUrlIndex.class);
+
+    private static final String ENABLED = "vanityUrlIndex.enabled";
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private static final String SITES_PATH = "/sites/";
+
+    private static VanityUrlIndex instance;
+
+    private DXGraphQLConfig config;
+
+    private final Map<IndexKey, Map<String, List<Entry>>> indexes = new HashMap<>();
+    // incremented on each change notification, so that indexes built while vanity URLs are changed are not kept
+    private long invalidations;
+
+    private final List<ObservationHelper.Registration> registrations = new ArrayList<>();
+
+    public static VanityUrlIndex getInstance() {
+        return instance;
+    }
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Activate
+    public void activate() {
+        for (String workspace : Arrays.asList(Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE)) {
+            try {
+                registrations.add(ObservationHelper.addEventListener(workspace, events -> invalidate(workspace, events), EVENT_TYPES, "/sites", true));
+            } catch (RepositoryException e) {
+                logger.error("Unable to register vanity URL index listener on workspace " + workspace, e);
+            }
+        }
+        instance = this;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        instance = null;
+        for (ObservationHelper.Registration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return registrations.size() == 2 && (config == null || config.getBooleanProperty(ENABLED, true));
+    }
+
+    /**
+     * Get the vanity URLs of a site matching a URL.
+     *
+     * @param siteKey The key of the site
+     * @param workspace The workspace
+     * @param url The URL
+     * @return The indexed vanity URLs matching the URL, in the order of the query the index has been built with,
+     * which is not necessarily the order of the vanity URL service
+     * @throws RepositoryException In case the index of the site cannot be built
+     */
+    public List<Entry> find(String siteKey, String workspace, String url) throws RepositoryException {
+        IndexKey key = new IndexKey(workspace, siteKey);
+        Map<String, List<Entry>> index;
+        long version;
+        synchronized (indexes) {
+            index = indexes.get(key);
+            version = invalidations;
+        }
+        if (index == null) {
+            index = build(siteKey, workspace);
+            synchronized (indexes) {
+                // do not keep an index which may have been built before the last change
+                if (invalidations == version) {
+                    indexes.put(key, index);
+                }
+            }
+        }
+        List<Entry> entries = index.get(url);
+        return entries != null ? entries : Collections.emptyList();
+    }
+
+    boolean isIndexed(String siteKey, String workspace) {
+        synchronized (indexes) {
+            return indexes.containsKey(new IndexKey(workspace, siteKey));
+        }
+    }
+
+    private static Map<String, List<Entry>> build(String siteKey, String workspace) throws RepositoryException {
+        return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, workspace, null, session -> {
+            String statement = "SELECT * FROM [" + JAHIANT_VANITYURL + "] WHERE ISDESCENDANTNODE('" + SITES_PATH + JCRContentUtils.sqlEncode(siteKey) + "')";
+            NodeIterator nodes = session.getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2).execute().getNodes();
+            Map<String, List<Entry>> index = new HashMap<>();
+            while (nodes.hasNext()) {
+                JCRNodeWrapper node = (JCRNodeWrapper) nodes.nextNode();
+                String url = node.getPropertyAsString(PROPERTY_URL);
+                if (url != null) {
+                    Entry entry = new Entry(node.getIdentifier(), node.getPropertyAsString(JCR_LANGUAGE),
+                            node.hasProperty(PROPERTY_ACTIVE) && node.getProperty(PROPERTY_ACTIVE).getBoolean(),
+                            node.hasProperty(PROPERTY_DEFAULT) && node.getProperty(PROPERTY_DEFAULT).getBoolean());
+                    index.computeIfAbsent(url, u -> new ArrayList<>(1)).add(entry);
+                }
+            }
+            return index;
+        });
+    }
+
+    private void invalidate(String workspace, EventIterator events) {
+        Set<String> siteKeys = new HashSet<>();
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            String path;
+            try {
+                path = event.getPath();
+            } catch (RepositoryException e) {
+                logger.debug("Unable to read event path, invalidating all vanity URL indexes of workspace " + workspace, e);
+                siteKeys = null;
+                break;
+            }
+            // a removed or moved sub-tree may hold vanity URLs
+            if (path.startsWith(SITES_PATH) && (path.contains("/" + VANITYURLMAPPINGS_NODE)
+                    || event.getType() == Event.NODE_REMOVED || event.getType() == Event.NODE_MOVED)) {
+                siteKeys.add(StringUtils.substringBefore(path.substring(SITES_PATH.length()), "/"));
+            }
+        }
+        if (siteKeys == null || !siteKeys.isEmpty()) {
+            invalidate(workspace, siteKeys);
+        }
+    }
+
+    /**
+     * Drop the indexes of some sites of a workspace.
+     *
+     * @param workspace The workspace
+     * @param siteKeys The keys of the sites, or null to drop the indexes of all sites
+     */
+    void invalidate(String workspace, Set<String> siteKeys) {
+        synchronized (indexes) {
+            invalidations++;
+            indexes.keySet().removeIf(key -> key.workspace.equals(workspace) && (siteKeys == null || siteKeys.contains(key.siteKey)));
+        }
+    }
+
+    /**
+     * Vanity URL as held by the index.
+     */
+    public static class Entry {
+
+        private final String identifier;
+        private final String language;
+        private final boolean active;
+        private final boolean isDefault;
+
+        private Entry(String identifier, String language, boolean active, boolean isDefault) {
+            this.identifier = identifier;
+            this.language = language;
+            this.active = active;
+            this.isDefault = isDefault;
+        }
+
+        /**
+         * @return The identifier of the vanity URL node
+         */
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return The language of the vanity URL
+         */
+        public String getLanguage() {
+            return language;
+        }
+
+        /**
+         * @return Whether the vanity URL is active
+         */
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * @return Whether the vanity URL is the default one of its node and language
+         */
+        public boolean isDefault() {
+            return isDefault;
+        }
+    }
+
+    private static class IndexKey {
+
+        private final String workspace;
+        private final String siteKey;
+
+        private IndexKey(String workspace, String siteKey) {
+            this.workspace = workspace;
+            this.siteKey = siteKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            IndexKey that = (IndexKey) o;
+            return workspace.equals(that.workspace) && siteKey.equals(that.siteKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(workspace, siteKey);
+        }
+    }
+}
@@ -47,14 +47,22 @@ import graphql.annotations.annotationTypes.GraphQLDescription;
 import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLTypeExtension;
+import graphql.annotations.connection.GraphQLConnection;
+import graphql.schema.DataFetchingEnvironment;
+import org.apache.commons.collections4.Predicate;
 import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNode;
-import org.jahia.services.content.JCRNodeIteratorWrapper;
+import org.jahia.modules.graphql.provider.dxm.node.NodeHelper;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedDataConnectionFetcher;
+import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
 import org.jahia.services.content.JCRNodeWrapper;
 
 import javax.jcr.RepositoryException;
 import java.util.Collection;
-import java.util.LinkedList;
 
+import static org.jahia.api.Constants.JCR_LANGUAGE;
+import static org.jahia.services.seo.jcr.VanityUrlManager.PROPERTY_ACTIVE;
+import static org.jahia.services.seo.jcr.VanityUrlManager.PROPERTY_DEFAULT;
 import static org.jahia.services.seo.jcr.VanityUrlManager.VANITYURLMAPPINGS_NODE;
 
 /**
@@ -70,34 +78,39 @@ public class VanityUrlJCRNodeExtensions {
     }
 
     /**
-     * Get vanity url from the current node filtered by the parameters
+     * Get vanity url from the current node filtered by the parameters. The filters are evaluated on the vanity URL nodes
+     * while iterating them, so that only the requested page is wrapped.
      * @param languages an array of languages to filter
      * @param onlyActive get only active vanity urls
      * @param onlyDefault get only default vanity urls
-     * @return a list of vanity urls
+     * @param environment status of the connection
+     * @return a paginated list of vanity urls
      */
     @GraphQLField
     @GraphQLName("vanityUrls")
     @GraphQLDescription("return vanity urls")
-    public Collection<GqlJcrVanityUrl> getVanityUrls(@GraphQLName("languages") Collection<String>  languages, @GraphQLName("onlyActive") Boolean onlyActive, @GraphQLName("onlyDefault") Boolean onlyDefault ) {
+    @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
+    public DXPaginatedData<GqlJcrVanityUrl> getVanityUrls(@GraphQLName("languages") Collection<String>  languages, @GraphQLName("onlyActive") Boolean onlyActive, @GraphQLName("onlyDefault") Boolean onlyDefault, DataFetchingEnvironment environment) {
         try {
-            Collection<GqlJcrVanityUrl> vanityUrls = new LinkedList<>();
-            JCRNodeIteratorWrapper urls = node.getNode().getNode(VANITYURLMAPPINGS_NODE).getNodes();
-            urls.forEachRemaining(vanityUrl -> {
-                GqlJcrVanityUrl gqlVanityUrl = new GqlJcrVanityUrl((JCRNodeWrapper) vanityUrl);
+            PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
+            JCRNodeWrapper mappings = node.getNode().getNode(VANITYURLMAPPINGS_NODE);
+            Predicate<JCRNodeWrapper> predicate = vanityUrl -> {
                 try {
-                    if ((languages == null || languages.contains(gqlVanityUrl.getLanguage())) && ((onlyActive != null && !onlyActive) || gqlVanityUrl.isActive()) && ((onlyDefault != null &&!onlyDefault) || gqlVanityUrl.isDefault())) {
-                        vanityUrls.add(gqlVanityUrl);
-                    }
+                    return (languages == null || languages.contains(vanityUrl.getPropertyAsString(JCR_LANGUAGE)))
+                            && ((onlyActive != null && !onlyActive) || isSet(vanityUrl, PROPERTY_ACTIVE))
+                            && ((onlyDefault != null && !onlyDefault) || isSet(vanityUrl, PROPERTY_DEFAULT));
                 } catch (RepositoryException e) {
                     throw new RuntimeException(e);
                 }
-            });
-
-            return vanityUrls;
-
+            };
+            return PaginationHelper.paginate(() -> NodeHelper.getDescendants(mappings, predicate, false).map(GqlJcrVanityUrl::new),
+                    vanityUrl -> PaginationHelper.encodeCursor(vanityUrl.getUuid()), arguments);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static boolean isSet(JCRNodeWrapper vanityUrl, String property) throws RepositoryException {
+        return vanityUrl.hasProperty(property) && vanityUrl.getProperty(property).getBoolean();
+    }
 }
@@ -46,17 +46,19 @@ package org.jahia.modules.graphql.provider.dxm.service.vanity;
 import graphql.annotations.annotationTypes.*;
 import graphql.annotations.connection.GraphQLConnection;
 import graphql.schema.DataFetchingEnvironment;
+import org.jahia.modules.graphql.provider.dxm.node.QueryHelper;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
 import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedDataConnectionFetcher;
 import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
 import org.jahia.modules.graphql.provider.dxm.site.GqlJcrSite;
 import org.jahia.osgi.BundleUtils;
 import org.jahia.services.content.JCRContentUtils;
-import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.seo.VanityUrl;
 import org.jahia.services.seo.jcr.VanityUrlService;
 
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.query.Query;
 import java.util.Collection;
@@ -112,18 +114,39 @@ public class VanityUrlJCRSiteExtensions {
         try {
             List<GqlJcrVanityUrl> vanityUrls = new LinkedList<>();
             JCRSessionWrapper jcrSessionWrapper = siteNode.getNode().getSession();
+            String workspace = jcrSessionWrapper.getWorkspace().getName();
+
+            VanityUrlIndex index = VanityUrlIndex.getInstance();
+            if (index != null && index.isEnabled()) {
+                List<VanityUrlIndex.Entry> entries = index.find(siteNode.getSiteKey(), workspace, url);
+                if (entries.isEmpty()) {
+                    return vanityUrls;
+                }
+                // several matches are returned in the order of the vanity URL service, which the index does not keep
+                if (entries.size() == 1) {
+                    VanityUrlIndex.Entry entry = entries.get(0);
+                    if (!activeOnly || entry.isActive()) {
+                        try {
+                            vanityUrls.add(new GqlJcrVanityUrl(jcrSessionWrapper.getNodeByIdentifier(entry.getIdentifier())));
+                        } catch (ItemNotFoundException e) {
+                            // not readable by the current user
+                        }
+                    }
+                    return vanityUrls;
+                }
+            }
 
             VanityUrlService vanityUrlvanityUrlService = BundleUtils.getOsgiService(VanityUrlService.class, null);
-            List<VanityUrl> urls = vanityUrlvanityUrlService.findExistingVanityUrls(url, siteNode.getSiteKey(), jcrSessionWrapper.getWorkspace().getName());
-            urls.forEach(vanityUrl -> {
-                try {
-                    if (!activeOnly || vanityUrl.isActive()) {
+            List<VanityUrl> urls = vanityUrlvanityUrlService.findExistingVanityUrls(url, siteNode.getSiteKey(), workspace);
+            for (VanityUrl vanityUrl : urls) {
+                if (!activeOnly || vanityUrl.isActive()) {
+                    try {
                         vanityUrls.add(new GqlJcrVanityUrl(jcrSessionWrapper.getNode(vanityUrl.getPath())));
+                    } catch (PathNotFoundException e) {
+                        // not readable by the current user
                     }
-                } catch (RepositoryException e) {
-                    throw new RuntimeException(e);
                 }
-            });
+            }
             return vanityUrls;
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
@@ -141,19 +164,13 @@ public class VanityUrlJCRSiteExtensions {
     @GraphQLConnection(connection = DXPaginatedDataConnectionFetcher.class)
     public DXPaginatedData<GqlJcrVanityUrl> getAllVanityURLs(DataFetchingEnvironment environment) {
         try {
-            List<GqlJcrVanityUrl> vanityUrls = new LinkedList<>();
             PaginationHelper.Arguments arguments = PaginationHelper.parseArguments(environment);
             JCRSessionWrapper jcrSession = siteNode.getNode().getSession();
 
             StringBuilder vanityQuery = new StringBuilder("SELECT * FROM [").append(JAHIANT_VANITYURL).append("] AS vanityURL WHERE ");
             vanityQuery.append("ISDESCENDANTNODE('/sites/").append(JCRContentUtils.sqlEncode(siteNode.getSiteKey())).append("')");
 
-            Query query = jcrSession.getWorkspace().getQueryManager().createQuery(vanityQuery.toString(), Query.JCR_SQL2);
-
-            query.execute().getNodes().forEachRemaining(vanityUrl -> {
-                vanityUrls.add(new GqlJcrVanityUrl((JCRNodeWrapper) vanityUrl));
-            });
-            return PaginationHelper.paginate(vanityUrls, v -> PaginationHelper.encodeCursor(v.getUuid()), arguments);
+            return QueryHelper.paginate(jcrSession, vanityQuery.toString(), Query.JCR_SQL2, GqlJcrVanityUrl::new, arguments);
         } catch (RepositoryException e) {
             throw new RuntimeException(e);
         }
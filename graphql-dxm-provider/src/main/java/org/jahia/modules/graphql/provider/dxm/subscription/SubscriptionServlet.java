@@ -0,0 +1,329 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.subscription;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import graphql.ErrorType;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.execution.SubscriptionExecutionStrategy;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.language.Definition;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.schema.GraphQLSchema;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLContext;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLProvider;
+import org.jahia.modules.graphql.provider.dxm.JCRDataFetchingExceptionHandler;
+import org.jahia.modules.graphql.provider.dxm.SimpleGraphQLError;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Servlet streaming the results of the subscriptions as server-sent events, the GraphQL servlet only returning
+ * single results.
+ *
+ * The subscription is passed in the query, variables and operationName parameters of a GET request, as sent by
+ * EventSource clients, and executed for the current user with the schema of the DX subscriptions. Each result is sent
+ * as a message holding its JSON representation, and the next result is only requested from the publisher once the
+ * previous one has been written: changes are coalesced by the publisher for clients not reading fast enough, instead
+ * of being buffered here. A comment is sent when nothing has been sent for a while, so that closed connections are
+ * detected and their subscription cancelled. The stream ends when the publisher completes, or after a message holding
+ * the error it failed with.
+ *
+ * Each stream holds a request thread as long as it is open: the number of concurrent streams is bounded, further
+ * requests being rejected with a 503 status. The subscriptions are configured in the DX GraphQL configuration with
+ * the following properties:
+ * <ul>
+ *     <li>subscriptions.maxConnections: maximum number of concurrent streams, 100 by default</li>
+ *     <li>subscriptions.heartbeat: delay in milliseconds after which a comment is sent when nothing has been sent,
+ *     30000 by default</li>
+ * </ul>
+ */
+@Component(service = {HttpServlet.class, Servlet.class}, property = {"alias=/graphql-subscription"}, immediate = true)
+public class SubscriptionServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static Logger logger = LoggerFactory.getLogger(SubscriptionServlet.class);
+
+    private static final String MAX_CONNECTIONS = "subscriptions.maxConnections";
+    private static final String HEARTBEAT = "subscriptions.heartbeat";
+
+    private static final long DEFAULT_MAX_CONNECTIONS = 100;
+    private static final long DEFAULT_HEARTBEAT = 30000;
+
+    private static final Object COMPLETE = new Object();
+
+    private transient DXGraphQLConfig config;
+
+    private final transient ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @Reference
+    public void setConfig(DXGraphQLConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String query = request.getParameter("query");
+        if (StringUtils.isEmpty(query)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing query");
+            return;
+        }
+        Map<String, Object> variables = Collections.emptyMap();
+        String variablesParameter = request.getParameter("variables");
+        if (StringUtils.isNotEmpty(variablesParameter)) {
+            try {
+                variables = mapper.readValue(variablesParameter, Map.class);
+            } catch (JsonProcessingException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed variables: " + e.getOriginalMessage());
+                return;
+            }
+        }
+        DXGraphQLProvider provider = DXGraphQLProvider.getInstance();
+        if (provider == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        if (connections.incrementAndGet() > config.getLongProperty(MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS)) {
+            connections.decrementAndGet();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many subscriptions");
+            return;
+        }
+        try {
+            execute(request, response, provider.getSubscriptionSchema(), query, request.getParameter("operationName"), variables);
+        } finally {
+            connections.decrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(HttpServletRequest request, HttpServletResponse response, GraphQLSchema schema, String query, String operationName,
+                         Map<String, Object> variables) throws IOException {
+        AtomicReference<String> responseKey = new AtomicReference<>();
+        GraphQL graphQL = GraphQL.newGraphQL(schema)
+                .subscriptionExecutionStrategy(new SubscriptionExecutionStrategy(new JCRDataFetchingExceptionHandler()))
+                .preparsedDocumentProvider((document, compute) -> checkSubscription(compute.apply(document), operationName, responseKey))
+                .build();
+        ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+                .query(query)
+                .operationName(operationName)
+                .variables(variables)
+                .context(new DXGraphQLContext(Optional.of(request), Optional.of(response)))
+                .build());
+
+        if (!(result.getData() instanceof Publisher)) {
+            // rejected before subscribing
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType("application/json;charset=UTF-8");
+            mapper.writeValue(response.getWriter(), result.toSpecification());
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.flushBuffer();
+        try {
+            stream((Publisher<ExecutionResult>) result.getData(), responseKey.get(), response.getWriter(),
+                    config.getLongProperty(HEARTBEAT, DEFAULT_HEARTBEAT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check that the operation executed is a subscription selecting a field, and get the key of the field in the
+     * results.
+     */
+    static PreparsedDocumentEntry checkSubscription(PreparsedDocumentEntry entry, String operationName, AtomicReference<String> responseKey) {
+        if (entry.hasErrors()) {
+            return entry;
+        }
+        for (Definition definition : entry.getDocument().getDefinitions()) {
+            if (!(definition instanceof OperationDefinition)) {
+                continue;
+            }
+            OperationDefinition operation = (OperationDefinition) definition;
+            if (operationName != null && !operationName.equals(operation.getName())) {
+                continue;
+            }
+            if (operation.getOperation() != OperationDefinition.Operation.SUBSCRIPTION) {
+                return new PreparsedDocumentEntry(getError("Only subscriptions are served", operation));
+            }
+            Selection selection = operation.getSelectionSet().getSelections().get(0);
+            if (!(selection instanceof Field)) {
+                return new PreparsedDocumentEntry(getError("The subscription field must be selected directly", operation));
+            }
+            Field field = (Field) selection;
+            responseKey.set(field.getAlias() != null ? field.getAlias() : field.getName());
+            return entry;
+        }
+        // unknown operation, reported on execution
+        return entry;
+    }
+
+    private static GraphQLError getError(String message, OperationDefinition operation) {
+        return new SimpleGraphQLError(message, null, Collections.singletonList(operation.getSourceLocation()), ErrorType.ValidationError);
+    }
+
+    /**
+     * Write the results of a subscription as server-sent events, until the publisher completes or fails, or the
+     * connection is closed.
+     *
+     * @param publisher The publisher of the results
+     * @param responseKey The key of the subscription field in the results
+     * @param writer The writer of the response
+     * @param heartbeat The delay in milliseconds after which a comment is written when nothing has been written
+     * @throws InterruptedException When interrupted while waiting for results; the subscription is cancelled
+     */
+    void stream(Publisher<ExecutionResult> publisher, String responseKey, PrintWriter writer, long heartbeat) throws InterruptedException {
+        BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        AtomicReference<Subscription> subscription = new AtomicReference<>();
+        publisher.subscribe(new Subscriber<ExecutionResult>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                subscription.set(s);
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(ExecutionResult result) {
+                signals.add(result);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                signals.add(t);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add(COMPLETE);
+            }
+        });
+
+        try {
+            while (true) {
+                Object signal = signals.poll(heartbeat, TimeUnit.MILLISECONDS);
+                if (signal == null) {
+                    writer.write(":\n\n");
+                } else if (signal instanceof ExecutionResult) {
+                    writeMessage(writer, getSpecification((ExecutionResult) signal, responseKey));
+                } else if (signal instanceof Throwable) {
+                    logger.warn("Subscription failed", (Throwable) signal);
+                    writeMessage(writer, Collections.singletonMap("errors", Collections.singletonList(
+                            Collections.singletonMap("message", "Subscription failed: " + ((Throwable) signal).getMessage()))));
+                }
+                if (writer.checkError()) {
+                    logger.debug("Subscription stream closed by the client");
+                    return;
+                }
+                if (signal == COMPLETE || signal instanceof Throwable) {
+                    return;
+                }
+                if (signal != null) {
+                    subscription.get().request(1);
+                }
+            }
+        } finally {
+            Subscription s = subscription.get();
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    private void writeMessage(PrintWriter writer, Map<String, Object> message) {
+        try {
+            writer.write("data: " + mapper.writeValueAsString(message) + "\n\n");
+        } catch (JsonProcessingException e) {
+            logger.error("Unable to write subscription result", e);
+        }
+    }
+
+    /**
+     * Get the representation of a subscription result: the results published are the values of the subscription
+     * field, put back under its key.
+     */
+    private static Map<String, Object> getSpecification(ExecutionResult result, String responseKey) {
+        Map<String, Object> specification = new LinkedHashMap<>(result.toSpecification());
+        if (specification.containsKey("data")) {
+            specification.put("data", Collections.singletonMap(responseKey, specification.get("data")));
+        }
+        return specification;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm;
+
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLTypeExtension;
+import graphql.schema.GraphQLSchema;
+import graphql.servlet.OsgiGraphQLServlet;
+import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNode;
+import org.jahia.modules.graphql.provider.dxm.node.SpecializedTypesHandler;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DXGraphQLProviderTest extends AbstractJUnitTest {
+
+    @Test
+    public void testSchemaRebuiltWithoutRemovingDXFields() throws Exception {
+        DXGraphQLProvider provider = new DXGraphQLProvider();
+        provider.setGraphQLAnnotations(DXGraphQLProvider.getInstance().getGraphQLAnnotations());
+        provider.addExtensionProvider(new TestExtensionsProvider(FirstQueryExtensions.class));
+        TestExtensionsProvider second = new TestExtensionsProvider(SecondQueryExtensions.class);
+
+        SpecializedTypesHandler previous = SpecializedTypesHandler.getInstance();
+        try {
+            provider.rebuild("initial types");
+            RecordingServlet servlet = new RecordingServlet(provider);
+            servlet.bindProvider(provider);
+            provider.setServlet(servlet);
+            servlet.clear();
+
+            provider.addExtensionProvider(second);
+            provider.rebuild("added second");
+            assertFalse(servlet.schemas.isEmpty());
+            for (GraphQLSchema schema : servlet.schemas) {
+                // the DX fields are never missing from the schema served meanwhile
+                assertNotNull(schema.getQueryType().getFieldDefinition("first"));
+            }
+            assertNotNull(getLast(servlet.schemas).getQueryType().getFieldDefinition("second"));
+            assertTrue(servlet.updatedUnderLock);
+
+            servlet.clear();
+            provider.removeExtensionProvider(second);
+            provider.rebuild("removed second");
+            for (GraphQLSchema schema : servlet.schemas) {
+                assertNotNull(schema.getQueryType().getFieldDefinition("first"));
+            }
+            assertNull(getLast(servlet.schemas).getQueryType().getFieldDefinition("second"));
+            assertTrue(servlet.updatedUnderLock);
+        } finally {
+            if (previous != null) {
+                previous.makeCurrent();
+            }
+        }
+    }
+
+    @Test
+    public void testSubscriptionSchema() throws Exception {
+        DXGraphQLProvider provider = DXGraphQLProvider.getInstance();
+        GraphQLSchema schema = provider.getSubscriptionSchema();
+        assertNotNull(schema.getSubscriptionType().getFieldDefinition("nodeChanged"));
+        assertNotNull(schema.getQueryType().getFieldDefinition("jcr"));
+        // built once per set of types
+        assertSame(schema, provider.getSubscriptionSchema());
+    }
+
+    private static GraphQLSchema getLast(List<GraphQLSchema> schemas) {
+        return schemas.get(schemas.size() - 1);
+    }
+
+    /**
+     * Servlet recording the schemas it builds, and whether they are built while the provider lock is held.
+     */
+    private static class RecordingServlet extends OsgiGraphQLServlet {
+
+        private final Object lock;
+        private final List<GraphQLSchema> schemas = new ArrayList<>();
+        private boolean updatedUnderLock = true;
+
+        private RecordingServlet(Object lock) {
+            super();
+            this.lock = lock;
+        }
+
+        private void clear() {
+            schemas.clear();
+            updatedUnderLock = true;
+        }
+
+        @Override
+        protected void updateSchema() {
+            super.updateSchema();
+            // the schema is first built by the servlet constructor, before the fields are initialized
+            if (lock != null) {
+                schemas.add(getSchemaProvider().getSchema());
+                updatedUnderLock &= Thread.holdsLock(lock);
+            }
+        }
+    }
+
+    private static class TestExtensionsProvider implements DXGraphQLExtensionsProvider {
+
+        private final Class<?> extensions;
+
+        private TestExtensionsProvider(Class<?> extensions) {
+            this.extensions = extensions;
+        }
+
+        @Override
+        public Collection<Class<?>> getExtensions() {
+            return Collections.singletonList(extensions);
+        }
+
+        @Override
+        public Collection<Class<? extends GqlJcrNode>> getSpecializedTypes() {
+            return Collections.emptyList();
+        }
+    }
+
+    @GraphQLTypeExtension(DXGraphQLProvider.Query.class)
+    public static class FirstQueryExtensions {
+
+        @GraphQLField
+        public static String first() {
+            return "first";
+        }
+    }
+
+    @GraphQLTypeExtension(DXGraphQLProvider.Query.class)
+    public static class SecondQueryExtensions {
+
+        @GraphQLField
+        public static String second() {
+            return "second";
+        }
+    }
+}
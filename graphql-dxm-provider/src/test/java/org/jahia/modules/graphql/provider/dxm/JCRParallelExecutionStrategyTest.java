@@ -0,0 +1,130 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.Test;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static graphql.Scalars.GraphQLString;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JCRParallelExecutionStrategyTest extends AbstractJUnitTest {
+
+    @Test
+    public void testQueryFieldsResolvedInParallel() throws Exception {
+        // each field waits for the other one: both only complete if they are resolved at the same time
+        CountDownLatch latch = new CountDownLatch(2);
+        Map<String, Object> data = execute("{ first: nodesByQuery second: nodesByQuery }", latch);
+
+        assertEquals("parallel", data.get("first"));
+        assertEquals("parallel", data.get("second"));
+    }
+
+    @Test
+    public void testNodeFieldsResolvedOnRequestThread() throws Exception {
+        Map<String, Object> data = execute("{ first: node { descendants } second: node { descendants } }", new CountDownLatch(2));
+
+        // fields of nodes are not dispatched, even when configured
+        String thread = Thread.currentThread().getName();
+        assertEquals(thread, ((Map<?, ?>) data.get("first")).get("descendants"));
+        assertEquals(thread, ((Map<?, ?>) data.get("second")).get("descendants"));
+    }
+
+    private static Map<String, Object> execute(String query, CountDownLatch latch) throws Exception {
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("parallel.enabled", "true");
+        properties.put("parallel.fields", "nodesByQuery,descendants");
+        config.updated("test", properties);
+
+        GraphQLObjectType nodeType = GraphQLObjectType.newObject()
+                .name("Node")
+                .field(newFieldDefinition().name("descendants").type(GraphQLString).dataFetcher(environment -> Thread.currentThread().getName()))
+                .build();
+        GraphQLObjectType queryType = GraphQLObjectType.newObject()
+                .name("Query")
+                .field(newFieldDefinition().name("nodesByQuery").type(GraphQLString).dataFetcher(environment -> {
+                    latch.countDown();
+                    try {
+                        return latch.await(10, TimeUnit.SECONDS) ? "parallel" : "sequential";
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return "interrupted";
+                    }
+                }))
+                .field(newFieldDefinition().name("node").type(nodeType).dataFetcher(environment -> new Object()))
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GraphQL graphQL = GraphQL.newGraphQL(GraphQLSchema.newSchema().query(queryType).build())
+                    .queryExecutionStrategy(new JCRParallelExecutionStrategy(new JCRDataFetchingExceptionHandler(), config, executor))
+                    .build();
+            ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+                    .query(query)
+                    .context(new DXGraphQLContext(Optional.empty(), Optional.empty()))
+                    .build());
+            assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+            return result.getData();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
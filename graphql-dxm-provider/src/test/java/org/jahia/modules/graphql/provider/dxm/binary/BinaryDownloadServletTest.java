@@ -0,0 +1,109 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.binary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryDownloadServletTest {
+
+    private static final long LENGTH = 100;
+
+    @Test
+    public void testRange() {
+        assertRange(0, 9, "bytes=0-9");
+        assertRange(10, 99, "bytes=10-");
+        assertRange(90, 99, "bytes= 90 - 199 ");
+        assertRange(99, 99, "bytes=99-99");
+    }
+
+    @Test
+    public void testSuffixRange() {
+        assertRange(90, 99, "bytes=-10");
+        // suffixes longer than the binary return the whole binary
+        assertRange(0, 99, "bytes=-1000");
+        assertFalse(BinaryDownloadServlet.parseRange("bytes=-0", LENGTH).isSatisfiable(LENGTH));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() {
+        assertFalse(BinaryDownloadServlet.parseRange("bytes=100-", LENGTH).isSatisfiable(LENGTH));
+        assertFalse(BinaryDownloadServlet.parseRange("bytes=150-200", LENGTH).isSatisfiable(LENGTH));
+        assertFalse(BinaryDownloadServlet.parseRange("bytes=0-", 0).isSatisfiable(0));
+    }
+
+    @Test
+    public void testMalformedRangeIgnored() {
+        String[] headers = {null, "", "bytes=", "bytes=-", "bytes=5", "bytes=a-b", "bytes=1--2", "bytes=-1-2", "bytes=+1-2",
+                "bytes=10-5", "items=0-9", "bytes=0-99999999999999999999"};
+        for (String header : headers) {
+            assertNull(header, BinaryDownloadServlet.parseRange(header, LENGTH));
+        }
+    }
+
+    @Test
+    public void testMultipleRangesIgnored() {
+        assertNull(BinaryDownloadServlet.parseRange("bytes=0-9,20-29", LENGTH));
+        assertNull(BinaryDownloadServlet.parseRange("bytes=0-9, -10", LENGTH));
+    }
+
+    @Test
+    public void testContentDisposition() {
+        assertEquals("attachment; filename=\"report.pdf\"; filename*=UTF-8''report.pdf", BinaryDownloadServlet.getContentDisposition("report.pdf"));
+        assertEquals("attachment; filename=\"_t_ 1_.html\"; filename*=UTF-8''%22t%C3%A9%201%5C.html",
+                BinaryDownloadServlet.getContentDisposition("\"t\u00e9 1\\.html"));
+        assertTrue(BinaryDownloadServlet.getContentDisposition("a\r\nb").startsWith("attachment; filename=\"a__b\""));
+    }
+
+    private static void assertRange(long start, long end, String header) {
+        BinaryDownloadServlet.ByteRange range = BinaryDownloadServlet.parseRange(header, LENGTH);
+        assertTrue(header, range.isSatisfiable(LENGTH));
+        assertEquals(header, start, range.start);
+        assertEquals(header, end, range.end);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.binary;
+
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryUrlSignerTest {
+
+    private static final String IDENTIFIER = "2b2b7a8c-7d0d-4d1f-9f0e-5b1f5e0c1a2b";
+
+    @Test
+    public void testSignedUrlVerified() throws Exception {
+        BinaryUrlSigner signer = createSigner(new Hashtable<>());
+        Map<String, String> url = parse(signer.getUrl("/ctx", "default", IDENTIFIER, "jcr:data", "en"));
+
+        assertEquals("default", url.get(BinaryUrlSigner.WORKSPACE_PARAM));
+        assertEquals(IDENTIFIER, url.get(BinaryUrlSigner.IDENTIFIER_PARAM));
+        assertTrue(verify(signer, url));
+    }
+
+    @Test
+    public void testTamperedUrlRejected() throws Exception {
+        BinaryUrlSigner signer = createSigner(new Hashtable<>());
+        Map<String, String> url = parse(signer.getUrl("/ctx", "default", IDENTIFIER, "jcr:data", "en"));
+
+        String[] params = {BinaryUrlSigner.WORKSPACE_PARAM, BinaryUrlSigner.IDENTIFIER_PARAM, BinaryUrlSigner.PROPERTY_PARAM,
+                BinaryUrlSigner.LANGUAGE_PARAM, BinaryUrlSigner.SIGNATURE_PARAM};
+        for (String param : params) {
+            Map<String, String> tampered = new HashMap<>(url);
+            tampered.put(param, param.equals(BinaryUrlSigner.WORKSPACE_PARAM) ? "live" : url.get(param) + "0");
+            assertFalse(param, verify(signer, tampered));
+        }
+        Map<String, String> extended = new HashMap<>(url);
+        extended.put(BinaryUrlSigner.EXPIRES_PARAM, Long.toString(Long.parseLong(url.get(BinaryUrlSigner.EXPIRES_PARAM)) + 3600));
+        assertFalse(verify(signer, extended));
+        Map<String, String> withoutLanguage = new HashMap<>(url);
+        withoutLanguage.remove(BinaryUrlSigner.LANGUAGE_PARAM);
+        assertFalse(verify(signer, withoutLanguage));
+    }
+
+    @Test
+    public void testUrlSignedWithOtherKeyRejected() throws Exception {
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("binary.secret", "secret");
+        Map<String, String> url = parse(createSigner(properties).getUrl("/ctx", "default", IDENTIFIER, "jcr:data", null));
+
+        assertTrue(verify(createSigner(properties), url));
+        properties.put("binary.secret", "other");
+        assertFalse(verify(createSigner(properties), url));
+        // random keys are generated for each signer
+        assertFalse(verify(createSigner(new Hashtable<>()), url));
+    }
+
+    @Test
+    public void testExpiredUrlRejected() throws Exception {
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("binary.urlTimeToLive", "-1");
+        BinaryUrlSigner signer = createSigner(properties);
+
+        assertFalse(verify(signer, parse(signer.getUrl("/ctx", "default", IDENTIFIER, "jcr:data", null))));
+    }
+
+    private static BinaryUrlSigner createSigner(Hashtable<String, String> properties) throws Exception {
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        config.updated("test", properties);
+        BinaryUrlSigner signer = new BinaryUrlSigner();
+        signer.setConfig(config);
+        signer.activate();
+        return signer;
+    }
+
+    private static boolean verify(BinaryUrlSigner signer, Map<String, String> url) {
+        return signer.verify(url.get(BinaryUrlSigner.WORKSPACE_PARAM), url.get(BinaryUrlSigner.IDENTIFIER_PARAM), url.get(BinaryUrlSigner.PROPERTY_PARAM),
+                url.get(BinaryUrlSigner.LANGUAGE_PARAM), Long.parseLong(url.get(BinaryUrlSigner.EXPIRES_PARAM)), url.get(BinaryUrlSigner.SIGNATURE_PARAM));
+    }
+
+    private static Map<String, String> parse(String url) throws Exception {
+        assertTrue(url, url.startsWith("/ctx/modules/graphql-binary?"));
+        Map<String, String> params = new HashMap<>();
+        for (String param : url.substring(url.indexOf('?') + 1).split("&")) {
+            String[] nameAndValue = param.split("=", 2);
+            params.put(nameAndValue[0], URLDecoder.decode(nameAndValue[1], "UTF-8"));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNodeImpl;
+import org.junit.Test;
+
+import java.util.Hashtable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FieldMetricsTest {
+
+    private static final String TYPE = "jnt:contentList";
+
+    @Test
+    public void testEnabledByDefault() throws Exception {
+        FieldMetrics fieldMetrics = new FieldMetrics();
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        fieldMetrics.setDxGraphQLConfig(config);
+        assertTrue(fieldMetrics.isEnabled());
+
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("metrics.enabled", "false");
+        config.updated("test", properties);
+        assertFalse(fieldMetrics.isEnabled());
+    }
+
+    @Test
+    public void testNodeLoadsCountedWhenNodesAreWrapped() throws Exception {
+        FieldMetric metric = new FieldMetric();
+        FieldMetricsDataFetcher<Object> fetcher = new FieldMetricsDataFetcher<>(environment -> {
+            new GqlJcrNodeImpl(null, TYPE);
+            new GqlJcrNodeImpl(null, TYPE);
+            FieldMetrics.countPropertyRead();
+            return null;
+        }, metric, null);
+
+        fetcher.get(null);
+        assertEquals(1, metric.getStatistics().getInvocationCount());
+        assertEquals(2, metric.getStatistics().getNodeLoads());
+        assertEquals(1, metric.getStatistics().getPropertyReads());
+
+        // nodes wrapped outside of any fetch are not counted
+        new GqlJcrNodeImpl(null, TYPE);
+        assertEquals(2, metric.getStatistics().getNodeLoads());
+    }
+
+    @Test
+    public void testDeferredWorkCountedToRequestingFetch() throws Exception {
+        FieldMetric metric = new FieldMetric();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        Callable<?>[] deferred = new Callable<?>[1];
+        FieldMetricsDataFetcher<Object> fetcher = new FieldMetricsDataFetcher<>(environment -> {
+            // like a batched node load, resolved later when the data loaders are dispatched
+            deferred[0] = FieldMetrics.bindToCurrentFetch(() -> new GqlJcrNodeImpl(null, TYPE));
+            return result;
+        }, metric, null);
+
+        assertSame(result, fetcher.get(null));
+        assertEquals(0, metric.getStatistics().getInvocationCount());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                deferred[0].call();
+                deferred[0].call();
+                return null;
+            }).get();
+        } finally {
+            executor.shutdown();
+        }
+        result.complete(null);
+
+        assertEquals(1, metric.getStatistics().getInvocationCount());
+        assertEquals(2, metric.getStatistics().getNodeLoads());
+    }
+
+    @Test
+    public void testUnboundTaskNotCounted() throws Exception {
+        Callable<Object> task = () -> new GqlJcrNodeImpl(null, TYPE);
+        assertSame(task, FieldMetrics.bindToCurrentFetch(task));
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLTypeReference;
+import org.apache.commons.lang.StringUtils;
+import org.dataloader.DataLoader;
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.DXGraphQLContext;
+import org.jahia.modules.graphql.provider.dxm.node.GqlJcrNode;
+import org.jahia.modules.graphql.provider.dxm.node.NodeLoader;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static graphql.Scalars.GraphQLString;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
+import static org.junit.Assert.*;
+
+public class NodeLoaderDispatcherInstrumentationTest extends AbstractJUnitTest {
+
+    @Before
+    public void setUp() throws Exception {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testNodeLoader", "jnt:contentList");
+            node.addNode("testSubList1", "jnt:contentList").addNode("testSubSubList", "jnt:contentList");
+            node.addNode("testSubList2", "jnt:contentList").addNode("testSubSubList", "jnt:contentList");
+            session.save();
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            if (session.itemExists("/testNodeLoader")) {
+                session.getNode("/testNodeLoader").remove();
+                session.save();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testSiblingLoadsBatchedPerLevel() throws Exception {
+        List<Boolean> queued = new CopyOnWriteArrayList<>();
+        GraphQLObjectType nodeType = GraphQLObjectType.newObject()
+                .name("Node")
+                .field(newFieldDefinition().name("path").type(GraphQLString).dataFetcher(environment -> ((GqlJcrNode) environment.getSource()).getPath()))
+                .field(newFieldDefinition().name("parent").type(new GraphQLTypeReference("Node")).dataFetcher(environment -> {
+                    JCRNodeWrapper node = ((GqlJcrNode) environment.getSource()).getNode();
+                    CompletableFuture<GqlJcrNode> parent = NodeLoader.get(environment).loadNodeByPath(node.getSession(), StringUtils.substringBeforeLast(node.getPath(), "/"));
+                    queued.add(!parent.isDone());
+                    return parent;
+                }))
+                .build();
+
+        Map<String, Object> data = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            GraphQLObjectType queryType = GraphQLObjectType.newObject()
+                    .name("Query")
+                    .field(newFieldDefinition().name("nodes").type(new GraphQLList(nodeType)).dataFetcher(environment ->
+                            NodeLoader.get(environment).loadNodesByPath(session, Arrays.asList("/testNodeLoader/testSubList1/testSubSubList", "/testNodeLoader/testSubList2/testSubSubList"))))
+                    .build();
+            GraphQL graphQL = GraphQL.newGraphQL(GraphQLSchema.newSchema().query(queryType).build())
+                    .instrumentation(new NodeLoaderDispatcherInstrumentation())
+                    .build();
+            ExecutionResult result = graphQL.execute(ExecutionInput.newExecutionInput()
+                    .query("{ nodes { path parent { path parent { path } } } }")
+                    .context(new DXGraphQLContext(Optional.empty(), Optional.empty()))
+                    .build());
+            assertTrue(result.getErrors().toString(), result.getErrors().isEmpty());
+            return result.getData();
+        });
+
+        // the parents of each level were all queued before the level was dispatched, including the common parent of
+        // the second level
+        assertEquals(Arrays.asList(true, true, true, true), queued);
+        List<?> nodes = (List<?>) data.get("nodes");
+        Map<?, ?> parent1 = (Map<?, ?>) ((Map<?, ?>) nodes.get(0)).get("parent");
+        Map<?, ?> parent2 = (Map<?, ?>) ((Map<?, ?>) nodes.get(1)).get("parent");
+        assertEquals("/testNodeLoader/testSubList1", parent1.get("path"));
+        assertEquals("/testNodeLoader/testSubList2", parent2.get("path"));
+        assertEquals("/testNodeLoader", ((Map<?, ?>) parent1.get("parent")).get("path"));
+        assertEquals("/testNodeLoader", ((Map<?, ?>) parent2.get("parent")).get("path"));
+    }
+
+    @Test
+    public void testLoadsQueuedDuringDispatchAreDispatched() {
+        NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry registry = new NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry();
+        DataLoader<String, String> dataLoader = new DataLoader<>(CompletableFuture::completedFuture);
+        registry.register("test", dataLoader);
+
+        CompletableFuture<String> future = dataLoader.load("a").thenCompose(value -> dataLoader.load(value + "b"));
+        registry.dispatchAll();
+        assertEquals("ab", future.getNow(null));
+    }
+
+    @Test
+    public void testDispatchIgnoredWhileDispatching() {
+        NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry registry = new NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry();
+        DataLoader<String, String> dataLoader = new DataLoader<>(CompletableFuture::completedFuture);
+        registry.register("test", dataLoader);
+
+        // loads queued while completing a batch are dispatched together once the batch is complete
+        CompletableFuture<String> first = dataLoader.load("a").thenCompose(value -> {
+            CompletableFuture<String> next = dataLoader.load(value + "1");
+            registry.dispatchAll();
+            return next;
+        });
+        CompletableFuture<String> second = dataLoader.load("b").thenCompose(value -> dataLoader.load(value + "2"));
+        registry.dispatchAll();
+        assertEquals("a1", first.getNow(null));
+        assertEquals("b2", second.getNow(null));
+        assertEquals(2, dataLoader.getStatistics().getBatchInvokeCount());
+    }
+
+    @Test
+    public void testDispatchIgnoredOnOtherThreads() throws Exception {
+        NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry registry = new NodeLoaderDispatcherInstrumentation.RequestDataLoaderRegistry();
+        DataLoader<String, String> dataLoader = new DataLoader<>(CompletableFuture::completedFuture);
+        registry.register("test", dataLoader);
+
+        CompletableFuture<String> future = dataLoader.load("a");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(registry::dispatchAll).get();
+        } finally {
+            executor.shutdown();
+        }
+        assertFalse(future.isDone());
+        registry.dispatchAll();
+        assertEquals("a", future.getNow(null));
+    }
+}
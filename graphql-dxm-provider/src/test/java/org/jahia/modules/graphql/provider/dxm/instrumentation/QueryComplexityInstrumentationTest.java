@@ -0,0 +1,98 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.instrumentation;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.modules.graphql.provider.dxm.persisted.PreparsedDocumentCache;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.Test;
+
+import java.util.Hashtable;
+import java.util.Map;
+
+import static graphql.Scalars.GraphQLString;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryComplexityInstrumentationTest extends AbstractJUnitTest {
+
+    @Test
+    public void testLimitsCheckedForCachedDocuments() throws Exception {
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("complexity.maxCost", "2");
+        config.updated("test", properties);
+
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        GraphQLObjectType queryType = GraphQLObjectType.newObject()
+                .name("Query")
+                .field(newFieldDefinition().name("first").type(GraphQLString).dataFetcher(environment -> "first"))
+                .field(newFieldDefinition().name("second").type(GraphQLString).dataFetcher(environment -> "second"))
+                .field(newFieldDefinition().name("third").type(GraphQLString).dataFetcher(environment -> "third"))
+                .build();
+        GraphQL graphQL = GraphQL.newGraphQL(GraphQLSchema.newSchema().query(queryType).build())
+                .instrumentation(new QueryComplexityInstrumentation(config))
+                .preparsedDocumentProvider(cache)
+                .build();
+
+        for (int i = 0; i < 2; i++) {
+            ExecutionResult allowed = graphQL.execute("{ first second }");
+            assertTrue(allowed.getErrors().isEmpty());
+            assertEquals(2L, ((Map<?, ?>) allowed.getExtensions().get("queryComplexity")).get("cost"));
+
+            // the second execution of the query uses the cached document, which is not validated again
+            ExecutionResult rejected = graphQL.execute("{ first second third }");
+            assertNull(rejected.getData());
+            assertEquals(1, rejected.getErrors().size());
+            assertTrue(rejected.getErrors().get(0).getMessage().contains("Maximum query cost exceeded 3 > 2"));
+        }
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.usermanager.JahiaUserManagerService;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NodeChangeObserverTest extends AbstractJUnitTest {
+
+    private NodeChangeObserver observer;
+
+    @Before
+    public void setUp() throws Exception {
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("subscriptions.debounce", "10");
+        config.updated("test", properties);
+        observer = new NodeChangeObserver();
+        observer.setConfig(config);
+        observer.activate();
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testNodeChanged", "jnt:contentList");
+            node.addNode("a", "jnt:contentList").addNode("b", "jnt:contentList");
+            node.addNode("c", "jnt:contentList");
+            session.save();
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        observer.deactivate();
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            if (session.itemExists("/testNodeChanged")) {
+                session.getNode("/testNodeChanged").remove();
+                session.save();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testListenersSharedPerSubtree() throws Exception {
+        TestSubscriber b = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/a/b");
+        TestSubscriber c = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/c");
+        assertEquals(paths("/testNodeChanged/a/b", "/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+
+        // the listener of an ancestor replaces the listeners under it, and is reused by the subscriptions under it
+        TestSubscriber a = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/a/");
+        assertEquals(paths("/testNodeChanged/a", "/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+        TestSubscriber otherB = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/a/b");
+        assertEquals(paths("/testNodeChanged/a", "/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+
+        // listeners of other workspaces are not shared
+        TestSubscriber live = subscribe(Constants.LIVE_WORKSPACE, "/");
+        assertEquals(paths("/"), observer.getListenerPaths(Constants.LIVE_WORKSPACE));
+        assertEquals(paths("/testNodeChanged/a", "/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+
+        // listeners are removed with their last subscription
+        a.subscription.cancel();
+        b.subscription.cancel();
+        assertEquals(paths("/testNodeChanged/a", "/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+        otherB.subscription.cancel();
+        assertEquals(paths("/testNodeChanged/c"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+        c.subscription.cancel();
+        live.subscription.cancel();
+        assertTrue(observer.getListenerPaths(Constants.EDIT_WORKSPACE).isEmpty());
+        assertTrue(observer.getListenerPaths(Constants.LIVE_WORKSPACE).isEmpty());
+    }
+
+    @Test
+    public void testChangesFilteredPerSubscription() throws Exception {
+        TestSubscriber a = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/a");
+        TestSubscriber b = subscribe(Constants.EDIT_WORKSPACE, "/testNodeChanged/a/b");
+        assertEquals(paths("/testNodeChanged/a"), observer.getListenerPaths(Constants.EDIT_WORKSPACE));
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            session.getNode("/testNodeChanged/a").addNode("other", "jnt:contentList");
+            session.getNode("/testNodeChanged/a/b").addNode("child", "jnt:contentList");
+            session.save();
+            return null;
+        });
+
+        Set<String> changedUnderA = a.awaitPaths("/testNodeChanged/a/other", "/testNodeChanged/a/b/child");
+        assertTrue(changedUnderA.contains("/testNodeChanged/a/other"));
+        Set<String> changedUnderB = b.awaitPaths("/testNodeChanged/a/b/child");
+        assertFalse(changedUnderB.contains("/testNodeChanged/a/other"));
+        GqlJcrNodeEvent late;
+        while ((late = b.events.poll(200, TimeUnit.MILLISECONDS)) != null) {
+            assertNotEquals("/testNodeChanged/a/other", late.getPath());
+        }
+
+        a.subscription.cancel();
+        b.subscription.cancel();
+    }
+
+    private TestSubscriber subscribe(String workspace, String path) {
+        TestSubscriber subscriber = new TestSubscriber();
+        observer.getPublisher(workspace, Collections.singletonList(path), Collections.emptyList(), Collections.emptyList(),
+                JahiaUserManagerService.getInstance().lookupRootUser().getJahiaUser(), Locale.ENGLISH).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static Set<String> paths(String... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+
+    private static class TestSubscriber implements Subscriber<GqlJcrNodeEvent> {
+
+        private final BlockingQueue<GqlJcrNodeEvent> events = new LinkedBlockingQueue<>();
+        private Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(GqlJcrNodeEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            fail(t.toString());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        /**
+         * Wait for the changes of some nodes, and get the paths of all the nodes changed meanwhile.
+         */
+        private Set<String> awaitPaths(String... expectedPaths) throws InterruptedException {
+            Set<String> paths = new HashSet<>();
+            while (!paths.containsAll(Arrays.asList(expectedPaths))) {
+                GqlJcrNodeEvent event = events.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Missing changes, received " + paths, event);
+                paths.add(event.getPath());
+            }
+            return paths;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.dataloader.DataLoaderRegistry;
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.usermanager.JahiaUser;
+import org.jahia.services.usermanager.JahiaUserManagerService;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class NodeLoaderTest extends AbstractJUnitTest {
+
+    private String uuid1;
+    private String uuid2;
+
+    @Before
+    public void setUp() throws Exception {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testNodeLoader", "jnt:contentList");
+            uuid1 = node.addNode("testSubList1", "jnt:contentList").getIdentifier();
+            uuid2 = node.addNode("testSubList2", "jnt:contentList").getIdentifier();
+            session.save();
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            if (session.itemExists("/testNodeLoader")) {
+                session.getNode("/testNodeLoader").remove();
+                session.save();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testNodesLoadedOncePerSession() throws Exception {
+        NodeLoader loader = new NodeLoader();
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            GqlJcrNode node = loader.getNodeById(session, uuid1);
+            assertEquals("/testNodeLoader/testSubList1", node.getPath());
+            assertSame(node, loader.getNodeById(session, uuid1));
+            // nodes read by UUID are also cached by path, and the other way round
+            assertSame(node, loader.getNodeByPath(session, "/testNodeLoader/testSubList1"));
+            GqlJcrNode other = loader.getNodeByPath(session, "/testNodeLoader/testSubList2");
+            assertSame(other, loader.getNodeById(session, uuid2));
+
+            List<GqlJcrNode> nodes = loader.getNodesById(session, Arrays.asList(uuid2, uuid1, uuid2));
+            assertEquals(3, nodes.size());
+            assertSame(other, nodes.get(0));
+            assertSame(node, nodes.get(1));
+            assertSame(other, nodes.get(2));
+            return null;
+        });
+    }
+
+    @Test
+    public void testNodesNotSharedBetweenSessions() throws Exception {
+        NodeLoader loader = new NodeLoader();
+        GqlJcrNode node = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH,
+                session -> loader.getNodeById(session, uuid1));
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.FRENCH, session -> {
+            GqlJcrNode otherSessionNode = loader.getNodeById(session, uuid1);
+            assertNotSame(node, otherSessionNode);
+            assertSame(session, otherSessionNode.getNode().getSession());
+            return null;
+        });
+    }
+
+    @Test
+    public void testNodeInLanguageLoadedOnce() throws Exception {
+        NodeLoader loader = new NodeLoader();
+        // nodes in other languages are read with the sessions of the current user
+        JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+        JahiaUser previousUser = sessionFactory.getCurrentUser();
+        sessionFactory.setCurrentUser(JahiaUserManagerService.getInstance().lookupRootUser().getJahiaUser());
+        try {
+            JCRNodeWrapper node = sessionFactory.getCurrentUserSession(Constants.EDIT_WORKSPACE, Locale.ENGLISH).getNodeByIdentifier(uuid1);
+            assertSame(node, loader.getNodeInLanguage(node, null));
+            JCRNodeWrapper frenchNode = loader.getNodeInLanguage(node, "fr");
+            assertEquals(Locale.FRENCH, frenchNode.getSession().getLocale());
+            assertSame(frenchNode, loader.getNodeInLanguage(node, "fr"));
+        } finally {
+            sessionFactory.closeAllSessions();
+            sessionFactory.setCurrentUser(previousUser);
+        }
+    }
+
+    @Test
+    public void testLoadsBatchedUntilDispatch() throws Exception {
+        NodeLoader loader = new NodeLoader();
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        loader.enableBatching(registry);
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            CompletableFuture<GqlJcrNode> byId = loader.loadNodeById(session, uuid1);
+            CompletableFuture<GqlJcrNode> byPath = loader.loadNodeByPath(session, "/testNodeLoader/testSubList1");
+            CompletableFuture<List<GqlJcrNode>> byIds = loader.loadNodesById(session, Arrays.asList(uuid2, uuid1));
+            CompletableFuture<GqlJcrNode> missing = loader.loadNodeByPath(session, "/testNodeLoader/missing");
+            assertFalse(byId.isDone());
+            assertFalse(byPath.isDone());
+            assertFalse(byIds.isDone());
+            assertEquals(3, registry.getDataLoader(NodeLoader.NODES_BY_ID).dispatchDepth());
+            assertEquals(2, registry.getDataLoader(NodeLoader.NODES_BY_PATH).dispatchDepth());
+
+            registry.dispatchAll();
+            assertEquals("/testNodeLoader/testSubList1", byId.join().getPath());
+            assertSame(byId.join(), byPath.join());
+            assertSame(byId.join(), byIds.join().get(1));
+            assertEquals("/testNodeLoader/testSubList2", byIds.join().get(0).getPath());
+            assertTrue(missing.isCompletedExceptionally());
+
+            // nodes already loaded are not queued again
+            assertTrue(loader.loadNodeById(session, uuid2).isDone());
+            return null;
+        });
+    }
+
+    @Test
+    public void testLoadsNotBatchedOnOtherThreads() throws Exception {
+        NodeLoader loader = new NodeLoader();
+        loader.enableBatching(new DataLoaderRegistry());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the loads of parallel execution workers are never dispatched by the request thread, and must not wait
+            GqlJcrNode node = executor.submit(() -> JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+                CompletableFuture<GqlJcrNode> future = loader.loadNodeById(session, uuid1);
+                assertTrue(future.isDone());
+                return future.join();
+            })).get();
+            assertEquals("/testNodeLoader/testSubList1", node.getPath());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
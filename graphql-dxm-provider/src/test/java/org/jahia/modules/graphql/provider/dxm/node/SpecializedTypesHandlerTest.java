@@ -0,0 +1,118 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.node;
+
+import org.jahia.services.content.JCRNodeWrapper;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SpecializedTypesHandlerTest {
+
+    @Test
+    public void testNodeFactory() throws Exception {
+        SpecializedTypesHandler.NodeFactory factory = SpecializedTypesHandler.createNodeFactory(TestNode.class);
+        GqlJcrNode node = factory.create(null);
+        assertTrue(node instanceof TestNode);
+        assertEquals(TestNode.TYPE, node.getType());
+    }
+
+    @Test(expected = ReflectiveOperationException.class)
+    public void testNodeFactoryWithoutConstructor() throws Exception {
+        SpecializedTypesHandler.createNodeFactory(InvalidTestNode.class);
+    }
+
+    @Test
+    public void testNodeFactoriesCreatedOnceAndReused() throws Exception {
+        SpecializedTypesHandler handler = new SpecializedTypesHandler(null, null);
+        handler.addType(TestNode.TYPE, TestNode.class);
+        handler.addType("test:invalidNode", InvalidTestNode.class);
+        handler.initializeNodeFactories();
+
+        SpecializedTypesHandler.NodeFactory factory = handler.getNodeFactory(TestNode.TYPE);
+        assertNotNull(factory);
+        // classes without the expected constructor get no factory, their nodes are wrapped as generic nodes
+        assertNull(handler.getNodeFactory("test:invalidNode"));
+
+        SpecializedTypesHandler previous = SpecializedTypesHandler.getInstance();
+        handler.makeCurrent();
+        try {
+            GqlJcrNode node = SpecializedTypesHandler.getNode(null, TestNode.TYPE);
+            GqlJcrNode other = SpecializedTypesHandler.getNode(null, TestNode.TYPE);
+            assertTrue(node instanceof TestNode);
+            assertTrue(other instanceof TestNode);
+            assertNotSame(node, other);
+            assertFalse(SpecializedTypesHandler.getNode(null, "test:invalidNode") instanceof InvalidTestNode);
+
+            // wrapping nodes reuses the factory resolved with the types
+            assertSame(factory, handler.getNodeFactory(TestNode.TYPE));
+        } finally {
+            if (previous != null) {
+                previous.makeCurrent();
+            }
+        }
+    }
+
+    public static class TestNode extends GqlJcrNodeImpl {
+
+        private static final String TYPE = "test:node";
+
+        public TestNode(JCRNodeWrapper node) {
+            super(node, TYPE);
+        }
+    }
+
+    public static class InvalidTestNode extends GqlJcrNodeImpl {
+
+        public InvalidTestNode(JCRNodeWrapper node, String type) {
+            super(node, type);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.nodetype;
+
+import org.jahia.services.content.nodetypes.NodeTypeRegistry;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class NodeTypeCatalogTest extends AbstractJUnitTest {
+
+    private NodeTypeCatalog catalog;
+    private BundleListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        BundleContext bundleContext = (BundleContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {BundleContext.class}, (proxy, method, args) -> {
+            if (method.getName().equals("addBundleListener")) {
+                listener = (BundleListener) args[0];
+            }
+            return null;
+        });
+        catalog = new NodeTypeCatalog();
+        catalog.activate(bundleContext);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        catalog.deactivate();
+    }
+
+    @Test
+    public void testNodeTypesShared() throws Exception {
+        GqlJcrNodeType nodeType = NodeTypeCatalog.getNodeType("jnt:contentList");
+        assertSame(nodeType, NodeTypeCatalog.getNodeType("jnt:contentList"));
+        assertSame(nodeType, NodeTypeCatalog.getNodeType(NodeTypeRegistry.getInstance().getNodeType("jnt:contentList")));
+        assertTrue(NodeTypeCatalog.getNodeTypes(null, false, true).contains(nodeType));
+        assertFalse(NodeTypeCatalog.getNodeTypes(null, true, false).contains(nodeType));
+        assertTrue(NodeTypeCatalog.getNodeTypes(Collections.singletonList(nodeType.getSystemId()), true, true).contains(nodeType));
+    }
+
+    @Test
+    public void testCatalogRebuiltWhenModulesChange() throws Exception {
+        GqlJcrNodeType nodeType = NodeTypeCatalog.getNodeType("jnt:contentList");
+        listener.bundleChanged(new BundleEvent(BundleEvent.STARTING, getBundle()));
+        assertSame(nodeType, NodeTypeCatalog.getNodeType("jnt:contentList"));
+
+        for (int type : new int[] {BundleEvent.RESOLVED, BundleEvent.STARTED, BundleEvent.STOPPED, BundleEvent.UNRESOLVED}) {
+            listener.bundleChanged(new BundleEvent(type, getBundle()));
+            GqlJcrNodeType rebuilt = NodeTypeCatalog.getNodeType("jnt:contentList");
+            assertNotSame(nodeType, rebuilt);
+            nodeType = rebuilt;
+        }
+    }
+
+    @Test
+    public void testOnlyKnownLanguagesCached() throws Exception {
+        GqlJcrNodeType nodeType = NodeTypeCatalog.getNodeType("jnt:contentList");
+        String label = nodeType.getDisplayName("en");
+        assertEquals(label, nodeType.getDisplayName("en"));
+        assertEquals(1, nodeType.getDisplayNameCount());
+
+        for (int i = 0; i < 100; i++) {
+            nodeType.getDisplayName("unknown" + i);
+        }
+        assertEquals(1, nodeType.getDisplayNameCount());
+    }
+
+    private static Bundle getBundle() {
+        return (Bundle) Proxy.newProxyInstance(NodeTypeCatalogTest.class.getClassLoader(), new Class[] {Bundle.class}, (proxy, method, args) -> null);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.persisted;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PersistedQueryRegistryTest {
+
+    private static final String QUERY = "{ jcr { nodeByPath(path: \"/\") { name } } }";
+
+    @Test
+    public void testHash() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", PersistedQueryRegistry.getHash(""));
+        assertEquals(64, PersistedQueryRegistry.getHash(QUERY).length());
+    }
+
+    @Test
+    public void testRegister() {
+        PersistedQueryRegistry registry = new PersistedQueryRegistry();
+        String hash = PersistedQueryRegistry.getHash(QUERY);
+
+        assertNull(registry.getQuery(hash));
+        assertFalse(registry.register(PersistedQueryRegistry.getHash("{ other }"), QUERY));
+        assertNull(registry.getQuery(hash));
+
+        assertTrue(registry.register(hash, QUERY));
+        assertEquals(QUERY, registry.getQuery(hash));
+        // hashes are not case sensitive
+        assertEquals(QUERY, registry.getQuery(hash.toUpperCase()));
+    }
+
+    @Test
+    public void testRegisteredQueriesBounded() {
+        PersistedQueryRegistry registry = new PersistedQueryRegistry();
+        String first = "{ q0 }";
+        registry.register(PersistedQueryRegistry.getHash(first), first);
+        for (int i = 1; i <= 1000; i++) {
+            String query = "{ q" + i + " }";
+            registry.register(PersistedQueryRegistry.getHash(query), query);
+        }
+        // least recently used query dropped
+        assertNull(registry.getQuery(PersistedQueryRegistry.getHash(first)));
+        assertEquals("{ q1000 }", registry.getQuery(PersistedQueryRegistry.getHash("{ q1000 }")));
+    }
+
+    @Test
+    public void testModuleQueryProvidedBySeveralBundles() {
+        PersistedQueryRegistry registry = new PersistedQueryRegistry();
+        String hash = registry.addModuleQuery(QUERY, 1);
+        assertEquals(hash, registry.addModuleQuery(QUERY, 2));
+
+        registry.removeModuleQuery(hash, 1);
+        assertEquals(QUERY, registry.getQuery(hash));
+
+        registry.removeModuleQuery(hash, 2);
+        assertNull(registry.getQuery(hash));
+    }
+}
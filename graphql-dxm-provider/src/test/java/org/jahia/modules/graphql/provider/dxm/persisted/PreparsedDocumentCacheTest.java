@@ -0,0 +1,134 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.persisted;
+
+import graphql.InvalidSyntaxError;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.language.Document;
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PreparsedDocumentCacheTest {
+
+    private static final String QUERY = "{ jcr { nodeByPath(path: \"/\") { name } } }";
+
+    @Test
+    public void testDocumentsParsedOnce() {
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        AtomicInteger parsed = new AtomicInteger();
+        Function<String, PreparsedDocumentEntry> compute = query -> {
+            parsed.incrementAndGet();
+            return new PreparsedDocumentEntry(new Document(Collections.emptyList()));
+        };
+
+        PreparsedDocumentEntry entry = cache.get(QUERY, compute);
+        assertSame(entry, cache.get(QUERY, compute));
+        assertEquals(1, parsed.get());
+        cache.get("{ other }", compute);
+        assertEquals(2, parsed.get());
+    }
+
+    @Test
+    public void testErrorsNotCached() {
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        Function<String, PreparsedDocumentEntry> compute = query -> new PreparsedDocumentEntry(new InvalidSyntaxError(Collections.emptyList(), "invalid"));
+
+        assertNotSame(cache.get(QUERY, compute), cache.get(QUERY, compute));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClearedDocumentsParsedAgain() {
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        Function<String, PreparsedDocumentEntry> compute = query -> new PreparsedDocumentEntry(new Document(Collections.emptyList()));
+
+        PreparsedDocumentEntry entry = cache.get(QUERY, compute);
+        cache.clear();
+        assertNotSame(entry, cache.get(QUERY, compute));
+    }
+
+    @Test
+    public void testDocumentParsedDuringClearNotCached() {
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        // the schema is rebuilt while the query is validated against the previous one
+        cache.get(QUERY, query -> {
+            cache.clear();
+            return new PreparsedDocumentEntry(new Document(Collections.emptyList()));
+        });
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCacheBounded() throws Exception {
+        PreparsedDocumentCache cache = new PreparsedDocumentCache();
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("preparsedDocuments.maxEntries", "2");
+        config.updated("test", properties);
+        cache.setConfig(config);
+        Function<String, PreparsedDocumentEntry> compute = query -> new PreparsedDocumentEntry(new Document(Collections.emptyList()));
+
+        PreparsedDocumentEntry first = cache.get("{ q1 }", compute);
+        cache.get("{ q2 }", compute);
+        cache.get("{ q3 }", compute);
+        assertEquals(2, cache.size());
+        // least recently used document dropped
+        assertNotSame(first, cache.get("{ q1 }", compute));
+
+        properties.put("preparsedDocuments.maxEntries", "0");
+        config.updated("test", properties);
+        cache.clear();
+        cache.get(QUERY, compute);
+        assertEquals(0, cache.size());
+    }
+}
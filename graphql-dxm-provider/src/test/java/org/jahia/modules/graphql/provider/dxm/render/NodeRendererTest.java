@@ -0,0 +1,189 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.render;
+
+import org.jahia.modules.graphql.provider.dxm.config.DXGraphQLConfig;
+import org.jahia.services.usermanager.JahiaUser;
+import org.jahia.services.usermanager.JahiaUserManagerService;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class NodeRendererTest extends AbstractJUnitTest {
+
+    private NodeRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        DXGraphQLConfig config = new DXGraphQLConfig();
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("renderCache.maxEntries", "2");
+        config.updated("test", properties);
+        renderer = new NodeRenderer();
+        renderer.setConfig(config);
+    }
+
+    @Test
+    public void testOutputsOnlySharedBetweenGuests() throws Exception {
+        JahiaUserManagerService userManager = JahiaUserManagerService.getInstance();
+        JahiaUser root = userManager.lookupRootUser().getJahiaUser();
+        JahiaUser guest = userManager.lookupUser(JahiaUserManagerService.GUEST_USERNAME).getJahiaUser();
+
+        assertEquals(root.getLocalPath(), NodeRenderer.getPrincipal(root));
+        assertEquals("", NodeRenderer.getPrincipal(guest));
+        assertEquals("", NodeRenderer.getPrincipal(null));
+        assertNotEquals(getKey("page", NodeRenderer.getPrincipal(root)), getKey("page", NodeRenderer.getPrincipal(guest)));
+        assertEquals(getKey("page", NodeRenderer.getPrincipal(guest)), getKey("page", NodeRenderer.getPrincipal(null)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOutputsEvicted() throws Exception {
+        put("first", "/sites/test/first");
+        put("second", "/sites/test/second");
+        assertEquals("first", renderer.get(getKey("first", "")));
+
+        put("third", "/sites/test/third");
+        assertNull(renderer.get(getKey("second", "")));
+        assertEquals("first", renderer.get(getKey("first", "")));
+        assertEquals("third", renderer.get(getKey("third", "")));
+    }
+
+    @Test
+    public void testOutputsInvalidatedByChanges() throws Exception {
+        put("page", "/sites/test/page");
+        renderer.invalidate("live", Collections.singleton("/sites/test/page/area"));
+        renderer.invalidate("default", Collections.singleton("/sites/test/pages"));
+        assertEquals("page", renderer.get(getKey("page", "")));
+
+        // changes of the descendants of the dependencies
+        renderer.invalidate("default", Collections.singleton("/sites/test/page/area/jcr:title"));
+        assertNull(renderer.get(getKey("page", "")));
+
+        // changes of templates and components, whatever the workspace
+        put("page", "/sites/test/page");
+        renderer.invalidate("live", Collections.singleton("/modules/test/1.0/templates"));
+        assertNull(renderer.get(getKey("page", "")));
+    }
+
+    @Test
+    public void testOutputRenderedBeforeChangeNotCached() throws Exception {
+        long version = renderer.getInvalidations();
+        // change notified while rendering, possibly after the render read the changed node
+        renderer.invalidate("default", Collections.singleton("/sites/test/other"));
+        renderer.put(getKey("page", ""), "page", Collections.singleton("/sites/test/page"), version);
+        assertNull(renderer.get(getKey("page", "")));
+
+        renderer.put(getKey("page", ""), "page", Collections.singleton("/sites/test/page"), renderer.getInvalidations());
+        assertEquals("page", renderer.get(getKey("page", "")));
+    }
+
+    @Test
+    public void testRenderThreadChangesAppliedOnRequestThread() throws Exception {
+        List<String> calls = new ArrayList<>();
+        RenderResponseFilter.RenderedResponse renderedResponse = new RenderResponseFilter.RenderedResponse(getRecordingResponse(calls));
+        HttpServletResponse response = new HttpServletResponseWrapper(renderedResponse);
+        assertSame(renderedResponse, RenderResponseFilter.RenderedResponse.find(response));
+
+        NodeRenderer.IsolatedResponse isolatedResponse = new NodeRenderer.IsolatedResponse(response);
+        Thread renderThread = new Thread(() -> {
+            isolatedResponse.setHeader("X-Rendered", "true");
+            isolatedResponse.addCookie(new Cookie("rendered", "true"));
+            isolatedResponse.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            try {
+                isolatedResponse.sendRedirect("/target");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            RenderResponseFilter.RenderedResponse.find(response).addChanges(isolatedResponse.getChanges());
+        });
+        renderThread.start();
+        renderThread.join();
+
+        // the render only sees its own response
+        assertEquals(HttpServletResponse.SC_FOUND, isolatedResponse.getStatus());
+        assertEquals("/target", isolatedResponse.getHeader("Location"));
+        assertTrue(calls.isEmpty());
+
+        // applied once, in order, when the result is written
+        response.getWriter();
+        response.getWriter();
+        assertEquals(Arrays.asList("setHeader[X-Rendered, true]", "addCookie[rendered]", "setStatus[404]", "sendRedirect[/target]"), calls);
+    }
+
+    private void put(String identifier, String dependency) {
+        renderer.put(getKey(identifier, ""), identifier, Collections.singleton(dependency), renderer.getInvalidations());
+    }
+
+    private static NodeRenderer.Key getKey(String identifier, String principal) {
+        return new NodeRenderer.Key("default", identifier, 0, "default", "html", "module", Locale.ENGLISH, principal);
+    }
+
+    /**
+     * Get a response recording the changes applied to it.
+     */
+    private static HttpServletResponse getRecordingResponse(List<String> calls) {
+        return (HttpServletResponse) Proxy.newProxyInstance(NodeRendererTest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+            if (method.getName().startsWith("get")) {
+                return null;
+            }
+            if (method.getName().equals("isCommitted")) {
+                return false;
+            }
+            List<String> values = new ArrayList<>();
+            for (Object arg : args != null ? args : new Object[0]) {
+                values.add(arg instanceof Cookie ? ((Cookie) arg).getName() : String.valueOf(arg));
+            }
+            calls.add(method.getName() + values);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.service.vanity;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.site.GqlJcrSite;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.usermanager.JahiaUser;
+import org.jahia.services.usermanager.JahiaUserManagerService;
+import org.jahia.test.framework.AbstractJUnitTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jcr.RepositoryException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.jahia.services.seo.jcr.VanityUrlManager.*;
+import static org.junit.Assert.*;
+
+public class VanityUrlIndexTest extends AbstractJUnitTest {
+
+    private static final String SITE_KEY = "testVanityUrlIndex";
+    private static final String SITE_PATH = "/sites/" + SITE_KEY;
+
+    private VanityUrlIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper site = session.getNode("/sites").addNode(SITE_KEY, "jnt:virtualsite");
+            site.grantRoles("u:" + JahiaUserManagerService.GUEST_USERNAME, Collections.singleton("reader"));
+            addVanityUrl(site.addNode("public", "jnt:contentList"), "/testPublic", true);
+            JCRNodeWrapper restricted = site.addNode("restricted", "jnt:contentList");
+            restricted.setAclInheritanceBreak(true);
+            addVanityUrl(restricted, "/testRestricted", true);
+            session.save();
+            return null;
+        });
+        index = new VanityUrlIndex();
+        index.activate();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.deactivate();
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, Locale.ENGLISH, session -> {
+            if (session.itemExists(SITE_PATH)) {
+                session.getNode(SITE_PATH).remove();
+                session.save();
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testUrlsResolvedFromIndex() throws Exception {
+        List<VanityUrlIndex.Entry> entries = index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testPublic");
+        assertEquals(1, entries.size());
+        assertEquals("en", entries.get(0).getLanguage());
+        assertTrue(entries.get(0).isActive());
+        assertTrue(entries.get(0).isDefault());
+        String identifier = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, Locale.ENGLISH,
+                session -> session.getNode(SITE_PATH + "/public/" + VANITYURLMAPPINGS_NODE + "/testPublic").getIdentifier());
+        assertEquals(identifier, entries.get(0).getIdentifier());
+        assertTrue(index.isIndexed(SITE_KEY, Constants.LIVE_WORKSPACE));
+
+        assertTrue(index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testMissing").isEmpty());
+        assertTrue(index.find(SITE_KEY, Constants.EDIT_WORKSPACE, "/testPublic").isEmpty());
+    }
+
+    @Test
+    public void testIndexInvalidatedByChanges() throws Exception {
+        index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testPublic");
+        index.invalidate(Constants.EDIT_WORKSPACE, null);
+        index.invalidate(Constants.LIVE_WORKSPACE, Collections.singleton("otherSite"));
+        assertTrue(index.isIndexed(SITE_KEY, Constants.LIVE_WORKSPACE));
+        index.invalidate(Constants.LIVE_WORKSPACE, Collections.singleton(SITE_KEY));
+        assertFalse(index.isIndexed(SITE_KEY, Constants.LIVE_WORKSPACE));
+
+        // vanity URLs added to the site are found once the change is notified
+        index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testPublic");
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, Locale.ENGLISH, session -> {
+            addVanityUrl(session.getNode(SITE_PATH + "/public"), "/testAdded", false);
+            session.save();
+            return null;
+        });
+        long timeout = System.currentTimeMillis() + 10000;
+        while (index.isIndexed(SITE_KEY, Constants.LIVE_WORKSPACE) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        List<VanityUrlIndex.Entry> entries = index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testAdded");
+        assertEquals(1, entries.size());
+        assertFalse(entries.get(0).isActive());
+    }
+
+    @Test
+    public void testUrlsOnlyReturnedToUsersAllowedToReadThem() throws Exception {
+        JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+        JahiaUser previousUser = sessionFactory.getCurrentUser();
+        sessionFactory.setCurrentUser(JahiaUserManagerService.getInstance().lookupUser(JahiaUserManagerService.GUEST_USERNAME).getJahiaUser());
+        try {
+            GqlJcrSite site = new GqlJcrSite(sessionFactory.getCurrentUserSession(Constants.LIVE_WORKSPACE, Locale.ENGLISH).getNode(SITE_PATH));
+            VanityUrlJCRSiteExtensions extensions = new VanityUrlJCRSiteExtensions(site);
+
+            Collection<GqlJcrVanityUrl> vanityUrls = extensions.findVanityURLs("/testPublic");
+            assertEquals(1, vanityUrls.size());
+            assertEquals("/testPublic", vanityUrls.iterator().next().getUrl());
+
+            // indexed, but not readable by guests
+            assertEquals(1, index.find(SITE_KEY, Constants.LIVE_WORKSPACE, "/testRestricted").size());
+            assertTrue(extensions.findVanityURLs("/testRestricted").isEmpty());
+        } finally {
+            sessionFactory.closeAllSessions();
+            sessionFactory.setCurrentUser(previousUser);
+        }
+    }
+
+    private static void addVanityUrl(JCRNodeWrapper node, String url, boolean active) throws RepositoryException {
+        node.addMixin("jmix:vanityUrlMapped");
+        JCRNodeWrapper mappings = node.hasNode(VANITYURLMAPPINGS_NODE) ? node.getNode(VANITYURLMAPPINGS_NODE) : node.addNode(VANITYURLMAPPINGS_NODE, "jnt:vanityUrls");
+        JCRNodeWrapper vanityUrl = mappings.addNode(url.substring(1), JAHIANT_VANITYURL);
+        vanityUrl.setProperty(PROPERTY_URL, url);
+        vanityUrl.setProperty(Constants.JCR_LANGUAGE, "en");
+        vanityUrl.setProperty(PROPERTY_ACTIVE, active);
+        vanityUrl.setProperty(PROPERTY_DEFAULT, active);
+    }
+}
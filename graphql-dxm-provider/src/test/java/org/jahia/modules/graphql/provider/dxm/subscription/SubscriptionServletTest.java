@@ -0,0 +1,186 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.provider.dxm.subscription;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.parser.Parser;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionServletTest {
+
+    @Test
+    public void testResultsStreamedOneAtATime() throws Exception {
+        TestPublisher publisher = new TestPublisher(2);
+        StringWriter output = new StringWriter();
+        new SubscriptionServlet().stream(publisher, "changes", new PrintWriter(output), 10000);
+
+        assertEquals("data: {\"data\":{\"changes\":{\"path\":\"/0\"}}}\n\n" +
+                "data: {\"data\":{\"changes\":{\"path\":\"/1\"}}}\n\n", output.toString());
+        // each result is only requested once the previous one has been written
+        assertEquals(Collections.nCopies(3, 1L), publisher.requests);
+        assertTrue(publisher.cancelled.get());
+    }
+
+    @Test
+    public void testErrorEndsStream() throws Exception {
+        TestPublisher publisher = new TestPublisher(0);
+        publisher.error = new IllegalStateException("observer deactivated");
+        StringWriter output = new StringWriter();
+        new SubscriptionServlet().stream(publisher, "changes", new PrintWriter(output), 10000);
+
+        assertEquals("data: {\"errors\":[{\"message\":\"Subscription failed: observer deactivated\"}]}\n\n", output.toString());
+    }
+
+    @Test
+    public void testClosedConnectionCancelsSubscription() throws Exception {
+        // no result is ever published: the heartbeat detects that the client is gone
+        TestPublisher publisher = new TestPublisher(-1);
+        Writer closed = new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                throw new IOException("Connection closed");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Connection closed");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        new SubscriptionServlet().stream(publisher, "changes", new PrintWriter(closed), 1);
+
+        assertTrue(publisher.cancelled.get());
+    }
+
+    @Test
+    public void testOnlySubscriptionsServed() {
+        assertError("Only subscriptions are served", "{ nodeByPath(path: \"/\") { name } }", null);
+        assertError("Only subscriptions are served", "subscription s { nodeChanged(paths: [\"/\"]) { path } } query q { nodeByPath(path: \"/\") { name } }", "q");
+        assertError("The subscription field must be selected directly", "subscription { ...f } fragment f on Subscription { nodeChanged(paths: [\"/\"]) { path } }", null);
+    }
+
+    @Test
+    public void testResponseKey() {
+        assertEquals("nodeChanged", getResponseKey("subscription { nodeChanged(paths: [\"/\"]) { path } }", null));
+        assertEquals("changes", getResponseKey("subscription { changes: nodeChanged(paths: [\"/\"]) { path } }", null));
+        assertEquals("changes", getResponseKey("subscription s { nodeChanged(paths: [\"/\"]) { path } } subscription t { changes: nodeChanged(paths: [\"/\"]) { path } }", "t"));
+    }
+
+    private static String getResponseKey(String query, String operationName) {
+        AtomicReference<String> responseKey = new AtomicReference<>();
+        PreparsedDocumentEntry entry = SubscriptionServlet.checkSubscription(new PreparsedDocumentEntry(new Parser().parseDocument(query)), operationName, responseKey);
+        assertFalse(entry.hasErrors());
+        return responseKey.get();
+    }
+
+    private static void assertError(String message, String query, String operationName) {
+        AtomicReference<String> responseKey = new AtomicReference<>();
+        PreparsedDocumentEntry entry = SubscriptionServlet.checkSubscription(new PreparsedDocumentEntry(new Parser().parseDocument(query)), operationName, responseKey);
+        assertTrue(entry.hasErrors());
+        assertEquals(message, entry.getErrors().get(0).getMessage());
+        assertNull(responseKey.get());
+    }
+
+    /**
+     * Publisher of a given number of results, published on request, then completing; never completing when the
+     * number is negative.
+     */
+    private static class TestPublisher implements Publisher<ExecutionResult> {
+
+        private final int count;
+        private final List<Long> requests = new ArrayList<>();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private Throwable error;
+        private int published;
+
+        private TestPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ExecutionResult> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    requests.add(n);
+                    if (error != null) {
+                        subscriber.onError(error);
+                    } else if (published < count) {
+                        subscriber.onNext(new ExecutionResultImpl(Collections.singletonMap("path", "/" + published++), Collections.emptyList()));
+                    } else if (count >= 0) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                }
+            });
+        }
+    }
+}
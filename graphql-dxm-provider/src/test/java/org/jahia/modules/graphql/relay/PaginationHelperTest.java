@@ -0,0 +1,199 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.graphql.relay;
+
+import org.jahia.modules.graphql.provider.dxm.relay.CursorSupport;
+import org.jahia.modules.graphql.provider.dxm.relay.DXPaginatedData;
+import org.jahia.modules.graphql.provider.dxm.relay.PaginationHelper;
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PaginationHelperTest {
+
+    private static final CursorSupport<String> CURSOR_SUPPORT = PaginationHelper::encodeCursor;
+
+    @Test
+    public void testOffsetLimit() {
+        List<String> source = createSource(10);
+
+        DXPaginatedData<String> data = paginate(source, null, null, null, null, 2, 3);
+        checkPage(data, 2, "node2", "node3", "node4");
+        assertTrue(data.hasPreviousPage());
+        assertTrue(data.hasNextPage());
+        assertEquals(10, data.getTotalCount());
+
+        data = paginate(source, null, null, null, null, 8, 5);
+        checkPage(data, 8, "node8", "node9");
+        assertTrue(data.hasPreviousPage());
+        assertFalse(data.hasNextPage());
+
+        data = paginate(source, null, null, null, null, 12, null);
+        checkPage(data, 0);
+        assertFalse(data.hasPreviousPage());
+        assertFalse(data.hasNextPage());
+    }
+
+    @Test
+    public void testCursors() {
+        List<String> source = createSource(10);
+        String cursor2 = CURSOR_SUPPORT.getCursor("node2");
+        String cursor6 = CURSOR_SUPPORT.getCursor("node6");
+
+        checkPage(paginate(source, null, cursor6, 2, null, null, null), 7, "node7", "node8");
+        checkPage(paginate(source, cursor6, null, null, 2, null, null), 4, "node4", "node5");
+        checkPage(paginate(source, cursor6, cursor2, null, null, null, null), 3, "node3", "node4", "node5");
+
+        // before cursor located before the after cursor is ignored
+        checkPage(paginate(source, cursor2, cursor6, null, null, null, null), 7, "node7", "node8", "node9");
+
+        // unknown cursor is ignored
+        checkPage(paginate(source, null, "wrong_cursor", 2, null, null, null), 0, "node0", "node1");
+    }
+
+    @Test
+    public void testCursorsComputedOnce() {
+        List<String> source = createSource(1000);
+        AtomicInteger computed = new AtomicInteger();
+        CursorSupport<String> cursorSupport = s -> {
+            computed.incrementAndGet();
+            return CURSOR_SUPPORT.getCursor(s);
+        };
+
+        PaginationHelper.paginate(source, cursorSupport, new PaginationHelper.Arguments(CURSOR_SUPPORT.getCursor("node900"), CURSOR_SUPPORT.getCursor("node800"), null, null, null, null));
+        assertEquals(901, computed.get());
+    }
+
+    @Test
+    public void testElementsOutsidePageNotAccessed() {
+        int size = 100000;
+        AccessTrackingList source = new AccessTrackingList(createSource(size));
+
+        // offset/limit: only the elements of the page are read
+        DXPaginatedData<String> data = paginate(source, null, null, null, null, size - 50, 20);
+        for (String entity : data) {
+            data.getIndex(entity);
+        }
+        assertEquals(size - 50, source.min);
+        assertEquals(size - 31, source.max);
+        assertEquals(20, source.accessed.size());
+
+        // cursors: a single scan up to the cursor, then only the elements of the page
+        source.reset();
+        data = paginate(source, null, CURSOR_SUPPORT.getCursor("node" + (size - 30)), 20, null, null, null);
+        for (String entity : data) {
+            data.getIndex(entity);
+        }
+        assertEquals(0, source.min);
+        assertEquals(size - 10, source.max);
+        checkPage(data, size - 29, source.subList(size - 29, size - 9).toArray(new String[0]));
+    }
+
+    /**
+     * List recording the positions of the elements read.
+     */
+    private static class AccessTrackingList extends AbstractList<String> implements RandomAccess {
+
+        private final List<String> elements;
+        private final Set<Integer> accessed = new HashSet<>();
+        private int min = Integer.MAX_VALUE;
+        private int max = -1;
+
+        private AccessTrackingList(List<String> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public String get(int index) {
+            accessed.add(index);
+            min = Math.min(min, index);
+            max = Math.max(max, index);
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        private void reset() {
+            accessed.clear();
+            min = Integer.MAX_VALUE;
+            max = -1;
+        }
+    }
+
+    private static List<String> createSource(int size) {
+        List<String> source = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            source.add("node" + i);
+        }
+        return source;
+    }
+
+    private static DXPaginatedData<String> paginate(List<String> source, String before, String after, Integer first, Integer last, Integer offset, Integer limit) {
+        return PaginationHelper.paginate(source, CURSOR_SUPPORT, new PaginationHelper.Arguments(before, after, first, last, offset, limit));
+    }
+
+    private static void checkPage(DXPaginatedData<String> data, int startIndex, String... expected) {
+        List<String> page = new ArrayList<>();
+        for (String entity : data) {
+            assertEquals(startIndex + page.size(), data.getIndex(entity));
+            page.add(entity);
+        }
+        assertEquals(expected.length, data.getNodesCount());
+        assertEquals(Arrays.asList(expected), page);
+    }
+}
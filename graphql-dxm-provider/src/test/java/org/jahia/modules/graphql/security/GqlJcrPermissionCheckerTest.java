@@ -44,11 +44,15 @@
 package org.jahia.modules.graphql.security;
 
 import graphql.language.Field;
+import graphql.schema.GraphQLObjectType;
 import org.jahia.modules.graphql.provider.dxm.security.GqlAccessDeniedException;
 import org.jahia.modules.graphql.provider.dxm.security.GqlJcrPermissionChecker;
+import org.jahia.modules.graphql.provider.dxm.security.GqlJcrPermissionTable;
 import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRSessionFactory;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.usermanager.JahiaUser;
 import org.jahia.services.usermanager.JahiaUserManagerService;
 import org.jahia.test.framework.AbstractJUnitTest;
 import org.junit.Test;
@@ -58,6 +62,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import static graphql.Scalars.GraphQLString;
+import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -170,6 +176,39 @@ public class GqlJcrPermissionCheckerTest extends AbstractJUnitTest {
         checkPermission(types, multipleFields, badPermissions6, true);
     }
 
+    @Test
+    public void testCheckedPermissionsMemoized() throws Exception {
+
+        GraphQLObjectType type = GraphQLObjectType.newObject().name("GenericJCRNode")
+                .field(newFieldDefinition().name("displayName").type(GraphQLString))
+                .build();
+
+        Map<String, String> permissions = new HashMap<>();
+        permissions.put("GenericJCRNode.displayName", "jcr:write");
+        GqlJcrPermissionTable permissionTable = new GqlJcrPermissionTable(permissions);
+
+        JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+        JahiaUser previousUser = sessionFactory.getCurrentUser();
+        sessionFactory.setCurrentUser(JahiaUserManagerService.getInstance().lookupUser(JahiaUserManagerService.GUEST_USERNAME).getJahiaUser());
+        try {
+            // the result of the check is recorded for the next fields of the request
+            Map<String, Boolean> checkedPermissions = new HashMap<>();
+            try {
+                GqlJcrPermissionChecker.checkPermissions(type, Arrays.asList(new Field("displayName")), permissionTable, checkedPermissions);
+                fail(" should fail ");
+            } catch (GqlAccessDeniedException e) {
+                assertEquals(e.getPermission(), "jcr:write");
+            }
+            assertEquals(Boolean.FALSE, checkedPermissions.get("jcr:write"));
+
+            // a recorded result is used without checking the permission again
+            checkedPermissions.put("jcr:write", Boolean.TRUE);
+            GqlJcrPermissionChecker.checkPermissions(type, Arrays.asList(new Field("displayName")), permissionTable, checkedPermissions);
+        } finally {
+            sessionFactory.setCurrentUser(previousUser);
+        }
+    }
+
     private void checkPermission(String[] types, Field[] fields, Map<String, String> permissions, boolean shouldfail) throws RepositoryException {
         JCRTemplate.getInstance().doExecute(JahiaUserManagerService.GUEST_USERNAME, null, null, null, new JCRCallback<Object>() {
             @Override
@@ -0,0 +1,186 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.test.graphql;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Map;
+
+public class GraphQLAggregationTest extends GraphQLTestSupport {
+
+    @BeforeClass
+    public static void oneTimeSetup() throws Exception {
+
+        GraphQLTestSupport.init();
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testList", "jnt:contentList");
+            JCRNodeWrapper subNode1 = node.addNode("testSubList1", "jnt:contentList");
+            subNode1.setProperty("jcr:title", "title A");
+            subNode1.addNode("testSubList1_1", "jnt:contentList").setProperty("jcr:title", "title B");
+            node.addNode("testSubList2", "jnt:contentList").setProperty("jcr:title", "title A");
+            node.addNode("testSubList3", "jnt:contentList").addMixin("jmix:tagged");
+            node.addNode("testText", "jnt:text");
+            session.save();
+            return null;
+        });
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws Exception {
+        GraphQLTestSupport.removeTestNodes();
+    }
+
+    @Test
+    public void shouldAggregateDescendants() throws Exception {
+
+        JSONObject aggregation = getAggregation("aggregation", "{"
+                + "    count"
+                + "    countByType {"
+                + "        value"
+                + "        count"
+                + "    }"
+                + "    titles: countByPropertyValue(property: \"jcr:title\", language: \"en\") {"
+                + "        value"
+                + "        count"
+                + "    }"
+                + "    frenchTitles: countByPropertyValue(property: \"jcr:title\", language: \"fr\") {"
+                + "        value"
+                + "        count"
+                + "    }"
+                + "}");
+
+        Assert.assertEquals(5, aggregation.getInt("count"));
+        Map<String, JSONObject> countByType = toItemByKeyMap("value", aggregation.getJSONArray("countByType"));
+        Assert.assertEquals(2, countByType.size());
+        Assert.assertEquals(4, countByType.get("jnt:contentList").getInt("count"));
+        Assert.assertEquals(1, countByType.get("jnt:text").getInt("count"));
+        // most frequent value first
+        JSONArray titles = aggregation.getJSONArray("titles");
+        Assert.assertEquals(2, titles.length());
+        Assert.assertEquals("title A", titles.getJSONObject(0).getString("value"));
+        Assert.assertEquals(2, titles.getJSONObject(0).getInt("count"));
+        Assert.assertEquals("title B", titles.getJSONObject(1).getString("value"));
+        Assert.assertEquals(1, titles.getJSONObject(1).getInt("count"));
+        Assert.assertEquals(0, aggregation.getJSONArray("frenchTitles").length());
+    }
+
+    @Test
+    public void shouldAggregateFilteredNodes() throws Exception {
+
+        Assert.assertEquals(4, getAggregation("aggregation(recursive: false)", "{ count }").getInt("count"));
+        Assert.assertEquals(4, getAggregation("aggregation(typesFilter: {types: [\"jnt:contentList\"]})", "{ count }").getInt("count"));
+        Assert.assertEquals(1, getAggregation("aggregation(typesFilter: {types: [\"jmix:tagged\"]})", "{ count }").getInt("count"));
+        Assert.assertEquals(2, getAggregation("aggregation(propertiesFilter: {filters: [{property: \"jcr:title\", language: \"en\", value: \"title A\"}]})", "{ count }").getInt("count"));
+    }
+
+    @Test
+    public void shouldAggregateFieldsSelectedThroughFragments() throws Exception {
+
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            aggregation {"
+                + "                ...counts"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}"
+                + "fragment counts on JCRNodeAggregation {"
+                + "    count"
+                + "    countByPropertyValue(property: \"jcr:title\", language: \"en\") {"
+                + "        value"
+                + "        count"
+                + "    }"
+                + "}");
+
+        JSONObject aggregation = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodeByPath").getJSONObject("aggregation");
+        Assert.assertEquals(5, aggregation.getInt("count"));
+        Assert.assertEquals(2, aggregation.getJSONArray("countByPropertyValue").length());
+    }
+
+    @Test
+    public void shouldAggregateQueryResult() throws Exception {
+
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        aggregationByQuery(query: \"select * from [jnt:contentList] where isdescendantnode('/testList')\") {"
+                + "            count"
+                + "            countByType {"
+                + "                value"
+                + "                count"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}");
+
+        JSONObject aggregation = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("aggregationByQuery");
+        Assert.assertEquals(4, aggregation.getInt("count"));
+        JSONArray countByType = aggregation.getJSONArray("countByType");
+        Assert.assertEquals(1, countByType.length());
+        Assert.assertEquals(4, countByType.getJSONObject(0).getInt("count"));
+    }
+
+    private static JSONObject getAggregation(String field, String selection) throws Exception {
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            " + field + " " + selection
+                + "        }"
+                + "    }"
+                + "}");
+        Assert.assertFalse(result.toString(), result.has("errors"));
+        String name = field.contains("(") ? field.substring(0, field.indexOf('(')) : field;
+        return result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodeByPath").getJSONObject(name);
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.test.graphql;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Locale;
+
+public class GraphQLComplexityTest extends GraphQLTestSupport {
+
+    @BeforeClass
+    public static void oneTimeSetup() throws Exception {
+
+        GraphQLTestSupport.init();
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testList", "jnt:contentList");
+            node.addNode("testSubList1", "jnt:contentList").addNode("testSubList1_1", "jnt:contentList");
+            node.addNode("testSubList2", "jnt:contentList");
+            session.save();
+            return null;
+        });
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws Exception {
+        GraphQLTestSupport.removeTestNodes();
+    }
+
+    @Test
+    public void shouldExecutePaginatedNestedConnections() throws Exception {
+
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            descendants(first: 2) {"
+                + "                nodes {"
+                + "                    children(first: 2) {"
+                + "                        nodes {"
+                + "                            name"
+                + "                        }"
+                + "                    }"
+                + "                }"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}");
+
+        Assert.assertFalse(result.has("errors"));
+        JSONArray descendants = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodeByPath").getJSONObject("descendants").getJSONArray("nodes");
+        Assert.assertEquals(2, descendants.length());
+    }
+
+    @Test
+    public void shouldRejectUnboundedNestedConnections() throws Exception {
+
+        // unbounded connections are costed with a page size of 1000: 10 + 1000 * (1 + 10 + 1000 * (1 + 1)) > 100000
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            descendants {"
+                + "                nodes {"
+                + "                    descendants {"
+                + "                        nodes {"
+                + "                            name"
+                + "                        }"
+                + "                    }"
+                + "                }"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}");
+
+        JSONArray errors = result.getJSONArray("errors");
+        Assert.assertEquals(1, errors.length());
+        Assert.assertTrue(errors.getJSONObject(0).getString("message").startsWith("Maximum query cost exceeded"));
+    }
+
+    @Test
+    public void shouldRejectRepeatedAggregations() throws Exception {
+
+        // each aggregation costs 1000, whatever the number of nodes it goes through
+        StringBuilder query = new StringBuilder("{ jcr { nodeByPath(path: \"/testList\") {");
+        for (int i = 0; i < 101; i++) {
+            query.append(" a").append(i).append(": aggregation { count }");
+        }
+        query.append(" } } }");
+        JSONObject result = executeQuery(query.toString());
+
+        JSONArray errors = result.getJSONArray("errors");
+        Assert.assertEquals(1, errors.length());
+        Assert.assertTrue(errors.getJSONObject(0).getString("message").startsWith("Maximum query cost exceeded"));
+    }
+
+    @Test
+    public void shouldRejectDeepQuery() throws Exception {
+
+        StringBuilder query = new StringBuilder("{ jcr { nodeByPath(path: \"/testList\") {");
+        for (int i = 0; i < 30; i++) {
+            query.append(" parent {");
+        }
+        query.append(" name");
+        for (int i = 0; i < 30; i++) {
+            query.append(" }");
+        }
+        query.append(" } } }");
+        JSONObject result = executeQuery(query.toString());
+
+        JSONArray errors = result.getJSONArray("errors");
+        Assert.assertEquals(1, errors.length());
+        Assert.assertTrue(errors.getJSONObject(0).getString("message").startsWith("Maximum query depth exceeded"));
+    }
+}
@@ -439,4 +439,148 @@ public class GraphQLNodeMutationsTest extends GraphQLTestSupport {
         });
     }
 
+    @Test
+    public void bulkImportInChunks() throws Exception {
+        JSONObject result = executeQuery("mutation {\n" +
+                "  jcr {\n" +
+                "    bulkImport(chunkSize: 2, nodes: [\n" +
+                getBulkImportNodes("/testList", "/testList", "/testList", "/testList", "/testList") +
+                "    ]) {\n" +
+                "      importedCount\n" +
+                "      lastCommittedIndex\n" +
+                "      completed\n" +
+                "      chunks { startIndex endIndex saved }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+        JSONObject bulkImport = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("bulkImport");
+        Assert.assertEquals(5, bulkImport.getInt("importedCount"));
+        Assert.assertEquals(4, bulkImport.getInt("lastCommittedIndex"));
+        Assert.assertTrue(bulkImport.getBoolean("completed"));
+        JSONArray chunks = bulkImport.getJSONArray("chunks");
+        Assert.assertEquals(3, chunks.length());
+        Assert.assertEquals(4, chunks.getJSONObject(2).getInt("startIndex"));
+        Assert.assertEquals(5, chunks.getJSONObject(2).getInt("endIndex"));
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertTrue(session.itemExists("/testList/testBulk" + i));
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkImportStopAndResume() throws Exception {
+        // the second chunk cannot be saved when the parent of its first node does not exist
+        String query = "mutation {\n" +
+                "  jcr {\n" +
+                "    bulkImport(chunkSize: 2, startIndex: %d, nodes: [\n" +
+                getBulkImportNodes("/testList", "/testList", "%s", "/testList", "/testList") +
+                "    ]) {\n" +
+                "      importedCount\n" +
+                "      lastCommittedIndex\n" +
+                "      completed\n" +
+                "      chunks { saved errors }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n";
+        JSONObject result = executeQuery(String.format(query, 0, "/testList/missing"));
+        JSONObject bulkImport = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("bulkImport");
+        Assert.assertEquals(2, bulkImport.getInt("importedCount"));
+        Assert.assertEquals(1, bulkImport.getInt("lastCommittedIndex"));
+        Assert.assertFalse(bulkImport.getBoolean("completed"));
+        JSONArray chunks = bulkImport.getJSONArray("chunks");
+        Assert.assertEquals(2, chunks.length());
+        Assert.assertFalse(chunks.getJSONObject(1).getBoolean("saved"));
+        Assert.assertEquals(1, chunks.getJSONObject(1).getJSONArray("errors").length());
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            Assert.assertTrue(session.itemExists("/testList/testBulk1"));
+            // the valid node of the failed chunk is discarded with it
+            Assert.assertFalse(session.itemExists("/testList/testBulk3"));
+            return null;
+        });
+
+        // resume from the node following the last saved chunk
+        result = executeQuery(String.format(query, bulkImport.getInt("lastCommittedIndex") + 1, "/testList/testSubList1"));
+        bulkImport = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("bulkImport");
+        Assert.assertEquals(3, bulkImport.getInt("importedCount"));
+        Assert.assertEquals(4, bulkImport.getInt("lastCommittedIndex"));
+        Assert.assertTrue(bulkImport.getBoolean("completed"));
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            Assert.assertTrue(session.itemExists("/testList/testSubList1/testBulk2"));
+            Assert.assertTrue(session.itemExists("/testList/testBulk3"));
+            Assert.assertTrue(session.itemExists("/testList/testBulk4"));
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkImportContinueOnError() throws Exception {
+        JSONObject result = executeQuery("mutation {\n" +
+                "  jcr {\n" +
+                "    bulkImport(chunkSize: 2, continueOnError: true, nodes: [\n" +
+                getBulkImportNodes("/testList", "/testList", "/testList/missing", "/testList", "/testList") +
+                "    ]) {\n" +
+                "      importedCount\n" +
+                "      lastCommittedIndex\n" +
+                "      completed\n" +
+                "      chunks { startIndex endIndex saved }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+        JSONObject bulkImport = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("bulkImport");
+        Assert.assertEquals(3, bulkImport.getInt("importedCount"));
+        // the import is to be resumed from the failed chunk, not from the last saved one
+        Assert.assertEquals(1, bulkImport.getInt("lastCommittedIndex"));
+        Assert.assertTrue(bulkImport.getBoolean("completed"));
+        JSONArray chunks = bulkImport.getJSONArray("chunks");
+        Assert.assertEquals(3, chunks.length());
+        Assert.assertFalse(chunks.getJSONObject(1).getBoolean("saved"));
+        Assert.assertEquals(2, chunks.getJSONObject(1).getInt("startIndex"));
+        Assert.assertEquals(4, chunks.getJSONObject(1).getInt("endIndex"));
+        Assert.assertTrue(chunks.getJSONObject(2).getBoolean("saved"));
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            Assert.assertTrue(session.itemExists("/testList/testBulk1"));
+            Assert.assertFalse(session.itemExists("/testList/testBulk3"));
+            Assert.assertTrue(session.itemExists("/testList/testBulk4"));
+            return null;
+        });
+    }
+
+    @Test
+    public void bulkImportKeepsOtherChangesOfRequest() throws Exception {
+        // the failed chunk is discarded without discarding the node added before the import in the same request
+        JSONObject result = executeQuery("mutation {\n" +
+                "  jcr {\n" +
+                "    addNode(parentPathOrId: \"/testList\", name: \"testBeforeBulk\", primaryNodeType: \"jnt:contentList\") {\n" +
+                "      uuid\n" +
+                "    }\n" +
+                "    bulkImport(chunkSize: 1, nodes: [\n" +
+                getBulkImportNodes("/testList", "/testList/missing") +
+                "    ]) {\n" +
+                "      importedCount\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+        Assert.assertEquals(1, result.getJSONObject("data").getJSONObject("jcr").getJSONObject("bulkImport").getInt("importedCount"));
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            Assert.assertTrue(session.itemExists("/testList/testBeforeBulk"));
+            Assert.assertTrue(session.itemExists("/testList/testBulk0"));
+            return null;
+        });
+    }
+
+    private static String getBulkImportNodes(String... parentPaths) {
+        StringBuilder nodes = new StringBuilder();
+        for (int i = 0; i < parentPaths.length; i++) {
+            nodes.append("      { parentPathOrId: \"").append(parentPaths[i]).append("\", name: \"testBulk").append(i)
+                    .append("\", primaryNodeType: \"jnt:contentList\" }\n");
+        }
+        return nodes.toString();
+    }
 }
@@ -188,6 +188,47 @@ public class GraphQLNodeRetrievalTest extends GraphQLTestSupport {
         validateNode(nodesByName.get("testSubList2"), "testSubList2");
     }
 
+    @Test
+    public void shouldRetrieveSiblingNodesAndParents() throws Exception {
+
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                                       + "    byPath:nodeByPath(path: \"/testList/testSubList1\") {"
+                                       + "        name"
+                                       + "        parent {"
+                                       + "            uuid"
+                                       + "        }"
+                                       + "    }"
+                                       + "    byId:nodeById(uuid: \"" + subNodeUuid2 + "\") {"
+                                       + "        name"
+                                       + "        parent {"
+                                       + "            uuid"
+                                       + "        }"
+                                       + "    }"
+                                       + "    nodesById(uuids: [\"" + subNodeUuid2 + "\", \"" + subNodeUuid1 + "\", \"" + subNodeUuid2 + "\"]) {"
+                                       + "        name"
+                                       + "        parent {"
+                                       + "            path"
+                                       + "        }"
+                                       + "    }"
+                                       + "    }"
+                                       + "}");
+        JSONObject jcr = result.getJSONObject("data").getJSONObject("jcr");
+
+        Assert.assertEquals("testSubList1", jcr.getJSONObject("byPath").getString("name"));
+        Assert.assertEquals(nodeUuid, jcr.getJSONObject("byPath").getJSONObject("parent").getString("uuid"));
+        Assert.assertEquals("testSubList2", jcr.getJSONObject("byId").getString("name"));
+        Assert.assertEquals(nodeUuid, jcr.getJSONObject("byId").getJSONObject("parent").getString("uuid"));
+        JSONArray nodes = jcr.getJSONArray("nodesById");
+        Assert.assertEquals(3, nodes.length());
+        Assert.assertEquals("testSubList2", nodes.getJSONObject(0).getString("name"));
+        Assert.assertEquals("testSubList1", nodes.getJSONObject(1).getString("name"));
+        Assert.assertEquals("testSubList2", nodes.getJSONObject(2).getString("name"));
+        for (int i = 0; i < nodes.length(); i++) {
+            Assert.assertEquals("/testList", nodes.getJSONObject(i).getJSONObject("parent").getString("path"));
+        }
+    }
+
     @Test
     public void shouldGetErrorNotRetrieveNodesByWrongPath() throws Exception {
 
@@ -103,6 +103,60 @@ public class GraphQLQueryTest extends GraphQLTestSupport {
         validateError(result, "javax.jcr.query.InvalidQueryException: Query:\nslct(*)from [jnt:contentList]; expected: SELECT");
     }
 
+    @Test
+    public void shouldPaginateQueryResult() throws Exception {
+        String query = "select * from [jnt:contentList] where isdescendantnode('/testList')";
+
+        JSONObject connection = runPaginatedQuery(query, "offset: 2, limit: 3");
+        Assert.assertEquals(3, connection.getJSONArray("nodes").length());
+        insurePageInfo(connection.getJSONObject("pageInfo"), 3, 7, true, true);
+
+        connection = runPaginatedQuery(query, "offset: 5, limit: 3");
+        Assert.assertEquals(2, connection.getJSONArray("nodes").length());
+        insurePageInfo(connection.getJSONObject("pageInfo"), 2, 7, true, false);
+
+        connection = runPaginatedQuery(query, "first: 4");
+        Assert.assertEquals(4, connection.getJSONArray("nodes").length());
+        insurePageInfo(connection.getJSONObject("pageInfo"), 4, 7, false, true);
+
+        connection = runPaginatedQuery(query, "offset: 10");
+        Assert.assertEquals(0, connection.getJSONArray("nodes").length());
+        Assert.assertEquals(7, connection.getJSONObject("pageInfo").getInt("totalCount"));
+
+        connection = runPaginatedQuery(query, "first: 2");
+        String cursor = connection.getJSONObject("pageInfo").getString("endCursor");
+        connection = runPaginatedQuery(query, "after: \"" + cursor + "\", first: 10");
+        Assert.assertEquals(5, connection.getJSONArray("nodes").length());
+        insurePageInfo(connection.getJSONObject("pageInfo"), 5, 7, true, false);
+    }
+
+    private static JSONObject runPaginatedQuery(String query, String pagination) throws JSONException {
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "    nodesByQuery(query: \"" + query + "\", " + pagination + ") {"
+                + "        pageInfo {"
+                + "            nodesCount"
+                + "            totalCount"
+                + "            hasPreviousPage"
+                + "            hasNextPage"
+                + "            endCursor"
+                + "        }"
+                + "        nodes {"
+                + "            name"
+                + "        }"
+                + "    }"
+                + "    }"
+                + "}");
+        return result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodesByQuery");
+    }
+
+    private static void insurePageInfo(JSONObject pageInfo, int nodesCount, int totalCount, boolean hasPreviousPage, boolean hasNextPage) throws JSONException {
+        Assert.assertEquals(nodesCount, pageInfo.getInt("nodesCount"));
+        Assert.assertEquals(totalCount, pageInfo.getInt("totalCount"));
+        Assert.assertEquals(hasPreviousPage, pageInfo.getBoolean("hasPreviousPage"));
+        Assert.assertEquals(hasNextPage, pageInfo.getBoolean("hasNextPage"));
+    }
+
     private static JSONObject runQuery(String query, GqlJcrQuery.QueryLanguage language) throws JSONException {
         return executeQuery("{"
                           + "    jcr {"
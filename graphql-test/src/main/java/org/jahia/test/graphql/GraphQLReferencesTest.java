@@ -175,6 +175,34 @@ public class GraphQLReferencesTest extends GraphQLTestSupport {
         validateNode(refNode, "testSubList2");
     }
 
+    @Test
+    public void shouldRetrieveReferencedNodesOfSiblingNodes() throws Exception {
+
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "    nodesByPath(paths: [\"/testList/reference1\", \"/testList/reference2\", \"/testList/testSubList1\"]) {"
+                + "        name"
+                + "        reference: property(name: \"j:node\") {"
+                + "            refNode {"
+                + "                name"
+                + "            }"
+                + "        }"
+                + "        title: property(name: \"jcr:title\" language: \"en\") {"
+                + "            refNode {"
+                + "                name"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "    }"
+                + "}");
+        JSONArray nodes = result.getJSONObject("data").getJSONObject("jcr").getJSONArray("nodesByPath");
+
+        Assert.assertEquals(3, nodes.length());
+        validateNode(nodes.getJSONObject(0).getJSONObject("reference").getJSONObject("refNode"), "testSubList1");
+        validateNode(nodes.getJSONObject(1).getJSONObject("reference").getJSONObject("refNode"), "testSubList1");
+        validateNode(nodes.getJSONObject(2).getJSONObject("title").getJSONObject("refNode"), "testSubList2");
+    }
+
     @Test
     public void shouldGetErrorNotRetrieveReferencedNodeFromPropertyOfWrongType() throws Exception {
 
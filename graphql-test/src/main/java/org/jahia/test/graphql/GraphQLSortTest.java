@@ -0,0 +1,137 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.test.graphql;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class GraphQLSortTest extends GraphQLTestSupport {
+
+    @BeforeClass
+    public static void oneTimeSetup() throws Exception {
+
+        GraphQLTestSupport.init();
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testList", "jnt:contentList");
+            node.addNode("node1", "jnt:contentList").setProperty("jcr:title", "b");
+            node.addNode("node2", "jnt:contentList").setProperty("jcr:title", "C");
+            node.addNode("node3", "jnt:contentList").setProperty("jcr:title", "a");
+            node.addNode("node4", "jnt:contentList");
+            session.save();
+            return null;
+        });
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws Exception {
+        GraphQLTestSupport.removeTestNodes();
+    }
+
+    @Test
+    public void shouldKeepRepositoryOrderWithoutSort() throws Exception {
+        Assert.assertEquals(Arrays.asList("node1", "node2", "node3", "node4"), getNames("children", null, null));
+    }
+
+    @Test
+    public void shouldSortChildren() throws Exception {
+        // nodes without value first, strings compared without collation
+        Assert.assertEquals(Arrays.asList("node4", "node2", "node3", "node1"), getNames("children", "{property: \"jcr:title\", language: \"en\"}", null));
+        Assert.assertEquals(Arrays.asList("node4", "node3", "node1", "node2"), getNames("children", "{property: \"jcr:title\", language: \"en\", ignoreCase: true}", null));
+        Assert.assertEquals(Arrays.asList("node2", "node1", "node3", "node4"), getNames("children", "{property: \"jcr:title\", language: \"en\", ignoreCase: true, direction: DESC}", null));
+    }
+
+    @Test
+    public void shouldSortDescendants() throws Exception {
+        Assert.assertEquals(Arrays.asList("node4", "node3", "node1", "node2"), getNames("descendants", "{property: \"jcr:title\", language: \"en\", ignoreCase: true}", null));
+        Assert.assertEquals(Arrays.asList("node2", "node1", "node3", "node4"), getNames("descendants", "{property: \"jcr:title\", language: \"en\", ignoreCase: true, direction: DESC}", null));
+    }
+
+    @Test
+    public void shouldPaginateSortedNodes() throws Exception {
+        Assert.assertEquals(Arrays.asList("node4", "node3"), getNames("children", "{property: \"jcr:title\", language: \"en\", ignoreCase: true}", "first: 2"));
+        Assert.assertEquals(Arrays.asList("node1", "node2"), getNames("children", "{property: \"jcr:title\", language: \"en\", ignoreCase: true}", "offset: 2, limit: 2"));
+        Assert.assertEquals(Arrays.asList("node2", "node1"), getNames("descendants", "{property: \"jcr:title\", language: \"en\", ignoreCase: true, direction: DESC}", "first: 2"));
+    }
+
+    private static List<String> getNames(String field, String sortBy, String pagination) throws Exception {
+        List<String> arguments = new ArrayList<>();
+        if (sortBy != null) {
+            arguments.add("sortBy: " + sortBy);
+        }
+        if (pagination != null) {
+            arguments.add(pagination);
+        }
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            " + field + (arguments.isEmpty() ? "" : "(" + String.join(", ", arguments) + ")") + " {"
+                + "                nodes {"
+                + "                    name"
+                + "                }"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}");
+        Assert.assertFalse(result.toString(), result.has("errors"));
+        JSONArray nodes = result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodeByPath").getJSONObject(field).getJSONArray("nodes");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < nodes.length(); i++) {
+            names.add(nodes.getJSONObject(i).getString("name"));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2018 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.test.graphql;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.jahia.services.seo.jcr.VanityUrlManager.*;
+
+public class GraphQLVanityUrlsTest extends GraphQLTestSupport {
+
+    @BeforeClass
+    public static void oneTimeSetup() throws Exception {
+
+        GraphQLTestSupport.init();
+
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, Locale.ENGLISH, session -> {
+            JCRNodeWrapper node = session.getNode("/").addNode("testList", "jnt:contentList");
+            node.addMixin("jmix:vanityUrlMapped");
+            JCRNodeWrapper mappings = node.addNode(VANITYURLMAPPINGS_NODE, "jnt:vanityUrls");
+            addVanityUrl(mappings, "/testVanity1", "en", true, true);
+            addVanityUrl(mappings, "/testVanity2", "en", true, false);
+            addVanityUrl(mappings, "/testVanity3", "en", true, false);
+            addVanityUrl(mappings, "/testVanity4", "en", true, false);
+            addVanityUrl(mappings, "/testVanity5", "en", false, false);
+            addVanityUrl(mappings, "/testVanity6", "fr", true, false);
+            session.save();
+            return null;
+        });
+    }
+
+    @AfterClass
+    public static void oneTimeTearDown() throws Exception {
+        GraphQLTestSupport.removeTestNodes();
+    }
+
+    @Test
+    public void shouldPaginateVanityUrls() throws Exception {
+
+        JSONObject vanityUrls = getVanityUrls("languages: [\"en\"], onlyDefault: false, first: 2");
+        assertUrls(vanityUrls, "/testVanity1", "/testVanity2");
+        JSONObject pageInfo = vanityUrls.getJSONObject("pageInfo");
+        Assert.assertTrue(pageInfo.getBoolean("hasNextPage"));
+
+        vanityUrls = getVanityUrls("languages: [\"en\"], onlyDefault: false, first: 2, after: \"" + pageInfo.getString("endCursor") + "\"");
+        assertUrls(vanityUrls, "/testVanity3", "/testVanity4");
+        Assert.assertFalse(vanityUrls.getJSONObject("pageInfo").getBoolean("hasNextPage"));
+    }
+
+    @Test
+    public void shouldFilterVanityUrls() throws Exception {
+
+        // only active and default vanity URLs by default
+        assertUrls(getVanityUrls(null), "/testVanity1");
+        assertUrls(getVanityUrls("onlyDefault: false"), "/testVanity1", "/testVanity2", "/testVanity3", "/testVanity4", "/testVanity6");
+        assertUrls(getVanityUrls("languages: [\"fr\"], onlyDefault: false"), "/testVanity6");
+
+        JSONObject vanityUrls = getVanityUrls("onlyActive: false, onlyDefault: false, offset: 4, limit: 1");
+        assertUrls(vanityUrls, "/testVanity5");
+        Assert.assertEquals(6, vanityUrls.getJSONObject("pageInfo").getInt("totalCount"));
+    }
+
+    private static void addVanityUrl(JCRNodeWrapper mappings, String url, String language, boolean active, boolean isDefault) throws Exception {
+        JCRNodeWrapper vanityUrl = mappings.addNode(url.substring(1), JAHIANT_VANITYURL);
+        vanityUrl.setProperty(PROPERTY_URL, url);
+        vanityUrl.setProperty(Constants.JCR_LANGUAGE, language);
+        vanityUrl.setProperty(PROPERTY_ACTIVE, active);
+        vanityUrl.setProperty(PROPERTY_DEFAULT, isDefault);
+    }
+
+    private static JSONObject getVanityUrls(String arguments) throws Exception {
+        JSONObject result = executeQuery("{"
+                + "    jcr {"
+                + "        nodeByPath(path: \"/testList\") {"
+                + "            vanityUrls" + (arguments != null ? "(" + arguments + ")" : "") + " {"
+                + "                nodes {"
+                + "                    url"
+                + "                }"
+                + "                pageInfo {"
+                + "                    totalCount"
+                + "                    endCursor"
+                + "                    hasNextPage"
+                + "                }"
+                + "            }"
+                + "        }"
+                + "    }"
+                + "}");
+
+        Assert.assertFalse(result.has("errors"));
+        return result.getJSONObject("data").getJSONObject("jcr").getJSONObject("nodeByPath").getJSONObject("vanityUrls");
+    }
+
+    private static void assertUrls(JSONObject vanityUrls, String... expectedUrls) throws Exception {
+        JSONArray nodes = vanityUrls.getJSONArray("nodes");
+        Assert.assertEquals(expectedUrls.length, nodes.length());
+        for (int i = 0; i < expectedUrls.length; i++) {
+            Assert.assertEquals(expectedUrls[i], nodes.getJSONObject(i).getString("url"));
+        }
+    }
+}